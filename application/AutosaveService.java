@@ -0,0 +1,343 @@
+/**
+ * Saves an inventory to a file in the background after it changes.
+ * Changes are debounced: a save starts once the inventory has been quiet for a set period, or once
+ * a maximum delay has passed since the first unsaved change, whichever comes first. The save copies
+ * the inventory into an InventorySnapshot on the thread that owns it, then formats and writes the
+ * copy on a background thread and atomically replaces the target file, so edits never wait on disk.
+ * Each save is recorded as an ExportEvent.
+ * @param <T> The type of product saved
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AutosaveService<T extends IProduct> implements PropertyChangeListener, Closeable
+{
+	/** Inventory being saved */
+	private final Inventory<T> _inventory;
+	/** File replaced by each save */
+	private final File _file;
+	/** Time without changes after which a save starts, in nanoseconds */
+	private final long _quietNanos;
+	/** Longest time a change waits before a save starts, in nanoseconds */
+	private final long _maxDelayNanos;
+	/** Runs tasks on the thread that modifies the inventory */
+	private final Executor _ownerExecutor;
+	/** Single thread timing and writing saves, so saves never overlap */
+	private final ScheduledExecutorService _scheduler;
+	/** True while a save check or save is scheduled or running */
+	private final AtomicBoolean _scheduled = new AtomicBoolean(false);
+	/** Time of the first change since the last snapshot, zero if there is none */
+	private final AtomicLong _firstChangeNanos = new AtomicLong(0);
+	/** Time of the most recent change */
+	private volatile long _lastChangeNanos = 0;
+	/** Number of completed saves */
+	private volatile int _saveCount = 0;
+	/** Number of failed saves */
+	private volatile int _failureCount = 0;
+	/** Time taken to copy the inventory in the last save, in nanoseconds */
+	private volatile long _lastCaptureNanos = 0;
+	/** Time taken to write the file in the last save, in nanoseconds */
+	private volatile long _lastWriteNanos = 0;
+	/** Size of the file written by the last save */
+	private volatile long _lastSaveBytes = 0;
+	/** Error raised by the last failed save, or null */
+	private volatile IOException _lastError = null;
+	/** True once the service has been closed */
+	private volatile boolean _closed = false;
+	
+	/**
+	 * Constructor, starts listening for changes to the inventory
+	 * @param inventory The inventory to save
+	 * @param file The file to save to, written compressed if the name ends in .gz
+	 * @param quietMillis Time without changes after which a save starts
+	 * @param maxDelayMillis Longest time a change waits before a save starts
+	 * @param ownerExecutor Runs tasks on the thread that modifies the inventory
+	 */
+	public AutosaveService(Inventory<T> inventory, File file, long quietMillis, long maxDelayMillis, Executor ownerExecutor)
+	{
+		if (quietMillis <= 0 || maxDelayMillis < quietMillis)
+		{
+			throw new IllegalArgumentException("Quiet period must be positive and no longer than the maximum delay");
+		}
+		
+		_inventory = inventory;
+		_file = file;
+		_quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+		_maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		_ownerExecutor = ownerExecutor;
+		_scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+		{
+			Thread thread = new Thread(r, "inventory-autosave");
+			thread.setDaemon(true);
+			return thread;
+		});
+		_inventory.addPropertyChangeListener(this);
+	}
+	
+	/**
+	 * Records a change to the inventory and schedules a save if none is scheduled
+	 * @param e The inventory or item change event
+	 */
+	@Override
+	public void propertyChange(PropertyChangeEvent e)
+	{
+		markDirty();
+	}
+	
+	/**
+	 * Records that the inventory holds changes not yet saved, for changes made before the service
+	 * started listening, and schedules a save if none is scheduled
+	 */
+	public void markDirty()
+	{
+		long now = System.nanoTime();
+		_firstChangeNanos.compareAndSet(0, now);
+		_lastChangeNanos = now;
+		if (!_closed && !_scheduled.getAndSet(true))
+		{
+			_scheduler.schedule(this::checkDue, _quietNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	/**
+	 * Checks if there are changes not yet saved
+	 * @returns True if the inventory changed since the last snapshot
+	 */
+	public boolean isDirty()
+	{
+		return _firstChangeNanos.get() != 0;
+	}
+	
+	/**
+	 * Get method for the file being saved to
+	 * @returns The autosave file
+	 */
+	public File getFile()
+	{
+		return _file;
+	}
+	
+	/**
+	 * Get method for the number of completed saves
+	 * @returns Number of saves written successfully
+	 */
+	public int getSaveCount()
+	{
+		return _saveCount;
+	}
+	
+	/**
+	 * Get method for the number of failed saves
+	 * @returns Number of saves that could not be written
+	 */
+	public int getFailureCount()
+	{
+		return _failureCount;
+	}
+	
+	/**
+	 * Get method for the time the last save spent copying the inventory on the owner thread
+	 * @returns Copy time in nanoseconds
+	 */
+	public long getLastCaptureNanos()
+	{
+		return _lastCaptureNanos;
+	}
+	
+	/**
+	 * Get method for the time the last save spent formatting and writing the file
+	 * @returns Write time in nanoseconds
+	 */
+	public long getLastWriteNanos()
+	{
+		return _lastWriteNanos;
+	}
+	
+	/**
+	 * Get method for the size of the file written by the last save
+	 * @returns Number of bytes written
+	 */
+	public long getLastSaveBytes()
+	{
+		return _lastSaveBytes;
+	}
+	
+	/**
+	 * Get method for the error raised by the last failed save
+	 * @returns The error, or null if no save has failed
+	 */
+	public IOException getLastError()
+	{
+		return _lastError;
+	}
+	
+	/**
+	 * Saves any unsaved changes and waits for the file to be written.
+	 * Must be called on the thread that modifies the inventory.
+	 * @throws IOException if the file cannot be written
+	 */
+	public void flush() throws IOException
+	{
+		if (!isDirty())
+		{
+			return;
+		}
+		
+		InventorySnapshot snapshot = capture();
+		Future<IOException> result = _scheduler.submit(() -> write(snapshot));
+		try
+		{
+			IOException error = result.get();
+			if (error != null)
+			{
+				throw error;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while saving");
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("Autosave failed", e.getCause());
+		}
+	}
+	
+	/**
+	 * Stops listening for changes, saves any unsaved changes, and stops the background thread.
+	 * Must be called on the thread that modifies the inventory.
+	 * @throws IOException if the final save cannot be written
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (_closed)
+		{
+			return;
+		}
+		
+		_closed = true;
+		_inventory.removePropertyChangeListener(this);
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			_scheduler.shutdown();
+		}
+	}
+	
+	/** Starts a save if the quiet period or maximum delay has passed, otherwise checks again when one will */
+	private void checkDue()
+	{
+		long first = _firstChangeNanos.get();
+		if (_closed || first == 0)
+		{
+			_scheduled.set(false);
+			return;
+		}
+		
+		long now = System.nanoTime();
+		long due = Math.min(_lastChangeNanos + _quietNanos, first + _maxDelayNanos);
+		if (now - due >= 0)
+		{
+			_ownerExecutor.execute(this::captureAndWrite);
+		}
+		else
+		{
+			_scheduler.schedule(this::checkDue, due - now, TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	/** Copies the inventory on the owner thread and hands the copy to the background thread */
+	private void captureAndWrite()
+	{
+		if (_closed)
+		{
+			_scheduled.set(false);
+			return;
+		}
+		
+		InventorySnapshot snapshot = capture();
+		_scheduler.execute(() ->
+		{
+			write(snapshot);
+			_scheduled.set(false);
+			// changes made while writing did not schedule a save of their own
+			if (isDirty() && !_closed && !_scheduled.getAndSet(true))
+			{
+				_scheduler.schedule(this::checkDue, _quietNanos, TimeUnit.NANOSECONDS);
+			}
+		});
+	}
+	
+	/**
+	 * Copies the inventory and marks it clean. Must run on the owner thread.
+	 * @returns The copy of the inventory
+	 */
+	private InventorySnapshot capture()
+	{
+		long start = System.nanoTime();
+		_firstChangeNanos.set(0);
+		InventorySnapshot snapshot = new InventorySnapshot(_inventory);
+		_lastCaptureNanos = System.nanoTime() - start;
+		
+		return snapshot;
+	}
+	
+	/**
+	 * Writes a copy of the inventory to the autosave file
+	 * @param snapshot The copy to write
+	 * @returns The error raised, or null if the save succeeded
+	 */
+	private IOException write(InventorySnapshot snapshot)
+	{
+		ExportEvent event = new ExportEvent();
+		event.begin();
+		long start = System.nanoTime();
+		try
+		{
+			_lastSaveBytes = snapshot.writeAtomically(_file);
+			_lastWriteNanos = System.nanoTime() - start;
+			_saveCount++;
+			return null;
+		}
+		catch (IOException e)
+		{
+			_lastError = e;
+			_failureCount++;
+			// keep the changes pending so the next check retries the save
+			_firstChangeNanos.compareAndSet(0, System.nanoTime());
+			return e;
+		}
+		finally
+		{
+			if (event.shouldCommit())
+			{
+				event.file = _file.getPath();
+				event.rowCount = snapshot.size();
+				event.byteCount = _lastSaveBytes;
+				event.commit();
+			}
+		}
+	}
+}
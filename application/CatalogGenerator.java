@@ -0,0 +1,144 @@
+/**
+ * Generates product names and properties resembling a real catalog for load testing.
+ * Names combine a descriptor, a material, a product type, and a size drawn from fixed
+ * vocabularies with Zipf-distributed popularity, so a few words are very common and most are
+ * rare, and end with a unique catalog number so that no two generated names collide.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CatalogGenerator
+{
+	/** Source of randomness */
+	private final Random _random;
+	/** Catalog number of the next generated name, shared so that names are unique across threads */
+	private final AtomicLong _nextNumber;
+	/** Words describing a product */
+	private static final String[] s_descriptors = {
+		"Standard", "Heavy Duty", "Compact", "Premium", "Economy", "Industrial", "Deluxe", "Mini", "Large", "Classic",
+		"Pro", "Ultra", "Slim", "Rugged", "Portable", "Adjustable", "Replacement", "Universal", "Organic", "Vintage" };
+	/** Materials of a product */
+	private static final String[] s_materials = {
+		"Steel", "Plastic", "Cotton", "Oak", "Aluminum", "Rubber", "Glass", "Ceramic", "Brass", "Nylon",
+		"Leather", "Bamboo", "Copper", "Wool", "Silicone", "Pine", "Titanium", "Linen", "Marble", "Cork" };
+	/** Types of product */
+	private static final String[] s_types = {
+		"Bracket", "Hose", "Towel", "Chair", "Bolt", "Mug", "Lamp", "Hinge", "Basket", "Cable",
+		"Shelf", "Bucket", "Glove", "Valve", "Brush", "Hook", "Clamp", "Tray", "Filter", "Panel",
+		"Spring", "Gasket", "Pillow", "Bottle", "Drawer", "Ladder", "Rope", "Sheet", "Washer", "Knob" };
+	/** Sizes of a product */
+	private static final String[] s_sizes = {
+		"", "", "", "Small", "Medium", "Large", "XL", "12in", "24in", "6ft", "1L", "5L", "500ml", "2-Pack", "10-Pack" };
+	/** Zipf exponent of word popularity */
+	private static final double s_skew = 1.1;
+	/** Cumulative Zipf weights of the descriptors */
+	private static final double[] s_descriptorWeights = cumulativeWeights(s_descriptors.length);
+	/** Cumulative Zipf weights of the materials */
+	private static final double[] s_materialWeights = cumulativeWeights(s_materials.length);
+	/** Cumulative Zipf weights of the types */
+	private static final double[] s_typeWeights = cumulativeWeights(s_types.length);
+	/** Cumulative Zipf weights of the sizes */
+	private static final double[] s_sizeWeights = cumulativeWeights(s_sizes.length);
+	
+	/**
+	 * Constructor
+	 * @param seed Seed for the random choices
+	 * @param nextNumber Source of unique catalog numbers
+	 */
+	public CatalogGenerator(long seed, AtomicLong nextNumber)
+	{
+		_random = new Random(seed);
+		_nextNumber = nextNumber;
+	}
+	
+	/**
+	 * Generates a unique product name
+	 * @returns The name
+	 */
+	public String nextName()
+	{
+		StringBuilder name = new StringBuilder(48);
+		name.append(pick(s_descriptors, s_descriptorWeights)).append(' ')
+			.append(pick(s_materials, s_materialWeights)).append(' ')
+			.append(pick(s_types, s_typeWeights));
+		String size = pick(s_sizes, s_sizeWeights);
+		if (!size.isEmpty())
+		{
+			name.append(' ').append(size);
+		}
+		name.append(" #").append(_nextNumber.getAndIncrement());
+		
+		return name.toString();
+	}
+	
+	/**
+	 * Generates a product with a unique name and plausible weight, price, and quantity
+	 * @returns The new item
+	 */
+	public Item nextItem()
+	{
+		// weights and prices are roughly log-normal, most items light and cheap
+		double weight = Math.round(Math.exp(_random.nextGaussian() * 1.2) * 100) / 100.0 + 0.01;
+		double price = Math.round(Math.exp(2.5 + _random.nextGaussian()) * 100) / 100.0;
+		return new Item(nextName(), weight, price, nextQuantity());
+	}
+	
+	/**
+	 * Generates a stock quantity
+	 * @returns A quantity between 0 and 500, usually small
+	 */
+	public int nextQuantity()
+	{
+		return (int)Math.min(500, Math.floor(-Math.log(1 - _random.nextDouble()) * 40));
+	}
+	
+	/**
+	 * Picks a word with Zipf-distributed probability by position
+	 * @param words The vocabulary, most popular first
+	 * @param cumulative Cumulative weights of the vocabulary by rank
+	 * @returns The chosen word
+	 */
+	private String pick(String[] words, double[] cumulative)
+	{
+		double target = _random.nextDouble() * cumulative[cumulative.length - 1];
+		int low = 0;
+		int high = cumulative.length - 1;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (cumulative[mid] < target)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		
+		return words[low];
+	}
+	
+	/**
+	 * Computes cumulative Zipf weights by rank
+	 * @param size The vocabulary size
+	 * @returns Cumulative weights by rank
+	 */
+	private static double[] cumulativeWeights(int size)
+	{
+		double[] cumulative = new double[size];
+		double total = 0;
+		for (int rank = 0; rank < size; rank++)
+		{
+			total += 1 / Math.pow(rank + 1, s_skew);
+			cumulative[rank] = total;
+		}
+		
+		return cumulative;
+	}
+}
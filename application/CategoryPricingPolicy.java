@@ -0,0 +1,65 @@
+/**
+ * Pricing policy with a markup factor and storage rate per product category.
+ * Categories are assigned by a caller-supplied function, and products in a category
+ * without its own rates are priced by a fallback policy.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+public class CategoryPricingPolicy implements PricingPolicy
+{
+	/** Function assigning each product a category, may return null */
+	private final Function<IProduct, String> _categorizer;
+	/** Policy for products whose category has no rates */
+	private final PricingPolicy _fallback;
+	/** Markup factor and storage rate by category */
+	private final Map<String, double[]> _rates = new HashMap<>();
+	
+	/**
+	 * Constructor
+	 * @param categorizer Function assigning each product a category
+	 * @param fallback Policy for products whose category has no rates
+	 */
+	public CategoryPricingPolicy(Function<IProduct, String> categorizer, PricingPolicy fallback)
+	{
+		_categorizer = categorizer;
+		_fallback = fallback;
+	}
+	
+	/**
+	 * Sets the rates for a category
+	 * @param category The category
+	 * @param markupFactor The markup factor for products in the category
+	 * @param storageRate The storage rate for products in the category in dollars per pound
+	 * @throws IllegalArgumentException if either value is negative
+	 */
+	public void setRates(String category, double markupFactor, double storageRate)
+	{
+		if (markupFactor < 0 || storageRate < 0)
+		{
+			throw new IllegalArgumentException("Markup factor and storage rate cannot be negative");
+		}
+		
+		_rates.put(category, new double[] { markupFactor, storageRate });
+	}
+	
+	@Override
+	public double getMarkupFactor(IProduct prod)
+	{
+		double[] rates = _rates.get(_categorizer.apply(prod));
+		return rates == null ? _fallback.getMarkupFactor(prod) : rates[0];
+	}
+	
+	@Override
+	public double getStorageRate(IProduct prod)
+	{
+		double[] rates = _rates.get(_categorizer.apply(prod));
+		return rates == null ? _fallback.getStorageRate(prod) : rates[1];
+	}
+}
@@ -0,0 +1,372 @@
+/**
+ * Collects the changes of a product list from any thread and hands them to a view in batches on
+ * the thread that owns the view. The first change after a batch is handed over schedules one drain
+ * on the owner thread, and every change made before the drain runs is coalesced into it: a product
+ * added and removed again drops out, successive renames become one rename from the name the view
+ * last saw, and repeated property changes mark the product changed once. A batch holds at most a
+ * fixed number of products, which bounds the work a view does per frame. When more products changed
+ * than that, the view is asked once to reload from the list instead, which costs it no more than a
+ * full refresh however many changes were made.
+ * @param <T> The class implementing IProduct contained in the list
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+public class ChangeBatcher<T extends IProduct> implements PropertyChangeListener
+{
+	/** The list being watched */
+	private final IProductList<T> _list;
+	/** Runs drains on the thread that owns the view */
+	private final Executor _ownerExecutor;
+	/** Receives each batch on the owner thread */
+	private final Consumer<Batch<T>> _view;
+	/** Decides which change events are batched */
+	private final Predicate<PropertyChangeEvent> _filter;
+	/** Most products listed in one batch */
+	private final int _maxBatchSize;
+	/** Coalesced changes not yet handed to the view, by product in order of first change or last addition, guarded by itself */
+	private final LinkedHashMap<T, Change<T>> _pending = new LinkedHashMap<>();
+	/** True while a drain is scheduled on the owner thread */
+	private final AtomicBoolean _drainScheduled = new AtomicBoolean(false);
+	/** Number of batches handed to the view */
+	private long _batchCount = 0;
+	/** Default most products listed in one batch */
+	public static final int s_defaultMaxBatchSize = 4096;
+	
+	/**
+	 * Constructor batching every change, starts watching a list
+	 * @param list The list to watch
+	 * @param ownerExecutor Runs tasks on the thread that owns the view
+	 * @param view Receives each batch on the owner thread
+	 */
+	public ChangeBatcher(IProductList<T> list, Executor ownerExecutor, Consumer<Batch<T>> view)
+	{
+		this(list, ownerExecutor, view, e -> true, s_defaultMaxBatchSize);
+	}
+	
+	/**
+	 * Constructor, starts watching a list
+	 * @param list The list to watch
+	 * @param ownerExecutor Runs tasks on the thread that owns the view
+	 * @param view Receives each batch on the owner thread
+	 * @param filter Decides which change events are batched, called on the thread making the change
+	 * @param maxBatchSize The most products listed in one batch, more ask the view to reload
+	 */
+	public ChangeBatcher(IProductList<T> list, Executor ownerExecutor, Consumer<Batch<T>> view, Predicate<PropertyChangeEvent> filter, int maxBatchSize)
+	{
+		if (maxBatchSize <= 0)
+		{
+			throw new IllegalArgumentException("Batch size must be positive");
+		}
+		
+		_list = list;
+		_ownerExecutor = ownerExecutor;
+		_view = view;
+		_filter = filter;
+		_maxBatchSize = maxBatchSize;
+		_list.addPropertyChangeListener(this);
+	}
+	
+	/**
+	 * Get method for the number of batches handed to the view
+	 * @returns The number of batches so far
+	 */
+	public synchronized long getBatchCount()
+	{
+		return _batchCount;
+	}
+	
+	/**
+	 * Get method for the number of products with changes not yet handed to the view
+	 * @returns The number of pending products
+	 */
+	public synchronized int getPendingCount()
+	{
+		return _pending.size();
+	}
+	
+	/** Hands every pending change to the view now. Must be called on the owner thread. */
+	public void flush()
+	{
+		Batch<T> batch = take();
+		if (batch != null)
+		{
+			_view.accept(batch);
+		}
+	}
+	
+	/** Forgets every pending change, for a view that has just been rebuilt from the list */
+	public synchronized void discard()
+	{
+		_pending.clear();
+	}
+	
+	/** Stops watching the list */
+	public void close()
+	{
+		_list.removePropertyChangeListener(this);
+	}
+	
+	@Override
+	public void propertyChange(PropertyChangeEvent e)
+	{
+		if (!_filter.test(e))
+		{
+			return;
+		}
+		
+		String property = e.getPropertyName();
+		boolean schedule;
+		synchronized (this)
+		{
+			if (e.getSource() == _list)
+			{
+				if (property == "add")
+				{
+					T prod = (T)e.getNewValue();
+					// an added product goes to the end of the list, so its change goes to the end of the batch
+					Change<T> change = _pending.remove(prod);
+					if (change == null)
+					{
+						change = new Change<>(prod, null, false);
+					}
+					_pending.put(prod, change);
+					change._reinserted = change._wasListed;
+					change._isListed = true;
+				}
+				else if (property == "remove")
+				{
+					T prod = (T)e.getOldValue();
+					Change<T> change = _pending.get(prod);
+					if (change == null)
+					{
+						change = new Change<>(prod, prod.getName(), true);
+						_pending.put(prod, change);
+					}
+					else if (!change._wasListed)
+					{
+						// added and removed again before the view saw it
+						_pending.remove(prod);
+					}
+					change._isListed = false;
+				}
+			}
+			else
+			{
+				T prod = (T)e.getSource();
+				Change<T> change = _pending.get(prod);
+				if (change == null)
+				{
+					String name = property == "name" ? (String)e.getOldValue() : prod.getName();
+					change = new Change<>(prod, name, true);
+					_pending.put(prod, change);
+				}
+				change._propertyChanged = true;
+			}
+			schedule = !_pending.isEmpty();
+		}
+		
+		if (schedule && _drainScheduled.compareAndSet(false, true))
+		{
+			_ownerExecutor.execute(this::drain);
+		}
+	}
+	
+	/** Hands the pending changes to the view on the owner thread */
+	private void drain()
+	{
+		_drainScheduled.set(false);
+		flush();
+	}
+	
+	/**
+	 * Removes every pending change
+	 * @returns The batch of changes, a batch asking the view to reload if there are too many,
+	 * or null if nothing changed that the view shows
+	 */
+	private synchronized Batch<T> take()
+	{
+		if (_pending.isEmpty())
+		{
+			return null;
+		}
+		
+		Batch<T> batch = new Batch<>(_pending.size() > _maxBatchSize);
+		if (!batch.isReload())
+		{
+			for (Change<T> change : _pending.values())
+			{
+				batch.add(change);
+			}
+		}
+		_pending.clear();
+		if (batch.isEmpty())
+		{
+			return null;
+		}
+		
+		_batchCount++;
+		return batch;
+	}
+	
+	/** Changes of one product since the view last saw it */
+	private static class Change<T extends IProduct>
+	{
+		/** The changed product */
+		private final T _prod;
+		/** Name the view last saw, or null if the view has not seen the product */
+		private final String _originalName;
+		/** True if the product was in the list when the view last saw it */
+		private final boolean _wasListed;
+		/** True if the product is in the list now */
+		private boolean _isListed;
+		/** True if the product was removed and added again, which moves it to the end of the list */
+		private boolean _reinserted = false;
+		/** True if a property of the product changed */
+		private boolean _propertyChanged = false;
+		
+		/**
+		 * Constructor
+		 * @param prod The changed product
+		 * @param originalName The name the view last saw, or null if the view has not seen the product
+		 * @param wasListed True if the product was in the list when the view last saw it
+		 */
+		public Change(T prod, String originalName, boolean wasListed)
+		{
+			_prod = prod;
+			_originalName = originalName;
+			_wasListed = wasListed;
+			_isListed = wasListed;
+		}
+	}
+	
+	/**
+	 * Changes handed to the view in one go. A product appears in at most one of the lists,
+	 * except that a product removed and added again appears as removed under its old name and added.
+	 * @param <T> The class implementing IProduct contained in the list
+	 */
+	public static class Batch<T extends IProduct>
+	{
+		/** Products added, in order added */
+		private final List<T> _added = new ArrayList<>();
+		/** Names of products removed */
+		private final List<String> _removed = new ArrayList<>();
+		/** Names renamed products had before, parallel to _renamed */
+		private final List<String> _renamedFrom = new ArrayList<>();
+		/** Products renamed in place */
+		private final List<T> _renamed = new ArrayList<>();
+		/** Products whose other properties changed */
+		private final List<T> _changed = new ArrayList<>();
+		/** True if too many products changed to list them */
+		private final boolean _reload;
+		
+		/**
+		 * Constructor
+		 * @param reload True if too many products changed to list them
+		 */
+		private Batch(boolean reload)
+		{
+			_reload = reload;
+		}
+		
+		/**
+		 * Checks if the view should reload everything from the list rather than apply the batch
+		 * @returns True if too many products changed to list them, in which case every list is empty
+		 */
+		public boolean isReload()
+		{
+			return _reload;
+		}
+		
+		/**
+		 * Get method for the added products
+		 * @returns Products new to the view, in order added
+		 */
+		public List<T> getAdded()
+		{
+			return _added;
+		}
+		
+		/**
+		 * Get method for the removed names
+		 * @returns Names, as the view last saw them, of products no longer in the list
+		 */
+		public List<String> getRemoved()
+		{
+			return _removed;
+		}
+		
+		/**
+		 * Get method for the old names of renamed products
+		 * @returns Names the view last saw, in the same order as getRenamed
+		 */
+		public List<String> getRenamedFrom()
+		{
+			return _renamedFrom;
+		}
+		
+		/**
+		 * Get method for the renamed products
+		 * @returns Products still in the list under a new name
+		 */
+		public List<T> getRenamed()
+		{
+			return _renamed;
+		}
+		
+		/**
+		 * Get method for the changed products
+		 * @returns Products still in the list under the same name whose other properties changed
+		 */
+		public List<T> getChanged()
+		{
+			return _changed;
+		}
+		
+		/**
+		 * Checks if the batch holds anything for the view
+		 * @returns True if the view need not reload and every list is empty
+		 */
+		public boolean isEmpty()
+		{
+			return !_reload && _added.isEmpty() && _removed.isEmpty() && _renamed.isEmpty() && _changed.isEmpty();
+		}
+		
+		/**
+		 * Sorts the coalesced changes of one product into the lists
+		 * @param change The changes of the product
+		 */
+		private void add(Change<T> change)
+		{
+			if (change._wasListed && (!change._isListed || change._reinserted))
+			{
+				_removed.add(change._originalName);
+			}
+			if (change._isListed && (!change._wasListed || change._reinserted))
+			{
+				_added.add(change._prod);
+			}
+			else if (change._isListed && !change._originalName.equals(change._prod.getName()))
+			{
+				_renamedFrom.add(change._originalName);
+				_renamed.add(change._prod);
+			}
+			else if (change._isListed && change._propertyChanged)
+			{
+				_changed.add(change._prod);
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * Tracks the products of a product list that changed since the last checkpoint,
+ * using the add, remove, and property change notifications of the list.
+ * @param <T> The class implementing IProduct contained in the tracked list
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+public class ChangeTracker<T extends IProduct> implements PropertyChangeListener
+{
+	/** The list being tracked */
+	private final IProductList<T> _list;
+	/** Decides which change events are tracked */
+	private final Predicate<PropertyChangeEvent> _filter;
+	/** Products added or changed since the last checkpoint, in order of first change */
+	private final Set<T> _upserts = new LinkedHashSet<>();
+	/** Names no longer in the list since the last checkpoint */
+	private final Set<String> _tombstones = new LinkedHashSet<>();
+	/** Number of checkpoints taken */
+	private long _checkpoint = 0;
+	
+	/**
+	 * Constructor, starts tracking changes to a list
+	 * @param list The list to track
+	 */
+	public ChangeTracker(IProductList<T> list)
+	{
+		this(list, e -> true);
+	}
+	
+	/**
+	 * Constructor, starts tracking the changes to a list that a filter accepts
+	 * @param list The list to track
+	 * @param filter Decides which change events are tracked, called on the thread making the change
+	 */
+	public ChangeTracker(IProductList<T> list, Predicate<PropertyChangeEvent> filter)
+	{
+		_list = list;
+		_filter = filter;
+		_list.addPropertyChangeListener(this);
+	}
+	
+	/**
+	 * Get method for products added or changed since the last checkpoint
+	 * @returns Snapshot of the changed products, in order of first change
+	 */
+	public synchronized List<T> getUpserts()
+	{
+		return new ArrayList<>(_upserts);
+	}
+	
+	/**
+	 * Get method for names removed since the last checkpoint. A name may be both removed
+	 * and upserted when a product is renamed or replaced, in which case the upsert wins.
+	 * @returns Snapshot of the removed names, in order of removal
+	 */
+	public synchronized List<String> getTombstones()
+	{
+		return new ArrayList<>(_tombstones);
+	}
+	
+	/**
+	 * Checks if anything changed since the last checkpoint
+	 * @returns True if there are no upserts or tombstones
+	 */
+	public synchronized boolean isClean()
+	{
+		return _upserts.isEmpty() && _tombstones.isEmpty();
+	}
+	
+	/**
+	 * Get method for the number of checkpoints taken
+	 * @returns The current checkpoint number
+	 */
+	public synchronized long getCheckpoint()
+	{
+		return _checkpoint;
+	}
+	
+	/**
+	 * Marks the current state of the list as exported and forgets all tracked changes
+	 * @returns The new checkpoint number
+	 */
+	public synchronized long checkpoint()
+	{
+		_upserts.clear();
+		_tombstones.clear();
+		_checkpoint++;
+		
+		return _checkpoint;
+	}
+	
+	/** Stops tracking changes to the list */
+	public void close()
+	{
+		_list.removePropertyChangeListener(this);
+	}
+	
+	@Override
+	public synchronized void propertyChange(PropertyChangeEvent e)
+	{
+		if (!_filter.test(e))
+		{
+			return;
+		}
+		
+		String property = e.getPropertyName();
+		if (e.getSource() == _list)
+		{
+			if (property == "add")
+			{
+				_upserts.add((T)e.getNewValue());
+			}
+			else if (property == "remove")
+			{
+				T prod = (T)e.getOldValue();
+				_upserts.remove(prod);
+				_tombstones.add(prod.getName());
+			}
+		}
+		else
+		{
+			if (property == "name")
+			{
+				_tombstones.add((String)e.getOldValue());
+			}
+			_upserts.add((T)e.getSource());
+		}
+	}
+}
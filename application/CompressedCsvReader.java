@@ -0,0 +1,185 @@
+/**
+ * Reads items from gzip-compressed comma-separated input as a streaming pipeline.
+ * A background thread decompresses and parses batches of items while the caller
+ * consumes earlier batches, so parsing overlaps with adding items to inventory.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+public class CompressedCsvReader implements Closeable
+{
+	/** Batches of parsed items, a Throwable if parsing failed, or s_endOfInput */
+	private final BlockingQueue<Object> _queue;
+	/** Thread decompressing and parsing the input */
+	private final Thread _parser;
+	/** Stream of compressed input */
+	private final InputStream _in;
+	/** Batch currently being consumed */
+	private List<Item> _batch = new ArrayList<>();
+	/** Index of the next item in the current batch */
+	private int _batchIndex = 0;
+	/** Number of items returned so far */
+	private int _rowCount = 0;
+	/** True once the end of input or an error has been reached */
+	private boolean _done = false;
+	/** Marker placed on the queue after the last batch */
+	private static final Object s_endOfInput = new Object();
+	/** Number of items parsed before a batch is handed to the consumer */
+	private static final int s_batchSize = 1024;
+	/** Number of parsed batches that may wait for the consumer */
+	private static final int s_queueCapacity = 16;
+	
+	/**
+	 * Constructor, starts decompressing and parsing in the background
+	 * @param in The gzip-compressed input, closed when this reader is closed
+	 */
+	public CompressedCsvReader(InputStream in)
+	{
+		_in = in;
+		_queue = new ArrayBlockingQueue<>(s_queueCapacity);
+		_parser = new Thread(this::parse, "csv-inflate");
+		_parser.setDaemon(true);
+		_parser.start();
+	}
+	
+	/**
+	 * Returns the next item in the input
+	 * @returns The next item, or null at the end of input
+	 * @throws IOException if the input cannot be read or decompressed
+	 * @throws NumberFormatException if a numeric field cannot be parsed
+	 * @throws IllegalArgumentException if a numeric value cannot be set as the property of an item
+	 */
+	public Item readItem() throws IOException
+	{
+		while (_batchIndex == _batch.size())
+		{
+			if (_done)
+			{
+				return null;
+			}
+			takeBatch();
+		}
+		
+		_rowCount++;
+		return _batch.get(_batchIndex++);
+	}
+	
+	/**
+	 * Get method for the number of items returned so far
+	 * @returns Number of items returned by readItem
+	 */
+	public int getRowCount()
+	{
+		return _rowCount;
+	}
+	
+	/**
+	 * Stops the background parser and closes the input
+	 * @throws IOException if the input cannot be closed
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		_done = true;
+		_parser.interrupt();
+		_queue.clear();
+		_in.close();
+	}
+	
+	/**
+	 * Takes the next batch, end marker, or error from the parser
+	 * @throws IOException if the input cannot be read or decompressed
+	 */
+	@SuppressWarnings("unchecked")
+	private void takeBatch() throws IOException
+	{
+		Object next;
+		try
+		{
+			next = _queue.take();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while reading");
+		}
+		
+		_batch = new ArrayList<>();
+		_batchIndex = 0;
+		if (next == s_endOfInput)
+		{
+			_done = true;
+		}
+		else if (next instanceof IOException)
+		{
+			_done = true;
+			throw (IOException)next;
+		}
+		else if (next instanceof RuntimeException)
+		{
+			_done = true;
+			throw (RuntimeException)next;
+		}
+		else if (next instanceof Error)
+		{
+			_done = true;
+			throw (Error)next;
+		}
+		else
+		{
+			_batch = (List<Item>)next;
+		}
+	}
+	
+	/**
+	 * Body of the parser thread. Items parsed before a failure are handed over
+	 * ahead of the failure so the consumer sees the same rows as a sequential read.
+	 */
+	private void parse()
+	{
+		List<Item> batch = new ArrayList<>(s_batchSize);
+		long row = 0;
+		try
+		{
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(_in), StandardCharsets.UTF_8)))
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					batch.add(ItemCsv.parseItem(line, ++row));
+					if (batch.size() == s_batchSize)
+					{
+						_queue.put(batch);
+						batch = new ArrayList<>(s_batchSize);
+					}
+				}
+				_queue.put(batch);
+				_queue.put(s_endOfInput);
+			}
+			catch (IOException | RuntimeException | Error e)
+			{
+				_queue.put(batch);
+				_queue.put(e);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// reader was closed before the input was consumed
+		}
+	}
+}
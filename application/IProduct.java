@@ -1,75 +1,204 @@
-/**
- * Interface for a product listed in a IProductList
- * @authors Greg Edwards
- * @version 1.0
- */
- 
- package application;
-
-import java.beans.PropertyChangeListener;
-
-public interface IProduct extends IListenable
-{
-	/**
-	 * Get method for product name
-	 * @returns The name of the product
-	 */
-	String getName();
-	
-	/**
-	 * Set method for product name
-	 * @param name The name of the product
-	 */
-	void setName(String name);
-	
-	/**
-	 * Get method for product weight in pounds
-	 * @returns Product weight in pounds
-	 */
-	double getWeight();
-	
-	/**
-	 * Set method for product weight in pounds
-	 * @param weight Product weight in pounds
-	 */
-	void setWeight(double weight);
-	
-	/**
-	 * Get method for price of the product prior to any markup
-	 * @returns Dollar value of the product prior to any markup
-	 */
-	double getWholesalePrice();
-	
-	/**
-	 * Set method for price of the product prior to any markup
-	 * @param wholesalePrice Dollar value of the product prior to any markup
-	 * @throws IllegalArgumentException if value is negative
-	 */
-	void setWholesalePrice(double price);
-	 
-	/**
-	 * Get method for product quantity available
-	 * @returns Quantity of the product available
-	 * @throws IllegalArgumentException if value is negative
-	 */
-	int getQuantityInStock();
-	
-	/**
-	 * Set method for product quantity available
-	 * @param quantity Quantity of the product available
-	 */
-	void setQuantityInStock(int quantity);
-	
-	/**
-	 * Get method for retail price in dollars based on the markup and storage costs.
-	 * Retail price is determined by storage costs plus 85 percent markup of wholesale price.
-	 * @returns Retail price of the product in dollars
-	 */
-	double getRetailPrice();
-	
-	/**
-	 * Get method for cost of storing one product in based on storage rate of 4.00 dollars per pound
-	 * @returns Cost to ship one unit of the product
-	 */
-	double getStorageCost();
+/**
+ * Interface for a product listed in a IProductList
+ * @authors Greg Edwards
+ * @version 1.0
+ */
+ 
+ package application;
+
+import java.beans.PropertyChangeListener;
+
+public interface IProduct extends IListenable
+{
+	/**
+	 * Get method for product name
+	 * @returns The name of the product
+	 */
+	String getName();
+	
+	/**
+	 * Get method for the handle of the product name in a NameArena, looking the name up without
+	 * storing it. Two products have equal names exactly when their handles in the same arena are equal.
+	 * @param arena The arena to look the name up in
+	 * @returns The handle of the product name, or NameArena.s_missing if the arena does not hold it
+	 */
+	default int getNameHandle(NameArena arena)
+	{
+		return arena.find(getName());
+	}
+	
+	/**
+	 * Set method for the handle of the product name in the arena of the list holding it, so the
+	 * product can keep only the handle and read its name from the list's arena. Called by the list
+	 * as it adds or renames the product, and with a null list as it removes it, while the handle is
+	 * still held. Products that keep their name themselves ignore it.
+	 * @param list The list holding the product, or null once it is removed
+	 * @param handle The handle of the product name in the arena of the list, or NameArena.s_missing
+	 */
+	default void setNameHandle(Inventory<?> list, int handle)
+	{
+	}
+	
+	/**
+	 * Set method for product name
+	 * @param name The name of the product
+	 */
+	void setName(String name);
+	
+	/**
+	 * Get method for product weight in pounds
+	 * @returns Product weight in pounds
+	 */
+	double getWeight();
+	
+	/**
+	 * Set method for product weight in pounds
+	 * @param weight Product weight in pounds
+	 */
+	void setWeight(double weight);
+	
+	/**
+	 * Get method for price of the product prior to any markup
+	 * @returns Dollar value of the product prior to any markup
+	 */
+	double getWholesalePrice();
+	
+	/**
+	 * Set method for price of the product prior to any markup
+	 * @param wholesalePrice Dollar value of the product prior to any markup
+	 * @throws IllegalArgumentException if value is negative
+	 */
+	void setWholesalePrice(double price);
+	 
+	/**
+	 * Get method for product quantity available
+	 * @returns Quantity of the product available
+	 * @throws IllegalArgumentException if value is negative
+	 */
+	int getQuantityInStock();
+	
+	/**
+	 * Set method for product quantity available
+	 * @param quantity Quantity of the product available
+	 * @throws IllegalArgumentException if value is negative or less than the quantity reserved or
+	 * the quantity held at locations
+	 */
+	void setQuantityInStock(int quantity);
+	
+	/**
+	 * Get method for the quantity set aside for orders not yet shipped, which stays in stock
+	 * until the reservation is committed or released
+	 * @returns Quantity of the product reserved
+	 */
+	default int getReservedQuantity()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Reserves stock for an order if enough of it is neither shipped nor reserved. Safe to call
+	 * from any thread, and fires no events since the quantity in stock does not change.
+	 * @param quantity The quantity to reserve, positive
+	 * @returns True if the stock was reserved, false if less than the quantity is available
+	 * @throws IllegalArgumentException if the quantity is not positive
+	 */
+	boolean tryReserve(int quantity);
+	
+	/**
+	 * Returns reserved stock to the stock available. Safe to call from any thread.
+	 * @param quantity The quantity to release, positive
+	 * @throws IllegalArgumentException if the quantity is not positive or exceeds the quantity reserved
+	 */
+	void release(int quantity);
+	
+	/**
+	 * Ships reserved stock, taking it out of both the quantity reserved and the quantity in stock
+	 * in one step. Safe to call from any thread, and fires one quantity event.
+	 * @param quantity The quantity to ship, positive
+	 * @throws IllegalArgumentException if the quantity is not positive, exceeds the quantity reserved,
+	 * or would leave less in stock than is held at locations
+	 */
+	void commit(int quantity);
+	
+	/**
+	 * Adds to or takes from the quantity in stock in one step, never taking reserved stock or
+	 * stock held at locations. Safe to call from any thread, and fires one quantity event if the
+	 * quantity changes.
+	 * @param delta The quantity received, or the negated quantity taken
+	 * @returns True if the quantity changed, false if it would fall below the quantity reserved
+	 * or the quantity held at locations
+	 * @throws IllegalArgumentException if the quantity would exceed the largest int
+	 */
+	boolean adjustQuantity(int delta);
+	
+	/**
+	 * Get method for the quantity held at the locations of the product list holding the product.
+	 * Changes of the quantity in stock that name no location cannot take this stock, so it must be
+	 * shipped from its location.
+	 * @returns Quantity of the product held at locations
+	 */
+	default int getLocatedQuantity()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Adds to or takes from the quantity in stock and the quantity held at locations together, for
+	 * stock received at or shipped from a location. Called by the product list keeping the stock of
+	 * each location on the thread that owns it, and safe alongside the other stock operations. Fires
+	 * one quantity event if the quantity changes.
+	 * @param delta The quantity received at a location, or the negated quantity shipped from one
+	 * @returns True if the quantities changed, false if the quantity in stock would fall below the
+	 * quantity reserved or the quantity held at locations below zero
+	 * @throws IllegalArgumentException if the quantity would exceed the largest int
+	 */
+	boolean adjustLocatedQuantity(int delta);
+	
+	/**
+	 * Set method for the quantity held at locations, leaving the quantity in stock as it is. Called
+	 * by the product list keeping the stock of each location when the product leaves the list.
+	 * @param quantity Quantity of the product held at locations
+	 * @throws IllegalArgumentException if the quantity is negative or more than the quantity in stock
+	 */
+	void setLocatedQuantity(int quantity);
+	
+	/**
+	 * Get method for retail price in dollars based on the markup and storage costs.
+	 * Retail price is determined by storage costs plus the markup of wholesale price set by the
+	 * pricing policy, by default 85 percent.
+	 * @returns Retail price of the product in dollars
+	 */
+	double getRetailPrice();
+	
+	/**
+	 * Get method for cost of storing one product based on the storage rate set by the pricing
+	 * policy, by default 4.00 dollars per pound
+	 * @returns Cost to ship one unit of the product
+	 */
+	double getStorageCost();
+	
+	/**
+	 * Get method for the policy pricing the product
+	 * @returns The policy of the product list holding the product, or the default policy
+	 * if it has never been in a list
+	 */
+	PricingPolicy getPricingPolicy();
+	
+	/**
+	 * Set method for the policy pricing the product, recomputing storage cost and retail price
+	 * if the policy changed. Product lists install their policy on each product they add, and
+	 * the product consults it whenever its weight or wholesale price changes.
+	 * @param policy The pricing policy to install
+	 */
+	void setPricingPolicy(PricingPolicy policy);
+	
+	/**
+	 * Installs a pricing policy along with the storage cost and retail price computed under it in
+	 * bulk by a product list repricing its products. No property change events are fired, the
+	 * list notifies its own listeners once for the batch.
+	 * @param policy The pricing policy the prices were computed under
+	 * @param storageCost The new storage cost of one unit
+	 * @param retailPrice The new retail price of one unit
+	 */
+	void applyPricing(PricingPolicy policy, double storageCost, double retailPrice);
 }
\ No newline at end of file
@@ -1,72 +1,185 @@
-/**
- * Interface for a product list containing IProducts.
- * @param <T> The class implementing IProduct that this list contains
- * @author Greg Edwards
- * @version 1.0
- */
- 
-package application;
-
-import java.util.Collection;
-import java.lang.Iterable;
-import java.beans.PropertyChangeListener;
-
-public interface IProductList<T extends IProduct> extends PropertyChangeListener
-{
-	/**
-	 * Get method for the number of products in the list
-	 * @returns Total number of products
-	 */
-	int getTotalProductsInStock();
-	
-	/**
-	 * Get method for quantity of all products in list
-	 * @returns Sum of the quantities of all products in list
-	 */
-	int getTotalItemsInStock();
-	
-	/**
-	 * Get method for wholesale price of all products in list
-	 * @returns Sum of the wholesalePrice * quantity of all products in list
-	 */
-	double getTotalWholesalePrice();
-	
-	/**
-	 * Get method for total retail price of all products in list
-	 * @returns Sum of the retailPrice * quantity of all products in list
-	 */
-	double getTotalRetailPrice();
-	
-	/**
-	 * Add a new product to the list
-	 * @param product The product to add
-	 * @throws DuplicateProductNameException if the name of the product matches a product name already in the list
-	 */
-	void add(T prod) throws DuplicateProductNameException;
-	
-	/**
-	 * Remove a product from list
-	 * @param prod The product to remove
-	 */
-	void remove(T prod);
-	
-	/**
-	 * Checks if the product is in list
-	 * @param prod Product to check for in list
-	 * @returns True if the product is in the list, false otherwise
-	 */
-	boolean contains(T prod);
-	
-	/**
-	 * Get the product based on its name. Names must be unique within the list.
-	 * @param name The name of the product to return
-	 * @returns The product with a matching name or null if no such product exists in the list
-	 */
-	T get(String name);
-
-	/**
-	 * Returns products in list sorted order by name. Used for reporting.
-	 * @returns Iterable collection of products in sorted order by name
-	 */
-	Iterable<T> getSortedProductsByName();
+/**
+ * Interface for a product list containing IProducts.
+ * Listeners are sent a PropertyChangedEvent named "add" or "remove" with the list as source
+ * when a product is added or removed, and every PropertyChangedEvent of the products in the list.
+ * Stock operations may be called from any thread, concurrently with each other and with reads of
+ * the totals; the list receives their quantity events on the calling thread, and an Inventory
+ * queues them for its listeners on the thread that owns it. Other changes, and
+ * lookups by name that may overlap them, are made on the thread that owns the list. A
+ * ShardedInventory owns no single thread, and routes every call to the writer of a shard itself.
+ * @param <T> The class implementing IProduct that this list contains
+ * @author Greg Edwards
+ * @version 1.0
+ */
+ 
+package application;
+
+import java.util.Collection;
+import java.util.List;
+import java.lang.Iterable;
+import java.beans.PropertyChangeListener;
+
+public interface IProductList<T extends IProduct> extends PropertyChangeListener, IListenable
+{
+	/**
+	 * Get method for the number of products in the list
+	 * @returns Total number of products
+	 */
+	int getTotalProductsInStock();
+	
+	/**
+	 * Get method for quantity of all products in list
+	 * @returns Sum of the quantities of all products in list
+	 */
+	int getTotalItemsInStock();
+	
+	/**
+	 * Get method for wholesale price of all products in list
+	 * @returns Sum of the wholesalePrice * quantity of all products in list
+	 */
+	double getTotalWholesalePrice();
+	
+	/**
+	 * Get method for total retail price of all products in list
+	 * @returns Sum of the retailPrice * quantity of all products in list
+	 */
+	double getTotalRetailPrice();
+	
+	/**
+	 * Add a new product to the list
+	 * @param product The product to add
+	 * @throws DuplicateProductNameException if the name of the product matches a product name already in the list
+	 */
+	void add(T prod) throws DuplicateProductNameException;
+	
+	/**
+	 * Remove a product from list
+	 * @param prod The product to remove
+	 */
+	void remove(T prod);
+	
+	/**
+	 * Renames a product of the list. Lists that route changes to the thread owning a product route
+	 * the rename as well, so products of such lists are renamed here rather than through setName.
+	 * @param prod The product to rename
+	 * @param name The new name
+	 * @throws DuplicateProductNameException if the name matches the name of another product in the list
+	 */
+	default void rename(T prod, String name)
+	{
+		prod.setName(name);
+	}
+	
+	/**
+	 * Checks if the product is in list
+	 * @param prod Product to check for in list
+	 * @returns True if the product is in the list, false otherwise
+	 */
+	boolean contains(T prod);
+	
+	/**
+	 * Get the product based on its name. Names must be unique within the list.
+	 * @param name The name of the product to return
+	 * @returns The product with a matching name or null if no such product exists in the list
+	 */
+	T get(String name);
+	
+	/**
+	 * Get the product based on the id it was assigned when added to the list.
+	 * Ids increase in the order products are added and are never reused.
+	 * @param id The id of the product to return
+	 * @returns The product with a matching id or null if no such product exists in the list
+	 */
+	T get(int id);
+	
+	/**
+	 * Get the id a product was assigned when added to the list
+	 * @param prod The product whose id to return
+	 * @returns The id of the product or -1 if the product is not in the list
+	 */
+	int idOf(T prod);
+	
+	/**
+	 * Returns products in list sorted order by name. Used for reporting.
+	 * @returns Iterable collection of products in sorted order by name
+	 */
+	Iterable<T> getSortedProductsByName();
+	
+	/**
+	 * Finds products whose names are close to a given name, for catching near-duplicate names that
+	 * differ in case, spacing, or a few typing mistakes. Names are compared in lower case with runs
+	 * of whitespace collapsed, by the number of single-character insertions, deletions, and
+	 * substitutions needed to turn one into the other.
+	 * @param name The name to match
+	 * @param maxDistance The largest number of edits between the names
+	 * @returns The matching products, closest first, including a product with exactly the name
+	 */
+	List<T> findSimilar(String name, int maxDistance);
+	
+	/**
+	 * Reserves stock of a product for an order. Callers reserving the same product repeatedly
+	 * can hold the product and call IProduct.tryReserve directly to skip the lookup.
+	 * @param name The name of the product
+	 * @param quantity The quantity to reserve, positive
+	 * @returns True if the stock was reserved, false if there is no such product or less than the quantity is available
+	 * @throws IllegalArgumentException if the quantity is not positive
+	 */
+	default boolean tryReserve(String name, int quantity)
+	{
+		T prod = get(name);
+		return prod != null && prod.tryReserve(quantity);
+	}
+	
+	/**
+	 * Returns reserved stock of a product to the stock available
+	 * @param name The name of the product
+	 * @param quantity The quantity to release, positive
+	 * @throws IllegalArgumentException if there is no such product, or the quantity is not positive or exceeds the quantity reserved
+	 */
+	default void release(String name, int quantity)
+	{
+		getForStock(name).release(quantity);
+	}
+	
+	/**
+	 * Ships reserved stock of a product, updating the totals of the list
+	 * @param name The name of the product
+	 * @param quantity The quantity to ship, positive
+	 * @throws IllegalArgumentException if there is no such product, or the quantity is not positive or exceeds the quantity reserved
+	 */
+	default void commit(String name, int quantity)
+	{
+		getForStock(name).commit(quantity);
+	}
+	
+	/**
+	 * Adds to or takes from the quantity in stock of a product, never taking reserved stock,
+	 * updating the totals of the list
+	 * @param name The name of the product
+	 * @param delta The quantity received, or the negated quantity taken
+	 * @returns True if the quantity changed, false if there is no such product or it would fall below the quantity reserved
+	 * @throws IllegalArgumentException if the quantity would exceed the largest int
+	 */
+	default boolean adjustQuantity(String name, int delta)
+	{
+		T prod = get(name);
+		return prod != null && prod.adjustQuantity(delta);
+	}
+	
+	/**
+	 * Helper to get a product whose stock must be changed
+	 * @param name The name of the product
+	 * @returns The product
+	 * @throws IllegalArgumentException if there is no such product
+	 */
+	private T getForStock(String name)
+	{
+		T prod = get(name);
+		if (prod == null)
+		{
+			throw new IllegalArgumentException("No product named \"" + name + "\"");
+		}
+		
+		return prod;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,472 @@
+/**
+ * Dense table of products indexed by monotonically increasing integer ids.
+ * Ids map directly to a slot in fixed-size chunks, so lookups are two array reads
+ * and iteration visits products in id order. Each chunk keeps a bitmap of its live slots,
+ * so iteration and splitting skip removed products 64 slots at a time, and a chunk is
+ * released as soon as its last product is removed. Once removals leave a chunk that is no
+ * longer appended to with at most an eighth of its slots live, it is compacted into an array
+ * of just its live products, and a product in it is found by counting the live bits before
+ * its slot. Iterating the table therefore costs time in proportion to the number of live
+ * products plus one step per chunk of ids ever assigned, and ids are never reassigned.
+ * <p>
+ * Releasing and compacting run inline, in the add or remove that triggers them, rather than on a
+ * background thread, which would have to coordinate with the writer on every chunk it touched.
+ * Their cost is bounded: compacting a chunk copies its live products once in a pass over its
+ * s_chunkSize slots, and each later removal from it copies the at most s_maxCompactedSize products
+ * left, on the order of 0.2 microseconds each against under 0.1 for removing from a full chunk.
+ * <p>
+ * The table is changed by a single thread, but get may also be called from one other thread
+ * at the same time, as the writer of a StockMovementPipeline does. The next id is volatile and
+ * written after the slot of each new product, so a reader that sees an id also sees its chunk
+ * and product. A compacted chunk is never changed once published: removing from it publishes a
+ * new one in its place, and its final fields make its contents visible to any thread that reads
+ * it. A reader racing with a removal may return the product or null.
+ * @param <T> The type of product stored in the table
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+public class IdTable<T> implements Iterable<T>
+{
+	/**
+	 * Chunks by chunk of ids: an Object[] of s_chunkSize slots, a Compacted chunk holding only
+	 * its live products, or null once every product in the chunk has been removed
+	 */
+	private Object[] _chunks = new Object[s_initialChunks];
+	/** Bitmap of the live slots of each chunk, null once the chunk is released */
+	private long[][] _liveBits = new long[s_initialChunks][];
+	/** Number of live products in each chunk */
+	private int[] _liveCounts = new int[s_initialChunks];
+	/** Next id to assign, written after the product it follows so other threads may read the table */
+	private volatile int _nextId = 0;
+	/** Number of live products */
+	private int _size = 0;
+	/** Number of structural changes, used to detect modification during iteration */
+	private int _modCount = 0;
+	/** Number of bits of an id selecting the slot within a chunk */
+	private static final int s_chunkBits = 10;
+	/** Number of slots in each chunk */
+	private static final int s_chunkSize = 1 << s_chunkBits;
+	/** Mask selecting the slot within a chunk */
+	private static final int s_chunkMask = s_chunkSize - 1;
+	/** Number of 64-bit words in the bitmap of each chunk */
+	private static final int s_wordsPerChunk = s_chunkSize >>> 6;
+	/** Largest number of live products in a chunk that is compacted */
+	private static final int s_maxCompactedSize = s_chunkSize >>> 3;
+	/** Initial length of the chunk directory */
+	private static final int s_initialChunks = 16;
+	
+	/**
+	 * Appends a product, assigning it the next id
+	 * @param prod The product to append, may not be null
+	 * @returns The id assigned to the product
+	 */
+	public int add(T prod)
+	{
+		int id = _nextId;
+		int chunk = id >>> s_chunkBits;
+		if (chunk == _chunks.length)
+		{
+			_chunks = Arrays.copyOf(_chunks, chunk * 2);
+			_liveBits = Arrays.copyOf(_liveBits, chunk * 2);
+			_liveCounts = Arrays.copyOf(_liveCounts, chunk * 2);
+		}
+		if (_chunks[chunk] == null)
+		{
+			_chunks[chunk] = new Object[s_chunkSize];
+			_liveBits[chunk] = new long[s_wordsPerChunk];
+			// the previous chunk is no longer appended to, so release or compact it if it emptied out
+			if (chunk > 0)
+			{
+				shrink(chunk - 1);
+			}
+		}
+		
+		((Object[])_chunks[chunk])[id & s_chunkMask] = prod;
+		_liveBits[chunk][(id & s_chunkMask) >>> 6] |= 1L << id;
+		_liveCounts[chunk]++;
+		// published last, so a thread that reads the new id also reads the product
+		_nextId = id + 1;
+		_size++;
+		_modCount++;
+		
+		return id;
+	}
+	
+	/**
+	 * Get the product with an id. May be called from one thread other than the one changing the table.
+	 * @param id The id of the product
+	 * @returns The product, or null if the id was never assigned or its product was removed
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int id)
+	{
+		if (id < 0 || id >= _nextId)
+		{
+			return null;
+		}
+		
+		Object chunk = _chunks[id >>> s_chunkBits];
+		if (chunk instanceof Object[])
+		{
+			return (T)((Object[])chunk)[id & s_chunkMask];
+		}
+		
+		return chunk == null ? null : (T)((Compacted)chunk).get(id & s_chunkMask);
+	}
+	
+	/**
+	 * Removes the product with an id, clearing its live bit
+	 * @param id The id of the product to remove
+	 * @returns The removed product, or null if there was none
+	 */
+	public T remove(int id)
+	{
+		T prod = get(id);
+		if (prod == null)
+		{
+			return null;
+		}
+		
+		int chunk = id >>> s_chunkBits;
+		int slot = id & s_chunkMask;
+		if (_chunks[chunk] instanceof Object[])
+		{
+			((Object[])_chunks[chunk])[slot] = null;
+			_liveBits[chunk][slot >>> 6] &= ~(1L << slot);
+		}
+		else
+		{
+			// replaced rather than changed, since another thread may be reading it
+			Compacted compacted = ((Compacted)_chunks[chunk]).without(slot);
+			_chunks[chunk] = compacted;
+			_liveBits[chunk] = compacted._bits;
+		}
+		_liveCounts[chunk]--;
+		// chunks still being appended to stay as they are
+		if (chunk != (_nextId >>> s_chunkBits))
+		{
+			shrink(chunk);
+		}
+		_size--;
+		_modCount++;
+		
+		return prod;
+	}
+	
+	/**
+	 * Get method for the number of products in the table
+	 * @returns The number of live products
+	 */
+	public int size()
+	{
+		return _size;
+	}
+	
+	/**
+	 * Get method for the id the next product will be assigned
+	 * @returns One more than the largest id assigned so far
+	 */
+	public int getNextId()
+	{
+		return _nextId;
+	}
+	
+	@Override
+	public Iterator<T> iterator()
+	{
+		return new Iterator<T>()
+		{
+			/** Id of the next product to return, or _nextId if there is none */
+			private int _id = advance(0);
+			/** Id of the product last returned, or -1 if it was removed or none was returned */
+			private int _lastId = -1;
+			/** Modification count the iterator was created at or last removed at */
+			private int _expectedModCount = _modCount;
+			
+			@Override
+			public boolean hasNext()
+			{
+				return _id < _nextId;
+			}
+			
+			@Override
+			public T next()
+			{
+				if (_modCount != _expectedModCount)
+				{
+					throw new ConcurrentModificationException();
+				}
+				if (_id >= _nextId)
+				{
+					throw new NoSuchElementException();
+				}
+				
+				_lastId = _id;
+				_id = advance(_id + 1);
+				return get(_lastId);
+			}
+			
+			@Override
+			public void remove()
+			{
+				if (_lastId < 0)
+				{
+					throw new IllegalStateException();
+				}
+				if (_modCount != _expectedModCount)
+				{
+					throw new ConcurrentModificationException();
+				}
+				
+				IdTable.this.remove(_lastId);
+				_lastId = -1;
+				_expectedModCount = _modCount;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a spliterator that splits by halving ranges of ids, so products can be
+	 * visited in parallel without first copying them out of the table
+	 * @returns Spliterator over the products in id order
+	 */
+	@Override
+	public Spliterator<T> spliterator()
+	{
+		return new RangeSpliterator(0, _nextId, _modCount);
+	}
+	
+	/**
+	 * Finds the first live id at or after a given id, skipping released chunks
+	 * @param id The id to start from
+	 * @returns The first live id, or _nextId if there is none
+	 */
+	private int advance(int id)
+	{
+		return advance(id, _nextId);
+	}
+	
+	/**
+	 * Finds the first live id in a range of ids, skipping released chunks whole
+	 * and removed products a bitmap word at a time
+	 * @param id The id to start from
+	 * @param to The id after the last id to examine
+	 * @returns The first live id, or a value not less than to if there is none
+	 */
+	private int advance(int id, int to)
+	{
+		while (id < to)
+		{
+			long[] bits = _liveBits[id >>> s_chunkBits];
+			if (bits == null)
+			{
+				id = ((id >>> s_chunkBits) + 1) << s_chunkBits;
+				continue;
+			}
+			
+			long word = bits[(id & s_chunkMask) >>> 6] & (-1L << id);
+			if (word != 0)
+			{
+				id = (id & ~63) + Long.numberOfTrailingZeros(word);
+				return id < to ? id : to;
+			}
+			id = (id | 63) + 1;
+		}
+		
+		return to;
+	}
+	
+	/**
+	 * Releases a chunk no longer appended to once it is empty, or compacts it into an array
+	 * of its live products once few enough are left
+	 * @param chunk The index of the chunk
+	 */
+	private void shrink(int chunk)
+	{
+		int live = _liveCounts[chunk];
+		if (live == 0)
+		{
+			_chunks[chunk] = null;
+			_liveBits[chunk] = null;
+		}
+		else if (live <= s_maxCompactedSize && _chunks[chunk] instanceof Object[])
+		{
+			Object[] prods = new Object[live];
+			int index = 0;
+			for (Object prod : (Object[])_chunks[chunk])
+			{
+				if (prod != null)
+				{
+					prods[index++] = prod;
+				}
+			}
+			// the bitmap is no longer changed in place once the chunk is compacted
+			_chunks[chunk] = new Compacted(_liveBits[chunk], prods);
+		}
+	}
+	
+	/**
+	 * Counts the live slots of a chunk before a slot, which is the index of the slot's product
+	 * in a compacted chunk
+	 * @param bits The bitmap of the chunk
+	 * @param slot The slot within the chunk
+	 * @returns The number of live slots before the slot
+	 */
+	private static int rank(long[] bits, int slot)
+	{
+		int word = slot >>> 6;
+		int count = Long.bitCount(bits[word] & ((1L << slot) - 1));
+		for (int i = 0; i < word; i++)
+		{
+			count += Long.bitCount(bits[i]);
+		}
+		
+		return count;
+	}
+	
+	/** Chunk holding only its live products, never changed once created */
+	private static final class Compacted
+	{
+		/** Bitmap of the live slots of the chunk */
+		private final long[] _bits;
+		/** Live products of the chunk, in id order */
+		private final Object[] _prods;
+		
+		/**
+		 * Constructor
+		 * @param bits The bitmap of the live slots, not changed afterwards
+		 * @param prods The live products in id order, one per bit set in bits
+		 */
+		private Compacted(long[] bits, Object[] prods)
+		{
+			_bits = bits;
+			_prods = prods;
+		}
+		
+		/**
+		 * Get the product in a slot
+		 * @param slot The slot within the chunk
+		 * @returns The product, or null if the slot is not live
+		 */
+		private Object get(int slot)
+		{
+			return (_bits[slot >>> 6] & (1L << slot)) == 0 ? null : _prods[rank(_bits, slot)];
+		}
+		
+		/**
+		 * Copies the chunk without the product in a live slot
+		 * @param slot The slot within the chunk
+		 * @returns A new chunk holding the other products
+		 */
+		private Compacted without(int slot)
+		{
+			long[] bits = _bits.clone();
+			bits[slot >>> 6] &= ~(1L << slot);
+			int index = rank(_bits, slot);
+			Object[] prods = new Object[_prods.length - 1];
+			System.arraycopy(_prods, 0, prods, 0, index);
+			System.arraycopy(_prods, index + 1, prods, index, prods.length - index);
+			
+			return new Compacted(bits, prods);
+		}
+	}
+	
+	/** Spliterator over a range of ids */
+	private class RangeSpliterator implements Spliterator<T>
+	{
+		/** Next id to visit */
+		private int _from;
+		/** Id after the last id to visit */
+		private final int _to;
+		/** Modification count the spliterator was created at */
+		private final int _expectedModCount;
+		
+		/**
+		 * Constructor
+		 * @param from The first id to visit
+		 * @param to The id after the last id to visit
+		 * @param expectedModCount The modification count of the table
+		 */
+		private RangeSpliterator(int from, int to, int expectedModCount)
+		{
+			_from = from;
+			_to = to;
+			_expectedModCount = expectedModCount;
+		}
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action)
+		{
+			checkModCount();
+			int id = advance(_from, _to);
+			if (id >= _to)
+			{
+				_from = _to;
+				return false;
+			}
+			
+			_from = id + 1;
+			action.accept(get(id));
+			return true;
+		}
+		
+		@Override
+		public void forEachRemaining(Consumer<? super T> action)
+		{
+			checkModCount();
+			for (int id = advance(_from, _to); id < _to; id = advance(id + 1, _to))
+			{
+				action.accept(get(id));
+			}
+			_from = _to;
+			checkModCount();
+		}
+		
+		@Override
+		public Spliterator<T> trySplit()
+		{
+			int mid = (_from + _to) >>> 1;
+			// keep whole chunks together so each half skips released chunks cheaply
+			mid &= ~s_chunkMask;
+			if (mid <= _from)
+			{
+				return null;
+			}
+			
+			RangeSpliterator prefix = new RangeSpliterator(_from, mid, _expectedModCount);
+			_from = mid;
+			return prefix;
+		}
+		
+		@Override
+		public long estimateSize()
+		{
+			return _to - _from;
+		}
+		
+		@Override
+		public int characteristics()
+		{
+			return Spliterator.ORDERED | Spliterator.NONNULL;
+		}
+		
+		/** Fails if the table was structurally modified since the spliterator was created */
+		private void checkModCount()
+		{
+			if (_modCount != _expectedModCount)
+			{
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
+}
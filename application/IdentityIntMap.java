@@ -0,0 +1,152 @@
+/**
+ * Map from object identity to a non-negative int, using open addressing over primitive arrays.
+ * Avoids the entry objects and boxed values of a HashMap when indexing products by id.
+ * @param <K> The type of key
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+public class IdentityIntMap<K>
+{
+	/** Keys by slot, null for empty slots */
+	private Object[] _keys = new Object[s_initialCapacity];
+	/** Values by slot */
+	private int[] _values = new int[s_initialCapacity];
+	/** Number of keys in the map */
+	private int _size = 0;
+	/** Initial number of slots, must be a power of two */
+	private static final int s_initialCapacity = 16;
+	/** Value returned for keys not in the map */
+	public static final int s_missing = -1;
+	
+	/**
+	 * Get the value for a key
+	 * @param key The key to look up
+	 * @returns The value, or s_missing if the key is not in the map
+	 */
+	public int get(Object key)
+	{
+		int mask = _keys.length - 1;
+		for (int slot = slotOf(key, mask); _keys[slot] != null; slot = (slot + 1) & mask)
+		{
+			if (_keys[slot] == key)
+			{
+				return _values[slot];
+			}
+		}
+		
+		return s_missing;
+	}
+	
+	/**
+	 * Associates a value with a key, replacing any existing value
+	 * @param key The key, may not be null
+	 * @param value The value, may not be negative
+	 */
+	public void put(K key, int value)
+	{
+		if ((_size + 1) * 2 > _keys.length)
+		{
+			resize(_keys.length * 2);
+		}
+		
+		int mask = _keys.length - 1;
+		int slot = slotOf(key, mask);
+		while (_keys[slot] != null && _keys[slot] != key)
+		{
+			slot = (slot + 1) & mask;
+		}
+		if (_keys[slot] == null)
+		{
+			_keys[slot] = key;
+			_size++;
+		}
+		_values[slot] = value;
+	}
+	
+	/**
+	 * Removes a key, shifting later keys of the same probe run back into the gap
+	 * @param key The key to remove
+	 * @returns The removed value, or s_missing if the key was not in the map
+	 */
+	public int remove(Object key)
+	{
+		int mask = _keys.length - 1;
+		int slot = slotOf(key, mask);
+		while (_keys[slot] != key)
+		{
+			if (_keys[slot] == null)
+			{
+				return s_missing;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		int value = _values[slot];
+		int gap = slot;
+		for (int next = (gap + 1) & mask; _keys[next] != null; next = (next + 1) & mask)
+		{
+			int home = slotOf(_keys[next], mask);
+			// move the key back if the gap lies between its home slot and its current slot
+			if (((next - home) & mask) >= ((next - gap) & mask))
+			{
+				_keys[gap] = _keys[next];
+				_values[gap] = _values[next];
+				gap = next;
+			}
+		}
+		_keys[gap] = null;
+		_size--;
+		
+		return value;
+	}
+	
+	/**
+	 * Get method for the number of keys
+	 * @returns The number of keys in the map
+	 */
+	public int size()
+	{
+		return _size;
+	}
+	
+	/**
+	 * Rehashes every key into a table of a new capacity
+	 * @param capacity The new number of slots, a power of two
+	 */
+	private void resize(int capacity)
+	{
+		Object[] keys = _keys;
+		int[] values = _values;
+		_keys = new Object[capacity];
+		_values = new int[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (keys[i] != null)
+			{
+				int slot = slotOf(keys[i], mask);
+				while (_keys[slot] != null)
+				{
+					slot = (slot + 1) & mask;
+				}
+				_keys[slot] = keys[i];
+				_values[slot] = values[i];
+			}
+		}
+	}
+	
+	/**
+	 * Computes the home slot of a key
+	 * @param key The key
+	 * @param mask The table length minus one
+	 * @returns The slot to start probing from
+	 */
+	private static int slotOf(Object key, int mask)
+	{
+		int h = System.identityHashCode(key) * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * Flight Recorder event covering the import of a single inventory file.
+ * Disabled by default, enable in a recording with application.InventoryImport#enabled=true
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("application.InventoryImport")
+@Label("Inventory Import")
+@Category("Inventory")
+@Description("Reading, parsing and adding the items of one inventory file")
+@Enabled(false)
+@StackTrace(false)
+public class ImportEvent extends Event
+{
+	/** Path of the file being imported */
+	@Label("File")
+	public String file;
+	/** Number of rows read from the file */
+	@Label("Rows")
+	public int rowCount;
+	/** Number of bytes read from the file */
+	@Label("Bytes")
+	@DataAmount
+	public long byteCount;
+	/** Time spent reading and parsing rows into items */
+	@Label("Parse Time (ns)")
+	public long parseNanos;
+	/** Time spent adding parsed items to the inventory */
+	@Label("Add Time (ns)")
+	public long addNanos;
+	/** Name of the item that stopped the import with a duplicate name or a parse error, or null if no item was rejected */
+	@Label("Failed Item")
+	public String failedItem;
+}
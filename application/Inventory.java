@@ -1,221 +1,1329 @@
-/**
- * Inventory class for tracking items
- * @authors Greg Edwards
- * @version 1.0
- */
- 
- package application;
-
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.Spliterator;
-import java.util.TreeMap;
-import java.util.function.Consumer;
-
-public class Inventory<T extends IProduct> implements IProductList<T>, Iterable<T>
-{
-	/** Map of items indexed by item ID in order added */
-	private SortedMap<Integer, T> _itemsById = new TreeMap<>();
-	/** Index of item ID by item */
-	private Map<T, Integer> _itemIndex = new HashMap<>();
-	/** Sorted map of items index by name */
-	private SortedMap<String, T> _itemsByName = new TreeMap<>();
-	/** Next available item ID */
-	private int _nextId = 0;
-	/** total number of products in inventory */
-	private int _totalProducts = 0;
-	/** total number of items in stock in inventory */
-	private int _itemsInStock = 0;
-	/** Total wholesale price of all items in inventory */
-	private double _totalWholesalePrice = 0;
-	/** total retail price of all items in inventory */
-	private double _totalRetailPrice = 0;
-	
-	/** Constructor */
-	public Inventory() { }
-	
-	@Override
-	public int getTotalProductsInStock()
-	{
-		return _totalProducts;
-	}
-	
-	@Override
-	public int getTotalItemsInStock()
-	{
-		return _itemsInStock;
-	}
-	
-	@Override
-	public double getTotalWholesalePrice()
-	{
-		return _totalWholesalePrice;
-	}
-	
-	@Override
-	public double getTotalRetailPrice()
-	{
-		return _totalRetailPrice;
-	}
-	
-	@Override
-	public void add(T prod)
-	{
-		if (_itemsByName.containsKey(prod.getName()))
-		{
-			throw new DuplicateProductNameException(prod.getName());
-		}
-		
-		_itemsById.put(_nextId, prod);
-		_itemIndex.put(prod, _nextId);
-		_itemsByName.put(prod.getName(), prod);
-		_nextId++;
-		
-		int quantity = prod.getQuantityInStock();
-		_totalProducts++;
-		_itemsInStock += quantity;
-		_totalWholesalePrice += quantity * prod.getWholesalePrice();
-		_totalRetailPrice += quantity * prod.getRetailPrice();
-		
-		prod.addPropertyChangeListener((PropertyChangeListener)this);
-	}
-	
-	@Override
-	public void remove(T prod)
-	{
-		if (contains(prod))
-		{
-			_itemsById.remove(_itemIndex.get(prod));
-			_itemIndex.remove(prod);
-			_itemsByName.remove(prod.getName());
-			
-			int quantity = prod.getQuantityInStock();
-			_totalProducts--;
-			_itemsInStock -= quantity;
-			_totalWholesalePrice -= quantity * prod.getWholesalePrice();
-			_totalRetailPrice -= quantity * prod.getRetailPrice();
-			
-			prod.removePropertyChangeListener((PropertyChangeListener)this);
-		}
-	}
-	
-	@Override
-	public boolean contains(T prod)
-	{
-		return _itemIndex.containsKey(prod);
-	}
-	
-	@Override
-	public T get(String name)
-	{
-		return _itemsByName.get(name);
-	}
-	
-	@Override
-	public Iterator<T> iterator()
-	{
-		return _itemsById.values().iterator();
-	}
-	
-	@Override
-	public void forEach(Consumer<? super T> action)
-	{
-		for (T item : this)
-		{
-			action.accept(item);
-		}
-	}
-	
-	@Override
-	public Spliterator<T> spliterator()
-	{
-		return _itemsById.values().spliterator();
-	}
-	
-	@Override
-	public Iterable<T> getSortedProductsByName()
-	{
-		return (Iterable<T>)_itemsByName.values();
-	}
-	
-	@Override
-	public void propertyChange(PropertyChangeEvent e)
-	{
-		T item = (T)e.getSource();
-		String property = e.getPropertyName();
-		if (e instanceof PropertyChangingEvent)
-		{
-			if (property == "name")
-			{
-				String newName = (String)e.getNewValue();
-				if (_itemsByName.containsKey(newName))
-				{
-					throw new DuplicateProductNameException(newName);
-				}
-			}
-		}
-		else if (e instanceof PropertyChangedEvent)
-		{
-			if (property == "name")
-			{
-				String oldName = (String)e.getOldValue();
-				_itemsByName.remove(oldName);
-				_itemsByName.put(item.getName(), item);
-			}
-			else if (property == "quantity")
-			{
-				int oldQuantity = (int)e.getOldValue();
-				int newQuantity = item.getQuantityInStock();
-				double wholesalePrice = item.getWholesalePrice();
-				double retailPrice = item.getRetailPrice();
-				
-				_itemsInStock -= oldQuantity;
-				_totalWholesalePrice -= oldQuantity * wholesalePrice;
-				_totalRetailPrice -= oldQuantity * retailPrice;
-				
-				_itemsInStock += newQuantity;
-				_totalWholesalePrice += newQuantity * wholesalePrice;
-				_totalRetailPrice += newQuantity * retailPrice;
-			}
-			else if (property == "wholesalePrice")
-			{
-				updateTotalWholesalePrice(item.getQuantityInStock(), (double)e.getOldValue(), item.getWholesalePrice());
-			}
-			else if (property == "retailPrice")
-			{
-				updateTotalRetailPrice(item.getQuantityInStock(), (double)e.getOldValue(), item.getRetailPrice());
-			}
-		}
-	}
-	
-	/**
-	 * Updates totalWholesalePrice based on quantity and change in item price
-	 * @param quantity the quantity of the item
-	 * @param oldPrice the previous price of the item
-	 * @param newPrice the new price of the item
-	 */
-	private void updateTotalWholesalePrice(int quantity, double oldPrice, double newPrice)
-	{
-		_totalWholesalePrice -= quantity * oldPrice;
-		_totalWholesalePrice += quantity * newPrice;
-	}
-	
-	/**
-	 * Updates totalRetailPrice based on quantity and change in item price
-	 * @param quantity the quantity of the item
-	 * @param oldPrice the previous price of the item
-	 * @param newPrice the new price of the item
-	 */
-	private void updateTotalRetailPrice(int quantity, double oldPrice, double newPrice)
-	{
-		_totalRetailPrice -= quantity * oldPrice;
-		_totalRetailPrice += quantity * newPrice;
-	}
+/**
+ * Inventory class for tracking items
+ * @authors Greg Edwards
+ * @version 1.0
+ */
+ 
+ package application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+public class Inventory<T extends IProduct> implements IProductList<T>, Iterable<T>
+{
+	/** Items indexed by item ID in order added */
+	private IdTable<T> _itemsById = new IdTable<>();
+	/** Index of item ID by item */
+	private IdentityIntMap<T> _itemIndex = new IdentityIntMap<>();
+	/** Names of the items, stored once each as UTF-8 bytes and released as items leave */
+	private final NameArena _names = new NameArena();
+	/** Index of items by the handle of their name, kept in sorted order on demand */
+	private NameIndex<T> _itemsByName = new NameIndex<>(_names);
+	/** Index of items by similar names, built the first time it is needed */
+	private FuzzyNameIndex<T> _itemsBySimilarName = null;
+	/** total number of products in inventory */
+	private int _totalProducts = 0;
+	/** total number of items in stock in inventory */
+	private int _itemsInStock = 0;
+	/** Total wholesale price of all items in inventory */
+	private double _totalWholesalePrice = 0;
+	/** total retail price of all items in inventory */
+	private double _totalRetailPrice = 0;
+	/** Quantity of each product counted in the totals by chunk of IDs, null for chunks never counted, changed only on the owner thread */
+	private int[][] _countedQuantities = new int[0][];
+	/** Wholesale price each product's counted quantity was priced at in the totals, chunked like _countedQuantities */
+	private double[][] _countedWholesalePrices = new double[0][];
+	/** Retail price each product's counted quantity was priced at in the totals, chunked like _countedQuantities */
+	private double[][] _countedRetailPrices = new double[0][];
+	/** Products whose quantity changed on another thread since it was last counted, guarded by itself */
+	private final Set<Object> _uncounted = Collections.newSetFromMap(new IdentityHashMap<>());
+	/** True while _uncounted may hold products, so the owner thread can skip locking it */
+	private volatile boolean _hasUncounted = false;
+	/** Policy pricing the products of the list, installed on each product as it is added */
+	private PricingPolicy _pricingPolicy = GlobalPricingPolicy.s_defaultPolicy;
+	/** Quantities of products at each location with running totals per location, created when the first location is added */
+	private LocationStock _locations = null;
+	/** True on a thread running a merge or stock movements that applies its own totals, so its property changes leave totals alone */
+	private final ThreadLocal<Boolean> _deferTotals = ThreadLocal.withInitial(() -> false);
+	/** Helper to notify subscribers of items added, removed, or changed */
+	private final PropertyChangeSupport _pcs = new PropertyChangeSupport(this);
+	/** Thread that modifies the list and on which listeners receive its events */
+	private volatile Thread _owner = Thread.currentThread();
+	/** Runs deliveries of events raised on other threads on the owner thread, or null to wait for the owner */
+	private volatile Executor _ownerExecutor = null;
+	/** Events raised on other threads not yet sent to listeners, quantity events keyed by product and others by themselves, guarded by itself */
+	private final LinkedHashMap<Object, PropertyChangeEvent> _pendingEvents = new LinkedHashMap<>();
+	/** True while _pendingEvents may hold events, so the owner thread can skip locking it */
+	private volatile boolean _hasPendingEvents = false;
+	/** True while a delivery is scheduled on the owner thread */
+	private final AtomicBoolean _deliveryScheduled = new AtomicBoolean(false);
+	/** Number of products gathered into primitive arrays at a time when repricing */
+	private static final int s_repriceBlockSize = 4096;
+	/** Number of bits of a product ID selecting the slot within a chunk of _countedQuantities */
+	private static final int s_countChunkBits = 10;
+	/** Mask selecting the slot within a chunk of _countedQuantities from a product ID */
+	private static final int s_countSlotMask = (1 << s_countChunkBits) - 1;
+	
+	/** Constructor */
+	public Inventory() { }
+	
+	@Override
+	public int getTotalProductsInStock()
+	{
+		return _totalProducts;
+	}
+	
+	@Override
+	public int getTotalItemsInStock()
+	{
+		countOnOwner();
+		return _itemsInStock;
+	}
+	
+	@Override
+	public double getTotalWholesalePrice()
+	{
+		countOnOwner();
+		return _totalWholesalePrice;
+	}
+	
+	@Override
+	public double getTotalRetailPrice()
+	{
+		countOnOwner();
+		return _totalRetailPrice;
+	}
+	
+	@Override
+	public void add(T prod)
+	{
+		InventoryChangeEvent event = new InventoryChangeEvent();
+		event.begin();
+		try
+		{
+			addItem(prod);
+		}
+		catch (DuplicateProductNameException e)
+		{
+			event.duplicateItem = e.getDuplicateName();
+			throw e;
+		}
+		finally
+		{
+			commitChangeEvent(event, "add", 1, prod);
+		}
+	}
+	
+	/**
+	 * Add a batch of new products to the list. Products are added in iteration order
+	 * and products added before a duplicate name is found remain in the list.
+	 * @param prods The products to add
+	 * @returns The number of products added
+	 * @throws DuplicateProductNameException if the name of a product matches a product name already in the list
+	 */
+	public int addAll(Iterable<? extends T> prods)
+	{
+		InventoryChangeEvent event = new InventoryChangeEvent();
+		event.begin();
+		int count = 0;
+		T first = null;
+		try
+		{
+			for (T prod : prods)
+			{
+				if (first == null)
+				{
+					first = prod;
+				}
+				addItem(prod);
+				count++;
+			}
+		}
+		catch (DuplicateProductNameException e)
+		{
+			event.duplicateItem = e.getDuplicateName();
+			throw e;
+		}
+		finally
+		{
+			commitChangeEvent(event, "add", count, first);
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Helper to add a single product and update totals
+	 * @param prod The product to add
+	 * @throws DuplicateProductNameException if the name of the product matches a product name already in the list
+	 */
+	private void addItem(T prod)
+	{
+		int interned = _names.internIfAbsent(prod.getName());
+		int nameHandle = interned < 0 ? ~interned : interned;
+		// only a name the arena held already can belong to a product in the list
+		if (interned < 0 && _itemsByName.containsKey(nameHandle))
+		{
+			_names.release(nameHandle);
+			throw new DuplicateProductNameException(prod.getName());
+		}
+		
+		_itemIndex.put(prod, _itemsById.add(prod));
+		_itemsByName.put(nameHandle, prod);
+		prod.setNameHandle(this, nameHandle);
+		if (_itemsBySimilarName != null)
+		{
+			_itemsBySimilarName.add(prod);
+		}
+		prod.setPricingPolicy(_pricingPolicy);
+		
+		_totalProducts++;
+		// counted once the list listens, so a quantity change on another thread in between is not missed
+		prod.addPropertyChangeListener((PropertyChangeListener)this);
+		count(prod, _itemIndex.get(prod), prod.getQuantityInStock());
+		fire(new PropertyChangedEvent(this, "add", null, prod));
+	}
+	
+	@Override
+	public void remove(T prod)
+	{
+		InventoryChangeEvent event = new InventoryChangeEvent();
+		event.begin();
+		boolean removed = removeItem(prod);
+		commitChangeEvent(event, "remove", removed ? 1 : 0, prod);
+	}
+	
+	/**
+	 * Remove a batch of products from the list. Products not in the list are ignored.
+	 * @param prods The products to remove
+	 * @returns The number of products removed
+	 */
+	public int removeAll(Iterable<? extends T> prods)
+	{
+		InventoryChangeEvent event = new InventoryChangeEvent();
+		event.begin();
+		int count = 0;
+		T first = null;
+		for (T prod : prods)
+		{
+			if (first == null)
+			{
+				first = prod;
+			}
+			if (removeItem(prod))
+			{
+				count++;
+			}
+		}
+		commitChangeEvent(event, "remove", count, first);
+		
+		return count;
+	}
+	
+	/**
+	 * Helper to remove a single product and update totals
+	 * @param prod The product to remove
+	 * @returns True if the product was in the list
+	 */
+	private boolean removeItem(T prod)
+	{
+		int id = _itemIndex.remove(prod);
+		if (id == IdentityIntMap.s_missing)
+		{
+			return false;
+		}
+		
+		_itemsById.remove(id);
+		int nameHandle = prod.getNameHandle(_names);
+		// the product decodes its name before the index may release the handle
+		prod.setNameHandle(null, NameArena.s_missing);
+		_itemsByName.remove(nameHandle);
+		if (_itemsBySimilarName != null)
+		{
+			_itemsBySimilarName.remove(prod);
+		}
+		
+		if (_locations != null)
+		{
+			_locations.remove(id, prod.getWholesalePrice(), prod.getRetailPrice());
+			prod.setLocatedQuantity(0);
+		}
+		
+		_totalProducts--;
+		prod.removePropertyChangeListener((PropertyChangeListener)this);
+		count(prod, id, 0);
+		fire(new PropertyChangedEvent(this, "remove", prod, null));
+		
+		return true;
+	}
+	
+	/**
+	 * Fills in and commits an add or remove event if it is enabled in the current recording
+	 * @param event The event to commit
+	 * @param operation Either "add" or "remove"
+	 * @param count The number of items in the batch
+	 * @param first The first item of the batch, may be null
+	 */
+	private void commitChangeEvent(InventoryChangeEvent event, String operation, int count, T first)
+	{
+		if (event.shouldCommit())
+		{
+			event.operation = operation;
+			event.itemCount = count;
+			event.firstItem = first == null ? null : first.getName();
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Merges a batch of products into the list by name. Products whose name is already
+	 * in the list have their weight, wholesale price, and quantity updated in place, other
+	 * products are added in batch order, and if requested products whose name is not in the
+	 * batch are removed. When a name appears more than once in the batch the last one wins.
+	 * Totals are adjusted once per updated product rather than per property change.
+	 * @param prods The products to merge
+	 * @param removeMissing True to remove products whose name is not in the batch
+	 * @returns Counts of the products added, updated, unchanged, and removed
+	 * @throws IllegalArgumentException if an existing product cannot take its new quantity; the
+	 * merge stops there, keeping the products updated so far and the totals matching them
+	 */
+	public MergeResult merge(Iterable<? extends T> prods, boolean removeMissing)
+	{
+		InventoryChangeEvent event = new InventoryChangeEvent();
+		event.begin();
+		
+		// build side of the join: incoming products by the handle of their name, in first-seen order;
+		// names the arena does not hold match no product in the list and are keyed by the name itself
+		Map<Object, T> incoming = new LinkedHashMap<>();
+		for (T prod : prods)
+		{
+			int nameHandle = prod.getNameHandle(_names);
+			incoming.put(nameHandle == NameArena.s_missing ? prod.getName() : (Object)nameHandle, prod);
+		}
+		
+		// probe side: pair each existing product with its incoming replacement
+		List<T> targets = new ArrayList<>();
+		List<T> sources = new ArrayList<>();
+		List<T> missing = new ArrayList<>();
+		// probe with the smaller side unless every existing product must be visited
+		if (removeMissing || incoming.size() >= _itemsByName.size())
+		{
+			for (T existing : _itemsByName.values())
+			{
+				T prod = incoming.remove(existing.getNameHandle(_names));
+				if (prod == null)
+				{
+					missing.add(existing);
+				}
+				else
+				{
+					targets.add(existing);
+					sources.add(prod);
+				}
+			}
+		}
+		else
+		{
+			Iterator<T> iter = incoming.values().iterator();
+			while (iter.hasNext())
+			{
+				T prod = iter.next();
+				int nameHandle = prod.getNameHandle(_names);
+				T existing = nameHandle != NameArena.s_missing ? _itemsByName.get(nameHandle) : null;
+				if (existing != null)
+				{
+					iter.remove();
+					targets.add(existing);
+					sources.add(prod);
+				}
+			}
+		}
+		
+		int updated = 0;
+		int unchanged = 0;
+		_deferTotals.set(true);
+		try
+		{
+			for (int i = 0; i < targets.size(); i++)
+			{
+				T existing = targets.get(i);
+				T prod = sources.get(i);
+				if (matches(existing, prod))
+				{
+					unchanged++;
+					continue;
+				}
+				
+				try
+				{
+					update(existing, prod);
+				}
+				finally
+				{
+					// counts whatever part of the update took effect, even if the quantity was refused
+					count(existing, _itemIndex.get(existing), existing.getQuantityInStock());
+				}
+				updated++;
+			}
+		}
+		finally
+		{
+			_deferTotals.set(false);
+		}
+		
+		int removed = 0;
+		if (removeMissing)
+		{
+			for (T prod : missing)
+			{
+				removeItem(prod);
+				removed++;
+			}
+		}
+		
+		int added = 0;
+		for (T prod : incoming.values())
+		{
+			addItem(prod);
+			added++;
+		}
+		
+		commitChangeEvent(event, "merge", added + updated + removed, null);
+		
+		return new MergeResult(added, updated, unchanged, removed);
+	}
+	
+	/**
+	 * Checks if a product already has the weight, wholesale price, and quantity of another
+	 * @param existing The product in the list
+	 * @param prod The product being merged
+	 * @returns True if no update is needed
+	 */
+	private boolean matches(T existing, T prod)
+	{
+		return existing.getWeight() == prod.getWeight()
+			&& existing.getWholesalePrice() == prod.getWholesalePrice()
+			&& existing.getQuantityInStock() == prod.getQuantityInStock();
+	}
+	
+	/**
+	 * Copies the weight, wholesale price, and quantity of a merged product to a product in the list
+	 * @param existing The product in the list
+	 * @param prod The product being merged
+	 */
+	private void update(T existing, T prod)
+	{
+		existing.setWeight(prod.getWeight());
+		existing.setWholesalePrice(prod.getWholesalePrice());
+		if (existing.getQuantityInStock() != prod.getQuantityInStock())
+		{
+			existing.setQuantityInStock(prod.getQuantityInStock());
+		}
+	}
+	
+	/**
+	 * Applies a batch of stock movements, each adding a signed amount to the quantity of a product
+	 * named by its ID. Movements of a product are checked in batch order, and a movement that would
+	 * take its quantity below the quantity reserved or the quantity held at locations, or above the
+	 * largest int, is rejected, as are movements of IDs not in the list. The quantity of each product
+	 * is then adjusted once by the sum of its accepted movements, sending a single quantity event,
+	 * and totals are adjusted once for the whole batch. May be called from any thread, like the stock operations of IProductList.
+	 * @param ids The IDs of the products moved
+	 * @param deltas The amounts added to their quantities, in the same order as ids
+	 * @param count The number of movements in the batch
+	 * @returns The number of movements accepted
+	 */
+	public int applyStockMovements(int[] ids, int[] deltas, int count)
+	{
+		// group the movements by product with an open-addressing table of group index + 1 by ID
+		int[] table = new int[Integer.highestOneBit(Math.max(1, count)) << 2];
+		int mask = table.length - 1;
+		int shift = 32 - Integer.numberOfTrailingZeros(table.length);
+		int[] groupOf = new int[count];
+		boolean[] isAccepted = new boolean[count];
+		List<T> prods = new ArrayList<>();
+		long[] quantities = new long[count];
+		int[] floors = new int[count];
+		long[] sums = new long[count];
+		int accepted = 0;
+		for (int i = 0; i < count; i++)
+		{
+			int slot = (ids[i] * 0x9E3779B9) >>> shift;
+			while (table[slot] != 0 && ids[groupOf[table[slot] - 1]] != ids[i])
+			{
+				slot = (slot + 1) & mask;
+			}
+			int group;
+			if (table[slot] == 0)
+			{
+				group = prods.size();
+				T prod = _itemsById.get(ids[i]);
+				prods.add(prod);
+				if (prod != null)
+				{
+					quantities[group] = prod.getQuantityInStock();
+					floors[group] = Math.max(prod.getReservedQuantity(), prod.getLocatedQuantity());
+				}
+				table[slot] = i + 1;
+			}
+			else
+			{
+				group = groupOf[table[slot] - 1];
+			}
+			groupOf[i] = group;
+			
+			long quantity = quantities[group] + deltas[i];
+			if (prods.get(group) != null && quantity >= floors[group] && quantity <= Integer.MAX_VALUE)
+			{
+				quantities[group] = quantity;
+				sums[group] += deltas[i];
+				isAccepted[i] = true;
+				accepted++;
+			}
+		}
+		
+		List<T> moved = new ArrayList<>();
+		_deferTotals.set(true);
+		try
+		{
+			for (int group = 0; group < prods.size(); group++)
+			{
+				T prod = prods.get(group);
+				long sum = sums[group];
+				if (sum == 0)
+				{
+					continue;
+				}
+				
+				if (!tryAdjustQuantity(prod, sum))
+				{
+					// another thread moved the stock since it was read, so apply the movements one at a time
+					sum = 0;
+					for (int i = 0; i < count; i++)
+					{
+						if (groupOf[i] != group)
+						{
+							continue;
+						}
+						
+						accepted -= isAccepted[i] ? 1 : 0;
+						if (tryAdjustQuantity(prod, deltas[i]))
+						{
+							sum += deltas[i];
+							accepted++;
+						}
+					}
+				}
+				if (sum != 0)
+				{
+					moved.add(prod);
+				}
+			}
+		}
+		finally
+		{
+			_deferTotals.set(false);
+			countLater(moved);
+		}
+		
+		return accepted;
+	}
+	
+	/**
+	 * Helper to adjust the quantity of a product, rejecting results out of range
+	 * @param prod The product
+	 * @param delta The amount to add to its quantity
+	 * @returns True if the quantity was adjusted
+	 */
+	private boolean tryAdjustQuantity(T prod, long delta)
+	{
+		if (delta < Integer.MIN_VALUE || delta > Integer.MAX_VALUE
+			|| (long)prod.getQuantityInStock() + delta > Integer.MAX_VALUE)
+		{
+			return false;
+		}
+		
+		try
+		{
+			return prod.adjustQuantity((int)delta);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// pushed past the largest quantity by another thread since it was checked
+			return false;
+		}
+	}
+	
+	/**
+	 * Get method for the arena holding the names of the products in the list
+	 * @returns The name arena, whose handles stay valid until the list next removes or renames a product
+	 */
+	public NameArena getNameArena()
+	{
+		return _names;
+	}
+	
+	/**
+	 * Get method for the policy pricing the products of the list
+	 * @returns The policy installed by the last reprice, or the default policy
+	 */
+	public PricingPolicy getPricingPolicy()
+	{
+		return _pricingPolicy;
+	}
+	
+	/**
+	 * Installs a pricing policy for the list and recomputes storage cost and retail price of every
+	 * product under it. Each product takes the policy along with its new prices, so later changes
+	 * to its weight or wholesale price are priced by the same policy, as are products added later.
+	 * Products are processed in blocks: their weights, prices, and rates are gathered into
+	 * primitive arrays, priced in flat loops the JIT compiler can vectorize, and written back
+	 * without per-product events. The retail total is replaced once and listeners are sent a
+	 * single PropertyChangedEvent named "reprice" with the list as source.
+	 * @param policy The pricing policy to apply
+	 * @returns The number of products repriced
+	 */
+	public int reprice(PricingPolicy policy)
+	{
+		InventoryChangeEvent event = new InventoryChangeEvent();
+		event.begin();
+		
+		_pricingPolicy = policy;
+		boolean global = policy instanceof GlobalPricingPolicy;
+		Object[] items = new Object[s_repriceBlockSize];
+		int[] ids = new int[s_repriceBlockSize];
+		double[] weights = new double[s_repriceBlockSize];
+		double[] prices = new double[s_repriceBlockSize];
+		double[] quantities = new double[s_repriceBlockSize];
+		double[] markups = global ? null : new double[s_repriceBlockSize];
+		double[] rates = global ? null : new double[s_repriceBlockSize];
+		double totalRetailPrice = 0;
+		int count = 0;
+		Iterator<T> iter = _itemsById.iterator();
+		while (iter.hasNext())
+		{
+			int n = 0;
+			while (n < s_repriceBlockSize && iter.hasNext())
+			{
+				T prod = iter.next();
+				items[n] = prod;
+				ids[n] = _itemIndex.get(prod);
+				weights[n] = prod.getWeight();
+				prices[n] = prod.getWholesalePrice();
+				quantities[n] = countedQuantity(ids[n]);
+				if (!global)
+				{
+					markups[n] = policy.getMarkupFactor(prod);
+					rates[n] = policy.getStorageRate(prod);
+				}
+				n++;
+			}
+			
+			// weights become storage costs and prices become retail prices in place
+			if (global)
+			{
+				double markup = ((GlobalPricingPolicy)policy).getMarkupFactor();
+				double rate = ((GlobalPricingPolicy)policy).getStorageRate();
+				for (int i = 0; i < n; i++)
+				{
+					weights[i] = weights[i] * rate;
+					prices[i] = prices[i] * markup + weights[i];
+				}
+			}
+			else
+			{
+				for (int i = 0; i < n; i++)
+				{
+					weights[i] = weights[i] * rates[i];
+					prices[i] = prices[i] * markups[i] + weights[i];
+				}
+			}
+			for (int i = 0; i < n; i++)
+			{
+				totalRetailPrice += quantities[i] * prices[i];
+			}
+			
+			for (int i = 0; i < n; i++)
+			{
+				((T)items[i]).applyPricing(policy, weights[i], prices[i]);
+				_countedRetailPrices[ids[i] >>> s_countChunkBits][ids[i] & s_countSlotMask] = prices[i];
+				items[i] = null;
+			}
+			count += n;
+		}
+		
+		// the recomputed total prices the quantities counted so far, like the other totals
+		_totalRetailPrice = totalRetailPrice;
+		if (_locations != null)
+		{
+			double[] retailPrices = new double[_itemsById.getNextId()];
+			for (int id = 0; id < retailPrices.length; id++)
+			{
+				T prod = _itemsById.get(id);
+				retailPrices[id] = prod == null ? 0 : prod.getRetailPrice();
+			}
+			_locations.repriceRetail(retailPrices);
+		}
+		fire(new PropertyChangedEvent(this, "reprice", null, policy));
+		commitChangeEvent(event, "reprice", count, null);
+		
+		return count;
+	}
+	
+	/**
+	 * Adds a location where products can be stocked. Stock held at locations is part of the
+	 * quantity in stock of each product, and the quantity not held at any location is what remains.
+	 * @param name The name of the location
+	 * @returns The index of the location, counting up from zero in the order locations are added
+	 * @throws IllegalArgumentException if another location has the same name
+	 */
+	public int addLocation(String name)
+	{
+		if (_locations == null)
+		{
+			_locations = new LocationStock();
+		}
+		
+		return _locations.addLocation(name);
+	}
+	
+	/**
+	 * Get method for the number of locations
+	 * @returns The number of locations added
+	 */
+	public int getLocationCount()
+	{
+		return _locations == null ? 0 : _locations.size();
+	}
+	
+	/**
+	 * Get method for the name of a location
+	 * @param location The index of the location
+	 * @returns The name of the location
+	 */
+	public String getLocationName(int location)
+	{
+		return locations().getName(location);
+	}
+	
+	/**
+	 * Finds a location by name
+	 * @param name The name of the location
+	 * @returns The index of the location, or LocationStock.s_missing if no location has the name
+	 */
+	public int findLocation(String name)
+	{
+		return _locations == null ? LocationStock.s_missing : _locations.find(name);
+	}
+	
+	/**
+	 * Get method for the quantity of a product at a location
+	 * @param prod The product
+	 * @param location The index of the location
+	 * @returns The quantity of the product held at the location
+	 * @throws IllegalArgumentException if the product is not in the list
+	 */
+	public int getQuantityAt(T prod, int location)
+	{
+		return locations().get(location, checkedIdOf(prod));
+	}
+	
+	/**
+	 * Get method for the quantity of a product not held at any location. Changes of the quantity
+	 * in stock that do not name a location change this quantity, and are rejected by the product
+	 * if they would take it below zero, so stock held at a location must be shipped from there.
+	 * @param prod The product
+	 * @returns The quantity in stock less the quantity held at every location
+	 * @throws IllegalArgumentException if the product is not in the list
+	 */
+	public int getUnlocatedQuantity(T prod)
+	{
+		int id = checkedIdOf(prod);
+		return prod.getQuantityInStock() - (_locations == null ? 0 : _locations.getLocated(id));
+	}
+	
+	/**
+	 * Sets the quantity of a product at a location, changing its quantity in stock by the same amount
+	 * @param prod The product
+	 * @param location The index of the location
+	 * @param quantity The quantity held at the location
+	 * @throws IllegalArgumentException if the product is not in the list, the quantity is negative,
+	 * or the quantity in stock would fall below the quantity reserved or above the largest int
+	 */
+	public void setQuantityAt(T prod, int location, int quantity)
+	{
+		if (quantity < 0)
+		{
+			throw new IllegalArgumentException("Quantity cannot be negative.");
+		}
+		
+		if (!adjustQuantityAt(prod, location, quantity - getQuantityAt(prod, location)))
+		{
+			throw new IllegalArgumentException("Quantity in stock cannot be less than the quantity reserved.");
+		}
+	}
+	
+	/**
+	 * Adds a signed amount to the quantity of a product at a location, for stock received at or
+	 * shipped from the location, and changes its quantity in stock by the same amount
+	 * @param prod The product
+	 * @param location The index of the location
+	 * @param delta The amount added, negative for stock leaving the location
+	 * @returns True if the quantity was changed, false if the quantity at the location would be
+	 * negative or the quantity in stock would fall below the quantity reserved
+	 * @throws IllegalArgumentException if the product is not in the list or the quantity in stock
+	 * would be above the largest int
+	 */
+	public boolean adjustQuantityAt(T prod, int location, int delta)
+	{
+		int id = checkedIdOf(prod);
+		long quantity = (long)locations().get(location, id) + delta;
+		if (quantity < 0 || quantity > Integer.MAX_VALUE)
+		{
+			return false;
+		}
+		
+		// the product's own event adjusts the inventory totals, the location totals are adjusted here
+		if (delta != 0 && !prod.adjustLocatedQuantity(delta))
+		{
+			return false;
+		}
+		_locations.add(location, id, delta, prod.getWholesalePrice(), prod.getRetailPrice());
+		
+		return true;
+	}
+	
+	/**
+	 * Moves stock of a product from one location to another without changing its quantity in stock
+	 * @param prod The product
+	 * @param from The index of the location the stock leaves
+	 * @param to The index of the location the stock arrives at
+	 * @param quantity The quantity moved
+	 * @returns True if the stock was moved, false if the first location holds less than the quantity
+	 * or the second would hold more than the largest int
+	 * @throws IllegalArgumentException if the product is not in the list or the quantity is not positive
+	 */
+	public boolean transferStock(T prod, int from, int to, int quantity)
+	{
+		if (quantity <= 0)
+		{
+			throw new IllegalArgumentException("Quantity must be positive.");
+		}
+		
+		int id = checkedIdOf(prod);
+		LocationStock locations = locations();
+		if (locations.get(from, id) < quantity || (long)locations.get(to, id) + quantity > Integer.MAX_VALUE)
+		{
+			return false;
+		}
+		
+		locations.add(from, id, -quantity, prod.getWholesalePrice(), prod.getRetailPrice());
+		locations.add(to, id, quantity, prod.getWholesalePrice(), prod.getRetailPrice());
+		
+		return true;
+	}
+	
+	/**
+	 * Get method for the number of items held at a location
+	 * @param location The index of the location
+	 * @returns The sum of the quantities of every product at the location
+	 */
+	public long getItemsInStockAt(int location)
+	{
+		return locations().getItemsInStock(location);
+	}
+	
+	/**
+	 * Get method for the wholesale value of a location
+	 * @param location The index of the location
+	 * @returns The total wholesale price of the items held at the location
+	 */
+	public double getWholesalePriceAt(int location)
+	{
+		return locations().getWholesalePrice(location);
+	}
+	
+	/**
+	 * Get method for the retail value of a location
+	 * @param location The index of the location
+	 * @returns The total retail price of the items held at the location
+	 */
+	public double getRetailPriceAt(int location)
+	{
+		return locations().getRetailPrice(location);
+	}
+	
+	/**
+	 * Helper to get the location stock of a list that has locations
+	 * @returns The location stock
+	 * @throws IndexOutOfBoundsException if no location has been added
+	 */
+	private LocationStock locations()
+	{
+		if (_locations == null)
+		{
+			throw new IndexOutOfBoundsException("No locations have been added");
+		}
+		
+		return _locations;
+	}
+	
+	/**
+	 * Helper to get the ID of a product that must be in the list
+	 * @param prod The product
+	 * @returns The ID of the product
+	 * @throws IllegalArgumentException if the product is not in the list
+	 */
+	private int checkedIdOf(T prod)
+	{
+		int id = _itemIndex.get(prod);
+		if (id == IdentityIntMap.s_missing)
+		{
+			throw new IllegalArgumentException("Product \"" + prod.getName() + "\" is not in the inventory");
+		}
+		
+		return id;
+	}
+	
+	@Override
+	public boolean contains(T prod)
+	{
+		return _itemIndex.get(prod) != IdentityIntMap.s_missing;
+	}
+	
+	@Override
+	public T get(int id)
+	{
+		return _itemsById.get(id);
+	}
+	
+	@Override
+	public int idOf(T prod)
+	{
+		return _itemIndex.get(prod);
+	}
+	
+	@Override
+	public T get(String name)
+	{
+		int nameHandle = _names.find(name);
+		return nameHandle == NameArena.s_missing ? null : _itemsByName.get(nameHandle);
+	}
+	
+	/**
+	 * Makes the calling thread the owner of the list, the thread that modifies it and on which
+	 * listeners receive its events. Stock operations may run on any thread, and the events they
+	 * raise there are queued and handed to listeners on the owner thread, so listeners never need
+	 * to be thread-safe. Quantity changes made on other threads reach the totals in the same way,
+	 * since prices only change on the owner thread. The thread that created the list owns it until
+	 * this is called.
+	 * @param ownerExecutor Runs tasks on the owner thread, or null to deliver queued events only
+	 * when the owner next changes the list or calls deliverPendingEvents
+	 */
+	public void setOwner(Executor ownerExecutor)
+	{
+		_owner = Thread.currentThread();
+		_ownerExecutor = ownerExecutor;
+	}
+	
+	/**
+	 * Sends listeners the events raised on other threads since the last delivery. Successive
+	 * quantity changes of a product are sent as one event from the first old quantity to the
+	 * last new quantity, and events of products removed since are dropped. Must be called on
+	 * the owner thread.
+	 */
+	@SuppressWarnings("unchecked")
+	public void deliverPendingEvents()
+	{
+		countUncounted();
+		if (!_hasPendingEvents)
+		{
+			return;
+		}
+		
+		List<PropertyChangeEvent> events;
+		synchronized (_pendingEvents)
+		{
+			events = new ArrayList<>(_pendingEvents.values());
+			_pendingEvents.clear();
+			_hasPendingEvents = false;
+		}
+		for (PropertyChangeEvent e : events)
+		{
+			if (e.getSource() == this || contains((T)e.getSource()))
+			{
+				_pcs.firePropertyChange(e);
+			}
+		}
+	}
+	
+	/**
+	 * Sends an event to listeners. On the owner thread any queued events are sent first, so
+	 * listeners see changes in the order the owner made them; on other threads the event is
+	 * queued, and a delivery is scheduled on the owner thread if an executor was given.
+	 * @param e The event to send
+	 */
+	private void fire(PropertyChangeEvent e)
+	{
+		if (Thread.currentThread() == _owner)
+		{
+			deliverPendingEvents();
+			_pcs.firePropertyChange(e);
+			return;
+		}
+		if (!_pcs.hasListeners(e.getPropertyName()))
+		{
+			return;
+		}
+		
+		synchronized (_pendingEvents)
+		{
+			if (e.getSource() != this && e.getPropertyName() == "quantity")
+			{
+				PropertyChangeEvent queued = _pendingEvents.get(e.getSource());
+				_pendingEvents.put(e.getSource(), queued == null ? e 
+					: new PropertyChangedEvent(e.getSource(), "quantity", queued.getOldValue(), e.getNewValue()));
+			}
+			else
+			{
+				_pendingEvents.put(e, e);
+			}
+			_hasPendingEvents = true;
+		}
+		scheduleDelivery();
+	}
+	
+	/** Schedules a delivery of queued events and quantities on the owner thread, if an executor was given and none is scheduled */
+	private void scheduleDelivery()
+	{
+		Executor executor = _ownerExecutor;
+		if (executor != null && _deliveryScheduled.compareAndSet(false, true))
+		{
+			executor.execute(() ->
+			{
+				_deliveryScheduled.set(false);
+				deliverPendingEvents();
+			});
+		}
+	}
+	
+	/**
+	 * Counts the quantities of products changed by stock operations, directly on the owner thread
+	 * and otherwise on the owner thread's next delivery, since only the owner changes prices
+	 * @param prods The products whose quantity changed
+	 */
+	private void countLater(List<T> prods)
+	{
+		if (prods.isEmpty())
+		{
+			return;
+		}
+		if (Thread.currentThread() == _owner)
+		{
+			countUncounted();
+			for (T prod : prods)
+			{
+				count(prod, _itemIndex.get(prod), prod.getQuantityInStock());
+			}
+			return;
+		}
+		
+		synchronized (_uncounted)
+		{
+			_uncounted.addAll(prods);
+			_hasUncounted = true;
+		}
+		scheduleDelivery();
+	}
+	
+	/** Counts the products queued by stock operations on other threads, if called on the owner thread */
+	private void countOnOwner()
+	{
+		if (Thread.currentThread() == _owner)
+		{
+			countUncounted();
+		}
+	}
+	
+	/** Counts the current quantities of the products queued by stock operations on other threads. Must be called on the owner thread. */
+	@SuppressWarnings("unchecked")
+	private void countUncounted()
+	{
+		if (!_hasUncounted)
+		{
+			return;
+		}
+		
+		Object[] prods;
+		synchronized (_uncounted)
+		{
+			prods = _uncounted.toArray();
+			_uncounted.clear();
+			_hasUncounted = false;
+		}
+		for (Object prod : prods)
+		{
+			int id = _itemIndex.get((T)prod);
+			if (id != IdentityIntMap.s_missing)
+			{
+				count((T)prod, id, ((T)prod).getQuantityInStock());
+			}
+		}
+	}
+	
+	/**
+	 * Counts a quantity of a product in the totals at its current prices, replacing what was
+	 * counted for it before. Totals are always the sum of each product's counted quantity times
+	 * the prices it was counted at, so counting a product again at any time, even while one of
+	 * its prices is changing, leaves the totals consistent. Must be called on the owner thread.
+	 * @param prod The product
+	 * @param id The ID of the product
+	 * @param quantity The quantity to count, zero as the product is removed
+	 */
+	private void count(T prod, int id, int quantity)
+	{
+		int chunk = id >>> s_countChunkBits;
+		if (chunk >= _countedQuantities.length)
+		{
+			int length = Math.max(chunk + 1, _countedQuantities.length * 2);
+			_countedQuantities = Arrays.copyOf(_countedQuantities, length);
+			_countedWholesalePrices = Arrays.copyOf(_countedWholesalePrices, length);
+			_countedRetailPrices = Arrays.copyOf(_countedRetailPrices, length);
+		}
+		if (_countedQuantities[chunk] == null)
+		{
+			_countedQuantities[chunk] = new int[1 << s_countChunkBits];
+			_countedWholesalePrices[chunk] = new double[1 << s_countChunkBits];
+			_countedRetailPrices[chunk] = new double[1 << s_countChunkBits];
+		}
+		
+		int slot = id & s_countSlotMask;
+		int counted = _countedQuantities[chunk][slot];
+		double wholesalePrice = prod.getWholesalePrice();
+		double retailPrice = prod.getRetailPrice();
+		_itemsInStock += quantity - counted;
+		_totalWholesalePrice += quantity * wholesalePrice - counted * _countedWholesalePrices[chunk][slot];
+		_totalRetailPrice += quantity * retailPrice - counted * _countedRetailPrices[chunk][slot];
+		_countedQuantities[chunk][slot] = quantity;
+		_countedWholesalePrices[chunk][slot] = wholesalePrice;
+		_countedRetailPrices[chunk][slot] = retailPrice;
+	}
+	
+	/**
+	 * Get method for the quantity of a product counted in the totals
+	 * @param id The ID of the product
+	 * @returns The counted quantity, zero if none was counted
+	 */
+	private int countedQuantity(int id)
+	{
+		int chunk = id >>> s_countChunkBits;
+		return chunk < _countedQuantities.length && _countedQuantities[chunk] != null
+			? _countedQuantities[chunk][id & s_countSlotMask] : 0;
+	}
+	
+	@Override
+	public void addPropertyChangeListener(PropertyChangeListener listener)
+	{
+		_pcs.addPropertyChangeListener(listener);
+	}
+	
+	@Override
+	public void removePropertyChangeListener(PropertyChangeListener listener)
+	{
+		_pcs.removePropertyChangeListener(listener);
+	}
+	
+	@Override
+	public Iterator<T> iterator()
+	{
+		return _itemsById.iterator();
+	}
+	
+	@Override
+	public void forEach(Consumer<? super T> action)
+	{
+		for (T item : this)
+		{
+			action.accept(item);
+		}
+	}
+	
+	@Override
+	public Spliterator<T> spliterator()
+	{
+		return _itemsById.spliterator();
+	}
+	
+	@Override
+	public Iterable<T> getSortedProductsByName()
+	{
+		return _itemsByName.sortedValues();
+	}
+	
+	@Override
+	public List<T> findSimilar(String name, int maxDistance)
+	{
+		if (_itemsBySimilarName == null)
+		{
+			_itemsBySimilarName = new FuzzyNameIndex<>();
+			for (T prod : _itemsById)
+			{
+				_itemsBySimilarName.add(prod);
+			}
+		}
+		
+		return _itemsBySimilarName.find(name, maxDistance);
+	}
+	
+	/**
+	 * Get method for the position of a name in name order
+	 * @param name The name to find, which need not be in the list
+	 * @returns The number of products whose name sorts before the given name
+	 */
+	public int getNamePosition(String name)
+	{
+		return _itemsByName.lowerBound(name);
+	}
+	
+	/**
+	 * Returns products in name order starting with the first name not less than a given name,
+	 * without copying the rest of the list. The iterable must not be used after the list changes.
+	 * @param name The name to start from
+	 * @returns Iterable over the products from the given name onwards in name order
+	 */
+	public Iterable<T> getSortedProductsFrom(String name)
+	{
+		final int[] handles = _itemsByName.sortedHandles();
+		final int from = _itemsByName.lowerBound(name);
+		final int to = _itemsByName.size();
+		return () -> new Iterator<T>()
+		{
+			/** Position in name order of the next product */
+			private int _next = from;
+			
+			@Override
+			public boolean hasNext()
+			{
+				return _next < to;
+			}
+			
+			@Override
+			public T next()
+			{
+				if (_next >= to)
+				{
+					throw new NoSuchElementException();
+				}
+				
+				return _itemsByName.get(handles[_next++]);
+			}
+		};
+	}
+	
+	@Override
+	public void propertyChange(PropertyChangeEvent e)
+	{
+		PropertyDispatchEvent event = new PropertyDispatchEvent();
+		event.begin();
+		try
+		{
+			handlePropertyChange(e);
+		}
+		finally
+		{
+			if (event.shouldCommit())
+			{
+				event.item = ((T)e.getSource()).getName();
+				event.property = e.getPropertyName();
+				event.changing = e instanceof PropertyChangingEvent;
+				event.commit();
+			}
+		}
+	}
+	
+	/**
+	 * Applies a property change of a product in the list to the name index and totals
+	 * @param e The property change event received from the product
+	 * @throws DuplicateProductNameException if the product is about to be renamed to a name already in the list
+	 */
+	private void handlePropertyChange(PropertyChangeEvent e)
+	{
+		T item = (T)e.getSource();
+		String property = e.getPropertyName();
+		if (e instanceof PropertyChangingEvent)
+		{
+			if (property == "name")
+			{
+				String newName = (String)e.getNewValue();
+				int nameHandle = _names.find(newName);
+				if (nameHandle != NameArena.s_missing && _itemsByName.containsKey(nameHandle))
+				{
+					throw new DuplicateProductNameException(newName);
+				}
+			}
+		}
+		else if (e instanceof PropertyChangedEvent)
+		{
+			if (property == "name")
+			{
+				String oldName = (String)e.getOldValue();
+				_itemsByName.remove(_names.find(oldName));
+				int nameHandle = _names.intern(item.getName());
+				_itemsByName.put(nameHandle, item);
+				item.setNameHandle(this, nameHandle);
+				if (_itemsBySimilarName != null)
+				{
+					_itemsBySimilarName.update(item);
+				}
+			}
+			else if (_deferTotals.get())
+			{
+				// a merge or batch of stock movements in progress adjusts the totals once when it completes
+			}
+			else if (property == "quantity")
+			{
+				// priced on the owner thread, so prices never change while a quantity is priced
+				if (Thread.currentThread() == _owner)
+				{
+					count(item, _itemIndex.get(item), item.getQuantityInStock());
+				}
+				else
+				{
+					countLater(List.of(item));
+				}
+			}
+			else if (property == "wholesalePrice" || property == "retailPrice")
+			{
+				// the quantity last counted, priced again at the current prices
+				int id = _itemIndex.get(item);
+				count(item, id, countedQuantity(id));
+			}
+			
+			if (_locations != null && property == "wholesalePrice")
+			{
+				_locations.priceChanged(_itemIndex.get(item), item.getWholesalePrice() - (double)e.getOldValue(), 0);
+			}
+			else if (_locations != null && property == "retailPrice")
+			{
+				_locations.priceChanged(_itemIndex.get(item), 0, item.getRetailPrice() - (double)e.getOldValue());
+			}
+			fire(e);
+		}
+	}
 }
\ No newline at end of file
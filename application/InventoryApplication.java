@@ -1,736 +1,1544 @@
-/**
- * Main driver of inventory application. Displays UI for adding and viewing items in inventory.
- * @author Greg Edwards
- * @version 1.0
- */
-
-package application;
-
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.List;
-import javafx.application.Application;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
-import javafx.geometry.Insets;
-import javafx.geometry.Pos;
-import javafx.event.ActionEvent;
-import javafx.event.EventHandler;
-import javafx.scene.Node;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
-import javafx.scene.control.Alert;
-import javafx.scene.control.Button;
-import javafx.scene.control.CheckBox;
-import javafx.scene.control.Label;
-import javafx.scene.control.ListView;
-import javafx.scene.control.SelectionModel;
-import javafx.scene.control.TextField;
-import javafx.scene.input.MouseEvent;
-import javafx.scene.layout.BorderPane;
-import javafx.scene.layout.GridPane;
-import javafx.scene.layout.HBox;
-import javafx.scene.layout.Priority;
-import javafx.scene.layout.StackPane;
-import javafx.scene.layout.VBox;
-import javafx.scene.text.Text;
-import javafx.scene.text.Font;
-import javafx.scene.text.FontWeight;
-import javafx.stage.FileChooser;
-import javafx.stage.FileChooser.ExtensionFilter;
-import javafx.stage.Modality;
-import javafx.stage.Stage;
-
-public class InventoryApplication extends Application
-{
-	/** Backing inventory for items */
-	private final Inventory<Item> _inventory = new Inventory<>();
-	/** True if displayed items are sorted by name, otherwise sort by order added */
-	private boolean _sortItemsByName = false;
-	/** Observable list of item names in inventory */
-    private final ObservableList<String> _itemNames = FXCollections.observableArrayList();
-	/** ListView for displaying items in UI */
-	private final ListView _listView = new ListView();
-	/** Container for the text fields for adding items */
-	private final ItemControl _control = new ItemControl();
-	/** Reference to home stage where most user actions occur*/
-	private Stage _homeStage;
-	/** List view width */
-	private static final int s_listViewWidth = 200;
-	/** List view height */
-	private static final int s_listViewHeight = 250;
-	/** Vertical gap spacing */
-	private static final int s_vSpace = 10;
-	/** Horizontal gap spacing */
-	private static final int s_hSpace = 10;
-	/** Vertical inset pad spacing */
-	private static final int s_vPad = 15;
-	/** Horizontal inset pad spacing */
-	private static final int s_hPad = 12;
-	/** Vertical inset spacing for grid */
-	private static final int s_gridVPad = 25;
-	/** Horizontal inset spacing for grid */
-	private static final int s_gridHPad = 25;
-	/** Width for the navigation panel buttons */
-	private static final int s_navButtonWidth = 100;
-	/** Height for the navigation panel buttons*/
-	private static final int s_navButtonHeight = 20;
-	/** Width for item change buttons */
-	private static final int s_itemButtonWidth = 80;
-	/** Height for item change buttons */
-	private static final int s_itemButtonHeight = 20;
-	/** Application name for display on main stage */
-	private static final String s_appTitle = "Inventory Application";
-	
-	/** Main entry point for inventory application */
-	public static void main(String[] args)
-	{
-		launch(args);
-	}
-	
-	@Override
-	public void start(Stage stage)
-	{
-		_homeStage = stage;
-		Parent ui = createUI();
-		_control.requestFocus();
-		Scene scene = new Scene(ui);
-		stage.setScene(scene);
-		stage.setTitle(s_appTitle);
-		stage.show();
-	}
-	
-	/**
-	 * Create layout for the initial UI scene on home stage
-	 * @returns The initial UI layout
-	 */
-	private Parent createUI()
-	{
-		BorderPane border = new BorderPane();
-		border.setTop(createHeader());
-		border.setLeft(createControlToolbar());
-		border.setCenter(makeItemControlPanel(_control));
-		border.setRight(addInventoryListViewNode());
-		
-		return border;
-	}
-	
-	/**
-	 * create the header panel for home stage UI scene
-	 * @returns The Node containing header element
-	 */
-	private Node createHeader()
-	{
-		HBox hbox = new HBox();
-		hbox.setPadding(new Insets(s_vPad, s_hPad, s_vPad, s_hPad));
-		
-		return hbox;
-	}
-	
-	/**
-	 * Create the left side control bar
-	 * @returns The Node containing the left side control bar
-	 */
-	private Node createControlToolbar()
-	{
-		VBox vbox = new VBox();
-		vbox.setPadding(new Insets(s_vPad, s_hPad, s_vPad, s_hPad));
-		vbox.setSpacing(s_vSpace);
-		
-		Button report = makeReportButton();
-		Button import_ = makeImportButton();
-		Button export = makeExportButton();
-		
-		Button close = makeButton("Close");
-		close.setPrefSize(s_navButtonWidth, s_navButtonHeight);
-		close.setOnAction(e -> _homeStage.close());
-		
-		
-		VBox footer = new VBox();
-		footer.setAlignment(Pos.BOTTOM_CENTER);
-		VBox.setVgrow(footer, Priority.ALWAYS);
-		footer.getChildren().add(close);
-		
-		vbox.getChildren().addAll(
-			report,
-			import_,
-			export,
-			footer
-		);
-		
-		return vbox;
-	}
-	
-	/**
-	 * Create the report button to display inventory totals
-	 * @returns The report button element
-	 */
-	private Button makeReportButton()
-	{
-		Button report = makeButton("Report");
-		report.setPrefSize(s_navButtonWidth, s_navButtonHeight);
-		report.setOnAction(
-			new EventHandler<ActionEvent>()
-			{
-				@Override
-				public void handle(ActionEvent e)
-				{
-					final Stage dialog = new Stage();
-					dialog.initModality(Modality.APPLICATION_MODAL);
-					dialog.initOwner(_homeStage);
-					VBox dialogVbox = new VBox(s_vSpace);
-					dialogVbox.setPadding(new Insets(s_vPad, s_hPad, s_vPad, s_hPad));
-					Text title = new Text("Inventory Report");
-					title.setFont(Font.font("Tahoma", FontWeight.NORMAL, 20));
-					dialogVbox.getChildren().addAll(
-						title,
-						new Text("Total Products: " + _inventory.getTotalProductsInStock()),
-						new Text(String.format("Items in Stock: %,d",_inventory.getTotalItemsInStock())),
-						new Text(String.format("Total Wholesale Price: $%,.2f", _inventory.getTotalWholesalePrice())),
-						new Text(String.format("Total Retail Price: $%,.2f", _inventory.getTotalRetailPrice()))
-					);
-					Scene dialogScene = new Scene(dialogVbox, 300, 200);
-					dialog.setScene(dialogScene);
-					dialog.show();
-				}
-			}
-		);
-		
-		return report;
-	}
-	
-	/**
-	 * Create buttons with uniform size
-	 * @returns The button element
-	 */
-	private Button makeButton(String name)
-	{
-		Button button = new Button(name);
-		return button;
-	}
-	
-	/**
-	 * Create the import button
-	 * @returns The import button element
-	 */
-	private Button makeImportButton()
-	{
-		Button importButton = makeButton("Import");
-		importButton.setPrefSize(s_navButtonWidth, s_navButtonHeight);
-		importButton.setOnAction(e -> onClickImportButton(e));
-		
-		return importButton;
-	}
-	
-	/**
-	 * Event handler for the event triggered when import button clicked
-	 * @param e The event that was triggered
-	 */
-	private void onClickImportButton(ActionEvent e)
-	{
-		FileChooser fc = new FileChooser();
-		fc.setInitialDirectory(new File(System.getProperty("user.home")));
-		ExtensionFilter csvFilter = new ExtensionFilter("CSV files (*.csv)", "*.csv");
-		fc.getExtensionFilters().add(csvFilter);
-		List<File> fileList = fc.showOpenMultipleDialog(_homeStage);
-		if (fileList != null)
-		{
-			for (File file : fileList)
-			{
-				importInventory(file);
-			}
-		}
-	}
-	
-	/**
-	 * Method to read a comma-separated text file, create the items specified,
-	 * and add them to the inventory
-	 * @param file The comma-separated file to read
-	 */
-	private void importInventory(File file)
-	{
-		try
-		{
-			String line;
-			String[] args;
-			String name;
-			double weight;
-			double price;
-			int quantity;
-			FileReader fileReader = new FileReader(file);
-			BufferedReader reader = new BufferedReader(fileReader);
-			while ((line = reader.readLine()) != null)
-			{
-				args = splitCommaDelimitedString(line);
-				name = args[0];
-				weight = Double.parseDouble(args[1]);
-				price = Double.parseDouble(args[2]);
-				quantity = Integer.parseInt(args[3]);
-				_inventory.add(new Item(name, weight, price, quantity));
-			}
-		}
-		catch (FileNotFoundException e)
-		{
-			showAlertPopup("File Import Failed", e.getMessage());
-		}
-		catch(IOException e)
-		{
-			showAlertPopup("File Import Failed", e.getMessage());
-		}
-		catch (NumberFormatException e)
-		{
-			showAlertPopup("Invalid Number Format", e.getMessage());
-		}
-		catch (IllegalArgumentException e)
-		{
-			showAlertPopup("Invalid Item Data", e.getMessage());
-		}
-		catch (DuplicateProductNameException e)
-		{
-			showAlertPopup("Duplicate Product Name", "Item \"" + e.getDuplicateName() + "\" already exists in inventory");
-		}
-		
-		updateListViewContents();
-	}
-	
-	/**
-	 * Splits a comma-delimited string into the properties of the item 
-	 * to deserialize from csv: name, weight, price, and quantity
-	 * Name field is enclosed in double-quotes if the item name contains 
-	 * commas or double-quotes which must be unescaped.
-	 * Other properties don't contain commas or quotes and do not need to be unescaped.
-	 * @param line The comma-delimited string to parse
-	 * @returns String array containing name, weight, price, and quantity of the item being deserialized.
- 	 */
-	private String[] splitCommaDelimitedString(String line)
-	{
-		if (!line.contains("\""))
-		{
-			return line.split(",");
-		}
-		
-		String[] arr = new String[4];
-		int firstQuoteIndex = 0;
-		int lastQuoteIndex = line.lastIndexOf("\"");
-		int nextPieceStartIndex = lastQuoteIndex + 2;
-		arr[0] = line.substring(firstQuoteIndex + 1, lastQuoteIndex).replace("\"\"", "\"");
-		int index = 1;
-		for (String piece : line.substring(nextPieceStartIndex).split(","))
-		{
-			arr[index] = piece;
-			index++;
-		}
-		
-		return arr;
-	}
-	
-	/**
-	 * Creates and formats a popup to display error message
-	 * @param header The alert header to use
-	 * @param message The error message to display
-	 */
-	private void showAlertPopup(String header, String message)
-	{
-		Alert a = new Alert(Alert.AlertType.ERROR);
-		a.setTitle("Error");
-		a.setHeaderText(header);
-		a.setContentText(message);
-		a.showAndWait();
-	}
-	
-	/**
-	 * Method to update values stored in the _itemNames observable list when inventory changes
-	 */
-	private void updateListViewContents()
-	{
-		int index = 0;
-		_itemNames.clear();
-		if (_sortItemsByName)
-		{
-			for (Item item : _inventory.getSortedProductsByName())
-			{
-				_itemNames.add(index, item.getName());
-				index++;
-			}
-		}
-		else
-		{
-			for (Item item : _inventory)
-			{
-				_itemNames.add(index, item.getName());
-				index++;
-			}
-		}
-	}
-	
-	/**
-	 * Creates the export button
-	 * @returns The button that was created
-	 */
-	private Button makeExportButton()
-	{
-		Button export = makeButton("Export");
-		export.setPrefSize(s_navButtonWidth, s_navButtonHeight);
-		export.setOnAction(e -> onClickExportButton(e));
-		
-		return export;
-	}
-	
-	/**
-	 * Event handler for export buttone click
-	 * @param e The event that was triggered
-	 */
-	private void onClickExportButton(ActionEvent e)
-	{
-		FileChooser fc = new FileChooser();
-		fc.setInitialDirectory(new File(System.getProperty("user.home")));
-		ExtensionFilter csvFilter = new ExtensionFilter("CSV files (*.csv)", "*.csv");
-		fc.getExtensionFilters().add(csvFilter);
-		File file = fc.showSaveDialog(_homeStage);
-		if (file != null)
-		{
-			exportInventory(file);
-		}
-	}
-	
-	/**
-	 * Exports the inventory contents to comma-delimited file
-	 * @param file The file to write the inventory contents
-	 */
-	private void exportInventory(File file)
-	{
-		try
-		{
-			FileWriter fileWriter = new FileWriter(file);
-			BufferedWriter writer = new BufferedWriter(fileWriter);
-			for (Item item : _inventory)
-			{
-				writer.write(item.toString() + "\n");
-			}
-			
-			writer.flush();
-		}
-		catch (Exception e)
-		{
-			showAlertPopup("Inventory Export Failed", e.getMessage());
-		}
-	}
-	
-	/**
-	 * Create the text input form for adding items to inventory
-	 * @returns The Node containing the form
-	 */
-	private GridPane makeItemControlPanel(ItemControl control)
-	{
-		GridPane grid  = createGridPane();
-		grid = addPanelTitle(grid, "Add Product to Inventory");
-		grid = addItemControlLayout(grid, control);
-		
-		Button addItemButton = new Button("Add Item");
-		addItemButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
-		addItemButton.setOnAction(e -> onClickAddItemButton(control));
-	
-		HBox hbox = new HBox(s_hSpace);
-		hbox.setAlignment(Pos.BOTTOM_RIGHT);
-		hbox.getChildren().add(addItemButton);
-		grid.add(hbox, 1, 6);
-		
-		return grid;
-	}
-	
-	/**
-	 * Helper method for creating new grid panes and setting properties
-	 * @returns The created GridPane
-	 */
-	private GridPane createGridPane()
-	{
-		GridPane grid = new GridPane();
-		grid.setAlignment(Pos.CENTER);
-		grid.setHgap(s_hSpace);
-		grid.setVgap(s_vSpace);
-		grid.setPadding(new Insets(s_gridVPad, s_gridHPad, s_gridVPad, s_gridHPad));
-		
-		return grid;
-	}
-	
-	/**
-	 * Adds title text to a grid panel
-	 * @param grid The GridPane to modify
-	 * @param title The title text to add
-	 * @returns The modified GridPane
-	 */
-	private GridPane addPanelTitle(GridPane grid, String title)
-	{
-		Text titleText = new Text(title);
-		titleText.setFont(Font.font("Tahoma", FontWeight.NORMAL, 20));
-		grid.add(titleText, 0, 0, 2, 1);
-		
-		return grid;
-	}
-	
-	/**
-	 * Adds the item control text fields to a GridPane
-	 * @param grid The GridPane to modify
-	 * @param control The ctem control containing the text fields to add
-	 * @returns The modified GridPane
-	 */
-	private GridPane addItemControlLayout(GridPane grid, ItemControl control)
-	{
-		grid.add(new Label("Name:"), 0, 1);
-		grid.add(control.getNameField(), 1, 1);
-		
-		grid.add(new Label("Weight (lbs):"), 0, 2);
-		grid.add(control.getWeightField(), 1, 2);
-		
-		grid.add(new Label("Wholesale Price ($):"), 0, 3);
-		grid.add(control.getPriceField(), 1, 3);
-		
-		grid.add(new Label("Quantity:"), 0, 4);
-		grid.add(control.getQuantityField(), 1, 4);
-		
-		return grid;
-	}
-	
-	/**
-	 * Wrapper function to respond to add item button click
-	 * @param control The item control to use
-	 */
-	private void onClickAddItemButton(ItemControl control)
-	{
-		createAndAddItem(control);
-	}
-	
-	/**
-	 * Creates an item with properties specified by the item control text fields
-	 * @param control The item control to use
-	 */
-	private void createAndAddItem(ItemControl control)
-	{
-		try
-		{
-			Item item = control.createItem();
-			_inventory.add(item);
-		}
-		catch (NumberFormatException e)
-		{
-			showAlertPopup("Invalid Number Format", e.getMessage());
-		}
-		catch (IllegalArgumentException e)
-		{
-			showAlertPopup("Invalid Item Data", e.getMessage());
-		}
-		catch (DuplicateProductNameException e)
-		{
-			showAlertPopup("Duplicate Product Name", "Item \"" + e.getDuplicateName() + "\" already exists in inventory");
-		}
-		
-		updateListViewContents();
-		control.clearTextFields();
-		control.requestFocus();
-	}
-	
-	/**
-	 * Method to create the right list view for displaying names of items in inventory
-	 */
-	private StackPane addInventoryListViewNode()
-	{
-		StackPane stackPane = new StackPane();
-		stackPane.setPadding(new Insets(s_vPad, s_hPad, s_vPad, s_hPad));
-		initListView();
-		
-		CheckBox sortCheckBox = new CheckBox("Sort items alphabetically");
-		sortCheckBox.setAllowIndeterminate(false);
-		sortCheckBox.setOnAction(e -> onToggleSortCheckBox(e));
-		
-		Button viewButton = makeButton("View");
-		viewButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
-		viewButton.setOnAction(e -> onClickViewButton(e));
-		
-		Button deleteButton = makeButton("Delete");
-		deleteButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
-		deleteButton.setOnAction(e -> onClickDeleteButton(e));
-		
-		HBox hbox = new HBox();
-		hbox.setSpacing(s_hSpace);
-		hbox.getChildren().addAll(viewButton, deleteButton);
-		
-		VBox vbox = new VBox();
-		vbox.setSpacing(s_vSpace);
-		vbox.getChildren().addAll(
-			sortCheckBox,
-			_listView, 
-			hbox
-		);
-		
-		stackPane.getChildren().add(vbox);
-		
-		return stackPane;
-	}
-	
-	/**
-	 * Method to set the intial properties for the inventory list view
-	 */
-	private void initListView()
-	{
-		_listView.setPrefSize(s_listViewWidth, s_listViewHeight);
-        _listView.setEditable(true);
-		_itemNames.setAll();
-		_listView.setItems(_itemNames);
-		
-		_listView.setOnMouseClicked(e -> onMouseClickListViewItem(e));
-	}
-	
-	/**
-	 * Event handler when an item in list view is clicked
-	 * Wrapper for the popup view window when double clicking list item
-	 * @param e The mouse event that was triggered
-	 */
-	private void onMouseClickListViewItem(MouseEvent e)
-	{
-		if (e.getClickCount() == 2)
-		{
-			showViewPopup();
-		}
-	}
-	
-	/**
-	 * Show item summary popup to view item details
-	 */
-	private void showViewPopup()
-	{
-		final Stage dialog = new Stage();
-		dialog.initModality(Modality.APPLICATION_MODAL);
-		dialog.initOwner(_homeStage);
-		String name = (String)_listView.getSelectionModel().getSelectedItem();
-		Item item = (Item)_inventory.get(name);
-		
-		ItemControl control = new ItemControl();
-		control.setText(item);
-		control.setDisable(true);
-		
-		Button saveButton = makeButton("Save");
-		saveButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
-		saveButton.setDisable(true);
-		saveButton.setOnAction(e ->
-		{
-			setItemProperties(control, item);
-			dialog.close();
-		});
-		
-		Button editButton = makeButton("Edit");
-		editButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
-		editButton.setOnAction(e -> 
-		{
-			control.setDisable(false);
-			saveButton.setDisable(false);
-			editButton.setDisable(true);
-			control.requestFocus();
-		});
-		
-		Button closeButton = makeButton("Close");
-		closeButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
-		closeButton.setOnAction(e -> dialog.close());
-		
-		GridPane grid = createGridPane();
-		grid = addPanelTitle(grid, "Viewing Item: " + item.getName());
-		grid = addItemControlLayout(grid, control);
-		grid = addAndSetViewOnlyFields(grid, item);
-		
-		HBox hbox = new HBox();
-		hbox.setSpacing(s_hSpace);
-		hbox.setAlignment(Pos.BOTTOM_RIGHT);
-		hbox.getChildren().addAll(editButton, saveButton, closeButton);
-		grid.add(hbox, 0, 7, 2, 7);
-		
-		Scene dialogScene = new Scene(grid);
-		dialog.setScene(dialogScene);
-		dialog.show();
-	}
-	
-	/**
-	 * Method to set an item control's text fields to the properties of a chosen item
-	 * @param control The item control whose text fields to set
-	 * @param item The item whose properties to set to the text fields
-	 */
-	private void setItemProperties(ItemControl control, Item item)
-	{
-		try
-		{
-			item = control.setItemProperties(item);
-		}
-		catch (NumberFormatException e)
-		{
-			showAlertPopup("Invalid Number Format", e.getMessage());
-		}
-		catch (IllegalArgumentException e)
-		{
-			showAlertPopup("Invalid Item Data", e.getMessage());
-		}
-		catch (DuplicateProductNameException e)
-		{
-			showAlertPopup("Duplicate Product Name", "Item \"" + e.getDuplicateName() + "\" already exists in inventory");
-		}
-		
-		updateListViewContents();
-		control.clearTextFields();
-	}
-	
-	private GridPane addAndSetViewOnlyFields(GridPane grid, Item item)
-	{
-		grid.add(new Label("Retail Price ($):"), 0, 5);
-		TextField retailPriceField = new TextField();
-		retailPriceField.setText(String.format("%.2f",item.getRetailPrice()));
-		retailPriceField.setDisable(true);
-		grid.add(retailPriceField, 1, 5);
-		
-		grid.add(new Label("Storage Costs ($):"), 0, 6);
-		TextField storageCostField = new TextField();
-		storageCostField.setText(String.format("%.2f",item.getStorageCost()));
-		storageCostField.setDisable(true);
-		grid.add(storageCostField, 1, 6);
-		
-		return grid;
-	}
-	
-	/**
-	 * Event handler for when toggle sort alphabetically box is checked
-	 * @param e The event that was triggered
-	 */
-	private void onToggleSortCheckBox(ActionEvent e)
-	{
-		_sortItemsByName = !_sortItemsByName;
-		updateListViewContents();
-	}
-	
-	/**
-	 * Event handler for when view item button clicked
-	 * @param e The event that was triggered
-	 */
-	private void onClickViewButton(ActionEvent e)
-	{
-		showViewPopup();
-	}
-	
-	/**
-	 * Event handler for when delete item button clicked
-	 * @param e The event that was triggered
-	 */
-	private void onClickDeleteButton(ActionEvent e)
-	{
-		SelectionModel selectionModel = _listView.getSelectionModel();
-		int index = selectionModel.getSelectedIndex();
-		String name = (String)selectionModel.getSelectedItem();
-		if (name != null)
-		{
-			_inventory.remove(_inventory.get(name));
-			updateListViewContents();
-			 // set selection to next item in list, if out of bounds returns no selection
-			selectionModel.select(index);
-		}
-	}
+/**
+ * Main driver of inventory application. Displays UI for adding and viewing items in inventory.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javafx.application.Application;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionModel;
+import javafx.scene.control.TextField;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.stage.FileChooser;
+import javafx.stage.FileChooser.ExtensionFilter;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+
+public class InventoryApplication extends Application
+{
+	/** Backing inventory for items */
+	private final Inventory<Item> _inventory = new Inventory<>();
+	/** Threads parsing imported files, one task per file */
+	private final ExecutorService _importExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r ->
+	{
+		Thread thread = new Thread(r, "inventory-import");
+		thread.setDaemon(true);
+		return thread;
+	});
+	/** Ranking of items by retail value on hand, shown in the report */
+	private final TopValueView<Item> _topValues = new TopValueView<>(_inventory);
+	/** History of the report totals, sampled periodically */
+	private final TotalsHistory _history = new TotalsHistory(s_historySampleMillis);
+	/** Saves the inventory in the background after it changes, created when the application starts */
+	private AutosaveService<Item> _autosave;
+	/** Restores the autosaved inventory at startup, null once the restore has finished */
+	private InventoryPreloader _preloader;
+	/** Tracks items changed since the autosave was restored or the last full or delta export, skipping restored items */
+	private final ChangeTracker<Item> _changeTracker = new ChangeTracker<>(_inventory, e -> _preloader == null || !_preloader.isAdding());
+	/** Hands inventory changes to the list view in batches on the UI thread, skipping restored items already listed */
+	private final ChangeBatcher<Item> _listChanges = new ChangeBatcher<>(_inventory, Platform::runLater, this::applyListChanges,
+		e -> _preloader == null || !_preloader.isAdding(), ChangeBatcher.s_defaultMaxBatchSize);
+	/** True if displayed items are sorted by name, otherwise sort by order added */
+	private boolean _sortItemsByName = false;
+	/** True if imports update items with matching names instead of failing on duplicates */
+	private boolean _mergeOnImport = false;
+	/** True if merge imports remove items missing from the imported files */
+	private boolean _removeMissingOnMerge = false;
+	/** How imports treat rows whose names are close to the name of an existing item */
+	private SimilarNames _similarNames = SimilarNames.ALLOW;
+	/** Observable list of item names in inventory */
+    private final ObservableList<String> _itemNames = FXCollections.observableArrayList();
+	/** ListView for displaying items in UI */
+	private final ListView _listView = new ListView();
+	/** Container for the text fields for adding items */
+	private final ItemControl _control = new ItemControl();
+	/** Reference to home stage where most user actions occur*/
+	private Stage _homeStage;
+	/** List view width */
+	private static final int s_listViewWidth = 200;
+	/** List view height */
+	private static final int s_listViewHeight = 250;
+	/** Vertical gap spacing */
+	private static final int s_vSpace = 10;
+	/** Horizontal gap spacing */
+	private static final int s_hSpace = 10;
+	/** Vertical inset pad spacing */
+	private static final int s_vPad = 15;
+	/** Horizontal inset pad spacing */
+	private static final int s_hPad = 12;
+	/** Vertical inset spacing for grid */
+	private static final int s_gridVPad = 25;
+	/** Horizontal inset spacing for grid */
+	private static final int s_gridHPad = 25;
+	/** Width for the navigation panel buttons */
+	private static final int s_navButtonWidth = 100;
+	/** Height for the navigation panel buttons*/
+	private static final int s_navButtonHeight = 20;
+	/** Width for item change buttons */
+	private static final int s_itemButtonWidth = 80;
+	/** Height for item change buttons */
+	private static final int s_itemButtonHeight = 20;
+	/** Interval between samples of the report totals, in milliseconds */
+	private static final long s_historySampleMillis = 10000;
+	/** File the totals history is saved to, in the autosave directory */
+	private static final String s_historyFileName = "history.bin";
+	/** Number of most valuable items listed in the report */
+	private static final int s_reportTopCount = 5;
+	/** Application name for display on main stage */
+	private static final String s_appTitle = "Inventory Application";
+	/** File the inventory is autosaved to, relative to the user's home directory */
+	private static final String s_autosavePath = ".inventory/autosave.csv.gz";
+	/** Time without changes after which an autosave starts, in milliseconds */
+	private static final long s_autosaveQuietMillis = 2000;
+	/** Longest time a change waits before an autosave starts, in milliseconds */
+	private static final long s_autosaveMaxDelayMillis = 30000;
+	/** Shortest name matched with one typing mistake, shorter names only match case and spacing */
+	private static final int s_minOneTypoNameLength = 5;
+	/** Shortest name matched with two typing mistakes */
+	private static final int s_minTwoTyposNameLength = 16;
+	/** Number of similar names listed after an import */
+	private static final int s_similarNamesShown = 20;
+	/** Most removals and renames edited into the list view in place, larger batches rebuild it */
+	private static final int s_maxListEdits = 16;
+	
+	/** How imports treat rows whose names are close to the name of an existing item */
+	private enum SimilarNames
+	{
+		/** Add the row as a new item */
+		ALLOW,
+		/** Add the row as a new item and list the pair after the import */
+		FLAG,
+		/** Copy the row's weight, price, and quantity into the existing item */
+		MERGE
+	}
+	
+	/** Main entry point for inventory application */
+	public static void main(String[] args)
+	{
+		launch(args);
+	}
+	
+	@Override
+	public void start(Stage stage)
+	{
+		_homeStage = stage;
+		_inventory.setOwner(Platform::runLater);
+		Parent ui = createUI();
+		_control.requestFocus();
+		Scene scene = new Scene(ui);
+		stage.setScene(scene);
+		stage.setTitle(s_appTitle);
+		stage.show();
+		startHistory();
+		startPreload();
+	}
+	
+	@Override
+	public void stop()
+	{
+		if (_preloader != null && _preloader.isModified())
+		{
+			// finish the restore so changes made during it are saved along with the restored items
+			_preloader.finish();
+		}
+		else if (_preloader != null)
+		{
+			// the autosave file still holds everything, so the restore can simply stop
+			_preloader.close();
+		}
+		if (_autosave != null)
+		{
+			try
+			{
+				_autosave.close();
+				_history.save(getHistoryFile());
+			}
+			catch (IOException e)
+			{
+				// the last completed autosave remains in place
+			}
+		}
+		else if (getHistoryFile().getParentFile().isDirectory())
+		{
+			try
+			{
+				_history.save(getHistoryFile());
+			}
+			catch (IOException e)
+			{
+				// the history starts again on the next run
+			}
+		}
+	}
+	
+	/** Restores the saved totals history and starts sampling the totals on the UI thread */
+	private void startHistory()
+	{
+		if (getHistoryFile().isFile())
+		{
+			try
+			{
+				_history.load(getHistoryFile());
+			}
+			catch (IOException e)
+			{
+				// start a new history rather than fail
+			}
+		}
+		
+		Timeline sampler = new Timeline(new KeyFrame(Duration.millis(s_historySampleMillis), e -> _history.sample(_inventory)));
+		sampler.setCycleCount(Timeline.INDEFINITE);
+		sampler.play();
+		_history.sample(_inventory);
+	}
+	
+	/**
+	 * Get method for the file the totals history is saved to
+	 * @returns The history file next to the autosave file
+	 */
+	private File getHistoryFile()
+	{
+		return new File(getAutosaveFile().getParentFile(), s_historyFileName);
+	}
+	
+	/**
+	 * Get method for the file the inventory is autosaved to
+	 * @returns The autosave file in the user's home directory
+	 */
+	private File getAutosaveFile()
+	{
+		return new File(System.getProperty("user.home"), s_autosavePath);
+	}
+	
+	/**
+	 * Restores the autosaved pricing policy, then the autosaved inventory in the background while
+	 * the window is in use, listing names as they are read, then starts autosaving
+	 */
+	private void startPreload()
+	{
+		File file = getAutosaveFile();
+		try
+		{
+			// products are priced by the saved policy as they are restored
+			PricingPolicy policy = InventorySnapshot.readPricingPolicy(file);
+			if (policy != null)
+			{
+				_inventory.reprice(policy);
+			}
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			showAlertPopup("Pricing Restore Failed", e.getMessage());
+		}
+		if (!file.isFile())
+		{
+			startAutosave();
+			return;
+		}
+		
+		_preloader = new InventoryPreloader(file, _inventory, Platform::runLater, names -> _itemNames.addAll(names), this::onPreloadDone);
+	}
+	
+	/**
+	 * Starts autosaving once the restore has finished. A file that could not be read completely is
+	 * kept under another name rather than being replaced by the items that were restored.
+	 */
+	private void onPreloadDone()
+	{
+		Exception error = _preloader.getError();
+		File file = _preloader.getFile();
+		boolean modified = _preloader.isModified();
+		_preloader = null;
+		if (_sortItemsByName)
+		{
+			updateListViewContents();
+		}
+		
+		File kept = new File(file.getPath() + ".failed");
+		if (error != null && (!kept.exists() || kept.delete()) && file.renameTo(kept))
+		{
+			modified = true;
+		}
+		startAutosave();
+		if (_autosave != null && modified)
+		{
+			_autosave.markDirty();
+		}
+		if (error != null)
+		{
+			showAlertPopup("Inventory Restore Failed", "Could not restore " + file.getPath() + ": " + error.getMessage());
+		}
+	}
+	
+	/** Waits for the restore to finish, for operations that need the whole inventory */
+	private void finishPreload()
+	{
+		if (_preloader != null)
+		{
+			_preloader.finish();
+		}
+	}
+	
+	/**
+	 * Get an item by name, restoring it ahead of the rest if it has been read but not yet added
+	 * @param name The name of the item
+	 * @returns The item, or null if there is none
+	 */
+	private Item getItem(String name)
+	{
+		return _preloader != null ? _preloader.fetch(name) : _inventory.get(name);
+	}
+	
+	/** Starts saving the inventory in the background after each change */
+	private void startAutosave()
+	{
+		File file = getAutosaveFile();
+		File dir = file.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs())
+		{
+			showAlertPopup("Autosave Disabled", "Could not create " + dir.getPath());
+			return;
+		}
+		
+		_autosave = new AutosaveService<>(_inventory, file, s_autosaveQuietMillis, s_autosaveMaxDelayMillis, Platform::runLater);
+	}
+	
+	/**
+	 * Create layout for the initial UI scene on home stage
+	 * @returns The initial UI layout
+	 */
+	private Parent createUI()
+	{
+		BorderPane border = new BorderPane();
+		border.setTop(createHeader());
+		border.setLeft(createControlToolbar());
+		border.setCenter(makeItemControlPanel(_control));
+		border.setRight(addInventoryListViewNode());
+		
+		return border;
+	}
+	
+	/**
+	 * create the header panel for home stage UI scene
+	 * @returns The Node containing header element
+	 */
+	private Node createHeader()
+	{
+		HBox hbox = new HBox();
+		hbox.setPadding(new Insets(s_vPad, s_hPad, s_vPad, s_hPad));
+		
+		return hbox;
+	}
+	
+	/**
+	 * Create the left side control bar
+	 * @returns The Node containing the left side control bar
+	 */
+	private Node createControlToolbar()
+	{
+		VBox vbox = new VBox();
+		vbox.setPadding(new Insets(s_vPad, s_hPad, s_vPad, s_hPad));
+		vbox.setSpacing(s_vSpace);
+		
+		Button report = makeReportButton();
+		Button fileReport = makeFileReportButton();
+		Button pricing = makePricingButton();
+		Button import_ = makeImportButton();
+		CheckBox mergeCheckBox = new CheckBox("Merge");
+		CheckBox removeMissingCheckBox = new CheckBox("Remove missing");
+		removeMissingCheckBox.setDisable(true);
+		mergeCheckBox.setOnAction(e ->
+		{
+			_mergeOnImport = mergeCheckBox.isSelected();
+			removeMissingCheckBox.setDisable(!_mergeOnImport);
+		});
+		removeMissingCheckBox.setOnAction(e -> _removeMissingOnMerge = removeMissingCheckBox.isSelected());
+		ChoiceBox<SimilarNames> similarNames = new ChoiceBox<>(FXCollections.observableArrayList(SimilarNames.values()));
+		similarNames.setValue(_similarNames);
+		similarNames.setOnAction(e -> _similarNames = similarNames.getValue());
+		Button export = makeExportButton();
+		Button exportDelta = makeExportDeltaButton();
+		
+		Button close = makeButton("Close");
+		close.setPrefSize(s_navButtonWidth, s_navButtonHeight);
+		close.setOnAction(e -> _homeStage.close());
+		
+		
+		VBox footer = new VBox();
+		footer.setAlignment(Pos.BOTTOM_CENTER);
+		VBox.setVgrow(footer, Priority.ALWAYS);
+		footer.getChildren().add(close);
+		
+		vbox.getChildren().addAll(
+			report,
+			fileReport,
+			pricing,
+			import_,
+			mergeCheckBox,
+			removeMissingCheckBox,
+			new Label("Similar names:"),
+			similarNames,
+			export,
+			exportDelta,
+			footer
+		);
+		
+		return vbox;
+	}
+	
+	/**
+	 * Create the report button to display inventory totals
+	 * @returns The report button element
+	 */
+	private Button makeReportButton()
+	{
+		Button report = makeButton("Report");
+		report.setPrefSize(s_navButtonWidth, s_navButtonHeight);
+		report.setOnAction(
+			new EventHandler<ActionEvent>()
+			{
+				@Override
+				public void handle(ActionEvent e)
+				{
+					finishPreload();
+					final Stage dialog = new Stage();
+					dialog.initModality(Modality.APPLICATION_MODAL);
+					dialog.initOwner(_homeStage);
+					VBox dialogVbox = new VBox(s_vSpace);
+					dialogVbox.setPadding(new Insets(s_vPad, s_hPad, s_vPad, s_hPad));
+					Text title = new Text("Inventory Report");
+					title.setFont(Font.font("Tahoma", FontWeight.NORMAL, 20));
+					ReportEvent event = new ReportEvent();
+					event.begin();
+					int totalProducts = _inventory.getTotalProductsInStock();
+					int totalItems = _inventory.getTotalItemsInStock();
+					double totalWholesale = _inventory.getTotalWholesalePrice();
+					double totalRetail = _inventory.getTotalRetailPrice();
+					if (event.shouldCommit())
+					{
+						event.productCount = totalProducts;
+						event.itemCount = totalItems;
+						event.wholesaleTotal = totalWholesale;
+						event.retailTotal = totalRetail;
+						event.commit();
+					}
+					dialogVbox.getChildren().addAll(
+						title,
+						new Text("Total Products: " + totalProducts),
+						new Text(String.format("Items in Stock: %,d", totalItems)),
+						new Text(String.format("Total Wholesale Price: $%,.2f", totalWholesale)),
+						new Text(String.format("Total Retail Price: $%,.2f", totalRetail))
+					);
+					List<Item> topItems = _topValues.getTop(s_reportTopCount);
+					if (!topItems.isEmpty())
+					{
+						dialogVbox.getChildren().add(new Text("Most Valuable Items:"));
+						for (Item item : topItems)
+						{
+							double value = item.getRetailPrice() * item.getQuantityInStock();
+							dialogVbox.getChildren().add(new Text(String.format("  %s: $%,.2f", item.getName(), value)));
+						}
+					}
+					dialogVbox.getChildren().add(makeHistoryChart());
+					Scene dialogScene = new Scene(dialogVbox, 420, 520 + 20 * (topItems.size() + 1));
+					dialog.setScene(dialogScene);
+					dialog.show();
+				}
+			}
+		);
+		
+		return report;
+	}
+	
+	/**
+	 * Create the button reporting the totals of files on disk without importing them
+	 * @returns The file report button element
+	 */
+	private Button makeFileReportButton()
+	{
+		Button fileReport = makeButton("File Report");
+		fileReport.setPrefSize(s_navButtonWidth, s_navButtonHeight);
+		fileReport.setOnAction(e -> onClickFileReportButton(e));
+		
+		return fileReport;
+	}
+	
+	/**
+	 * Event handler for file report button click. The files are summarized on a background
+	 * thread so the window stays usable while large files are read.
+	 * @param e The event that was triggered
+	 */
+	private void onClickFileReportButton(ActionEvent e)
+	{
+		FileChooser fc = new FileChooser();
+		fc.setInitialDirectory(new File(System.getProperty("user.home")));
+		ExtensionFilter csvFilter = new ExtensionFilter("CSV files (*.csv, *.csv.gz)", "*.csv", "*.csv.gz");
+		fc.getExtensionFilters().add(csvFilter);
+		List<File> fileList = fc.showOpenMultipleDialog(_homeStage);
+		if (fileList == null)
+		{
+			return;
+		}
+		
+		PricingPolicy policy = _inventory.getPricingPolicy();
+		Thread summarizer = new Thread(() ->
+		{
+			try
+			{
+				CsvReport report = CsvReport.summarize(fileList, _importExecutor, policy);
+				Platform.runLater(() -> showFileReport(fileList, report));
+			}
+			catch (IOException | IllegalArgumentException ex)
+			{
+				Platform.runLater(() -> showImportError(ex));
+			}
+		}, "inventory-file-report");
+		summarizer.setDaemon(true);
+		summarizer.start();
+	}
+	
+	/**
+	 * Shows the totals of files summarized without importing them
+	 * @param files The files summarized
+	 * @param report The totals of the files
+	 */
+	private void showFileReport(List<File> files, CsvReport report)
+	{
+		final Stage dialog = new Stage();
+		dialog.initOwner(_homeStage);
+		VBox dialogVbox = new VBox(s_vSpace);
+		dialogVbox.setPadding(new Insets(s_vPad, s_hPad, s_vPad, s_hPad));
+		Text title = new Text(files.size() == 1 ? "Report of " + files.get(0).getName() : "Report of " + files.size() + " Files");
+		title.setFont(Font.font("Tahoma", FontWeight.NORMAL, 20));
+		dialogVbox.getChildren().addAll(
+			title,
+			new Text(String.format("Total Products: %,d", report.getProductCount())),
+			new Text(String.format("Items in Stock: %,d", report.getItemCount())),
+			new Text(String.format("Total Wholesale Price: $%,.2f", report.getWholesaleTotal())),
+			new Text(String.format("Total Retail Price: $%,.2f", report.getRetailTotal())),
+			new Text(String.format("Read %,d bytes in %.1f seconds", report.getByteCount(), report.getNanos() / 1e9))
+		);
+		dialog.setScene(new Scene(dialogVbox, 360, 220));
+		dialog.show();
+	}
+	
+	/**
+	 * Create a chart of the wholesale and retail totals over time, with a choice of resolution
+	 * @returns The Node containing the chart
+	 */
+	private Node makeHistoryChart()
+	{
+		NumberAxis xAxis = new NumberAxis();
+		NumberAxis yAxis = new NumberAxis();
+		yAxis.setLabel("Total ($)");
+		LineChart<Number, Number> chart = new LineChart<>(xAxis, yAxis);
+		chart.setCreateSymbols(false);
+		chart.setPrefHeight(280);
+		
+		ChoiceBox<TotalsHistory.Resolution> resolution = new ChoiceBox<>(FXCollections.observableArrayList(TotalsHistory.Resolution.values()));
+		resolution.setOnAction(e -> fillHistoryChart(chart, resolution.getValue()));
+		resolution.setValue(TotalsHistory.Resolution.SAMPLE);
+		fillHistoryChart(chart, TotalsHistory.Resolution.SAMPLE);
+		
+		HBox choice = new HBox(s_hSpace, new Label("History by:"), resolution);
+		choice.setAlignment(Pos.CENTER_LEFT);
+		return new VBox(s_vSpace, choice, chart);
+	}
+	
+	/**
+	 * Replace the contents of the history chart with the totals at a resolution
+	 * @param chart The chart to fill
+	 * @param resolution The resolution to show
+	 */
+	private void fillHistoryChart(LineChart<Number, Number> chart, TotalsHistory.Resolution resolution)
+	{
+		TotalsHistory.Series series = _history.getSeries(resolution);
+		// samples are shown in minutes ago, minutes in hours ago, and hours and days in days ago
+		double unitMillis = resolution == TotalsHistory.Resolution.SAMPLE ? 60000 
+			: (resolution == TotalsHistory.Resolution.MINUTE ? 3600000 : 86400000);
+		String unit = resolution == TotalsHistory.Resolution.SAMPLE ? "Minutes" 
+			: (resolution == TotalsHistory.Resolution.MINUTE ? "Hours" : "Days");
+		chart.getXAxis().setLabel(unit + " ago");
+		
+		long now = System.currentTimeMillis();
+		XYChart.Series<Number, Number> wholesale = new XYChart.Series<>();
+		wholesale.setName("Wholesale");
+		XYChart.Series<Number, Number> retail = new XYChart.Series<>();
+		retail.setName("Retail");
+		for (int i = 0; i < series.size(); i++)
+		{
+			double x = (series.getTime(i) - now) / unitMillis;
+			wholesale.getData().add(new XYChart.Data<>(x, series.getWholesalePrice(i)));
+			retail.getData().add(new XYChart.Data<>(x, series.getRetailPrice(i)));
+		}
+		List<XYChart.Series<Number, Number>> data = new ArrayList<>(2);
+		data.add(wholesale);
+		data.add(retail);
+		chart.getData().setAll(data);
+	}
+	
+	/**
+	 * Create the pricing button to change the markup factor and storage rate of all items
+	 * @returns The pricing button element
+	 */
+	private Button makePricingButton()
+	{
+		Button pricing = makeButton("Pricing");
+		pricing.setPrefSize(s_navButtonWidth, s_navButtonHeight);
+		pricing.setOnAction(e -> showPricingPopup());
+		
+		return pricing;
+	}
+	
+	/**
+	 * Show popup to edit the global markup factor and storage rate and reprice the inventory
+	 */
+	private void showPricingPopup()
+	{
+		final Stage dialog = new Stage();
+		dialog.initModality(Modality.APPLICATION_MODAL);
+		dialog.initOwner(_homeStage);
+		
+		PricingPolicy policy = _inventory.getPricingPolicy();
+		TextField markupField = new TextField();
+		TextField storageRateField = new TextField();
+		if (policy instanceof GlobalPricingPolicy)
+		{
+			markupField.setText(String.valueOf(((GlobalPricingPolicy)policy).getMarkupFactor()));
+			storageRateField.setText(String.valueOf(((GlobalPricingPolicy)policy).getStorageRate()));
+		}
+		
+		Button applyButton = makeButton("Apply");
+		applyButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
+		applyButton.setOnAction(e ->
+		{
+			try
+			{
+				double markupFactor = Double.parseDouble(markupField.getText());
+				double storageRate = Double.parseDouble(storageRateField.getText());
+				_inventory.reprice(new GlobalPricingPolicy(markupFactor, storageRate));
+				dialog.close();
+			}
+			catch (NumberFormatException ex)
+			{
+				showAlertPopup("Invalid Number Format", ex.getMessage());
+			}
+			catch (IllegalArgumentException ex)
+			{
+				showAlertPopup("Invalid Pricing", ex.getMessage());
+			}
+		});
+		
+		Button closeButton = makeButton("Close");
+		closeButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
+		closeButton.setOnAction(e -> dialog.close());
+		
+		GridPane grid = createGridPane();
+		grid = addPanelTitle(grid, "Pricing");
+		grid.add(new Label("Markup Factor:"), 0, 1);
+		grid.add(markupField, 1, 1);
+		grid.add(new Label("Storage Rate ($/lb):"), 0, 2);
+		grid.add(storageRateField, 1, 2);
+		
+		HBox hbox = new HBox();
+		hbox.setSpacing(s_hSpace);
+		hbox.setAlignment(Pos.BOTTOM_RIGHT);
+		hbox.getChildren().addAll(applyButton, closeButton);
+		grid.add(hbox, 0, 3, 2, 1);
+		
+		dialog.setScene(new Scene(grid));
+		dialog.show();
+	}
+	
+	/**
+	 * Create buttons with uniform size
+	 * @returns The button element
+	 */
+	private Button makeButton(String name)
+	{
+		Button button = new Button(name);
+		return button;
+	}
+	
+	/**
+	 * Create the import button
+	 * @returns The import button element
+	 */
+	private Button makeImportButton()
+	{
+		Button importButton = makeButton("Import");
+		importButton.setPrefSize(s_navButtonWidth, s_navButtonHeight);
+		importButton.setOnAction(e -> onClickImportButton(e));
+		
+		return importButton;
+	}
+	
+	/**
+	 * Event handler for the event triggered when import button clicked
+	 * @param e The event that was triggered
+	 */
+	private void onClickImportButton(ActionEvent e)
+	{
+		FileChooser fc = new FileChooser();
+		fc.setInitialDirectory(new File(System.getProperty("user.home")));
+		ExtensionFilter csvFilter = new ExtensionFilter("CSV files (*.csv, *.csv.gz)", "*.csv", "*.csv.gz");
+		fc.getExtensionFilters().add(csvFilter);
+		List<File> fileList = fc.showOpenMultipleDialog(_homeStage);
+		if (fileList != null && _mergeOnImport)
+		{
+			mergeInventory(fileList);
+		}
+		else if (fileList != null)
+		{
+			importInventory(fileList);
+		}
+	}
+	
+	/**
+	 * Reads all rows of the selected files and merges them into the inventory in one batch.
+	 * Items with matching names are updated, new names are added, and if requested
+	 * items missing from every file are removed. Nothing is merged if any file fails to parse.
+	 * Rows whose names are close to an existing item's name are flagged or merged into that item
+	 * first, by taking its name, if requested. The files are parsed on background threads and
+	 * merged on the application thread once every file has been parsed.
+	 * @param files The comma-separated files to merge
+	 */
+	private void mergeInventory(List<File> files)
+	{
+		finishPreload();
+		InventoryFile.parseAll(files, _importExecutor)
+			.thenAccept(parsedFiles -> Platform.runLater(() -> mergeParsedFiles(parsedFiles)));
+	}
+	
+	/**
+	 * Merges parsed files into the inventory, unless any file failed to parse
+	 * @param parsedFiles The parsed files in the order selected
+	 */
+	private void mergeParsedFiles(List<InventoryFile> parsedFiles)
+	{
+		List<Item> items = new ArrayList<>();
+		for (InventoryFile parsed : parsedFiles)
+		{
+			if (parsed.getError() != null)
+			{
+				showImportError(parsed.getError());
+				return;
+			}
+			items.addAll(parsed.getItems());
+		}
+		
+		List<String> similar = new ArrayList<>();
+		for (Item item : items)
+		{
+			Item match = findSimilarItem(item.getName());
+			if (match != null && _similarNames == SimilarNames.MERGE)
+			{
+				// the parsed item is not in any list yet, so it can take the existing name
+				item.setName(match.getName());
+			}
+			else if (match != null)
+			{
+				similar.add(describeSimilarNames(item.getName(), match.getName()));
+			}
+		}
+		
+		try
+		{
+			_inventory.merge(items, _removeMissingOnMerge);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// products merged before the one refused keep their new values
+			showImportError(e);
+			return;
+		}
+		showSimilarNames(similar);
+	}
+	
+	/**
+	 * Method to read comma-separated text files, create the items specified,
+	 * and add them to the inventory. Files ending in .gz are read as compressed.
+	 * Files are parsed concurrently on background threads, then added on the application thread
+	 * in the order given so item order and the handling of duplicate names do not depend on
+	 * which file parsed first.
+	 * @param files The comma-separated files to read
+	 */
+	private void importInventory(List<File> files)
+	{
+		finishPreload();
+		InventoryFile.parseAll(files, _importExecutor)
+			.thenAccept(parsedFiles -> Platform.runLater(() -> addParsedFiles(parsedFiles)));
+	}
+	
+	/**
+	 * Adds the items of parsed files to the inventory
+	 * @param parsedFiles The parsed files in the order selected
+	 */
+	private void addParsedFiles(List<InventoryFile> parsedFiles)
+	{
+		List<String> similar = new ArrayList<>();
+		for (InventoryFile parsed : parsedFiles)
+		{
+			addImportedItems(parsed, similar);
+		}
+		
+		showSimilarNames(similar);
+	}
+	
+	/**
+	 * Adds the items parsed from one file to the inventory, stopping at the first duplicate name
+	 * or at the first similar item that cannot take the imported quantity, such as one below the
+	 * quantity reserved. Items parsed before a parse error are added before the error is reported.
+	 * Items whose names are close to an existing item's name are flagged or merged if requested.
+	 * @param parsed The parsed file
+	 * @param similar The list to add descriptions of flagged names to
+	 */
+	private void addImportedItems(InventoryFile parsed, List<String> similar)
+	{
+		ImportEvent event = new ImportEvent();
+		event.begin();
+		long startTime = System.nanoTime();
+		try
+		{
+			for (Item item : parsed.getItems())
+			{
+				event.failedItem = item.getName();
+				Item match = findSimilarItem(item.getName());
+				if (match != null && _similarNames == SimilarNames.MERGE)
+				{
+					match.setWeight(item.getWeight());
+					match.setWholesalePrice(item.getWholesalePrice());
+					match.setQuantityInStock(item.getQuantityInStock());
+				}
+				else
+				{
+					_inventory.add(item);
+				}
+				if (match != null && _similarNames == SimilarNames.FLAG)
+				{
+					similar.add(describeSimilarNames(item.getName(), match.getName()));
+				}
+				event.failedItem = null;
+			}
+			if (parsed.getError() instanceof ItemParseException)
+			{
+				event.failedItem = ((ItemParseException)parsed.getError()).getName();
+			}
+			if (parsed.getError() != null)
+			{
+				showImportError(parsed.getError());
+			}
+		}
+		catch (DuplicateProductNameException | IllegalArgumentException e)
+		{
+			showImportError(e);
+		}
+		finally
+		{
+			if (event.shouldCommit())
+			{
+				event.file = parsed.getFile().getPath();
+				event.byteCount = parsed.getFile().length();
+				event.rowCount = parsed.getItems().size();
+				event.parseNanos = parsed.getParseNanos();
+				event.addNanos = System.nanoTime() - startTime;
+				event.commit();
+			}
+		}
+	}
+	
+	/**
+	 * Finds the existing item whose name is closest to an imported name, when imports check for
+	 * similar names. Names differing only in case and spacing always match; longer names also
+	 * match with one or two typing mistakes. Names differing only in their numbers usually mark
+	 * different sizes or models and do not match.
+	 * @param name The imported name
+	 * @returns The closest item, or null if there is none or an item has exactly the name
+	 */
+	private Item findSimilarItem(String name)
+	{
+		if (_similarNames == SimilarNames.ALLOW || _inventory.get(name) != null)
+		{
+			return null;
+		}
+		
+		int maxDistance = name.length() < s_minOneTypoNameLength ? 0 : name.length() < s_minTwoTyposNameLength ? 1 : 2;
+		String letters = name.replaceAll("[0-9]", "");
+		for (Item match : _inventory.findSimilar(name, maxDistance))
+		{
+			String matchLetters = match.getName().replaceAll("[0-9]", "");
+			if (FuzzyNameIndex.distance(letters, matchLetters, 0) > 0
+				|| FuzzyNameIndex.distance(name, match.getName(), 0) == 0)
+			{
+				return match;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Formats a pair of similar names for the list shown after an import
+	 * @param imported The imported name
+	 * @param existing The name of the existing item
+	 * @returns The description of the pair
+	 */
+	private String describeSimilarNames(String imported, String existing)
+	{
+		return "\"" + imported + "\" is similar to \"" + existing + "\"";
+	}
+	
+	/**
+	 * Lists the first of the similar names flagged by an import
+	 * @param similar Descriptions of the flagged names, nothing is shown if empty
+	 */
+	private void showSimilarNames(List<String> similar)
+	{
+		if (similar.isEmpty())
+		{
+			return;
+		}
+		
+		StringBuilder message = new StringBuilder();
+		for (String pair : similar.subList(0, Math.min(similar.size(), s_similarNamesShown)))
+		{
+			message.append(pair).append('\n');
+		}
+		if (similar.size() > s_similarNamesShown)
+		{
+			message.append("and ").append(similar.size() - s_similarNamesShown).append(" more");
+		}
+		
+		Alert a = new Alert(Alert.AlertType.INFORMATION);
+		a.setTitle("Import");
+		a.setHeaderText(similar.size() + " imported names are similar to existing items");
+		a.setContentText(message.toString());
+		a.showAndWait();
+	}
+	
+	/**
+	 * Shows the popup for an error that stopped an import
+	 * @param e The error that stopped the import
+	 */
+	private void showImportError(Exception e)
+	{
+		if (e instanceof DuplicateProductNameException)
+		{
+			String name = ((DuplicateProductNameException)e).getDuplicateName();
+			showAlertPopup("Duplicate Product Name", "Item \"" + name + "\" already exists in inventory");
+		}
+		else if (e instanceof NumberFormatException
+			|| (e instanceof ItemParseException && ((ItemParseException)e).isNumberFormat()))
+		{
+			showAlertPopup("Invalid Number Format", e.getMessage());
+		}
+		else if (e instanceof IllegalArgumentException)
+		{
+			showAlertPopup("Invalid Item Data", e.getMessage());
+		}
+		else
+		{
+			showAlertPopup("File Import Failed", e.getMessage());
+		}
+	}
+	
+	/**
+	 * Creates and formats a popup to display error message
+	 * @param header The alert header to use
+	 * @param message The error message to display
+	 */
+	private void showAlertPopup(String header, String message)
+	{
+		Alert a = new Alert(Alert.AlertType.ERROR);
+		a.setTitle("Error");
+		a.setHeaderText(header);
+		a.setContentText(message);
+		a.showAndWait();
+	}
+	
+	/**
+	 * Method to update values stored in the _itemNames observable list when inventory changes.
+	 * Rebuilds the whole list in one change, which then reflects every pending inventory change.
+	 */
+	private void updateListViewContents()
+	{
+		List<String> names = new ArrayList<>(_inventory.getTotalProductsInStock());
+		if (_sortItemsByName)
+		{
+			for (Item item : _inventory.getSortedProductsByName())
+			{
+				names.add(item.getName());
+			}
+		}
+		else
+		{
+			for (Item item : _inventory)
+			{
+				names.add(item.getName());
+			}
+		}
+		if (_preloader != null)
+		{
+			// names read from the autosave file are listed before their items are added
+			names.addAll(_preloader.getPendingNames());
+		}
+		_itemNames.setAll(names);
+		_listChanges.discard();
+	}
+	
+	/**
+	 * Applies a batch of inventory changes to the _itemNames observable list. A few removals and
+	 * renames are edited in place and additions are appended in one change. Batches too large to
+	 * list, many removals and renames, and additions or renames while sorted by name rebuild the
+	 * list instead.
+	 * @param batch The inventory changes since the list was last updated
+	 */
+	private void applyListChanges(ChangeBatcher.Batch<Item> batch)
+	{
+		int edits = batch.getRemoved().size() + batch.getRenamed().size();
+		if (batch.isReload() || edits > s_maxListEdits || (_sortItemsByName && (!batch.getAdded().isEmpty() || !batch.getRenamed().isEmpty())))
+		{
+			updateListViewContents();
+			return;
+		}
+		
+		// find every position before editing, since a name can be removed and taken by another item
+		int[] renamed = new int[batch.getRenamed().size()];
+		for (int i = 0; i < renamed.length; i++)
+		{
+			renamed[i] = _itemNames.indexOf(batch.getRenamedFrom().get(i));
+		}
+		List<Integer> removed = new ArrayList<>();
+		for (String name : batch.getRemoved())
+		{
+			removed.add(_itemNames.indexOf(name));
+		}
+		
+		for (int i = 0; i < renamed.length; i++)
+		{
+			if (renamed[i] >= 0)
+			{
+				_itemNames.set(renamed[i], batch.getRenamed().get(i).getName());
+			}
+		}
+		removed.sort(null);
+		for (int i = removed.size() - 1; i >= 0; i--)
+		{
+			if (removed.get(i) >= 0)
+			{
+				_itemNames.remove((int)removed.get(i));
+			}
+		}
+		List<String> added = new ArrayList<>(batch.getAdded().size());
+		for (Item item : batch.getAdded())
+		{
+			added.add(item.getName());
+		}
+		_itemNames.addAll(added);
+	}
+	
+	/**
+	 * Creates the export button
+	 * @returns The button that was created
+	 */
+	private Button makeExportButton()
+	{
+		Button export = makeButton("Export");
+		export.setPrefSize(s_navButtonWidth, s_navButtonHeight);
+		export.setOnAction(e -> onClickExportButton(e));
+		
+		return export;
+	}
+	
+	/**
+	 * Event handler for export buttone click
+	 * @param e The event that was triggered
+	 */
+	private void onClickExportButton(ActionEvent e)
+	{
+		FileChooser fc = new FileChooser();
+		fc.setInitialDirectory(new File(System.getProperty("user.home")));
+		ExtensionFilter csvFilter = new ExtensionFilter("CSV files (*.csv)", "*.csv");
+		ExtensionFilter compressedFilter = new ExtensionFilter("Compressed CSV files (*.csv.gz)", "*.csv.gz");
+		fc.getExtensionFilters().addAll(csvFilter, compressedFilter);
+		File file = fc.showSaveDialog(_homeStage);
+		if (file != null)
+		{
+			exportInventory(file);
+		}
+	}
+	
+	/**
+	 * Creates the button exporting only changes since the last export
+	 * @returns The button that was created
+	 */
+	private Button makeExportDeltaButton()
+	{
+		Button exportDelta = makeButton("Export Delta");
+		exportDelta.setPrefSize(s_navButtonWidth, s_navButtonHeight);
+		exportDelta.setOnAction(e -> onClickExportDeltaButton(e));
+		
+		return exportDelta;
+	}
+	
+	/**
+	 * Event handler for export delta button click
+	 * @param e The event that was triggered
+	 */
+	private void onClickExportDeltaButton(ActionEvent e)
+	{
+		FileChooser fc = new FileChooser();
+		fc.setInitialDirectory(new File(System.getProperty("user.home")));
+		ExtensionFilter deltaFilter = new ExtensionFilter("Delta files (*.delta)", "*.delta");
+		fc.getExtensionFilters().add(deltaFilter);
+		File file = fc.showSaveDialog(_homeStage);
+		if (file != null)
+		{
+			finishPreload();
+			try
+			{
+				InventoryDelta.write(file, _changeTracker);
+			}
+			catch (IOException ex)
+			{
+				showAlertPopup("Delta Export Failed", ex.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Exports the inventory contents to comma-delimited file.
+	 * Files ending in .gz are written compressed, deflating blocks in parallel.
+	 * @param file The file to write the inventory contents
+	 */
+	private void exportInventory(File file)
+	{
+		finishPreload();
+		ExportEvent event = new ExportEvent();
+		event.begin();
+		try
+		{
+			if (InventoryFile.isCompressed(file))
+			{
+				exportCompressedInventory(file, event);
+			}
+			else
+			{
+				exportCsvInventory(file, event);
+			}
+			_changeTracker.checkpoint();
+		}
+		catch (Exception e)
+		{
+			showAlertPopup("Inventory Export Failed", e.getMessage());
+		}
+		finally
+		{
+			if (event.shouldCommit())
+			{
+				event.file = file.getPath();
+				event.commit();
+			}
+		}
+	}
+	
+	/**
+	 * Writes the inventory contents to a plain comma-delimited file
+	 * @param file The file to write the inventory contents
+	 * @param event The export event recording row and byte counts
+	 * @throws IOException if the file cannot be written
+	 */
+	private void exportCsvInventory(File file, ExportEvent event) throws IOException
+	{
+		String line;
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8)))
+		{
+			for (Item item : _inventory)
+			{
+				line = item.toString() + "\n";
+				writer.write(line);
+				event.rowCount++;
+			}
+		}
+		// the encoded size on disk, as imports record it, since names may hold multi-byte characters
+		event.byteCount = file.length();
+	}
+	
+	/**
+	 * Writes the inventory contents to a gzip-compressed comma-delimited file
+	 * @param file The file to write the inventory contents
+	 * @param event The export event recording row and byte counts
+	 * @throws IOException if the file cannot be written
+	 */
+	private void exportCompressedInventory(File file, ExportEvent event) throws IOException
+	{
+		CompressedCsvWriter writer = new CompressedCsvWriter(new BufferedOutputStream(new FileOutputStream(file)));
+		try (writer)
+		{
+			for (Item item : _inventory)
+			{
+				writer.writeLine(item.toString());
+				event.rowCount++;
+			}
+		}
+		// the last blocks are only written when the writer closes
+		event.byteCount = writer.getBytesWritten();
+	}
+	
+	/**
+	 * Create the text input form for adding items to inventory
+	 * @returns The Node containing the form
+	 */
+	private GridPane makeItemControlPanel(ItemControl control)
+	{
+		GridPane grid  = createGridPane();
+		grid = addPanelTitle(grid, "Add Product to Inventory");
+		grid = addItemControlLayout(grid, control);
+		
+		Button addItemButton = new Button("Add Item");
+		addItemButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
+		addItemButton.setOnAction(e -> onClickAddItemButton(control));
+	
+		HBox hbox = new HBox(s_hSpace);
+		hbox.setAlignment(Pos.BOTTOM_RIGHT);
+		hbox.getChildren().add(addItemButton);
+		grid.add(hbox, 1, 6);
+		
+		return grid;
+	}
+	
+	/**
+	 * Helper method for creating new grid panes and setting properties
+	 * @returns The created GridPane
+	 */
+	private GridPane createGridPane()
+	{
+		GridPane grid = new GridPane();
+		grid.setAlignment(Pos.CENTER);
+		grid.setHgap(s_hSpace);
+		grid.setVgap(s_vSpace);
+		grid.setPadding(new Insets(s_gridVPad, s_gridHPad, s_gridVPad, s_gridHPad));
+		
+		return grid;
+	}
+	
+	/**
+	 * Adds title text to a grid panel
+	 * @param grid The GridPane to modify
+	 * @param title The title text to add
+	 * @returns The modified GridPane
+	 */
+	private GridPane addPanelTitle(GridPane grid, String title)
+	{
+		Text titleText = new Text(title);
+		titleText.setFont(Font.font("Tahoma", FontWeight.NORMAL, 20));
+		grid.add(titleText, 0, 0, 2, 1);
+		
+		return grid;
+	}
+	
+	/**
+	 * Adds the item control text fields to a GridPane
+	 * @param grid The GridPane to modify
+	 * @param control The ctem control containing the text fields to add
+	 * @returns The modified GridPane
+	 */
+	private GridPane addItemControlLayout(GridPane grid, ItemControl control)
+	{
+		grid.add(new Label("Name:"), 0, 1);
+		grid.add(control.getNameField(), 1, 1);
+		
+		grid.add(new Label("Weight (lbs):"), 0, 2);
+		grid.add(control.getWeightField(), 1, 2);
+		
+		grid.add(new Label("Wholesale Price ($):"), 0, 3);
+		grid.add(control.getPriceField(), 1, 3);
+		
+		grid.add(new Label("Quantity:"), 0, 4);
+		grid.add(control.getQuantityField(), 1, 4);
+		
+		return grid;
+	}
+	
+	/**
+	 * Wrapper function to respond to add item button click
+	 * @param control The item control to use
+	 */
+	private void onClickAddItemButton(ItemControl control)
+	{
+		createAndAddItem(control);
+	}
+	
+	/**
+	 * Creates an item with properties specified by the item control text fields
+	 * @param control The item control to use
+	 */
+	private void createAndAddItem(ItemControl control)
+	{
+		try
+		{
+			Item item = control.createItem();
+			// a saved item with the same name is restored first so the duplicate is reported
+			getItem(item.getName());
+			_inventory.add(item);
+		}
+		catch (NumberFormatException e)
+		{
+			showAlertPopup("Invalid Number Format", e.getMessage());
+		}
+		catch (IllegalArgumentException e)
+		{
+			showAlertPopup("Invalid Item Data", e.getMessage());
+		}
+		catch (DuplicateProductNameException e)
+		{
+			showAlertPopup("Duplicate Product Name", "Item \"" + e.getDuplicateName() + "\" already exists in inventory");
+		}
+		
+		control.clearTextFields();
+		control.requestFocus();
+	}
+	
+	/**
+	 * Method to create the right list view for displaying names of items in inventory
+	 */
+	private StackPane addInventoryListViewNode()
+	{
+		StackPane stackPane = new StackPane();
+		stackPane.setPadding(new Insets(s_vPad, s_hPad, s_vPad, s_hPad));
+		initListView();
+		
+		CheckBox sortCheckBox = new CheckBox("Sort items alphabetically");
+		sortCheckBox.setAllowIndeterminate(false);
+		sortCheckBox.setOnAction(e -> onToggleSortCheckBox(e));
+		
+		Button viewButton = makeButton("View");
+		viewButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
+		viewButton.setOnAction(e -> onClickViewButton(e));
+		
+		Button deleteButton = makeButton("Delete");
+		deleteButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
+		deleteButton.setOnAction(e -> onClickDeleteButton(e));
+		
+		HBox hbox = new HBox();
+		hbox.setSpacing(s_hSpace);
+		hbox.getChildren().addAll(viewButton, deleteButton);
+		
+		VBox vbox = new VBox();
+		vbox.setSpacing(s_vSpace);
+		vbox.getChildren().addAll(
+			sortCheckBox,
+			_listView, 
+			hbox
+		);
+		
+		stackPane.getChildren().add(vbox);
+		
+		return stackPane;
+	}
+	
+	/**
+	 * Method to set the intial properties for the inventory list view
+	 */
+	private void initListView()
+	{
+		_listView.setPrefSize(s_listViewWidth, s_listViewHeight);
+        _listView.setEditable(true);
+		_itemNames.setAll();
+		_listView.setItems(_itemNames);
+		
+		_listView.setOnMouseClicked(e -> onMouseClickListViewItem(e));
+	}
+	
+	/**
+	 * Event handler when an item in list view is clicked
+	 * Wrapper for the popup view window when double clicking list item
+	 * @param e The mouse event that was triggered
+	 */
+	private void onMouseClickListViewItem(MouseEvent e)
+	{
+		if (e.getClickCount() == 2)
+		{
+			showViewPopup();
+		}
+	}
+	
+	/**
+	 * Show item summary popup to view item details
+	 */
+	private void showViewPopup()
+	{
+		final Stage dialog = new Stage();
+		dialog.initModality(Modality.APPLICATION_MODAL);
+		dialog.initOwner(_homeStage);
+		String name = (String)_listView.getSelectionModel().getSelectedItem();
+		Item item = getItem(name);
+		
+		ItemControl control = new ItemControl();
+		control.setText(item);
+		control.setDisable(true);
+		
+		Button saveButton = makeButton("Save");
+		saveButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
+		saveButton.setDisable(true);
+		saveButton.setOnAction(e ->
+		{
+			setItemProperties(control, item);
+			dialog.close();
+		});
+		
+		Button editButton = makeButton("Edit");
+		editButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
+		editButton.setOnAction(e -> 
+		{
+			control.setDisable(false);
+			saveButton.setDisable(false);
+			editButton.setDisable(true);
+			control.requestFocus();
+		});
+		
+		Button closeButton = makeButton("Close");
+		closeButton.setPrefSize(s_itemButtonWidth, s_itemButtonHeight);
+		closeButton.setOnAction(e -> dialog.close());
+		
+		GridPane grid = createGridPane();
+		grid = addPanelTitle(grid, "Viewing Item: " + item.getName());
+		grid = addItemControlLayout(grid, control);
+		grid = addAndSetViewOnlyFields(grid, item);
+		
+		HBox hbox = new HBox();
+		hbox.setSpacing(s_hSpace);
+		hbox.setAlignment(Pos.BOTTOM_RIGHT);
+		hbox.getChildren().addAll(editButton, saveButton, closeButton);
+		grid.add(hbox, 0, 7, 2, 7);
+		
+		Scene dialogScene = new Scene(grid);
+		dialog.setScene(dialogScene);
+		dialog.show();
+	}
+	
+	/**
+	 * Method to set an item control's text fields to the properties of a chosen item
+	 * @param control The item control whose text fields to set
+	 * @param item The item whose properties to set to the text fields
+	 */
+	private void setItemProperties(ItemControl control, Item item)
+	{
+		try
+		{
+			getItem(control.getNameField().getText());
+			item = control.setItemProperties(item);
+		}
+		catch (NumberFormatException e)
+		{
+			showAlertPopup("Invalid Number Format", e.getMessage());
+		}
+		catch (IllegalArgumentException e)
+		{
+			showAlertPopup("Invalid Item Data", e.getMessage());
+		}
+		catch (DuplicateProductNameException e)
+		{
+			showAlertPopup("Duplicate Product Name", "Item \"" + e.getDuplicateName() + "\" already exists in inventory");
+		}
+		
+		control.clearTextFields();
+	}
+	
+	private GridPane addAndSetViewOnlyFields(GridPane grid, Item item)
+	{
+		grid.add(new Label("Retail Price ($):"), 0, 5);
+		TextField retailPriceField = new TextField();
+		retailPriceField.setText(String.format("%.2f",item.getRetailPrice()));
+		retailPriceField.setDisable(true);
+		grid.add(retailPriceField, 1, 5);
+		
+		grid.add(new Label("Storage Costs ($):"), 0, 6);
+		TextField storageCostField = new TextField();
+		storageCostField.setText(String.format("%.2f",item.getStorageCost()));
+		storageCostField.setDisable(true);
+		grid.add(storageCostField, 1, 6);
+		
+		return grid;
+	}
+	
+	/**
+	 * Event handler for when toggle sort alphabetically box is checked
+	 * @param e The event that was triggered
+	 */
+	private void onToggleSortCheckBox(ActionEvent e)
+	{
+		_sortItemsByName = !_sortItemsByName;
+		updateListViewContents();
+	}
+	
+	/**
+	 * Event handler for when view item button clicked
+	 * @param e The event that was triggered
+	 */
+	private void onClickViewButton(ActionEvent e)
+	{
+		showViewPopup();
+	}
+	
+	/**
+	 * Event handler for when delete item button clicked
+	 * @param e The event that was triggered
+	 */
+	private void onClickDeleteButton(ActionEvent e)
+	{
+		SelectionModel selectionModel = _listView.getSelectionModel();
+		int index = selectionModel.getSelectedIndex();
+		String name = (String)selectionModel.getSelectedItem();
+		if (name != null)
+		{
+			_inventory.remove(getItem(name));
+			_listChanges.flush();
+			 // set selection to next item in list, if out of bounds returns no selection
+			selectionModel.select(index);
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+/**
+ * Flight Recorder event covering a batch of items added to or removed from an inventory.
+ * Disabled by default, enable in a recording with application.InventoryChange#enabled=true
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("application.InventoryChange")
+@Label("Inventory Change")
+@Category("Inventory")
+@Description("Items added to or removed from an inventory, including duplicate name checks")
+@Enabled(false)
+@StackTrace(false)
+public class InventoryChangeEvent extends Event
+{
+	/** Either "add" or "remove" */
+	@Label("Operation")
+	public String operation;
+	/** Number of items in the batch */
+	@Label("Items")
+	public int itemCount;
+	/** Name of the first item in the batch */
+	@Label("First Item")
+	public String firstItem;
+	/** Name of the duplicate item that stopped the batch, or null if the batch completed */
+	@Label("Duplicate Item")
+	public String duplicateItem;
+}
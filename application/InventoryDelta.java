@@ -0,0 +1,141 @@
+/**
+ * Reads and writes delta files holding the changes to an inventory since a checkpoint,
+ * and compacts a full export and its deltas into a new full export.
+ * Each line of a delta file is either "-," followed by the escaped name of a removed product,
+ * or "+," followed by the comma-separated form of an added or changed item.
+ * Removals are written before upserts so a name that is both removed and upserted ends up present.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class InventoryDelta
+{
+	/** Prefix of a line removing a product */
+	private static final String s_tombstonePrefix = "-,";
+	/** Prefix of a line adding or replacing a product */
+	private static final String s_upsertPrefix = "+,";
+	
+	/** Not instantiable */
+	private InventoryDelta() { }
+	
+	/**
+	 * Writes the changes recorded by a tracker to a delta file and takes a checkpoint
+	 * @param file The delta file to write
+	 * @param tracker The tracker holding changes since the previous checkpoint
+	 * @returns The number of lines written
+	 * @throws IOException if the file cannot be written, in which case no checkpoint is taken
+	 */
+	public static int write(File file, ChangeTracker<Item> tracker) throws IOException
+	{
+		List<String> tombstones;
+		List<Item> upserts;
+		synchronized (tracker)
+		{
+			tombstones = tracker.getTombstones();
+			upserts = tracker.getUpserts();
+		}
+		
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8)))
+		{
+			for (String name : tombstones)
+			{
+				writer.write(s_tombstonePrefix + ItemCsv.escapeName(name) + "\n");
+			}
+			for (Item item : upserts)
+			{
+				writer.write(s_upsertPrefix + item.toString() + "\n");
+			}
+		}
+		
+		synchronized (tracker)
+		{
+			// changes made while writing stay tracked for the next delta
+			if (tracker.getTombstones().equals(tombstones) && tracker.getUpserts().equals(upserts))
+			{
+				tracker.checkpoint();
+			}
+		}
+		
+		return tombstones.size() + upserts.size();
+	}
+	
+	/**
+	 * Applies a delta file to the lines of a full export held in memory, keyed by name.
+	 * Changed products keep their position and new products are appended.
+	 * @param delta The delta file to apply
+	 * @param lines Comma-separated item lines by product name, in export order
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if a line is neither a removal nor an upsert
+	 */
+	public static void apply(File delta, Map<String, String> lines) throws IOException
+	{
+		try (BufferedReader reader = new BufferedReader(new FileReader(delta, StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				if (line.startsWith(s_tombstonePrefix))
+				{
+					lines.remove(ItemCsv.unescapeName(line.substring(s_tombstonePrefix.length())));
+				}
+				else if (line.startsWith(s_upsertPrefix))
+				{
+					String itemLine = line.substring(s_upsertPrefix.length());
+					lines.put(ItemCsv.splitCommaDelimitedString(itemLine)[0], itemLine);
+				}
+				else
+				{
+					throw new IllegalArgumentException("Invalid delta line: " + line);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Folds a sequence of delta files into a full export, writing a new full export
+	 * @param base The full export the first delta was taken against, plain or compressed as imports read it
+	 * @param deltas The delta files, oldest first
+	 * @param out The file to write the compacted full export to, may not be one of the inputs
+	 * @returns The number of products in the compacted export
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static int compact(File base, List<File> deltas, File out) throws IOException
+	{
+		Map<String, String> lines = new LinkedHashMap<>();
+		List<Item> items = new ArrayList<>();
+		InventoryFile.readItems(base, items);
+		for (Item item : items)
+		{
+			lines.put(item.getName(), item.toString());
+		}
+		
+		for (File delta : deltas)
+		{
+			apply(delta, lines);
+		}
+		
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(out, StandardCharsets.UTF_8)))
+		{
+			for (String line : lines.values())
+			{
+				writer.write(line + "\n");
+			}
+		}
+		
+		return lines.size();
+	}
+}
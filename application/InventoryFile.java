@@ -0,0 +1,318 @@
+/**
+ * The items parsed from one plain or gzip-compressed comma-separated inventory file,
+ * along with the error that stopped parsing, if any. Files, and blocks of large plain files,
+ * can be parsed concurrently and their items added to inventory afterwards in a fixed order.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+public class InventoryFile
+{
+	/** The file that was parsed */
+	private final File _file;
+	/** Items parsed from the file, up to the first error */
+	private final List<Item> _items;
+	/** The error that stopped parsing, or null if the whole file was parsed */
+	private final Exception _error;
+	/** Time spent reading and parsing the file in nanoseconds */
+	private final long _parseNanos;
+	/** Number of bytes of a plain file parsed by each task, before extending to a line end */
+	private static final int s_blockSize = 1 << 22;
+	
+	/** Constructor */
+	private InventoryFile(File file, List<Item> items, Exception error, long parseNanos)
+	{
+		_file = file;
+		_items = items;
+		_error = error;
+		_parseNanos = parseNanos;
+	}
+	
+	/**
+	 * Get method for the parsed file
+	 * @returns The file that was parsed
+	 */
+	public File getFile()
+	{
+		return _file;
+	}
+	
+	/**
+	 * Get method for the parsed items
+	 * @returns Items in file order, up to the row that failed to parse
+	 */
+	public List<Item> getItems()
+	{
+		return _items;
+	}
+	
+	/**
+	 * Get method for the parse error
+	 * @returns The IOException or ItemParseException that stopped parsing,
+	 * or null if the whole file was parsed
+	 */
+	public Exception getError()
+	{
+		return _error;
+	}
+	
+	/**
+	 * Get method for the parse time
+	 * @returns Time spent reading and parsing the file in nanoseconds
+	 */
+	public long getParseNanos()
+	{
+		return _parseNanos;
+	}
+	
+	/**
+	 * Checks whether a file should be read or written in compressed form
+	 * @param file The file to check
+	 * @returns True if the file name ends in .gz
+	 */
+	public static boolean isCompressed(File file)
+	{
+		return file.getName().toLowerCase().endsWith(".gz");
+	}
+	
+	/**
+	 * Parses a file, capturing rather than throwing any error
+	 * @param file The file to parse
+	 * @returns The items parsed and the error that stopped parsing, if any
+	 */
+	public static InventoryFile parse(File file)
+	{
+		long startTime = System.nanoTime();
+		List<Item> items = new ArrayList<>();
+		Exception error = null;
+		try
+		{
+			readItems(file, items);
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			error = e;
+		}
+		
+		return new InventoryFile(file, items, error, System.nanoTime() - startTime);
+	}
+	
+	/**
+	 * Parses several files concurrently without waiting for them. Compressed files and plain files
+	 * of up to one block are parsed by one task each; larger plain files are read in blocks cut at
+	 * line ends, and the blocks are parsed by separate tasks, so one large file uses every thread.
+	 * @param files The files to parse
+	 * @param executor The executor running the parse tasks
+	 * @returns A future completed with the parsed files in the same order as the files given, once
+	 * every file has been parsed. It never completes exceptionally; a task that failed is reported
+	 * as the error of its file.
+	 */
+	public static CompletableFuture<List<InventoryFile>> parseAll(List<File> files, Executor executor)
+	{
+		List<CompletableFuture<InventoryFile>> futures = new ArrayList<>(files.size());
+		for (File file : files)
+		{
+			futures.add(CompletableFuture.supplyAsync(() -> isCompressed(file) || file.length() <= s_blockSize
+					? CompletableFuture.completedFuture(parse(file))
+					: parseBlocks(file, executor), executor)
+				.thenCompose(parsed -> parsed)
+				.exceptionally(e -> new InventoryFile(file, new ArrayList<>(), 
+					new IOException("Import failed", e instanceof CompletionException ? e.getCause() : e), 0)));
+		}
+		
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(done ->
+		{
+			List<InventoryFile> parsed = new ArrayList<>(files.size());
+			for (CompletableFuture<InventoryFile> future : futures)
+			{
+				parsed.add(future.join());
+			}
+			return parsed;
+		});
+	}
+	
+	/**
+	 * Reads a plain file in blocks and parses each block as a separate task. The whole file is
+	 * held in memory until its blocks are parsed, which the items parsed from it outgrow anyway.
+	 * @param file The plain file to parse
+	 * @param executor The executor running the block tasks
+	 * @returns A future completed with the items of every block in file order, up to the first error
+	 */
+	private static CompletableFuture<InventoryFile> parseBlocks(File file, Executor executor)
+	{
+		long startTime = System.nanoTime();
+		List<CompletableFuture<Block>> blocks = new ArrayList<>();
+		IOException readError = readBlocks(file, executor, blocks);
+		
+		return CompletableFuture.allOf(blocks.toArray(new CompletableFuture<?>[0])).thenApply(done ->
+		{
+			List<Item> items = new ArrayList<>();
+			Exception error = readError;
+			for (CompletableFuture<Block> future : blocks)
+			{
+				Block block = future.join();
+				if (block._error != null)
+				{
+					// rows are numbered within the block, and every block before it parsed in full
+					error = new ItemParseException(items.size() + block._error.getRow(), block._error.getName(), 
+						(IllegalArgumentException)block._error.getCause());
+				}
+				if (items.isEmpty())
+				{
+					items = block._items;
+				}
+				else
+				{
+					items.addAll(block._items);
+				}
+				if (block._error != null)
+				{
+					break;
+				}
+			}
+			return new InventoryFile(file, items, error, System.nanoTime() - startTime);
+		});
+	}
+	
+	/**
+	 * Reads a plain file into blocks ending at line ends and starts a parse task for each block
+	 * @param file The plain file to read
+	 * @param executor The executor running the block tasks
+	 * @param blocks The list to append the block tasks to, in file order
+	 * @returns The error that stopped reading, or null if the whole file was read
+	 */
+	private static IOException readBlocks(File file, Executor executor, List<CompletableFuture<Block>> blocks)
+	{
+		try (InputStream in = new FileInputStream(file))
+		{
+			byte[] buffer = new byte[s_blockSize];
+			int carried = 0;
+			while (true)
+			{
+				int length = CsvReport.readFully(in, buffer, carried);
+				boolean atEnd = length < buffer.length;
+				int cut = atEnd ? length : CsvReport.lastLineEnd(buffer, length);
+				if (cut < 0)
+				{
+					// a line longer than a block, grow the block to hold it
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+					carried = length;
+					continue;
+				}
+				
+				byte[] bytes = buffer;
+				blocks.add(CompletableFuture.supplyAsync(() -> Block.parse(bytes, cut), executor));
+				if (atEnd)
+				{
+					return null;
+				}
+				
+				carried = length - cut;
+				buffer = new byte[buffer.length];
+				System.arraycopy(bytes, cut, buffer, 0, carried);
+			}
+		}
+		catch (IOException e)
+		{
+			return e;
+		}
+	}
+	
+	/**
+	 * Reads every item of a plain or compressed comma-separated file without adding it to inventory.
+	 * Items read before an error remain in the list.
+	 * @param file The file to read
+	 * @param items The list to append the items to
+	 * @throws IOException if the file cannot be read
+	 * @throws ItemParseException if a row cannot be parsed into an item
+	 */
+	public static void readItems(File file, List<Item> items) throws IOException
+	{
+		if (isCompressed(file))
+		{
+			try (CompressedCsvReader reader = new CompressedCsvReader(new FileInputStream(file)))
+			{
+				Item item;
+				while ((item = reader.readItem()) != null)
+				{
+					items.add(item);
+				}
+			}
+		}
+		else
+		{
+			try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8)))
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					items.add(ItemCsv.parseItem(line, items.size() + 1));
+				}
+			}
+		}
+	}
+	
+	/** The items parsed from one block of a plain file */
+	private static class Block
+	{
+		/** Items parsed from the block, up to the first error */
+		private final List<Item> _items = new ArrayList<>();
+		/** The error that stopped parsing, with the row counted from the start of the block, or null */
+		private ItemParseException _error;
+		
+		/**
+		 * Parses every line of a block
+		 * @param bytes The UTF-8 bytes of the block
+		 * @param length The number of bytes in the block, ending with a line feed unless the block ends the file
+		 * @returns The parsed block
+		 */
+		private static Block parse(byte[] bytes, int length)
+		{
+			Block block = new Block();
+			int start = 0;
+			while (start < length)
+			{
+				int end = start;
+				while (end < length && bytes[end] != '\n')
+				{
+					end++;
+				}
+				int next = end + 1;
+				if (end > start && bytes[end - 1] == '\r')
+				{
+					end--;
+				}
+				
+				String line = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+				try
+				{
+					block._items.add(ItemCsv.parseItem(line, block._items.size() + 1));
+				}
+				catch (ItemParseException e)
+				{
+					block._error = e;
+					break;
+				}
+				start = next;
+			}
+			
+			return block;
+		}
+	}
+}
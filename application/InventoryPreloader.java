@@ -0,0 +1,432 @@
+/**
+ * Restores an inventory from a saved file in the background while the inventory is already in use.
+ * A background thread reads and parses the file, and the parsed items are added to the inventory on
+ * the thread that owns it in small batches, each limited to a few milliseconds so the UI keeps
+ * responding. Names are announced as soon as they are parsed, before their items are added, and an
+ * item that is needed early can be fetched ahead of the rest. If an item with the same name is
+ * already in the inventory when a saved item would be added, the saved item is dropped.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+public class InventoryPreloader implements PropertyChangeListener, Closeable
+{
+	/** File being restored */
+	private final File _file;
+	/** Inventory the items are added to */
+	private final Inventory<Item> _inventory;
+	/** Runs tasks on the thread that modifies the inventory */
+	private final Executor _ownerExecutor;
+	/** Receives the names of newly parsed items on the owner thread, in file order */
+	private final Consumer<List<String>> _nameListener;
+	/** Runs on the owner thread once every item has been added or the restore has stopped */
+	private final Runnable _onDone;
+	/** Thread reading and parsing the file */
+	private final Thread _reader;
+	/** Items parsed but not yet taken by the owner thread, by name in file order, guarded by itself */
+	private final LinkedHashMap<String, Item> _parsed = new LinkedHashMap<>();
+	/** True while a drain is scheduled on the owner thread */
+	private final AtomicBoolean _drainScheduled = new AtomicBoolean(false);
+	/** Items whose names have been announced but which are not yet added, by name in file order */
+	private final LinkedHashMap<String, Item> _pending = new LinkedHashMap<>();
+	/** True once the reader has stopped, guarded by _parsed */
+	private boolean _readerDone = false;
+	/** Error that stopped the reader, or null, guarded by _parsed */
+	private Exception _error = null;
+	/** Number of items added to the inventory */
+	private int _loadedCount = 0;
+	/** True while this preloader is adding an item, so its own changes are not counted */
+	private boolean _adding = false;
+	/** True if the inventory was changed by anything but this preloader during the restore */
+	private boolean _modified = false;
+	/** True once every item has been added or the restore has stopped */
+	private boolean _done = false;
+	/** True once the preloader has been closed, stopping the reader */
+	private volatile boolean _closed = false;
+	/** Number of items parsed before they are handed to the owner thread */
+	private static final int s_batchSize = 1024;
+	/** Most items one drain takes from the reader, bounding the owner thread's work per drain */
+	private static final int s_takeLimit = 8192;
+	/** Longest time one drain adds items for on the owner thread, in nanoseconds */
+	private static final long s_drainBudgetNanos = 5000000;
+	
+	/**
+	 * Constructor, starts reading the file in the background
+	 * @param file The file to restore, read compressed if the name ends in .gz
+	 * @param inventory The inventory to add the items to
+	 * @param ownerExecutor Runs tasks on the thread that modifies the inventory
+	 * @param nameListener Receives the names of newly parsed items on the owner thread
+	 * @param onDone Runs on the owner thread once the restore has finished or stopped
+	 */
+	public InventoryPreloader(File file, Inventory<Item> inventory, Executor ownerExecutor, Consumer<List<String>> nameListener, Runnable onDone)
+	{
+		_file = file;
+		_inventory = inventory;
+		_ownerExecutor = ownerExecutor;
+		_nameListener = nameListener;
+		_onDone = onDone;
+		_inventory.addPropertyChangeListener(this);
+		_reader = new Thread(this::read, "inventory-preload");
+		_reader.setDaemon(true);
+		_reader.start();
+	}
+	
+	/**
+	 * Records a change to the inventory made by anything other than this preloader
+	 * @param e The inventory or item change event
+	 */
+	@Override
+	public void propertyChange(PropertyChangeEvent e)
+	{
+		if (!_adding)
+		{
+			_modified = true;
+		}
+	}
+	
+	/**
+	 * Adds a saved item to the inventory ahead of the rest, if it has been parsed.
+	 * Must be called on the owner thread.
+	 * @param name The name of the item
+	 * @returns The item in the inventory with the name, or null if there is none yet
+	 */
+	public Item fetch(String name)
+	{
+		Item item = _inventory.get(name);
+		if (item != null || _done)
+		{
+			return item;
+		}
+		
+		item = _pending.remove(name);
+		if (item == null)
+		{
+			synchronized (_parsed)
+			{
+				item = _parsed.remove(name);
+			}
+		}
+		if (item != null)
+		{
+			add(item);
+		}
+		
+		return item;
+	}
+	
+	/**
+	 * Returns the names of parsed items not yet added to the inventory.
+	 * Must be called on the owner thread.
+	 * @returns The names in file order
+	 */
+	public List<String> getPendingNames()
+	{
+		return new ArrayList<>(_pending.keySet());
+	}
+	
+	/**
+	 * Waits for the whole file to be read and adds every remaining item.
+	 * Must be called on the owner thread.
+	 */
+	public void finish()
+	{
+		if (_done)
+		{
+			return;
+		}
+		
+		try
+		{
+			_reader.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		drain(Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Checks if the restore has finished or stopped
+	 * @returns True once no more items will be added
+	 */
+	public boolean isDone()
+	{
+		return _done;
+	}
+	
+	/**
+	 * Checks if the inventory was changed by anything other than this preloader during the restore
+	 * @returns True if the inventory holds changes not in the file
+	 */
+	public boolean isModified()
+	{
+		return _modified;
+	}
+	
+	/**
+	 * Checks if the preloader is adding one of its items, so listeners can tell a restored item,
+	 * whose name has already been announced, from an item added by anything else
+	 * @returns True while a restored item is being added on the owner thread
+	 */
+	public boolean isAdding()
+	{
+		return _adding;
+	}
+	
+	/**
+	 * Get method for the number of items added to the inventory so far
+	 * @returns The number of restored items
+	 */
+	public int getLoadedCount()
+	{
+		return _loadedCount;
+	}
+	
+	/**
+	 * Get method for the file being restored
+	 * @returns The saved file
+	 */
+	public File getFile()
+	{
+		return _file;
+	}
+	
+	/**
+	 * Get method for the error that stopped reading the file
+	 * @returns The error, or null if the file was read completely or is still being read
+	 */
+	public Exception getError()
+	{
+		synchronized (_parsed)
+		{
+			return _error;
+		}
+	}
+	
+	/**
+	 * Stops the restore, leaving items not yet added out of the inventory.
+	 * Must be called on the owner thread.
+	 */
+	@Override
+	public void close()
+	{
+		_closed = true;
+		_reader.interrupt();
+		_pending.clear();
+		_done = true;
+		_inventory.removePropertyChangeListener(this);
+	}
+	
+	/** Reads the file on the background thread, handing items to the owner thread in batches */
+	private void read()
+	{
+		Exception error = null;
+		try
+		{
+			if (InventoryFile.isCompressed(_file))
+			{
+				try (CompressedCsvReader reader = new CompressedCsvReader(new FileInputStream(_file)))
+				{
+					List<Item> batch = new ArrayList<>(s_batchSize);
+					Item item;
+					while (!_closed && (item = reader.readItem()) != null)
+					{
+						batch = collect(batch, item);
+					}
+					handOff(batch);
+				}
+			}
+			else
+			{
+				try (BufferedReader reader = new BufferedReader(new FileReader(_file, StandardCharsets.UTF_8)))
+				{
+					List<Item> batch = new ArrayList<>(s_batchSize);
+					String line;
+					long row = 0;
+					while (!_closed && (line = reader.readLine()) != null)
+					{
+						batch = collect(batch, ItemCsv.parseItem(line, ++row));
+					}
+					handOff(batch);
+				}
+			}
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			error = e;
+		}
+		
+		synchronized (_parsed)
+		{
+			_error = _closed ? null : error;
+			_readerDone = true;
+		}
+		scheduleDrain();
+	}
+	
+	/**
+	 * Adds a parsed item to the current batch, handing the batch off once it is full
+	 * @param batch The current batch
+	 * @param item The parsed item
+	 * @returns The batch to add the next item to
+	 */
+	private List<Item> collect(List<Item> batch, Item item)
+	{
+		batch.add(item);
+		if (batch.size() < s_batchSize)
+		{
+			return batch;
+		}
+		
+		handOff(batch);
+		return new ArrayList<>(s_batchSize);
+	}
+	
+	/**
+	 * Makes a batch of parsed items available to the owner thread
+	 * @param batch The parsed items
+	 */
+	private void handOff(List<Item> batch)
+	{
+		if (batch.isEmpty())
+		{
+			return;
+		}
+		
+		synchronized (_parsed)
+		{
+			for (Item item : batch)
+			{
+				_parsed.put(item.getName(), item);
+			}
+		}
+		scheduleDrain();
+	}
+	
+	/** Schedules a drain on the owner thread unless one is already scheduled */
+	private void scheduleDrain()
+	{
+		if (!_drainScheduled.getAndSet(true))
+		{
+			_ownerExecutor.execute(() ->
+			{
+				_drainScheduled.set(false);
+				drain(s_drainBudgetNanos);
+			});
+		}
+	}
+	
+	/**
+	 * Adds pending items to the inventory on the owner thread for a limited time,
+	 * scheduling another drain if items remain
+	 * @param budgetNanos Longest time to spend adding items
+	 */
+	private void drain(long budgetNanos)
+	{
+		if (_done)
+		{
+			return;
+		}
+		
+		boolean readerDone = takeParsed(budgetNanos == Long.MAX_VALUE ? Integer.MAX_VALUE : s_takeLimit);
+		long start = System.nanoTime();
+		Iterator<Item> it = _pending.values().iterator();
+		while (it.hasNext() && System.nanoTime() - start < budgetNanos)
+		{
+			Item item = it.next();
+			it.remove();
+			add(item);
+		}
+		
+		if (!_pending.isEmpty())
+		{
+			scheduleDrain();
+		}
+		else if (readerDone)
+		{
+			_done = true;
+			_inventory.removePropertyChangeListener(this);
+			_onDone.run();
+		}
+	}
+	
+	/**
+	 * Moves items parsed by the reader into the pending items and announces their names
+	 * @param limit Most items to move
+	 * @returns True if the reader has stopped and every item it parsed has been taken
+	 */
+	private boolean takeParsed(int limit)
+	{
+		List<Item> items = new ArrayList<>();
+		boolean readerDone;
+		synchronized (_parsed)
+		{
+			Iterator<Item> it = _parsed.values().iterator();
+			while (it.hasNext() && items.size() < limit)
+			{
+				items.add(it.next());
+				it.remove();
+			}
+			readerDone = _readerDone && _parsed.isEmpty();
+		}
+		if (items.isEmpty())
+		{
+			return readerDone;
+		}
+		
+		List<String> names = new ArrayList<>(items.size());
+		for (Item item : items)
+		{
+			// a name already in the inventory is not announced again, and its saved item is dropped
+			if (_inventory.get(item.getName()) == null && _pending.put(item.getName(), item) == null)
+			{
+				names.add(item.getName());
+			}
+		}
+		_nameListener.accept(names);
+		
+		return readerDone;
+	}
+	
+	/**
+	 * Adds a saved item to the inventory unless an item with its name is already there
+	 * @param item The saved item
+	 */
+	private void add(Item item)
+	{
+		_adding = true;
+		try
+		{
+			_inventory.add(item);
+			_loadedCount++;
+		}
+		catch (DuplicateProductNameException e)
+		{
+			// the item already in the inventory was added or renamed since the file was saved
+		}
+		finally
+		{
+			_adding = false;
+		}
+	}
+}
@@ -0,0 +1,311 @@
+/**
+ * Point-in-time copy of the exported properties of every product in a list, held in primitive
+ * arrays. Capturing only copies the UTF-8 bytes of the names and the numbers, so it is cheap
+ * enough to do on the thread that owns the list, while formatting and writing the copy can happen
+ * on any thread, even as the list releases names and reuses their space. The pricing
+ * policy of the list is saved next to the products, in a properties file named after the product
+ * file with .pricing appended, since the comma-separated format has no room for it.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+public class InventorySnapshot
+{
+	/** UTF-8 bytes of the names in list order, one after another */
+	private byte[] _nameBytes;
+	/** Offset of each name in _nameBytes, followed by the end of the last name */
+	private final int[] _nameOffsets;
+	/** Weights in list order */
+	private final double[] _weights;
+	/** Wholesale prices in list order */
+	private final double[] _prices;
+	/** Quantities in list order */
+	private final int[] _quantities;
+	/** Storage costs in list order */
+	private final double[] _storageCosts;
+	/** Retail prices in list order */
+	private final double[] _retailPrices;
+	/** Policy pricing the products */
+	private final PricingPolicy _pricingPolicy;
+	/** Suffix of the file the pricing policy is saved to */
+	private static final String s_pricingSuffix = ".pricing";
+	/** Property holding the saved markup factor */
+	private static final String s_markupFactorKey = "markupFactor";
+	/** Property holding the saved storage rate */
+	private static final String s_storageRateKey = "storageRate";
+	
+	/**
+	 * Constructor, copies the products of a list in export order along with its pricing policy.
+	 * Must run on the thread that modifies the list.
+	 * @param inventory The list to copy
+	 */
+	public <T extends IProduct> InventorySnapshot(Inventory<T> inventory)
+	{
+		int count = inventory.getTotalProductsInStock();
+		NameArena arena = inventory.getNameArena();
+		_pricingPolicy = inventory.getPricingPolicy();
+		_nameBytes = new byte[count * 16];
+		_nameOffsets = new int[count + 1];
+		_weights = new double[count];
+		_prices = new double[count];
+		_quantities = new int[count];
+		_storageCosts = new double[count];
+		_retailPrices = new double[count];
+		int i = 0;
+		for (T prod : inventory)
+		{
+			int handle = prod.getNameHandle(arena);
+			int end = _nameOffsets[i] + arena.byteLength(handle);
+			if (end > _nameBytes.length)
+			{
+				_nameBytes = Arrays.copyOf(_nameBytes, Math.max(end, _nameBytes.length * 2));
+			}
+			arena.copyBytes(handle, _nameBytes, _nameOffsets[i]);
+			_nameOffsets[i + 1] = end;
+			_weights[i] = prod.getWeight();
+			_prices[i] = prod.getWholesalePrice();
+			_quantities[i] = prod.getQuantityInStock();
+			_storageCosts[i] = prod.getStorageCost();
+			_retailPrices[i] = prod.getRetailPrice();
+			i++;
+		}
+	}
+	
+	/**
+	 * Get method for the number of products copied
+	 * @returns The number of products in the snapshot
+	 */
+	public int size()
+	{
+		return _weights.length;
+	}
+	
+	/**
+	 * Get method for the name of a copied product
+	 * @param i The index of the product
+	 * @returns The product name
+	 */
+	public String getName(int i)
+	{
+		return new String(_nameBytes, _nameOffsets[i], _nameOffsets[i + 1] - _nameOffsets[i], StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Get method for the weight of a copied product
+	 * @param i The index of the product
+	 * @returns The product weight
+	 */
+	public double getWeight(int i)
+	{
+		return _weights[i];
+	}
+	
+	/**
+	 * Get method for the wholesale price of a copied product
+	 * @param i The index of the product
+	 * @returns The product wholesale price
+	 */
+	public double getWholesalePrice(int i)
+	{
+		return _prices[i];
+	}
+	
+	/**
+	 * Get method for the quantity of a copied product
+	 * @param i The index of the product
+	 * @returns The product quantity in stock
+	 */
+	public int getQuantityInStock(int i)
+	{
+		return _quantities[i];
+	}
+	
+	/**
+	 * Get method for the storage cost of a copied product
+	 * @param i The index of the product
+	 * @returns The product storage cost
+	 */
+	public double getStorageCost(int i)
+	{
+		return _storageCosts[i];
+	}
+	
+	/**
+	 * Get method for the retail price of a copied product
+	 * @param i The index of the product
+	 * @returns The product retail price
+	 */
+	public double getRetailPrice(int i)
+	{
+		return _retailPrices[i];
+	}
+	
+	/**
+	 * Get method for the pricing policy of the copied products
+	 * @returns The policy pricing the products
+	 */
+	public PricingPolicy getPricingPolicy()
+	{
+		return _pricingPolicy;
+	}
+	
+	/**
+	 * Writes the snapshot as plain or, for names ending in .gz, compressed comma-separated lines,
+	 * after saving its pricing policy if the policy is a GlobalPricingPolicy. Other policies price
+	 * by rules supplied in code, which cannot be saved, so any saved policy is removed instead.
+	 * The data goes to a temporary file in the same directory, which then replaces the target
+	 * atomically so readers never see a partially written file.
+	 * @param file The file to replace
+	 * @returns The number of bytes written
+	 * @throws IOException if the file cannot be written or replaced
+	 */
+	public long writeAtomically(File file) throws IOException
+	{
+		writePricingPolicy(file);
+		File dir = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile(file.getName(), ".tmp", dir);
+		try
+		{
+			if (InventoryFile.isCompressed(file))
+			{
+				try (CompressedCsvWriter writer = new CompressedCsvWriter(new BufferedOutputStream(new FileOutputStream(temp))))
+				{
+					for (int i = 0; i < size(); i++)
+					{
+						writer.writeLine(formatLine(i));
+					}
+				}
+			}
+			else
+			{
+				try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)))
+				{
+					for (int i = 0; i < size(); i++)
+					{
+						writer.write(formatLine(i));
+						writer.write('\n');
+					}
+				}
+			}
+			
+			long bytes = temp.length();
+			move(temp, file);
+			
+			return bytes;
+		}
+		finally
+		{
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+	
+	/**
+	 * Reads the pricing policy saved with a product file
+	 * @param file The product file
+	 * @returns The saved policy, or null if none was saved
+	 * @throws IOException if the saved policy cannot be read
+	 * @throws IllegalArgumentException if the saved rates are missing, not numbers, or negative
+	 */
+	public static PricingPolicy readPricingPolicy(File file) throws IOException
+	{
+		File pricingFile = new File(file.getPath() + s_pricingSuffix);
+		if (!pricingFile.isFile())
+		{
+			return null;
+		}
+		
+		Properties properties = new Properties();
+		try (Reader reader = new InputStreamReader(new FileInputStream(pricingFile), StandardCharsets.UTF_8))
+		{
+			properties.load(reader);
+		}
+		String markupFactor = properties.getProperty(s_markupFactorKey);
+		String storageRate = properties.getProperty(s_storageRateKey);
+		if (markupFactor == null || storageRate == null)
+		{
+			throw new IllegalArgumentException(pricingFile.getPath() + " does not hold a markup factor and storage rate");
+		}
+		
+		return new GlobalPricingPolicy(Double.parseDouble(markupFactor), Double.parseDouble(storageRate));
+	}
+	
+	/**
+	 * Saves the pricing policy next to a product file, replacing any policy saved before
+	 * @param file The product file
+	 * @throws IOException if the policy cannot be written or replaced
+	 */
+	private void writePricingPolicy(File file) throws IOException
+	{
+		File pricingFile = new File(file.getPath() + s_pricingSuffix);
+		if (!(_pricingPolicy instanceof GlobalPricingPolicy))
+		{
+			Files.deleteIfExists(pricingFile.toPath());
+			return;
+		}
+		
+		GlobalPricingPolicy policy = (GlobalPricingPolicy)_pricingPolicy;
+		Properties properties = new Properties();
+		properties.setProperty(s_markupFactorKey, String.valueOf(policy.getMarkupFactor()));
+		properties.setProperty(s_storageRateKey, String.valueOf(policy.getStorageRate()));
+		File temp = File.createTempFile(pricingFile.getName(), ".tmp", pricingFile.getAbsoluteFile().getParentFile());
+		try
+		{
+			try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))
+			{
+				properties.store(writer, "Pricing policy of " + file.getName());
+			}
+			move(temp, pricingFile);
+		}
+		finally
+		{
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+	
+	/**
+	 * Replaces a file with another, atomically where the file system allows
+	 * @param from The file to move
+	 * @param to The file to replace
+	 * @throws IOException if the file cannot be moved
+	 */
+	private static void move(File from, File to) throws IOException
+	{
+		try
+		{
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Formats one product of the snapshot
+	 * @param i The index of the product
+	 * @returns The comma-delimited line for the product
+	 */
+	private String formatLine(int i)
+	{
+		return ItemCsv.formatLine(getName(i), _weights[i], _prices[i], _quantities[i]);
+	}
+}
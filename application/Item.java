@@ -1,227 +1,598 @@
-/**
- * An item which can be added to inventory
- * @authors Greg Edwards
- * @version 1.0
- */
- 
- package application;
-
-import java.beans.PropertyChangeSupport;
-import java.beans.PropertyChangeListener;
-import java.io.ObjectOutputStream;
-
-public class Item implements IProduct
-{
-	/** Name of the item */
-	private String _name;
-	/** Weight of the item in pounds */
-	private double _weight = 0;
-	/** The price of the item in dollars before markup */
-	private double _wholesalePrice = 0;
-	/** Quantity of item available */
-	private int _quantity = 0;
-	/** Retail price of the item based on storage and markup */
-	private double _retailPrice = 0;
-	/** Storage cost of storing one unit of item */
-	private double _storageCost = 0;
-	/** Helper to bind property changes to inventory */
-	private final PropertyChangeSupport _pcs = new PropertyChangeSupport(this);
-	/** Markup factor for determining item price */
-	private static final double s_markupFactor = 1.85;
-	/** The per pound cost of storing an item */
-	private static final double s_storageRate = 4.00;
-	
-	/** Constructor */
-	public Item(String name, double weight, double price, int quantity)
-	{
-		_name = name;
-		setWeight(weight);
-		setWholesalePrice(price);
-		setQuantityInStock(quantity);
-	}
-	
-	@Override
-	public String getName()
-	{
-		return _name;
-	}
-	
-	@Override
-	public void setName(String name)
-	{
-		if (_name != name)
-		{
-			_pcs.firePropertyChange(new PropertyChangingEvent(this, "name", _name, name));
-			String oldName = _name;
-			_name = name;
-			_pcs.firePropertyChange(new PropertyChangedEvent(this, "name", oldName, _name));
-		}
-	}
-	
-	@Override
-	public double getWeight()
-	{
-		return _weight;
-	}
-	
-	@Override
-	public void setWeight(double weight)
-	{
-		if (!canSetWeight(weight))
-		{
-			throw new IllegalArgumentException("Weight cannot be less than or equal to 0");
-		}
-		
-		if (_weight != weight)
-		{
-			double oldWeight = _weight;
-			_weight = weight;
-			_pcs.firePropertyChange(new PropertyChangedEvent(this, "weight", oldWeight, _weight));
-			updateStorageCost();
-		}
-	}
-	
-	/**
-	 * Helper function to validate item weight
-	 * @param weight The weight to validate
-	 * @returns True if weight is valid
-	 */
-	private boolean canSetWeight(double weight)
-	{
-		return weight > 0;
-	}
-	
-	/**
-	 * Helper function to set storage cost based on weight and storage factor.
-	 */
-	private void updateStorageCost()
-	{
-		_storageCost = _weight * s_storageRate;
-		updateRetailPrice();
-	}
-	
-	/**
-	 * Helper function to calculate retail price based on wholesale price, markup, and storage costs.
-	 */
-	private void updateRetailPrice()
-	{
-		double oldPrice = _retailPrice;
-		_retailPrice = _wholesalePrice * s_markupFactor + _storageCost;
-		_pcs.firePropertyChange(new PropertyChangedEvent(this, "retailPrice", oldPrice, _retailPrice));
-	}
-	
-	@Override
-	public double getWholesalePrice()
-	{
-		return _wholesalePrice;
-	}
-	
-	@Override
-	public void setWholesalePrice(double wholesalePrice)
-	{
-		if (!canSetWholesalePrice(wholesalePrice))
-		{
-			throw new IllegalArgumentException("Wholesale price cannot be negative");
-		}
-		
-		if (_wholesalePrice != wholesalePrice)
-		{
-			double oldPrice = _wholesalePrice;
-			_wholesalePrice = wholesalePrice;
-			updateRetailPrice();
-			_pcs.firePropertyChange(new PropertyChangedEvent(this, "wholesalePrice", oldPrice, _wholesalePrice));
-		}
-	}
-	
-	/**
-	 * Helper function to validate item wholesale price.
-	 * @param price the price to validate
-	 * @returns True if price is valid
-	 */
-	private boolean canSetWholesalePrice(double price)
-	{
-		return price >= 0;
-	}
-	
-	@Override
-	public int getQuantityInStock()
-	{
-		return _quantity;
-	}
-	
-	@Override
-	public void setQuantityInStock(int QuantityInStock)
-	{
-		if (!canSetQuantityInStock(QuantityInStock))
-		{
-			throw new IllegalArgumentException("Quantity cannot be negative.");
-		}
-		
-		int oldQuantity = _quantity;
-		_quantity = QuantityInStock;
-		_pcs.firePropertyChange(new PropertyChangedEvent(this, "quantity", oldQuantity, _quantity));
-	}
-	
-	/**
-	 * @param quantity The quantity to validate
-	 * @returns True if quantity is valid
-	 */
-	private boolean canSetQuantityInStock(int quantity)
-	{
-		return quantity >= 0;
-	}
-	
-	@Override
-	public double getRetailPrice()
-	{
-		return _retailPrice;
-	}
-	
-	@Override
-	public double getStorageCost()
-	{
-		return _storageCost;
-	}
-	
-	@Override
-	public void addPropertyChangeListener(PropertyChangeListener listener)
-	{
-		_pcs.addPropertyChangeListener(listener);
-	}
-	
-	@Override
-	public void removePropertyChangeListener(PropertyChangeListener listener)
-	{
-		_pcs.removePropertyChangeListener(listener);
-	}
-	
-	/**
-	 * Gets Item data as string for serialization to CSV.
-	 * If name contains commas (,) or double-quotes ("), name is enclosed in double-quotes
-	 * and any double-quote literals are replaced with pair of double quotes ("").
-	 * @returns Comma separated string of item data
-	 */
-	public String toString()
-	{
-		return escapeCommasAndQuotes(_name) + "," 
-			+ String.valueOf(_weight) + "," 
-			+ String.valueOf(_wholesalePrice) + "," 
-			+ String.valueOf(_quantity);
-	}
-	
-	/**
-	 * If input string contians commas or double-quotes, enclose input in double-quotes and 
-	 * replace any double-quote literals with pair of double-quotes.
-	 * @param str The string to process
-	 * @returns The string with characters escaped if necessary
-	 */
-	private String escapeCommasAndQuotes(String str)
-	{
-		if (!str.contains(",") && !str.contains("\""))
-		{
-			return str;
-		}
-		
-		return "\"" + str.replace("\"", "\"\"") + "\"";
-	}
+/**
+ * An item which can be added to inventory
+ * @authors Greg Edwards
+ * @version 1.0
+ */
+ 
+ package application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.ObjectOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+public class Item implements IProduct
+{
+	/** Name of the item while it is in no list, or the list holding it, whose arena stores the name under _nameHandle */
+	private volatile Object _name;
+	/** Handle of the name of the item in the arena of the list holding it, written before _name */
+	private int _nameHandle = NameArena.s_missing;
+	/** Weight of the item in pounds */
+	private double _weight = 0;
+	/** The price of the item in dollars before markup */
+	private double _wholesalePrice = 0;
+	/** Quantity in stock in the high 32 bits and quantity reserved in the low 32 bits, changed by compare-and-set */
+	private volatile long _stock = 0;
+	/** Quantity held at the locations of the list holding the item, changed only on the thread that owns the list */
+	private volatile int _located = 0;
+	/** Retail price of the item based on storage and markup */
+	private double _retailPrice = 0;
+	/** Storage cost of storing one unit of item */
+	private double _storageCost = 0;
+	/** Policy for determining item storage cost and retail price, installed by the inventory holding the item */
+	private PricingPolicy _pricingPolicy = GlobalPricingPolicy.s_defaultPolicy;
+	/** Listeners bound to property changes, copied on change so events can be sent from any thread, null when there are none */
+	private volatile PropertyChangeListener[] _listeners = null;
+	/** Handle for compare-and-set of _stock */
+	private static final VarHandle s_stock;
+	
+	static
+	{
+		try
+		{
+			s_stock = MethodHandles.lookup().findVarHandle(Item.class, "_stock", long.class);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	
+	/**
+	 * Constructor. Validates all values before storing anything and computes storage cost
+	 * and retail price directly, firing no events since no listener can be registered yet.
+	 * @throws IllegalArgumentException if weight is not positive or price or quantity is negative
+	 */
+	public Item(String name, double weight, double price, int quantity)
+	{
+		if (!canSetWeight(weight))
+		{
+			throw new IllegalArgumentException("Weight cannot be less than or equal to 0");
+		}
+		if (!canSetWholesalePrice(price))
+		{
+			throw new IllegalArgumentException("Wholesale price cannot be negative");
+		}
+		if (!canSetQuantityInStock(quantity))
+		{
+			throw new IllegalArgumentException("Quantity cannot be negative.");
+		}
+		
+		_name = name;
+		_weight = weight;
+		_wholesalePrice = price;
+		_stock = stock(quantity, 0);
+		_storageCost = _weight * _pricingPolicy.getStorageRate(this);
+		_retailPrice = _wholesalePrice * _pricingPolicy.getMarkupFactor(this) + _storageCost;
+	}
+	
+	@Override
+	public String getName()
+	{
+		while (true)
+		{
+			Object name = _name;
+			if (name instanceof String)
+			{
+				return (String)name;
+			}
+			
+			// decoded for the caller only, so the arena holds the one copy; retried if the list renamed
+			// or removed the item meanwhile, since a handle is only released once no item refers to it
+			int handle = _nameHandle;
+			String decoded = ((Inventory<?>)name).getNameArena().decode(handle);
+			if (_name == name && _nameHandle == handle)
+			{
+				return decoded;
+			}
+		}
+	}
+	
+	@Override
+	public int getNameHandle(NameArena arena)
+	{
+		Object name = _name;
+		int handle = _nameHandle;
+		if (name instanceof Inventory<?> && ((Inventory<?>)name).getNameArena() == arena && _name == name)
+		{
+			return handle;
+		}
+		
+		return arena.find(getName());
+	}
+	
+	@Override
+	public void setNameHandle(Inventory<?> list, int handle)
+	{
+		if (list == null)
+		{
+			// the name is decoded while the handle is still held, and kept once the item leaves the list
+			_name = getName();
+		}
+		else
+		{
+			_nameHandle = handle;
+			_name = list;
+		}
+	}
+	
+	@Override
+	public void setName(String name)
+	{
+		String oldName = getName();
+		if (!oldName.equals(name))
+		{
+			if (_listeners != null)
+			{
+				firePropertyChange(new PropertyChangingEvent(this, "name", oldName, name));
+			}
+			// the list holding the item stores the new name and hands back its handle
+			_name = name;
+			if (_listeners != null)
+			{
+				firePropertyChange(new PropertyChangedEvent(this, "name", oldName, name));
+			}
+		}
+	}
+	
+	@Override
+	public double getWeight()
+	{
+		return _weight;
+	}
+	
+	@Override
+	public void setWeight(double weight)
+	{
+		if (!canSetWeight(weight))
+		{
+			throw new IllegalArgumentException("Weight cannot be less than or equal to 0");
+		}
+		
+		if (_weight != weight)
+		{
+			double oldWeight = _weight;
+			_weight = weight;
+			if (_listeners != null)
+			{
+				firePropertyChange(new PropertyChangedEvent(this, "weight", oldWeight, _weight));
+			}
+			updateStorageCost();
+		}
+	}
+	
+	/**
+	 * Helper function to validate item weight
+	 * @param weight The weight to validate
+	 * @returns True if weight is valid
+	 */
+	private boolean canSetWeight(double weight)
+	{
+		return weight > 0;
+	}
+	
+	/**
+	 * Helper function to set storage cost based on weight and storage factor.
+	 */
+	private void updateStorageCost()
+	{
+		_storageCost = _weight * _pricingPolicy.getStorageRate(this);
+		updateRetailPrice();
+	}
+	
+	/**
+	 * Helper function to calculate retail price based on wholesale price, markup, and storage costs.
+	 */
+	private void updateRetailPrice()
+	{
+		double oldPrice = _retailPrice;
+		_retailPrice = _wholesalePrice * _pricingPolicy.getMarkupFactor(this) + _storageCost;
+		if (_listeners != null)
+		{
+			firePropertyChange(new PropertyChangedEvent(this, "retailPrice", oldPrice, _retailPrice));
+		}
+	}
+	
+	@Override
+	public PricingPolicy getPricingPolicy()
+	{
+		return _pricingPolicy;
+	}
+	
+	@Override
+	public void setPricingPolicy(PricingPolicy policy)
+	{
+		if (_pricingPolicy != policy)
+		{
+			_pricingPolicy = policy;
+			updateStorageCost();
+		}
+	}
+	
+	@Override
+	public void applyPricing(PricingPolicy policy, double storageCost, double retailPrice)
+	{
+		_pricingPolicy = policy;
+		_storageCost = storageCost;
+		_retailPrice = retailPrice;
+	}
+	
+	@Override
+	public double getWholesalePrice()
+	{
+		return _wholesalePrice;
+	}
+	
+	@Override
+	public void setWholesalePrice(double wholesalePrice)
+	{
+		if (!canSetWholesalePrice(wholesalePrice))
+		{
+			throw new IllegalArgumentException("Wholesale price cannot be negative");
+		}
+		
+		if (_wholesalePrice != wholesalePrice)
+		{
+			double oldPrice = _wholesalePrice;
+			_wholesalePrice = wholesalePrice;
+			updateRetailPrice();
+			if (_listeners != null)
+			{
+				firePropertyChange(new PropertyChangedEvent(this, "wholesalePrice", oldPrice, _wholesalePrice));
+			}
+		}
+	}
+	
+	/**
+	 * Helper function to validate item wholesale price.
+	 * @param price the price to validate
+	 * @returns True if price is valid
+	 */
+	private boolean canSetWholesalePrice(double price)
+	{
+		return price >= 0;
+	}
+	
+	@Override
+	public int getQuantityInStock()
+	{
+		return quantityOf(_stock);
+	}
+	
+	@Override
+	public void setQuantityInStock(int QuantityInStock)
+	{
+		if (!canSetQuantityInStock(QuantityInStock))
+		{
+			throw new IllegalArgumentException("Quantity cannot be negative.");
+		}
+		
+		long stock;
+		do
+		{
+			stock = _stock;
+			if (QuantityInStock < reservedOf(stock))
+			{
+				throw new IllegalArgumentException("Quantity cannot be less than the quantity reserved.");
+			}
+			if (QuantityInStock < _located)
+			{
+				throw new IllegalArgumentException("Quantity cannot be less than the quantity held at locations.");
+			}
+		}
+		while (!s_stock.compareAndSet(this, stock, stock(QuantityInStock, reservedOf(stock))));
+		fireQuantityChanged(quantityOf(stock), QuantityInStock);
+	}
+	
+	@Override
+	public int getReservedQuantity()
+	{
+		return reservedOf(_stock);
+	}
+	
+	@Override
+	public boolean tryReserve(int quantity)
+	{
+		checkStockQuantity(quantity);
+		long stock;
+		do
+		{
+			stock = _stock;
+			if (quantityOf(stock) - reservedOf(stock) < quantity)
+			{
+				return false;
+			}
+		}
+		while (!s_stock.compareAndSet(this, stock, stock + quantity));
+		
+		return true;
+	}
+	
+	@Override
+	public void release(int quantity)
+	{
+		checkStockQuantity(quantity);
+		long stock;
+		do
+		{
+			stock = _stock;
+			if (reservedOf(stock) < quantity)
+			{
+				throw new IllegalArgumentException("Quantity released cannot exceed the quantity reserved.");
+			}
+		}
+		while (!s_stock.compareAndSet(this, stock, stock - quantity));
+	}
+	
+	@Override
+	public void commit(int quantity)
+	{
+		checkStockQuantity(quantity);
+		long stock;
+		do
+		{
+			stock = _stock;
+			if (reservedOf(stock) < quantity)
+			{
+				throw new IllegalArgumentException("Quantity committed cannot exceed the quantity reserved.");
+			}
+			if (quantityOf(stock) - quantity < _located)
+			{
+				throw new IllegalArgumentException("Quantity committed cannot take stock held at locations.");
+			}
+		}
+		while (!s_stock.compareAndSet(this, stock, stock(quantityOf(stock) - quantity, reservedOf(stock) - quantity)));
+		fireQuantityChanged(quantityOf(stock), quantityOf(stock) - quantity);
+	}
+	
+	@Override
+	public boolean adjustQuantity(int delta)
+	{
+		return addToStock(delta, 0);
+	}
+	
+	@Override
+	public int getLocatedQuantity()
+	{
+		return _located;
+	}
+	
+	@Override
+	public boolean adjustLocatedQuantity(int delta)
+	{
+		// stock arriving is counted as located before it is in stock, and stock leaving is taken out
+		// of stock before it is uncounted, so other threads never see more stock unlocated than there is
+		if (delta >= 0)
+		{
+			_located += delta;
+			boolean isAdjusted = false;
+			try
+			{
+				isAdjusted = addToStock(delta, 0);
+			}
+			finally
+			{
+				if (!isAdjusted)
+				{
+					_located -= delta;
+				}
+			}
+			return isAdjusted;
+		}
+		
+		if (_located + delta < 0 || !addToStock(delta, delta))
+		{
+			return false;
+		}
+		_located += delta;
+		
+		return true;
+	}
+	
+	@Override
+	public void setLocatedQuantity(int quantity)
+	{
+		if (quantity < 0 || quantity > getQuantityInStock())
+		{
+			throw new IllegalArgumentException("Quantity held at locations must be between 0 and the quantity in stock.");
+		}
+		
+		_located = quantity;
+	}
+	
+	/**
+	 * Helper to add to the quantity in stock by compare-and-set, keeping it at least the quantity
+	 * reserved and the quantity held at locations
+	 * @param delta The amount added to the quantity
+	 * @param locatedDelta The amount about to be added to the quantity held at locations
+	 * @returns True if the quantity changed, false if it would fall below either floor
+	 * @throws IllegalArgumentException if the quantity would exceed the largest int
+	 */
+	private boolean addToStock(int delta, int locatedDelta)
+	{
+		long stock;
+		long quantity;
+		do
+		{
+			stock = _stock;
+			quantity = (long)quantityOf(stock) + delta;
+			if (quantity > Integer.MAX_VALUE)
+			{
+				throw new IllegalArgumentException("Quantity cannot exceed " + Integer.MAX_VALUE + ".");
+			}
+			if (quantity < reservedOf(stock) || quantity < (long)_located + locatedDelta)
+			{
+				return false;
+			}
+		}
+		while (!s_stock.compareAndSet(this, stock, stock((int)quantity, reservedOf(stock))));
+		fireQuantityChanged(quantityOf(stock), (int)quantity);
+		
+		return true;
+	}
+	
+	/**
+	 * Notifies listeners of one change of the quantity in stock. The old and new values are those
+	 * of the change itself, which may not be the latest if other threads change the stock too.
+	 * @param oldQuantity The quantity before the change
+	 * @param newQuantity The quantity after the change
+	 */
+	private void fireQuantityChanged(int oldQuantity, int newQuantity)
+	{
+		if (_listeners != null)
+		{
+			firePropertyChange(new PropertyChangedEvent(this, "quantity", oldQuantity, newQuantity));
+		}
+	}
+	
+	/**
+	 * Helper function to validate the quantity of a stock operation
+	 * @param quantity The quantity to validate
+	 * @throws IllegalArgumentException if the quantity is not positive
+	 */
+	private static void checkStockQuantity(int quantity)
+	{
+		if (quantity <= 0)
+		{
+			throw new IllegalArgumentException("Quantity must be positive.");
+		}
+	}
+	
+	/**
+	 * Packs the quantities of a stock word
+	 * @param quantity The quantity in stock, not negative
+	 * @param reserved The quantity reserved, not negative
+	 * @returns The stock word
+	 */
+	private static long stock(int quantity, int reserved)
+	{
+		return ((long)quantity << 32) | reserved;
+	}
+	
+	/**
+	 * @param stock A stock word
+	 * @returns The quantity in stock
+	 */
+	private static int quantityOf(long stock)
+	{
+		return (int)(stock >>> 32);
+	}
+	
+	/**
+	 * @param stock A stock word
+	 * @returns The quantity reserved
+	 */
+	private static int reservedOf(long stock)
+	{
+		return (int)stock;
+	}
+	
+	/**
+	 * @param quantity The quantity to validate
+	 * @returns True if quantity is valid
+	 */
+	private boolean canSetQuantityInStock(int quantity)
+	{
+		return quantity >= 0;
+	}
+	
+	@Override
+	public double getRetailPrice()
+	{
+		return _retailPrice;
+	}
+	
+	@Override
+	public double getStorageCost()
+	{
+		return _storageCost;
+	}
+	
+	@Override
+	public synchronized void addPropertyChangeListener(PropertyChangeListener listener)
+	{
+		if (listener == null)
+		{
+			return;
+		}
+		
+		PropertyChangeListener[] listeners = _listeners;
+		if (listeners == null)
+		{
+			_listeners = new PropertyChangeListener[] { listener };
+		}
+		else
+		{
+			listeners = Arrays.copyOf(listeners, listeners.length + 1);
+			listeners[listeners.length - 1] = listener;
+			_listeners = listeners;
+		}
+	}
+	
+	@Override
+	public synchronized void removePropertyChangeListener(PropertyChangeListener listener)
+	{
+		PropertyChangeListener[] listeners = _listeners;
+		if (listeners == null)
+		{
+			return;
+		}
+		
+		for (int i = 0; i < listeners.length; i++)
+		{
+			if (listeners[i] == listener)
+			{
+				PropertyChangeListener[] remaining = new PropertyChangeListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, remaining, 0, i);
+				System.arraycopy(listeners, i + 1, remaining, i, remaining.length - i);
+				_listeners = remaining.length == 0 ? null : remaining;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Sends a property change to every listener, unless the old and new values are equal.
+	 * Listeners are kept in a plain array rather than a PropertyChangeSupport, so sending an event
+	 * reads one array instead of looking the listeners up in a map per item, which matters when
+	 * events are sent for many items that are not in cache.
+	 * @param e The event to send
+	 */
+	private void firePropertyChange(PropertyChangeEvent e)
+	{
+		PropertyChangeListener[] listeners = _listeners;
+		Object oldValue = e.getOldValue();
+		if (listeners == null || (oldValue != null && oldValue.equals(e.getNewValue())))
+		{
+			return;
+		}
+		
+		for (PropertyChangeListener listener : listeners)
+		{
+			listener.propertyChange(e);
+		}
+	}
+	
+	/**
+	 * Gets Item data as string for serialization to CSV.
+	 * If name contains commas (,) or double-quotes ("), name is enclosed in double-quotes
+	 * and any double-quote literals are replaced with pair of double quotes ("").
+	 * @returns Comma separated string of item data
+	 */
+	public String toString()
+	{
+		return ItemCsv.formatLine(getName(), _weight, _wholesalePrice, getQuantityInStock());
+	}
 }
\ No newline at end of file
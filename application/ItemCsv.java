@@ -0,0 +1,164 @@
+/**
+ * Helper methods for the comma-separated format used to import and export items.
+ * Each line holds an item's name, weight, wholesale price, and quantity.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+public class ItemCsv
+{
+	/** Number of fields in each line */
+	public static final int s_fieldCount = 4;
+	
+	/** Not instantiable */
+	private ItemCsv() { }
+	
+	/**
+	 * Parses one comma-delimited line into a new item
+	 * @param line The comma-delimited line to parse
+	 * @returns The item described by the line
+	 * @throws NumberFormatException if a numeric field cannot be parsed
+	 * @throws IllegalArgumentException if the line does not hold exactly four fields,
+	 * or a numeric value cannot be set as the property of an item
+	 */
+	public static Item parseItem(String line)
+	{
+		String[] args = splitCommaDelimitedString(line);
+		if (args.length != s_fieldCount)
+		{
+			throw new IllegalArgumentException("Expected " + s_fieldCount 
+				+ " fields (name, weight, price, and quantity) but found " + args.length);
+		}
+		String name = args[0];
+		double weight = Double.parseDouble(args[1]);
+		double price = Double.parseDouble(args[2]);
+		int quantity = Integer.parseInt(args[3]);
+		
+		return new Item(name, weight, price, quantity);
+	}
+	
+	/**
+	 * Parses one numbered row of an inventory file into a new item
+	 * @param line The comma-delimited line to parse
+	 * @param row The number of the row in its file, counting from one
+	 * @returns The item described by the line
+	 * @throws ItemParseException if the line cannot be parsed into an item
+	 */
+	public static Item parseItem(String line, long row)
+	{
+		try
+		{
+			return parseItem(line);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new ItemParseException(row, parseName(line), e);
+		}
+	}
+	
+	/**
+	 * Reads the name of a line that may not parse as a whole
+	 * @param line The comma-delimited line
+	 * @returns The unescaped name, or null if the line has no readable name
+	 */
+	public static String parseName(String line)
+	{
+		try
+		{
+			String name = splitCommaDelimitedString(line)[0];
+			return name == null || name.isEmpty() ? null : name;
+		}
+		catch (RuntimeException e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Formats the properties of an item as one comma-delimited line without a line terminator
+	 * @param name The item name, escaped if it contains commas or double-quotes
+	 * @param weight The item weight
+	 * @param price The item wholesale price
+	 * @param quantity The item quantity in stock
+	 * @returns The comma-delimited line
+	 */
+	public static String formatLine(String name, double weight, double price, int quantity)
+	{
+		return escapeName(name) + "," 
+			+ String.valueOf(weight) + "," 
+			+ String.valueOf(price) + "," 
+			+ String.valueOf(quantity);
+	}
+	
+	/**
+	 * If input string contians commas or double-quotes, enclose input in double-quotes and 
+	 * replace any double-quote literals with pair of double-quotes.
+	 * @param str The string to process
+	 * @returns The string with characters escaped if necessary
+	 */
+	public static String escapeName(String str)
+	{
+		if (!str.contains(",") && !str.contains("\""))
+		{
+			return str;
+		}
+		
+		return "\"" + str.replace("\"", "\"\"") + "\"";
+	}
+	
+	/**
+	 * Reverses escapeName for a field holding only a name
+	 * @param field The possibly escaped name
+	 * @returns The name with enclosing double-quotes removed and quote pairs unescaped
+	 */
+	public static String unescapeName(String field)
+	{
+		if (!field.startsWith("\""))
+		{
+			return field;
+		}
+		
+		return field.substring(1, field.length() - 1).replace("\"\"", "\"");
+	}
+	
+	/**
+	 * Splits a comma-delimited string into the properties of the item 
+	 * to deserialize from csv: name, weight, price, and quantity
+	 * Name field is enclosed in double-quotes if the item name contains 
+	 * commas or double-quotes which must be unescaped.
+	 * Other properties don't contain commas or quotes and do not need to be unescaped.
+	 * @param line The comma-delimited string to parse
+	 * @returns String array containing name, weight, price, and quantity of the item being deserialized,
+	 * with one element per field found, so a malformed line may give more or fewer than four.
+	 * @throws IllegalArgumentException if the line contains a double-quote but no quoted name
+ 	 */
+	public static String[] splitCommaDelimitedString(String line)
+	{
+		if (!line.contains("\""))
+		{
+			return line.split(",");
+		}
+		
+		int firstQuoteIndex = 0;
+		int lastQuoteIndex = line.lastIndexOf("\"");
+		if (line.charAt(firstQuoteIndex) != '"' || lastQuoteIndex == firstQuoteIndex)
+		{
+			throw new IllegalArgumentException("Name is not enclosed in double-quotes");
+		}
+		String name = line.substring(firstQuoteIndex + 1, lastQuoteIndex).replace("\"\"", "\"");
+		int nextPieceStartIndex = lastQuoteIndex + 2;
+		if (nextPieceStartIndex > line.length())
+		{
+			return new String[] { name };
+		}
+		
+		String[] pieces = line.substring(nextPieceStartIndex).split(",");
+		String[] arr = new String[pieces.length + 1];
+		arr[0] = name;
+		System.arraycopy(pieces, 0, arr, 1, pieces.length);
+		
+		return arr;
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * Thrown when a row of an inventory file cannot be parsed into an item
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+public class ItemParseException extends IllegalArgumentException
+{
+	/** The row that failed to parse, counting from one */
+	private final long _row;
+	/** The name on the row, or null if the row has no readable name */
+	private final String _name;
+	/** Version of the serialized form */
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Constructor
+	 * @param row The row that failed to parse, counting from one
+	 * @param name The name on the row, or null if the row has no readable name
+	 * @param cause The NumberFormatException or IllegalArgumentException raised by the row
+	 */
+	public ItemParseException(long row, String name, IllegalArgumentException cause)
+	{
+		super("Row " + row + (name == null ? "" : " (\"" + name + "\")") + ": " + cause.getMessage(), cause);
+		_row = row;
+		_name = name;
+	}
+	
+	/**
+	 * Get method for the row
+	 * @returns The row that failed to parse, counting from one
+	 */
+	public long getRow()
+	{
+		return _row;
+	}
+	
+	/**
+	 * Get method for the name
+	 * @returns The name on the row, or null if the row has no readable name
+	 */
+	public String getName()
+	{
+		return _name;
+	}
+	
+	/**
+	 * Checks whether the row failed because a number could not be read
+	 * @returns True if the cause is a NumberFormatException
+	 */
+	public boolean isNumberFormat()
+	{
+		return getCause() instanceof NumberFormatException;
+	}
+}
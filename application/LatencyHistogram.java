@@ -0,0 +1,155 @@
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets of fixed relative precision.
+ * Values below 128 have a bucket each, and every larger power-of-two range is split into 64
+ * buckets, so a recorded value is reported within 1.6% of its true value. Recording is a few
+ * arithmetic operations on a primitive array and never allocates.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+public class LatencyHistogram
+{
+	/** Count of values by bucket */
+	private final long[] _counts = new long[(64 - s_subBucketBits + 2) << (s_subBucketBits - 1)];
+	/** Number of values recorded */
+	private long _totalCount = 0;
+	/** Smallest value recorded */
+	private long _min = Long.MAX_VALUE;
+	/** Largest value recorded */
+	private long _max = 0;
+	/** Sum of the values recorded */
+	private double _sum = 0;
+	/** Number of bits of precision kept for each value */
+	private static final int s_subBucketBits = 7;
+	/** Number of buckets in each power-of-two range above the linear range */
+	private static final int s_halfBucketCount = 1 << (s_subBucketBits - 1);
+	
+	/**
+	 * Records a value
+	 * @param value The value in nanoseconds, negative values are recorded as zero
+	 */
+	public void record(long value)
+	{
+		value = Math.max(0, value);
+		_counts[indexOf(value)]++;
+		_totalCount++;
+		_min = Math.min(_min, value);
+		_max = Math.max(_max, value);
+		_sum += value;
+	}
+	
+	/**
+	 * Adds the values of another histogram to this one
+	 * @param other The histogram to add
+	 */
+	public void add(LatencyHistogram other)
+	{
+		for (int i = 0; i < _counts.length; i++)
+		{
+			_counts[i] += other._counts[i];
+		}
+		_totalCount += other._totalCount;
+		_min = Math.min(_min, other._min);
+		_max = Math.max(_max, other._max);
+		_sum += other._sum;
+	}
+	
+	/**
+	 * Get method for the number of values recorded
+	 * @returns The value count
+	 */
+	public long getCount()
+	{
+		return _totalCount;
+	}
+	
+	/**
+	 * Get method for the smallest value recorded
+	 * @returns The minimum, or zero if nothing was recorded
+	 */
+	public long getMin()
+	{
+		return _totalCount == 0 ? 0 : _min;
+	}
+	
+	/**
+	 * Get method for the largest value recorded
+	 * @returns The maximum, or zero if nothing was recorded
+	 */
+	public long getMax()
+	{
+		return _max;
+	}
+	
+	/**
+	 * Get method for the mean of the values recorded
+	 * @returns The mean, or zero if nothing was recorded
+	 */
+	public double getMean()
+	{
+		return _totalCount == 0 ? 0 : _sum / _totalCount;
+	}
+	
+	/**
+	 * Computes the value below which a percentage of the recorded values fall
+	 * @param percentile The percentage, from 0 to 100
+	 * @returns The highest value in the bucket holding the percentile, at most the maximum recorded
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		if (_totalCount == 0)
+		{
+			return 0;
+		}
+		
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100 * _totalCount));
+		long seen = 0;
+		for (int i = 0; i < _counts.length; i++)
+		{
+			seen += _counts[i];
+			if (seen >= rank)
+			{
+				return Math.min(highestValueOf(i), _max);
+			}
+		}
+		
+		return _max;
+	}
+	
+	/**
+	 * Computes the bucket of a value
+	 * @param value The non-negative value
+	 * @returns The bucket index
+	 */
+	private static int indexOf(long value)
+	{
+		int bits = 64 - Long.numberOfLeadingZeros(value);
+		if (bits <= s_subBucketBits)
+		{
+			return (int)value;
+		}
+		
+		int shift = bits - s_subBucketBits;
+		int top = (int)(value >>> shift);
+		return ((shift + 1) << (s_subBucketBits - 1)) + top - s_halfBucketCount;
+	}
+	
+	/**
+	 * Computes the largest value held by a bucket
+	 * @param index The bucket index
+	 * @returns The largest value mapping to the bucket
+	 */
+	private static long highestValueOf(int index)
+	{
+		if (index < (1 << s_subBucketBits))
+		{
+			return index;
+		}
+		
+		int shift = (index >> (s_subBucketBits - 1)) - 1;
+		long top = (index & (s_halfBucketCount - 1)) + s_halfBucketCount;
+		return ((top + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * Quantities of products held at a number of locations, with running totals of the items and their
+ * wholesale and retail value at each location. Each location keeps its quantities as chunks of
+ * primitive ints indexed by product ID, and a chunk is only allocated once the location stocks a
+ * product in its range of IDs, so a location costs four bytes per product in the ranges it stocks
+ * and nothing elsewhere. Totals are adjusted as quantities and prices change, so reading them takes
+ * constant time however many products and locations there are. Prices are not stored here, so the
+ * owner passes the current prices of a product with every change.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+public class LocationStock
+{
+	/** Names of the locations by index */
+	private final List<String> _names = new ArrayList<>();
+	/** Index of each location by name */
+	private final Map<String, Integer> _indexes = new HashMap<>();
+	/** Quantity chunks of each location by chunk of product IDs, null for chunks never stocked */
+	private int[][][] _quantities = new int[s_initialLocations][][];
+	/** Number of items held at each location */
+	private long[] _itemCounts = new long[s_initialLocations];
+	/** Total wholesale price of the items held at each location */
+	private double[] _wholesalePrices = new double[s_initialLocations];
+	/** Total retail price of the items held at each location */
+	private double[] _retailPrices = new double[s_initialLocations];
+	/** Quantity held at any location by chunk of product IDs, so products held nowhere are skipped quickly */
+	private int[][] _located = new int[0][];
+	/** Number of bits of a product ID selecting the slot within a chunk */
+	private static final int s_chunkBits = 10;
+	/** Number of slots in each chunk */
+	private static final int s_chunkSize = 1 << s_chunkBits;
+	/** Mask selecting the slot within a chunk */
+	private static final int s_chunkMask = s_chunkSize - 1;
+	/** Initial length of the per-location arrays */
+	private static final int s_initialLocations = 8;
+	/** Value returned by find for names not used by any location */
+	public static final int s_missing = -1;
+	
+	/**
+	 * Adds a location holding nothing
+	 * @param name The name of the location
+	 * @returns The index of the new location, one more than that of the location added before it
+	 * @throws IllegalArgumentException if another location has the same name
+	 */
+	public int addLocation(String name)
+	{
+		if (_indexes.containsKey(name))
+		{
+			throw new IllegalArgumentException("A location named \"" + name + "\" already exists");
+		}
+		
+		int location = _names.size();
+		if (location == _quantities.length)
+		{
+			_quantities = Arrays.copyOf(_quantities, location * 2);
+			_itemCounts = Arrays.copyOf(_itemCounts, location * 2);
+			_wholesalePrices = Arrays.copyOf(_wholesalePrices, location * 2);
+			_retailPrices = Arrays.copyOf(_retailPrices, location * 2);
+		}
+		_quantities[location] = new int[0][];
+		_names.add(name);
+		_indexes.put(name, location);
+		
+		return location;
+	}
+	
+	/**
+	 * Get method for the number of locations
+	 * @returns The number of locations added
+	 */
+	public int size()
+	{
+		return _names.size();
+	}
+	
+	/**
+	 * Get method for the name of a location
+	 * @param location The index of the location
+	 * @returns The name of the location
+	 */
+	public String getName(int location)
+	{
+		return _names.get(location);
+	}
+	
+	/**
+	 * Finds a location by name
+	 * @param name The name of the location
+	 * @returns The index of the location, or s_missing if no location has the name
+	 */
+	public int find(String name)
+	{
+		Integer location = _indexes.get(name);
+		return location == null ? s_missing : location;
+	}
+	
+	/**
+	 * Get method for the quantity of a product at a location
+	 * @param location The index of the location
+	 * @param id The ID of the product
+	 * @returns The quantity held at the location
+	 */
+	public int get(int location, int id)
+	{
+		return quantityOf(chunksOf(location), id);
+	}
+	
+	/**
+	 * Get method for the quantity of a product held at any location
+	 * @param id The ID of the product
+	 * @returns The sum of its quantities at every location
+	 */
+	public int getLocated(int id)
+	{
+		return quantityOf(_located, id);
+	}
+	
+	/**
+	 * Get method for the number of items held at a location
+	 * @param location The index of the location
+	 * @returns The sum of the quantities of every product at the location
+	 */
+	public long getItemsInStock(int location)
+	{
+		Objects.checkIndex(location, _names.size());
+		return _itemCounts[location];
+	}
+	
+	/**
+	 * Get method for the wholesale value of a location
+	 * @param location The index of the location
+	 * @returns The total wholesale price of the items held at the location
+	 */
+	public double getWholesalePrice(int location)
+	{
+		Objects.checkIndex(location, _names.size());
+		return _wholesalePrices[location];
+	}
+	
+	/**
+	 * Get method for the retail value of a location
+	 * @param location The index of the location
+	 * @returns The total retail price of the items held at the location
+	 */
+	public double getRetailPrice(int location)
+	{
+		Objects.checkIndex(location, _names.size());
+		return _retailPrices[location];
+	}
+	
+	/**
+	 * Changes the quantity of a product at a location and the totals of the location. The caller
+	 * checks that the quantity stays between zero and the largest int.
+	 * @param location The index of the location
+	 * @param id The ID of the product
+	 * @param delta The amount added to the quantity
+	 * @param wholesalePrice The wholesale price of the product
+	 * @param retailPrice The retail price of the product
+	 */
+	public void add(int location, int id, int delta, double wholesalePrice, double retailPrice)
+	{
+		if (delta == 0)
+		{
+			return;
+		}
+		
+		int[][] chunks = chunksOf(location);
+		int chunk = id >>> s_chunkBits;
+		if (chunk >= chunks.length || chunks[chunk] == null)
+		{
+			chunks = allocate(chunks, chunk);
+			_quantities[location] = chunks;
+		}
+		chunks[chunk][id & s_chunkMask] += delta;
+		if (chunk >= _located.length || _located[chunk] == null)
+		{
+			_located = allocate(_located, chunk);
+		}
+		_located[chunk][id & s_chunkMask] += delta;
+		
+		_itemCounts[location] += delta;
+		_wholesalePrices[location] += delta * wholesalePrice;
+		_retailPrices[location] += delta * retailPrice;
+	}
+	
+	/**
+	 * Adjusts the totals of every location holding a product after its prices changed
+	 * @param id The ID of the product
+	 * @param wholesaleChange The change in its wholesale price
+	 * @param retailChange The change in its retail price
+	 */
+	public void priceChanged(int id, double wholesaleChange, double retailChange)
+	{
+		if (quantityOf(_located, id) == 0)
+		{
+			return;
+		}
+		
+		for (int location = 0; location < _names.size(); location++)
+		{
+			int quantity = quantityOf(_quantities[location], id);
+			_wholesalePrices[location] += quantity * wholesaleChange;
+			_retailPrices[location] += quantity * retailChange;
+		}
+	}
+	
+	/**
+	 * Removes a product from every location, taking its stock out of their totals
+	 * @param id The ID of the product
+	 * @param wholesalePrice The wholesale price of the product
+	 * @param retailPrice The retail price of the product
+	 */
+	public void remove(int id, double wholesalePrice, double retailPrice)
+	{
+		if (quantityOf(_located, id) == 0)
+		{
+			return;
+		}
+		
+		for (int location = 0; location < _names.size(); location++)
+		{
+			int quantity = quantityOf(_quantities[location], id);
+			if (quantity != 0)
+			{
+				add(location, id, -quantity, wholesalePrice, retailPrice);
+			}
+		}
+	}
+	
+	/**
+	 * Recomputes the retail value of every location after every product was repriced. Each location
+	 * is summed over the chunks it has allocated in a flat loop the JIT compiler can vectorize.
+	 * @param retailPrices The retail price of each product by ID, zero for IDs not in use
+	 */
+	public void repriceRetail(double[] retailPrices)
+	{
+		for (int location = 0; location < _names.size(); location++)
+		{
+			int[][] chunks = _quantities[location];
+			double total = 0;
+			for (int chunk = 0; chunk < chunks.length; chunk++)
+			{
+				int[] quantities = chunks[chunk];
+				if (quantities == null)
+				{
+					continue;
+				}
+				
+				int base = chunk << s_chunkBits;
+				int end = Math.min(s_chunkSize, retailPrices.length - base);
+				for (int i = 0; i < end; i++)
+				{
+					total += quantities[i] * retailPrices[base + i];
+				}
+			}
+			_retailPrices[location] = total;
+		}
+	}
+	
+	/**
+	 * Get method for the quantity chunks of a location
+	 * @param location The index of the location
+	 * @returns The chunks of the location
+	 */
+	private int[][] chunksOf(int location)
+	{
+		Objects.checkIndex(location, _names.size());
+		return _quantities[location];
+	}
+	
+	/**
+	 * Reads a quantity from a set of chunks
+	 * @param chunks The chunks by chunk of product IDs
+	 * @param id The ID of the product
+	 * @returns The quantity of the product, zero if its chunk was never allocated
+	 */
+	private static int quantityOf(int[][] chunks, int id)
+	{
+		int chunk = id >>> s_chunkBits;
+		return chunk < chunks.length && chunks[chunk] != null ? chunks[chunk][id & s_chunkMask] : 0;
+	}
+	
+	/**
+	 * Allocates a chunk, growing the chunk directory if needed
+	 * @param chunks The chunks by chunk of product IDs
+	 * @param chunk The index of the chunk to allocate
+	 * @returns The chunk directory, a new array if it grew
+	 */
+	private static int[][] allocate(int[][] chunks, int chunk)
+	{
+		if (chunk >= chunks.length)
+		{
+			chunks = Arrays.copyOf(chunks, Math.max(chunk + 1, chunks.length * 2));
+		}
+		chunks[chunk] = new int[s_chunkSize];
+		
+		return chunks;
+	}
+}
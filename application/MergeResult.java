@@ -0,0 +1,64 @@
+/**
+ * Counts of the products affected by merging a batch of products into a product list
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+public class MergeResult
+{
+	/** Number of products added because their name was not in the list */
+	private final int _added;
+	/** Number of products whose weight, price, or quantity was updated */
+	private final int _updated;
+	/** Number of products already matching the merged values */
+	private final int _unchanged;
+	/** Number of products removed because their name was not merged */
+	private final int _removed;
+	
+	/** Constructor */
+	public MergeResult(int added, int updated, int unchanged, int removed)
+	{
+		_added = added;
+		_updated = updated;
+		_unchanged = unchanged;
+		_removed = removed;
+	}
+	
+	/**
+	 * Get method for the number of products added
+	 * @returns Number of merged products whose name was not in the list
+	 */
+	public int getAdded()
+	{
+		return _added;
+	}
+	
+	/**
+	 * Get method for the number of products updated
+	 * @returns Number of products whose weight, price, or quantity changed
+	 */
+	public int getUpdated()
+	{
+		return _updated;
+	}
+	
+	/**
+	 * Get method for the number of products left unchanged
+	 * @returns Number of products that already matched the merged values
+	 */
+	public int getUnchanged()
+	{
+		return _unchanged;
+	}
+	
+	/**
+	 * Get method for the number of products removed
+	 * @returns Number of products removed because they were missing from the merge
+	 */
+	public int getRemoved()
+	{
+		return _removed;
+	}
+}
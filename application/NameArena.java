@@ -0,0 +1,630 @@
+/**
+ * Store of product names encoded as UTF-8 bytes in large pages, referenced by 32-bit handles. Each
+ * product list keeps its own arena. Each distinct name is stored once, so interning the same name
+ * again returns the same handle and handles can be compared for equality directly. Names are
+ * ordered by comparing their bytes without decoding, which is the order of their code points.
+ * Names are reference counted: every intern is matched by a release, and the space of a name
+ * released as often as it was interned is reused for later names of the same rounded size. Space
+ * is handed out in steps of four bytes, and only names up to s_maxReusedSize bytes are reused.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+public class NameArena
+{
+	/** Pages of length-prefixed names, a handle is the page index and offset of an entry */
+	private volatile byte[][] _pages = new byte[1][];
+	/** Index of the page being filled */
+	private int _page = 0;
+	/** Offset of the next free byte in the page being filled */
+	private int _offset = 0;
+	/** Open-addressing table of handle + 1 by name hash, zero for empty slots */
+	private int[] _table = new int[s_initialTableSize];
+	/** Number of references to the name in each slot of the table */
+	private int[] _counts = new int[s_initialTableSize];
+	/** Handles of released entries by their size in steps of s_granule bytes */
+	private final int[][] _free = new int[s_maxReusedSize / s_granule + 1][];
+	/** Number of handles in each list of _free */
+	private final int[] _freeCounts = new int[s_maxReusedSize / s_granule + 1];
+	/** Bytes of page space held by released entries */
+	private long _freeBytes = 0;
+	/** Number of names stored */
+	private int _size = 0;
+	/** Write-locked while a name is stored, so find can read without the monitor and check nothing changed */
+	private final StampedLock _storeLock = new StampedLock();
+	/** Number of bits of a handle holding the offset within a page */
+	private static final int s_pageBits = 20;
+	/** Size of each page in bytes */
+	private static final int s_pageSize = 1 << s_pageBits;
+	/** Mask selecting the offset within a page */
+	private static final int s_offsetMask = s_pageSize - 1;
+	/** Maximum number of pages addressable by a non-negative handle */
+	private static final int s_maxPages = 1 << (31 - s_pageBits);
+	/** Initial number of slots in the table, must be a power of two */
+	private static final int s_initialTableSize = 1024;
+	/** Number of bytes entries are aligned and sized to */
+	private static final int s_granule = 4;
+	/** Largest entry, prefix included, whose space is reused once it is released */
+	private static final int s_maxReusedSize = 256;
+	/** Value returned by find for names not in the arena */
+	public static final int s_missing = -1;
+	
+	/** Constructor */
+	public NameArena()
+	{
+		_pages[0] = new byte[s_pageSize];
+	}
+	
+	/**
+	 * Stores a name if it is not already stored, and adds a reference to it
+	 * @param name The name to store
+	 * @returns The handle of the name
+	 * @throws IllegalArgumentException if the encoded name does not fit in a page
+	 */
+	public synchronized int intern(String name)
+	{
+		int handle = internIfAbsent(name);
+		return handle < 0 ? ~handle : handle;
+	}
+	
+	/**
+	 * Stores a name if it is not already stored, and adds a reference to it, telling whether the
+	 * name was stored by this call. A name stored now is held by no one else, which a caller can use
+	 * to skip looking it up.
+	 * @param name The name to store
+	 * @returns The handle of the name if it was stored now, or the bitwise complement of its handle,
+	 * a negative value, if it was already stored
+	 * @throws IllegalArgumentException if the encoded name does not fit in a page
+	 */
+	public synchronized int internIfAbsent(String name)
+	{
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		int hash = hash(bytes);
+		int mask = _table.length - 1;
+		int slot = hash & mask;
+		while (_table[slot] != 0)
+		{
+			if (equalsBytes(_table[slot] - 1, bytes))
+			{
+				_counts[slot]++;
+				return ~(_table[slot] - 1);
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		long stamp = _storeLock.writeLock();
+		try
+		{
+			int handle = store(bytes);
+			_table[slot] = handle + 1;
+			_counts[slot] = 1;
+			_size++;
+			if (_size * 4 > _table.length * 3)
+			{
+				resize();
+			}
+			
+			return handle;
+		}
+		finally
+		{
+			_storeLock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * Drops a reference to a name, and removes the name once every reference taken by intern has
+	 * been dropped, so that its handle is no longer found and its space can be reused
+	 * @param handle The handle of the name
+	 * @throws IllegalArgumentException if the handle is not that of a stored name
+	 */
+	public synchronized void release(int handle)
+	{
+		int mask = _table.length - 1;
+		int slot = hash(handle) & mask;
+		while (_table[slot] != handle + 1)
+		{
+			if (_table[slot] == 0)
+			{
+				throw new IllegalArgumentException("Name handle " + handle + " is not stored");
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (--_counts[slot] > 0)
+		{
+			return;
+		}
+		
+		long stamp = _storeLock.writeLock();
+		try
+		{
+			int gap = slot;
+			for (int next = (gap + 1) & mask; _table[next] != 0; next = (next + 1) & mask)
+			{
+				int home = hash(_table[next] - 1) & mask;
+				// move the entry back if the gap lies between its home slot and its current slot
+				if (((next - home) & mask) >= ((next - gap) & mask))
+				{
+					_table[gap] = _table[next];
+					_counts[gap] = _counts[next];
+					gap = next;
+				}
+			}
+			_table[gap] = 0;
+			_counts[gap] = 0;
+			_size--;
+			
+			int size = entrySize(byteLength(handle));
+			_freeBytes += size;
+			if (size <= s_maxReusedSize)
+			{
+				int sizeClass = size / s_granule;
+				int[] handles = _free[sizeClass];
+				if (handles == null || _freeCounts[sizeClass] == handles.length)
+				{
+					handles = handles == null ? new int[16] : Arrays.copyOf(handles, handles.length * 2);
+					_free[sizeClass] = handles;
+				}
+				handles[_freeCounts[sizeClass]++] = handle;
+			}
+		}
+		finally
+		{
+			_storeLock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * Finds the handle of a name without storing it. The table is probed without taking the monitor,
+	 * so lookups from several threads do not queue behind each other, and probed again under the
+	 * monitor only if a name was stored meanwhile.
+	 * @param name The name to find
+	 * @returns The handle of the name, or s_missing if the name has never been stored
+	 */
+	public int find(String name)
+	{
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		long stamp = _storeLock.tryOptimisticRead();
+		if (stamp != 0)
+		{
+			try
+			{
+				int handle = probe(_table, bytes);
+				if (_storeLock.validate(stamp))
+				{
+					return handle;
+				}
+			}
+			catch (RuntimeException e)
+			{
+				// a table or page seen while a name was being stored, which validate would reject anyway
+			}
+		}
+		
+		synchronized (this)
+		{
+			return probe(_table, bytes);
+		}
+	}
+	
+	/**
+	 * Looks up an encoded name in a table
+	 * @param table The table to probe
+	 * @param bytes The encoded name
+	 * @returns The handle of the name, or s_missing if the table does not hold it
+	 */
+	private int probe(int[] table, byte[] bytes)
+	{
+		int mask = table.length - 1;
+		for (int slot = hash(bytes) & mask; table[slot] != 0; slot = (slot + 1) & mask)
+		{
+			if (equalsBytes(table[slot] - 1, bytes))
+			{
+				return table[slot] - 1;
+			}
+		}
+		
+		return s_missing;
+	}
+	
+	/**
+	 * Decodes a stored name
+	 * @param handle The handle of the name
+	 * @returns The name as a String
+	 */
+	public String decode(int handle)
+	{
+		byte[] page = _pages[handle >>> s_pageBits];
+		int offset = handle & s_offsetMask;
+		int length = readLength(page, offset);
+		
+		return new String(page, offset + lengthSize(length), length, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Get method for the number of UTF-8 bytes in a stored name
+	 * @param handle The handle of the name
+	 * @returns The encoded length of the name
+	 */
+	public int byteLength(int handle)
+	{
+		return readLength(_pages[handle >>> s_pageBits], handle & s_offsetMask);
+	}
+	
+	/**
+	 * Copies the UTF-8 bytes of a stored name
+	 * @param handle The handle of the name
+	 * @param dst The array to copy into
+	 * @param offset The index of dst receiving the first byte, followed by room for byteLength(handle) bytes
+	 */
+	public void copyBytes(int handle, byte[] dst, int offset)
+	{
+		byte[] page = _pages[handle >>> s_pageBits];
+		int from = handle & s_offsetMask;
+		int length = readLength(page, from);
+		System.arraycopy(page, from + lengthSize(length), dst, offset, length);
+	}
+	
+	/**
+	 * Compares two stored names by their UTF-8 bytes
+	 * @param a The handle of the first name
+	 * @param b The handle of the second name
+	 * @returns Negative, zero, or positive as the first name sorts before, equal to, or after the second
+	 */
+	public int compare(int a, int b)
+	{
+		if (a == b)
+		{
+			return 0;
+		}
+		
+		byte[][] pages = _pages;
+		byte[] pageA = pages[a >>> s_pageBits];
+		byte[] pageB = pages[b >>> s_pageBits];
+		int offsetA = a & s_offsetMask;
+		int offsetB = b & s_offsetMask;
+		int lengthA = readLength(pageA, offsetA);
+		int lengthB = readLength(pageB, offsetB);
+		offsetA += lengthSize(lengthA);
+		offsetB += lengthSize(lengthB);
+		
+		return Arrays.compareUnsigned(pageA, offsetA, offsetA + lengthA, pageB, offsetB, offsetB + lengthB);
+	}
+	
+	/**
+	 * Compares a stored name with an encoded name by their UTF-8 bytes
+	 * @param handle The handle of the stored name
+	 * @param bytes The UTF-8 bytes of the other name
+	 * @returns Negative, zero, or positive as the stored name sorts before, equal to, or after the other name
+	 */
+	public int compare(int handle, byte[] bytes)
+	{
+		byte[] page = _pages[handle >>> s_pageBits];
+		int offset = handle & s_offsetMask;
+		int length = readLength(page, offset);
+		offset += lengthSize(length);
+		
+		return Arrays.compareUnsigned(page, offset, offset + length, bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * Sorts a range of handles by name, stable so equal handles keep their order
+	 * @param handles The handles to sort
+	 * @param from The first index to sort, inclusive
+	 * @param to The last index to sort, exclusive
+	 */
+	public void sort(int[] handles, int from, int to)
+	{
+		int[] buffer = Arrays.copyOfRange(handles, from, to);
+		mergeSort(buffer, 0, buffer.length, handles, from);
+	}
+	
+	/**
+	 * Get method for the number of stored names
+	 * @returns Number of distinct names stored
+	 */
+	public synchronized int size()
+	{
+		return _size;
+	}
+	
+	/**
+	 * Get method for the number of bytes of page space in use
+	 * @returns Bytes held by stored names and their length prefixes, not counting released names
+	 */
+	public synchronized long getBytesUsed()
+	{
+		return (long)_page * s_pageSize + _offset - _freeBytes;
+	}
+	
+	/**
+	 * Compares two names in the order an arena sorts them, the order of their code points, without
+	 * encoding them. This differs from String.compareTo only for characters outside the Basic
+	 * Multilingual Plane, whose surrogates sort after every other character here.
+	 * @param a The first name
+	 * @param b The second name
+	 * @returns Negative, zero, or positive as the first name sorts before, equal to, or after the second
+	 */
+	public static int compareNames(String a, String b)
+	{
+		int length = Math.min(a.length(), b.length());
+		for (int i = 0; i < length; i++)
+		{
+			char x = a.charAt(i);
+			char y = b.charAt(i);
+			if (x != y)
+			{
+				boolean isSurrogateX = Character.isSurrogate(x);
+				if (isSurrogateX != Character.isSurrogate(y))
+				{
+					return isSurrogateX ? 1 : -1;
+				}
+				return x - y;
+			}
+		}
+		
+		return a.length() - b.length();
+	}
+	
+	/**
+	 * Sorts src[from, to) into dst starting at dstFrom, using src as scratch space
+	 * @param src The handles to sort, overwritten
+	 * @param from The first index of src to sort
+	 * @param to The last index of src to sort, exclusive
+	 * @param dst The array receiving the sorted handles
+	 * @param dstFrom The index of dst receiving the first sorted handle
+	 */
+	private void mergeSort(int[] src, int from, int to, int[] dst, int dstFrom)
+	{
+		int length = to - from;
+		if (length < 16)
+		{
+			// insertion sort small ranges straight into the destination
+			for (int i = 0; i < length; i++)
+			{
+				int handle = src[from + i];
+				int j = dstFrom + i;
+				while (j > dstFrom && compare(dst[j - 1], handle) > 0)
+				{
+					dst[j] = dst[j - 1];
+					j--;
+				}
+				dst[j] = handle;
+			}
+			return;
+		}
+		
+		int mid = from + length / 2;
+		int dstMid = dstFrom + length / 2;
+		// sort each half of dst's range into src, then merge the halves back into dst
+		System.arraycopy(src, from, dst, dstFrom, length);
+		mergeSort(dst, dstFrom, dstMid, src, from);
+		mergeSort(dst, dstMid, dstFrom + length, src, mid);
+		int i = from;
+		int j = mid;
+		for (int k = dstFrom; k < dstFrom + length; k++)
+		{
+			if (j >= to || (i < mid && compare(src[i], src[j]) <= 0))
+			{
+				dst[k] = src[i++];
+			}
+			else
+			{
+				dst[k] = src[j++];
+			}
+		}
+	}
+	
+	/**
+	 * Writes an encoded name into the space of a released name of the same size if there is one,
+	 * otherwise appends it to the current page, starting a new page if it does not fit
+	 * @param bytes The encoded name
+	 * @returns The handle of the stored name
+	 */
+	private int store(byte[] bytes)
+	{
+		int entrySize = entrySize(bytes.length);
+		if (entrySize > s_pageSize)
+		{
+			throw new IllegalArgumentException("Name is too long");
+		}
+		
+		int sizeClass = entrySize / s_granule;
+		if (entrySize <= s_maxReusedSize && _freeCounts[sizeClass] > 0)
+		{
+			int handle = _free[sizeClass][--_freeCounts[sizeClass]];
+			byte[] page = _pages[handle >>> s_pageBits];
+			int offset = writeLength(page, handle & s_offsetMask, bytes.length);
+			System.arraycopy(bytes, 0, page, offset, bytes.length);
+			_freeBytes -= entrySize;
+			
+			return handle;
+		}
+		
+		if (_offset + entrySize > s_pageSize)
+		{
+			if (_page + 1 == s_maxPages)
+			{
+				throw new IllegalStateException("Name arena is full");
+			}
+			
+			byte[][] pages = Arrays.copyOf(_pages, _page + 2);
+			pages[_page + 1] = new byte[s_pageSize];
+			_page++;
+			_offset = 0;
+			_pages = pages;
+		}
+		
+		byte[] page = _pages[_page];
+		int handle = (_page << s_pageBits) | _offset;
+		int offset = writeLength(page, _offset, bytes.length);
+		System.arraycopy(bytes, 0, page, offset, bytes.length);
+		_offset += entrySize;
+		
+		return handle;
+	}
+	
+	/** Doubles the table and reinserts every handle with its reference count */
+	private void resize()
+	{
+		int[] table = new int[_table.length * 2];
+		int[] counts = new int[table.length];
+		int mask = table.length - 1;
+		for (int i = 0; i < _table.length; i++)
+		{
+			if (_table[i] != 0)
+			{
+				int slot = hash(_table[i] - 1) & mask;
+				while (table[slot] != 0)
+				{
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = _table[i];
+				counts[slot] = _counts[i];
+			}
+		}
+		_table = table;
+		_counts = counts;
+	}
+	
+	/**
+	 * Checks if a stored name has exactly the given bytes
+	 * @param handle The handle of the stored name
+	 * @param bytes The encoded name to compare with
+	 * @returns True if the bytes are equal
+	 */
+	private boolean equalsBytes(int handle, byte[] bytes)
+	{
+		byte[] page = _pages[handle >>> s_pageBits];
+		int offset = handle & s_offsetMask;
+		int length = readLength(page, offset);
+		if (length != bytes.length)
+		{
+			return false;
+		}
+		
+		offset += lengthSize(length);
+		return Arrays.equals(page, offset, offset + length, bytes, 0, length);
+	}
+	
+	/**
+	 * Hashes the bytes of a stored name
+	 * @param handle The handle of the stored name
+	 * @returns The same hash as hash(byte[]) of the name's bytes
+	 */
+	private int hash(int handle)
+	{
+		byte[] page = _pages[handle >>> s_pageBits];
+		int offset = handle & s_offsetMask;
+		int length = readLength(page, offset);
+		offset += lengthSize(length);
+		
+		return mix(hashRange(page, offset, offset + length));
+	}
+	
+	/**
+	 * Hashes an encoded name
+	 * @param bytes The encoded name
+	 * @returns The hash of the bytes
+	 */
+	private static int hash(byte[] bytes)
+	{
+		return mix(hashRange(bytes, 0, bytes.length));
+	}
+	
+	/**
+	 * Computes a polynomial hash over a range of bytes
+	 * @param bytes The bytes to hash
+	 * @param from The first index, inclusive
+	 * @param to The last index, exclusive
+	 * @returns The hash of the range
+	 */
+	private static int hashRange(byte[] bytes, int from, int to)
+	{
+		int h = 1;
+		for (int i = from; i < to; i++)
+		{
+			h = 31 * h + bytes[i];
+		}
+		
+		return h;
+	}
+	
+	/**
+	 * Spreads the bits of a hash so that the low bits used for slots depend on all bits
+	 * @param h The hash to mix
+	 * @returns The mixed hash
+	 */
+	private static int mix(int h)
+	{
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * Computes the page space taken by a name, rounded up to whole granules
+	 * @param length The encoded length of the name
+	 * @returns Number of bytes of the entry, prefix included
+	 */
+	private static int entrySize(int length)
+	{
+		return (lengthSize(length) + length + s_granule - 1) & -s_granule;
+	}
+	
+	/**
+	 * Computes the size of the variable-length prefix encoding a name length
+	 * @param length The name length
+	 * @returns Number of prefix bytes
+	 */
+	private static int lengthSize(int length)
+	{
+		return length < 0x80 ? 1 : (length < 0x4000 ? 2 : 3);
+	}
+	
+	/**
+	 * Writes a name length as a variable-length prefix of seven bits per byte
+	 * @param page The page to write to
+	 * @param offset The offset to write at
+	 * @param length The name length
+	 * @returns The offset following the prefix
+	 */
+	private static int writeLength(byte[] page, int offset, int length)
+	{
+		while (length >= 0x80)
+		{
+			page[offset++] = (byte)(length | 0x80);
+			length >>>= 7;
+		}
+		page[offset++] = (byte)length;
+		
+		return offset;
+	}
+	
+	/**
+	 * Reads a name length written by writeLength
+	 * @param page The page to read from
+	 * @param offset The offset of the prefix
+	 * @returns The name length
+	 */
+	private static int readLength(byte[] page, int offset)
+	{
+		int length = 0;
+		int shift = 0;
+		byte b;
+		do
+		{
+			b = page[offset++];
+			length |= (b & 0x7f) << shift;
+			shift += 7;
+		}
+		while (b < 0);
+		
+		return length;
+	}
+}
@@ -0,0 +1,400 @@
+/**
+ * Index of products by the handle of their name in a NameArena.
+ * Lookups go through an open-addressing hash table over primitive handles. Name order is kept
+ * as a sorted array of handles plus an unsorted tail of recent additions, which is sorted and
+ * merged in only when products are next requested in name order, so bulk additions do not pay
+ * for ordering one product at a time. While nothing is pending, a name that sorts after every
+ * sorted name is appended to the sorted array directly, so products added in name order, such as
+ * an import of a sorted file, are never sorted at all.
+ * <p>
+ * The index holds one reference to each indexed name in the arena. A removed name may still be in
+ * the sorted handles, so its reference is released only once the handles are next merged, and the
+ * arena cannot reuse its space while the handle is still compared.
+ * @param <T> The type of product indexed
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class NameIndex<T>
+{
+	/** Arena holding the names */
+	private final NameArena _arena;
+	/** Handle + 1 by slot, zero for empty slots */
+	private int[] _keys = new int[s_initialCapacity];
+	/** Product by slot */
+	private Object[] _values = new Object[s_initialCapacity];
+	/** Number of products indexed */
+	private int _size = 0;
+	/** Handles in name order as of the last merge, possibly including removed handles */
+	private int[] _sorted = new int[0];
+	/** Number of handles in _sorted */
+	private int _sortedCount = 0;
+	/** Handles added since the last merge, in no particular order */
+	private int[] _pending = new int[s_initialCapacity];
+	/** Number of handles in _pending */
+	private int _pendingCount = 0;
+	/** True if handles were removed since the last merge */
+	private boolean _removedSinceMerge = false;
+	/** Handles removed since the last merge, released in the arena once they are merged away */
+	private int[] _removed = new int[s_initialCapacity];
+	/** Number of handles in _removed */
+	private int _removedCount = 0;
+	/** Initial number of slots, must be a power of two */
+	private static final int s_initialCapacity = 16;
+	
+	/**
+	 * Constructor
+	 * @param arena The arena the indexed names are stored in
+	 */
+	public NameIndex(NameArena arena)
+	{
+		_arena = arena;
+	}
+	
+	/**
+	 * Get method for the arena holding the indexed names
+	 * @returns The name arena
+	 */
+	public NameArena getArena()
+	{
+		return _arena;
+	}
+	
+	/**
+	 * Get the product with a name
+	 * @param handle The handle of the name
+	 * @returns The product, or null if no product has the name
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int handle)
+	{
+		int slot = find(handle);
+		return slot < 0 ? null : (T)_values[slot];
+	}
+	
+	/**
+	 * Checks if a product has a name
+	 * @param handle The handle of the name
+	 * @returns True if a product with the name is indexed
+	 */
+	public boolean containsKey(int handle)
+	{
+		return find(handle) >= 0;
+	}
+	
+	/**
+	 * Indexes a product by name, replacing any product with the same name. The index takes over a
+	 * reference to the name the caller took with NameArena.intern, and releases it at once if the
+	 * name was already indexed.
+	 * @param handle The handle of the product's name
+	 * @param prod The product
+	 */
+	public void put(int handle, T prod)
+	{
+		if ((_size + 1) * 2 > _keys.length)
+		{
+			resize(_keys.length * 2);
+		}
+		
+		int mask = _keys.length - 1;
+		int slot = slotOf(handle, mask);
+		while (_keys[slot] != 0 && _keys[slot] != handle + 1)
+		{
+			slot = (slot + 1) & mask;
+		}
+		if (_keys[slot] == 0)
+		{
+			_keys[slot] = handle + 1;
+			_size++;
+			if (_pendingCount == 0 && (_sortedCount == 0 || _arena.compare(_sorted[_sortedCount - 1], handle) < 0))
+			{
+				// names added in name order extend the sorted handles without being sorted again
+				if (_sortedCount == _sorted.length)
+				{
+					_sorted = Arrays.copyOf(_sorted, Math.max(s_initialCapacity, _sortedCount * 2));
+				}
+				_sorted[_sortedCount++] = handle;
+				_values[slot] = prod;
+				return;
+			}
+			if (_pendingCount == _pending.length)
+			{
+				_pending = Arrays.copyOf(_pending, _pendingCount * 2);
+			}
+			_pending[_pendingCount++] = handle;
+		}
+		else
+		{
+			_arena.release(handle);
+		}
+		_values[slot] = prod;
+	}
+	
+	/**
+	 * Removes the product with a name, releasing the index's reference to the name once the handle
+	 * is merged out of the sorted handles
+	 * @param handle The handle of the name
+	 * @returns The removed product, or null if no product had the name
+	 */
+	@SuppressWarnings("unchecked")
+	public T remove(int handle)
+	{
+		int slot = find(handle);
+		if (slot < 0)
+		{
+			return null;
+		}
+		
+		T prod = (T)_values[slot];
+		int mask = _keys.length - 1;
+		int gap = slot;
+		for (int next = (gap + 1) & mask; _keys[next] != 0; next = (next + 1) & mask)
+		{
+			int home = slotOf(_keys[next] - 1, mask);
+			// move the key back if the gap lies between its home slot and its current slot
+			if (((next - home) & mask) >= ((next - gap) & mask))
+			{
+				_keys[gap] = _keys[next];
+				_values[gap] = _values[next];
+				gap = next;
+			}
+		}
+		_keys[gap] = 0;
+		_values[gap] = null;
+		_size--;
+		_removedSinceMerge = true;
+		if (_removedCount == _removed.length)
+		{
+			_removed = Arrays.copyOf(_removed, _removedCount * 2);
+		}
+		_removed[_removedCount++] = handle;
+		// merge once as many names were removed as are left, so their space is reused without waiting for a sorted read
+		if (_removedCount > Math.max(s_initialCapacity, _size))
+		{
+			mergePending();
+		}
+		
+		return prod;
+	}
+	
+	/**
+	 * Get method for the number of indexed products
+	 * @returns The number of products
+	 */
+	public int size()
+	{
+		return _size;
+	}
+	
+	/**
+	 * Returns the indexed products in no particular order
+	 * @returns Iterable over the products
+	 */
+	public Iterable<T> values()
+	{
+		final Object[] values = _values;
+		return () -> new Iterator<T>()
+		{
+			/** Next slot to examine */
+			private int _slot = advance(0);
+			
+			@Override
+			public boolean hasNext()
+			{
+				return _slot < values.length;
+			}
+			
+			@Override
+			@SuppressWarnings("unchecked")
+			public T next()
+			{
+				if (_slot >= values.length)
+				{
+					throw new NoSuchElementException();
+				}
+				
+				T prod = (T)values[_slot];
+				_slot = advance(_slot + 1);
+				return prod;
+			}
+			
+			/**
+			 * Finds the next occupied slot
+			 * @param slot The slot to start from
+			 * @returns The next occupied slot, or the table length if there is none
+			 */
+			private int advance(int slot)
+			{
+				while (slot < values.length && values[slot] == null)
+				{
+					slot++;
+				}
+				return slot;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the handles of all indexed names in name order, merging in recent changes first.
+	 * The returned array must not be modified and is only valid until the index next changes.
+	 * @returns Array whose first size() entries are the handles in name order
+	 */
+	public int[] sortedHandles()
+	{
+		if (_pendingCount > 0 || _removedSinceMerge)
+		{
+			mergePending();
+		}
+		
+		return _sorted;
+	}
+	
+	/**
+	 * Finds the position in name order of the first indexed name not less than a given name
+	 * @param name The name to search for, which need not be stored in the arena
+	 * @returns Index into sortedHandles() of the first name not less than the given name, or size() if there is none
+	 */
+	public int lowerBound(String name)
+	{
+		int[] handles = sortedHandles();
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = _sortedCount;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (_arena.compare(handles[mid], bytes) < 0)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		
+		return low;
+	}
+	
+	/**
+	 * Returns a snapshot of the indexed products in name order
+	 * @returns List of the products in name order
+	 */
+	public List<T> sortedValues()
+	{
+		int[] handles = sortedHandles();
+		List<T> values = new ArrayList<>(_sortedCount);
+		for (int i = 0; i < _sortedCount; i++)
+		{
+			values.add(get(handles[i]));
+		}
+		
+		return values;
+	}
+	
+	/** Sorts the pending handles and merges them with the sorted handles, dropping removed names */
+	private void mergePending()
+	{
+		_arena.sort(_pending, 0, _pendingCount);
+		int[] merged = new int[Math.max(_size, 1)];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < _sortedCount || j < _pendingCount)
+		{
+			int handle;
+			if (j >= _pendingCount || (i < _sortedCount && _arena.compare(_sorted[i], _pending[j]) <= 0))
+			{
+				handle = _sorted[i++];
+			}
+			else
+			{
+				handle = _pending[j++];
+			}
+			
+			// a name removed and added again can appear in both arrays
+			if ((count == 0 || merged[count - 1] != handle) && containsKey(handle))
+			{
+				merged[count++] = handle;
+			}
+		}
+		
+		_sorted = merged;
+		_sortedCount = count;
+		_pending = new int[s_initialCapacity];
+		_pendingCount = 0;
+		_removedSinceMerge = false;
+		for (int k = 0; k < _removedCount; k++)
+		{
+			_arena.release(_removed[k]);
+		}
+		_removed = new int[s_initialCapacity];
+		_removedCount = 0;
+	}
+	
+	/**
+	 * Finds the slot holding a handle
+	 * @param handle The handle to find
+	 * @returns The slot, or -1 if the handle is not in the table
+	 */
+	private int find(int handle)
+	{
+		int mask = _keys.length - 1;
+		for (int slot = slotOf(handle, mask); _keys[slot] != 0; slot = (slot + 1) & mask)
+		{
+			if (_keys[slot] == handle + 1)
+			{
+				return slot;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Rehashes every handle into a table of a new capacity
+	 * @param capacity The new number of slots, a power of two
+	 */
+	private void resize(int capacity)
+	{
+		int[] keys = _keys;
+		Object[] values = _values;
+		_keys = new int[capacity];
+		_values = new Object[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (keys[i] != 0)
+			{
+				int slot = slotOf(keys[i] - 1, mask);
+				while (_keys[slot] != 0)
+				{
+					slot = (slot + 1) & mask;
+				}
+				_keys[slot] = keys[i];
+				_values[slot] = values[i];
+			}
+		}
+	}
+	
+	/**
+	 * Computes the home slot of a handle
+	 * @param handle The handle
+	 * @param mask The table length minus one
+	 * @returns The slot to start probing from
+	 */
+	private static int slotOf(int handle, int mask)
+	{
+		int h = handle * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+}
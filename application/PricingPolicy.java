@@ -0,0 +1,26 @@
+/**
+ * Policy deciding the markup factor and storage rate used to price a product.
+ * Retail price is the wholesale price times the markup factor plus the storage cost,
+ * and storage cost is the weight in pounds times the storage rate.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+public interface PricingPolicy
+{
+	/**
+	 * Get method for the factor applied to the wholesale price of a product
+	 * @param prod The product being priced
+	 * @returns The markup factor
+	 */
+	double getMarkupFactor(IProduct prod);
+	
+	/**
+	 * Get method for the cost of storing one pound of a product
+	 * @param prod The product being priced
+	 * @returns The storage rate in dollars per pound
+	 */
+	double getStorageRate(IProduct prod);
+}
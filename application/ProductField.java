@@ -0,0 +1,137 @@
+/**
+ * Properties of a product that queries can filter, order, and project on
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+public enum ProductField
+{
+	/** Product name, compared as text */
+	NAME("name"),
+	/** Weight in pounds */
+	WEIGHT("weight"),
+	/** Wholesale price per unit */
+	WHOLESALE_PRICE("wholesalePrice"),
+	/** Retail price per unit */
+	RETAIL_PRICE("retailPrice"),
+	/** Storage cost per unit, which has no change event of its own */
+	STORAGE_COST(null),
+	/** Quantity in stock */
+	QUANTITY("quantity"),
+	/** Retail value on hand, retail price times quantity, which has no change event of its own */
+	RETAIL_VALUE(null);
+	
+	/** Name of the PropertyChangedEvent sent when the field changes, or null if there is none */
+	private final String _propertyName;
+	
+	/**
+	 * Constructor
+	 * @param propertyName Name of the change event of the field, or null
+	 */
+	private ProductField(String propertyName)
+	{
+		_propertyName = propertyName;
+	}
+	
+	/**
+	 * Get method for the name of the event sent when the field changes
+	 * @returns The property name, or null if the field has no change event
+	 */
+	public String getPropertyName()
+	{
+		return _propertyName;
+	}
+	
+	/**
+	 * Checks if a secondary index on the field can be kept up to date from change events
+	 * @returns True for numeric fields with a change event and for the retail value
+	 */
+	public boolean isIndexable()
+	{
+		return isNumeric() && (_propertyName != null || this == RETAIL_VALUE);
+	}
+	
+	/**
+	 * Checks if a change to a product property can change the value of the field
+	 * @param property The name of the changed property
+	 * @returns True if the field reads the property
+	 */
+	public boolean dependsOn(String property)
+	{
+		return property == _propertyName 
+			|| (this == RETAIL_VALUE && (property == "quantity" || property == "retailPrice"));
+	}
+	
+	/**
+	 * Checks if the field is numeric
+	 * @returns True for every field except the name
+	 */
+	public boolean isNumeric()
+	{
+		return this != NAME;
+	}
+	
+	/**
+	 * Reads a numeric field of a product
+	 * @param prod The product
+	 * @returns The value of the field
+	 * @throws IllegalStateException if the field is the name
+	 */
+	public double getDouble(IProduct prod)
+	{
+		switch (this)
+		{
+			case WEIGHT:
+				return prod.getWeight();
+			case WHOLESALE_PRICE:
+				return prod.getWholesalePrice();
+			case RETAIL_PRICE:
+				return prod.getRetailPrice();
+			case STORAGE_COST:
+				return prod.getStorageCost();
+			case QUANTITY:
+				return prod.getQuantityInStock();
+			case RETAIL_VALUE:
+				return prod.getRetailPrice() * prod.getQuantityInStock();
+			default:
+				throw new IllegalStateException("Name is not numeric");
+		}
+	}
+	
+	/**
+	 * Reads a field of a product
+	 * @param prod The product
+	 * @returns The name as a String, an Integer for the quantity, otherwise a Double
+	 */
+	public Object get(IProduct prod)
+	{
+		if (this == NAME)
+		{
+			return prod.getName();
+		}
+		if (this == QUANTITY)
+		{
+			return prod.getQuantityInStock();
+		}
+		
+		return getDouble(prod);
+	}
+	
+	/**
+	 * Compares two products by the field
+	 * @param a The first product
+	 * @param b The second product
+	 * @returns Negative, zero, or positive as the first product's value is less than, equal to, or greater than the second's
+	 */
+	public int compare(IProduct a, IProduct b)
+	{
+		if (this == NAME)
+		{
+			return NameArena.compareNames(a.getName(), b.getName());
+		}
+		
+		return Double.compare(getDouble(a), getDouble(b));
+	}
+}
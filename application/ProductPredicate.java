@@ -0,0 +1,119 @@
+/**
+ * Condition comparing one field of a product with a constant
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.util.function.Predicate;
+
+public class ProductPredicate implements Predicate<IProduct>
+{
+	/** Field compared */
+	private final ProductField _field;
+	/** Comparison applied */
+	private final Comparison _comparison;
+	/** Constant compared with, a String for the name, otherwise a Number */
+	private final Object _value;
+	
+	/** Comparisons between a field and a constant */
+	public enum Comparison
+	{
+		/** Field equals the constant */
+		EQUAL,
+		/** Field does not equal the constant */
+		NOT_EQUAL,
+		/** Field is less than the constant */
+		LESS,
+		/** Field is less than or equal to the constant */
+		LESS_OR_EQUAL,
+		/** Field is greater than the constant */
+		GREATER,
+		/** Field is greater than or equal to the constant */
+		GREATER_OR_EQUAL,
+		/** Name starts with the constant, only valid for the name */
+		STARTS_WITH
+	}
+	
+	/**
+	 * Constructor
+	 * @param field The field to compare
+	 * @param comparison The comparison to apply
+	 * @param value The constant to compare with, a String for the name, otherwise a Number
+	 * @throws IllegalArgumentException if the constant does not match the type of the field
+	 */
+	public ProductPredicate(ProductField field, Comparison comparison, Object value)
+	{
+		if (field.isNumeric() ? !(value instanceof Number) || comparison == Comparison.STARTS_WITH : !(value instanceof String))
+		{
+			throw new IllegalArgumentException("Cannot compare " + field + " " + comparison + " " + value);
+		}
+		
+		_field = field;
+		_comparison = comparison;
+		_value = value;
+	}
+	
+	/**
+	 * Get method for the field compared
+	 * @returns The field
+	 */
+	public ProductField getField()
+	{
+		return _field;
+	}
+	
+	/**
+	 * Get method for the comparison applied
+	 * @returns The comparison
+	 */
+	public Comparison getComparison()
+	{
+		return _comparison;
+	}
+	
+	/**
+	 * Get method for the constant compared with
+	 * @returns A String for the name, otherwise a Number
+	 */
+	public Object getValue()
+	{
+		return _value;
+	}
+	
+	@Override
+	public boolean test(IProduct prod)
+	{
+		if (_comparison == Comparison.STARTS_WITH)
+		{
+			return prod.getName().startsWith((String)_value);
+		}
+		
+		// names compare by their code points, the same order the inventory sorts them in
+		int cmp = _field.isNumeric()
+			? Double.compare(_field.getDouble(prod), ((Number)_value).doubleValue())
+			: NameArena.compareNames(prod.getName(), (String)_value);
+		switch (_comparison)
+		{
+			case EQUAL:
+				return cmp == 0;
+			case NOT_EQUAL:
+				return cmp != 0;
+			case LESS:
+				return cmp < 0;
+			case LESS_OR_EQUAL:
+				return cmp <= 0;
+			case GREATER:
+				return cmp > 0;
+			default:
+				return cmp >= 0;
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		return _field + " " + _comparison + " " + _value;
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * Query over the products of an inventory, built by chaining conditions, an ordering, a limit,
+ * and the fields to return, then run by a ProductQueryEngine. Conditions are combined with and.
+ * For example, items over 20 lbs with retail price above $100 and fewer than 5 in stock:
+ * engine.query().where(WEIGHT, GREATER, 20).where(RETAIL_PRICE, GREATER, 100).where(QUANTITY, LESS, 5).list()
+ * @param <T> The type of product queried
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ProductQuery<T extends IProduct>
+{
+	/** Engine running the query */
+	private final ProductQueryEngine<T> _engine;
+	/** Conditions every returned product satisfies */
+	private final List<ProductPredicate> _predicates = new ArrayList<>();
+	/** Field to order results by, or null for no particular order */
+	private ProductField _orderBy = null;
+	/** True to order results from largest to smallest */
+	private boolean _descending = false;
+	/** Maximum number of results */
+	private int _limit = Integer.MAX_VALUE;
+	/** Fields returned by rows() */
+	private ProductField[] _projection = ProductField.values();
+	
+	/**
+	 * Constructor
+	 * @param engine The engine running the query
+	 */
+	ProductQuery(ProductQueryEngine<T> engine)
+	{
+		_engine = engine;
+	}
+	
+	/**
+	 * Adds a condition comparing a field with a constant
+	 * @param field The field to compare
+	 * @param comparison The comparison to apply
+	 * @param value The constant, a String for the name, otherwise a Number
+	 * @returns This query
+	 */
+	public ProductQuery<T> where(ProductField field, ProductPredicate.Comparison comparison, Object value)
+	{
+		_predicates.add(new ProductPredicate(field, comparison, value));
+		return this;
+	}
+	
+	/**
+	 * Orders results by a field
+	 * @param field The field to order by
+	 * @param descending True to order from largest to smallest
+	 * @returns This query
+	 */
+	public ProductQuery<T> orderBy(ProductField field, boolean descending)
+	{
+		_orderBy = field;
+		_descending = descending;
+		return this;
+	}
+	
+	/**
+	 * Limits the number of results
+	 * @param limit The maximum number of results
+	 * @returns This query
+	 */
+	public ProductQuery<T> limit(int limit)
+	{
+		if (limit < 0)
+		{
+			throw new IllegalArgumentException("Limit cannot be negative");
+		}
+		
+		_limit = limit;
+		return this;
+	}
+	
+	/**
+	 * Sets the fields returned by rows()
+	 * @param fields The fields to return, in column order
+	 * @returns This query
+	 */
+	public ProductQuery<T> select(ProductField... fields)
+	{
+		_projection = fields.clone();
+		return this;
+	}
+	
+	/**
+	 * Get method for the conditions of the query
+	 * @returns Unmodifiable list of the conditions
+	 */
+	public List<ProductPredicate> getPredicates()
+	{
+		return Collections.unmodifiableList(_predicates);
+	}
+	
+	/**
+	 * Get method for the field results are ordered by
+	 * @returns The field, or null if results are in no particular order
+	 */
+	public ProductField getOrderBy()
+	{
+		return _orderBy;
+	}
+	
+	/**
+	 * Get method for the direction of the ordering
+	 * @returns True if results are ordered from largest to smallest
+	 */
+	public boolean isDescending()
+	{
+		return _descending;
+	}
+	
+	/**
+	 * Get method for the maximum number of results
+	 * @returns The limit
+	 */
+	public int getLimit()
+	{
+		return _limit;
+	}
+	
+	/**
+	 * Runs the query
+	 * @returns The matching products
+	 */
+	public List<T> list()
+	{
+		return _engine.execute(this);
+	}
+	
+	/**
+	 * Runs the query and projects the selected fields of each matching product
+	 * @returns One array of field values per matching product, in the order of select()
+	 */
+	public List<Object[]> rows()
+	{
+		List<T> products = list();
+		List<Object[]> rows = new ArrayList<>(products.size());
+		for (T prod : products)
+		{
+			Object[] row = new Object[_projection.length];
+			for (int i = 0; i < row.length; i++)
+			{
+				row[i] = _projection[i].get(prod);
+			}
+			rows.add(row);
+		}
+		
+		return rows;
+	}
+	
+	/**
+	 * Describes how the query would be run without running it
+	 * @returns Description of the chosen plan
+	 */
+	public String explain()
+	{
+		return _engine.explain(this);
+	}
+}
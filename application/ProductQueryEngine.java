@@ -0,0 +1,543 @@
+/**
+ * Runs ProductQuery objects against an inventory.
+ * A planner picks how to find candidate products: a lookup for an exact name, a walk over part
+ * of the inventory's name order for name ranges and prefixes, a range of a secondary FieldIndex
+ * for bounded numeric fields, or a scan of every product, split across all cores for large
+ * inventories. Indexed and name-ordered walks stop early when they already produce the requested
+ * order and the limit is reached. Secondary indexes are created on request and kept up to date
+ * from the inventory's change events.
+ * @param <T> The type of product queried
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class ProductQueryEngine<T extends IProduct> implements PropertyChangeListener
+{
+	/** Inventory queried */
+	private final Inventory<T> _inventory;
+	/** Secondary indexes by field */
+	private final Map<ProductField, FieldIndex<T>> _indexes = new EnumMap<>(ProductField.class);
+	/** Number of products from which full scans run in parallel */
+	private static final int s_parallelThreshold = 10000;
+	/** A plan reading candidates is preferred to a full scan if it reads at most one in this many products */
+	private static final int s_selectivityRatio = 4;
+	
+	/**
+	 * Constructor, starts listening for changes to the inventory
+	 * @param inventory The inventory to query
+	 */
+	public ProductQueryEngine(Inventory<T> inventory)
+	{
+		_inventory = inventory;
+		_inventory.addPropertyChangeListener(this);
+	}
+	
+	/**
+	 * Starts a new query
+	 * @returns An empty query returning every product
+	 */
+	public ProductQuery<T> query()
+	{
+		return new ProductQuery<>(this);
+	}
+	
+	/**
+	 * Creates a secondary index on a numeric field, if there is none already
+	 * @param field The field to index
+	 * @throws IllegalArgumentException if the field cannot be kept up to date from change events
+	 */
+	public void createIndex(ProductField field)
+	{
+		if (!_indexes.containsKey(field))
+		{
+			_indexes.put(field, new FieldIndex<>(field, _inventory));
+		}
+	}
+	
+	/**
+	 * Removes the secondary index on a field
+	 * @param field The indexed field
+	 */
+	public void dropIndex(ProductField field)
+	{
+		_indexes.remove(field);
+	}
+	
+	/**
+	 * Get method for the fields with a secondary index
+	 * @returns Unmodifiable set of the indexed fields
+	 */
+	public Set<ProductField> getIndexedFields()
+	{
+		return Collections.unmodifiableSet(_indexes.keySet());
+	}
+	
+	/** Stops listening for changes and drops every index */
+	public void close()
+	{
+		_inventory.removePropertyChangeListener(this);
+		_indexes.clear();
+	}
+	
+	/**
+	 * Keeps the secondary indexes up to date with the inventory
+	 * @param e The inventory or product change event
+	 */
+	@Override
+	public void propertyChange(PropertyChangeEvent e)
+	{
+		String property = e.getPropertyName();
+		if (e.getSource() == _inventory)
+		{
+			if (property == "add")
+			{
+				for (FieldIndex<T> index : _indexes.values())
+				{
+					index.add((T)e.getNewValue());
+				}
+			}
+			else if (property == "remove")
+			{
+				T prod = (T)e.getOldValue();
+				for (FieldIndex<T> index : _indexes.values())
+				{
+					index.remove(prod);
+				}
+			}
+			else if (property == "reprice")
+			{
+				// products are repriced without events of their own
+				for (FieldIndex<T> index : _indexes.values())
+				{
+					if (index.getField() == ProductField.RETAIL_PRICE || index.getField() == ProductField.RETAIL_VALUE)
+					{
+						index.rebuild(_inventory);
+					}
+				}
+			}
+			return;
+		}
+		
+		for (FieldIndex<T> index : _indexes.values())
+		{
+			index.update((T)e.getSource(), property);
+		}
+	}
+	
+	/**
+	 * Runs a query. Must run on the thread that modifies the inventory.
+	 * @param query The query to run
+	 * @returns The matching products
+	 */
+	List<T> execute(ProductQuery<T> query)
+	{
+		Plan plan = plan(query);
+		List<ProductPredicate> predicates = query.getPredicates();
+		int limit = query.getLimit();
+		List<T> results;
+		if (plan._source != null)
+		{
+			results = new ArrayList<>();
+			for (T prod : plan._source)
+			{
+				if (matches(prod, predicates))
+				{
+					results.add(prod);
+					if (plan._ordered && results.size() >= limit)
+					{
+						break;
+					}
+				}
+			}
+		}
+		else
+		{
+			boolean parallel = _inventory.getTotalProductsInStock() >= s_parallelThreshold;
+			Stream<T> stream = StreamSupport.stream(_inventory.spliterator(), parallel).filter(prod -> matches(prod, predicates));
+			if (query.getOrderBy() == null)
+			{
+				stream = stream.unordered().limit(limit);
+			}
+			results = stream.collect(Collectors.toList());
+		}
+		
+		if (!plan._ordered && query.getOrderBy() != null)
+		{
+			Comparator<IProduct> order = query.getOrderBy()::compare;
+			results.sort(query.isDescending() ? order.reversed() : order);
+		}
+		if (results.size() > limit)
+		{
+			results = new ArrayList<>(results.subList(0, limit));
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Describes the plan chosen for a query
+	 * @param query The query to plan
+	 * @returns Description of the plan
+	 */
+	String explain(ProductQuery<T> query)
+	{
+		return plan(query)._description;
+	}
+	
+	/**
+	 * Chooses how to find the candidate products of a query
+	 * @param query The query to plan
+	 * @returns The chosen plan
+	 */
+	private Plan plan(ProductQuery<T> query)
+	{
+		List<ProductPredicate> predicates = query.getPredicates();
+		ProductField orderBy = query.getOrderBy();
+		boolean byName = orderBy == ProductField.NAME && !query.isDescending();
+		for (ProductPredicate predicate : predicates)
+		{
+			if (predicate.getField() == ProductField.NAME && predicate.getComparison() == ProductPredicate.Comparison.EQUAL)
+			{
+				T prod = _inventory.get((String)predicate.getValue());
+				List<T> source = prod == null ? Collections.emptyList() : Collections.singletonList(prod);
+				return new Plan("name lookup", source, true);
+			}
+		}
+		
+		int size = _inventory.getTotalProductsInStock();
+		Plan best = null;
+		int bestCount = size;
+		for (FieldIndex<T> index : _indexes.values())
+		{
+			Bounds bounds = new Bounds(index.getField(), predicates);
+			if (bounds.isEmpty())
+			{
+				return new Plan("empty range on " + index.getField(), Collections.emptyList(), true);
+			}
+			if (bounds.isBounded())
+			{
+				int count = index.count(bounds._low, bounds._lowInclusive, bounds._high, bounds._highInclusive, bestCount);
+				if (count < bestCount)
+				{
+					boolean ordered = orderBy == index.getField();
+					best = new Plan("index range on " + index.getField() + ", about " + count + " products",
+						index.range(bounds._low, bounds._lowInclusive, bounds._high, bounds._highInclusive, ordered && query.isDescending()), ordered);
+					bestCount = count;
+				}
+			}
+		}
+		
+		String lowName = null;
+		for (ProductPredicate predicate : predicates)
+		{
+			if (predicate.getField() == ProductField.NAME && isLowerBound(predicate.getComparison()))
+			{
+				String value = (String)predicate.getValue();
+				lowName = lowName == null || value.compareTo(lowName) > 0 ? value : lowName;
+			}
+		}
+		if (lowName != null)
+		{
+			int count = estimateNameRange(lowName, predicates);
+			if (count < bestCount)
+			{
+				best = new Plan("name range from \"" + lowName + "\", about " + count + " products",
+					nameRange(lowName, predicates), byName);
+				bestCount = count;
+			}
+		}
+		
+		if (best != null && (bestCount * s_selectivityRatio <= size || size < s_parallelThreshold))
+		{
+			return best;
+		}
+		
+		// an ordered walk can stop after a few matches when only the first few are wanted
+		if (query.getLimit() * s_selectivityRatio <= size)
+		{
+			if (byName)
+			{
+				return new Plan("name order walk", nameRange(lowName == null ? "" : lowName, predicates), true);
+			}
+			FieldIndex<T> index = orderBy == null ? null : _indexes.get(orderBy);
+			if (index != null)
+			{
+				Bounds bounds = new Bounds(orderBy, predicates);
+				return new Plan("index order walk on " + orderBy,
+					index.range(bounds._low, bounds._lowInclusive, bounds._high, bounds._highInclusive, query.isDescending()), true);
+			}
+		}
+		
+		return new Plan(size >= s_parallelThreshold ? "parallel full scan" : "full scan", null, false);
+	}
+	
+	/**
+	 * Estimates the number of products a name range reads
+	 * @param low The first name of the range
+	 * @param predicates The conditions of the query, whose upper bounds on the name end the range
+	 * @returns The number of products in the range
+	 */
+	private int estimateNameRange(String low, List<ProductPredicate> predicates)
+	{
+		int from = _inventory.getNamePosition(low);
+		int to = _inventory.getTotalProductsInStock();
+		for (ProductPredicate predicate : predicates)
+		{
+			if (predicate.getField() == ProductField.NAME)
+			{
+				String value = (String)predicate.getValue();
+				switch (predicate.getComparison())
+				{
+					case LESS:
+					case LESS_OR_EQUAL:
+						to = Math.min(to, _inventory.getNamePosition(value) + 1);
+						break;
+					case STARTS_WITH:
+						to = Math.min(to, _inventory.getNamePosition(value + Character.MAX_VALUE));
+						break;
+					default:
+						break;
+				}
+			}
+		}
+		
+		return Math.max(0, to - from);
+	}
+	
+	/**
+	 * Walks the inventory in name order from a name until an upper bound on the name fails
+	 * @param low The first name of the range
+	 * @param predicates The conditions of the query
+	 * @returns Iterable over the products in the range
+	 */
+	private Iterable<T> nameRange(String low, List<ProductPredicate> predicates)
+	{
+		List<ProductPredicate> upper = new ArrayList<>();
+		for (ProductPredicate predicate : predicates)
+		{
+			ProductPredicate.Comparison comparison = predicate.getComparison();
+			if (predicate.getField() == ProductField.NAME && (comparison == ProductPredicate.Comparison.LESS
+				|| comparison == ProductPredicate.Comparison.LESS_OR_EQUAL || comparison == ProductPredicate.Comparison.STARTS_WITH))
+			{
+				upper.add(predicate);
+			}
+		}
+		
+		final Iterable<T> products = _inventory.getSortedProductsFrom(low);
+		return () -> new Iterator<T>()
+		{
+			/** Products from the first name onwards */
+			private final Iterator<T> _rest = products.iterator();
+			/** Next product in the range, or null once the range is exhausted */
+			private T _next = advance();
+			
+			@Override
+			public boolean hasNext()
+			{
+				return _next != null;
+			}
+			
+			@Override
+			public T next()
+			{
+				if (_next == null)
+				{
+					throw new NoSuchElementException();
+				}
+				
+				T prod = _next;
+				_next = advance();
+				return prod;
+			}
+			
+			/**
+			 * Finds the next product in the range
+			 * @returns The product, or null if the range is exhausted
+			 */
+			private T advance()
+			{
+				if (!_rest.hasNext())
+				{
+					return null;
+				}
+				
+				T prod = _rest.next();
+				return matches(prod, upper) ? prod : null;
+			}
+		};
+	}
+	
+	/**
+	 * Checks if a comparison gives a lower bound on the name
+	 * @param comparison The comparison
+	 * @returns True if products matching the comparison sort at or after its constant
+	 */
+	private static boolean isLowerBound(ProductPredicate.Comparison comparison)
+	{
+		return comparison == ProductPredicate.Comparison.GREATER || comparison == ProductPredicate.Comparison.GREATER_OR_EQUAL
+			|| comparison == ProductPredicate.Comparison.STARTS_WITH;
+	}
+	
+	/**
+	 * Checks if a product satisfies every condition
+	 * @param prod The product
+	 * @param predicates The conditions
+	 * @returns True if all conditions hold
+	 */
+	private static boolean matches(IProduct prod, List<ProductPredicate> predicates)
+	{
+		for (ProductPredicate predicate : predicates)
+		{
+			if (!predicate.test(prod))
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/** Way of finding the candidate products of a query */
+	private class Plan
+	{
+		/** Description returned by explain */
+		private final String _description;
+		/** Candidate products, or null to scan every product */
+		private final Iterable<T> _source;
+		/** True if the candidates are already in the requested order */
+		private final boolean _ordered;
+		
+		/**
+		 * Constructor
+		 * @param description Description returned by explain
+		 * @param source Candidate products, or null to scan every product
+		 * @param ordered True if the candidates are already in the requested order
+		 */
+		private Plan(String description, Iterable<T> source, boolean ordered)
+		{
+			_description = description;
+			_source = source;
+			_ordered = ordered;
+		}
+	}
+	
+	/** Tightest range on one numeric field implied by the conditions of a query */
+	private static class Bounds
+	{
+		/** Lowest value, or null for no lower bound */
+		private Double _low = null;
+		/** True if the lowest value is included */
+		private boolean _lowInclusive = true;
+		/** Highest value, or null for no upper bound */
+		private Double _high = null;
+		/** True if the highest value is included */
+		private boolean _highInclusive = true;
+		
+		/**
+		 * Constructor
+		 * @param field The numeric field
+		 * @param predicates The conditions of the query
+		 */
+		private Bounds(ProductField field, List<ProductPredicate> predicates)
+		{
+			for (ProductPredicate predicate : predicates)
+			{
+				if (predicate.getField() != field)
+				{
+					continue;
+				}
+				
+				double value = ((Number)predicate.getValue()).doubleValue();
+				switch (predicate.getComparison())
+				{
+					case EQUAL:
+						raiseLow(value, true);
+						lowerHigh(value, true);
+						break;
+					case GREATER:
+						raiseLow(value, false);
+						break;
+					case GREATER_OR_EQUAL:
+						raiseLow(value, true);
+						break;
+					case LESS:
+						lowerHigh(value, false);
+						break;
+					case LESS_OR_EQUAL:
+						lowerHigh(value, true);
+						break;
+					default:
+						break;
+				}
+			}
+		}
+		
+		/**
+		 * Checks if no value satisfies both bounds
+		 * @returns True if the range is empty
+		 */
+		private boolean isEmpty()
+		{
+			if (_low == null || _high == null)
+			{
+				return false;
+			}
+			
+			return _low > _high || (_low.equals(_high) && !(_lowInclusive && _highInclusive));
+		}
+		
+		/**
+		 * Checks if the conditions bound the field at all
+		 * @returns True if there is a lower or upper bound
+		 */
+		private boolean isBounded()
+		{
+			return _low != null || _high != null;
+		}
+		
+		/**
+		 * Tightens the lower bound
+		 * @param value The new lower bound
+		 * @param inclusive True if the bound is included
+		 */
+		private void raiseLow(double value, boolean inclusive)
+		{
+			if (_low == null || value > _low || (value == _low && !inclusive))
+			{
+				_low = value;
+				_lowInclusive = inclusive;
+			}
+		}
+		
+		/**
+		 * Tightens the upper bound
+		 * @param value The new upper bound
+		 * @param inclusive True if the bound is included
+		 */
+		private void lowerHigh(double value, boolean inclusive)
+		{
+			if (_high == null || value < _high || (value == _high && !inclusive))
+			{
+				_high = value;
+				_highInclusive = inclusive;
+			}
+		}
+	}
+}
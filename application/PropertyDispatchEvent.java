@@ -0,0 +1,35 @@
+/**
+ * Flight Recorder event covering dispatch of a single property change to an inventory.
+ * Disabled by default, enable in a recording with application.PropertyDispatch#enabled=true
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("application.PropertyDispatch")
+@Label("Property Dispatch")
+@Category("Inventory")
+@Description("Handling of a product property change by an inventory")
+@Enabled(false)
+@StackTrace(false)
+public class PropertyDispatchEvent extends Event
+{
+	/** Name of the product whose property changed */
+	@Label("Item")
+	public String item;
+	/** Name of the property that changed */
+	@Label("Property")
+	public String property;
+	/** True if the event was sent before the change was applied */
+	@Label("Before Change")
+	public boolean changing;
+}
@@ -0,0 +1,316 @@
+/**
+ * Keeps an inventory in step with a ReplicationLeader.
+ * A receiving thread connects to the leader, reports the last sequence number it has received,
+ * and hands each snapshot or batch of records to the thread that owns the inventory to apply in
+ * order, reporting progress back to the leader. The follower reconnects after a lost connection
+ * and resumes from where it left off, or from a fresh snapshot if a record could not be applied.
+ * The follower's inventory must not be changed other than by replication.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class ReplicationFollower implements Closeable
+{
+	/** Inventory kept in step with the leader */
+	private final Inventory<Item> _inventory;
+	/** Host the leader runs on */
+	private final String _host;
+	/** Port the leader listens on */
+	private final int _port;
+	/** Runs tasks on the thread that modifies the inventory, in submission order */
+	private final Executor _ownerExecutor;
+	/** Socket connected to the leader, null while disconnected */
+	private volatile Socket _socket;
+	/** Sequence number of the last record handed to the owner thread */
+	private volatile long _receivedSeq = 0;
+	/** Sequence number of the last record applied to the inventory */
+	private volatile long _appliedSeq = 0;
+	/** Time the leader logged the last applied record, in milliseconds since the epoch */
+	private volatile long _appliedMillis = 0;
+	/** Newest sequence number reported by the leader */
+	private volatile long _leaderSeq = 0;
+	/** Number of snapshots applied */
+	private volatile int _snapshotCount = 0;
+	/** True if the next connection must start from a snapshot */
+	private volatile boolean _resync = false;
+	/** True once the follower has been closed */
+	private volatile boolean _closed = false;
+	/** Time to wait before reconnecting to the leader */
+	private static final long s_reconnectMillis = 1000;
+	
+	/**
+	 * Constructor, starts following the leader in the background
+	 * @param inventory The inventory to keep in step, normally empty
+	 * @param host The host the leader runs on
+	 * @param port The port the leader listens on
+	 * @param ownerExecutor Runs tasks on the thread that modifies the inventory, in submission order
+	 */
+	public ReplicationFollower(Inventory<Item> inventory, String host, int port, Executor ownerExecutor)
+	{
+		_inventory = inventory;
+		_host = host;
+		_port = port;
+		_ownerExecutor = ownerExecutor;
+		Thread thread = new Thread(this::follow, "replication-receive");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Get method for the sequence number of the last change applied
+	 * @returns The applied sequence number, zero before the first snapshot
+	 */
+	public long getAppliedSequence()
+	{
+		return _appliedSeq;
+	}
+	
+	/**
+	 * Get method for the newest sequence number the leader has reported
+	 * @returns The leader's head sequence number as last seen
+	 */
+	public long getLeaderSequence()
+	{
+		return _leaderSeq;
+	}
+	
+	/**
+	 * Get method for the number of changes known to the leader but not yet applied here
+	 * @returns The replication lag in records
+	 */
+	public long getLagRecords()
+	{
+		return Math.max(0, _leaderSeq - _appliedSeq);
+	}
+	
+	/**
+	 * Get method for how far behind the leader the applied state is in time
+	 * @returns Milliseconds since the leader logged the last applied record, zero if caught up
+	 */
+	public long getLagMillis()
+	{
+		if (getLagRecords() == 0 || _appliedMillis == 0)
+		{
+			return 0;
+		}
+		
+		return Math.max(0, System.currentTimeMillis() - _appliedMillis);
+	}
+	
+	/**
+	 * Get method for the number of snapshots applied
+	 * @returns The snapshot count
+	 */
+	public int getSnapshotCount()
+	{
+		return _snapshotCount;
+	}
+	
+	/**
+	 * Checks if the follower is connected to the leader
+	 * @returns True while connected
+	 */
+	public boolean isConnected()
+	{
+		return _socket != null;
+	}
+	
+	/** Stops following the leader */
+	@Override
+	public void close()
+	{
+		_closed = true;
+		disconnect();
+	}
+	
+	/** Connects to the leader and receives frames, reconnecting until closed */
+	private void follow()
+	{
+		while (!_closed)
+		{
+			try (Socket socket = new Socket(_host, _port))
+			{
+				socket.setTcpNoDelay(true);
+				_socket = socket;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				if (_resync)
+				{
+					_resync = false;
+					_receivedSeq = 0;
+				}
+				out.writeLong(_receivedSeq);
+				out.flush();
+				
+				while (!_closed)
+				{
+					byte frame = in.readByte();
+					if (frame == ReplicationProtocol.s_frameSnapshot)
+					{
+						receiveSnapshot(in);
+					}
+					else if (frame == ReplicationProtocol.s_frameBatch)
+					{
+						receiveBatch(in);
+					}
+					else
+					{
+						throw new IOException("Unknown replication frame type " + frame);
+					}
+					
+					// progress is reported as of the last applied frame, the leader does not wait for it
+					out.writeLong(_appliedSeq);
+					out.flush();
+				}
+			}
+			catch (IOException e)
+			{
+				// the leader went away or the connection was reset, try again shortly
+			}
+			finally
+			{
+				_socket = null;
+			}
+			
+			if (!_closed)
+			{
+				try
+				{
+					Thread.sleep(s_reconnectMillis);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads a snapshot and replaces the contents of the inventory with it on the owner thread. The
+	 * inventory takes the leader's pricing policy when the leader sends one, so later changes are
+	 * priced as the leader prices them; otherwise it keeps its own, and the products keep the
+	 * prices the leader sent until they change.
+	 * @param in The stream from the leader
+	 * @throws IOException if the snapshot cannot be read
+	 */
+	private void receiveSnapshot(DataInputStream in) throws IOException
+	{
+		long seq = in.readLong();
+		PricingPolicy sentPolicy = ReplicationProtocol.readPricingPolicy(in);
+		int count = in.readInt();
+		List<Item> items = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			// priced under the default policy for now when none was sent, and given the inventory's below
+			items.add(ReplicationProtocol.readItem(in, sentPolicy == null ? GlobalPricingPolicy.s_defaultPolicy : sentPolicy));
+		}
+		_receivedSeq = seq;
+		_leaderSeq = Math.max(_leaderSeq, seq);
+		
+		_ownerExecutor.execute(() ->
+		{
+			List<Item> current = new ArrayList<>(_inventory.getTotalProductsInStock());
+			_inventory.forEach(current::add);
+			_inventory.removeAll(current);
+			if (sentPolicy != null)
+			{
+				// installed while the inventory is empty, so the products keep the prices the leader sent
+				_inventory.reprice(sentPolicy);
+			}
+			else
+			{
+				for (Item item : items)
+				{
+					item.applyPricing(_inventory.getPricingPolicy(), item.getStorageCost(), item.getRetailPrice());
+				}
+			}
+			_inventory.addAll(items);
+			_appliedSeq = seq;
+			_appliedMillis = 0;
+			_snapshotCount++;
+		});
+	}
+	
+	/**
+	 * Reads a batch of records and applies them in order on the owner thread
+	 * @param in The stream from the leader
+	 * @throws IOException if the batch cannot be read
+	 */
+	private void receiveBatch(DataInputStream in) throws IOException
+	{
+		_leaderSeq = in.readLong();
+		int count = in.readInt();
+		if (count == 0)
+		{
+			return;
+		}
+		
+		long[] seqs = new long[count];
+		long[] times = new long[count];
+		byte[][] records = new byte[count][];
+		for (int i = 0; i < count; i++)
+		{
+			seqs[i] = in.readLong();
+			times[i] = in.readLong();
+			records[i] = new byte[in.readInt()];
+			in.readFully(records[i]);
+		}
+		_receivedSeq = seqs[count - 1];
+		
+		_ownerExecutor.execute(() ->
+		{
+			for (int i = 0; i < count; i++)
+			{
+				// records after a failed one would be applied to the wrong state
+				if (seqs[i] != _appliedSeq + 1)
+				{
+					return;
+				}
+				try
+				{
+					ReplicationProtocol.apply(_inventory, records[i]);
+				}
+				catch (RuntimeException e)
+				{
+					_resync = true;
+					disconnect();
+					return;
+				}
+				_appliedSeq = seqs[i];
+				_appliedMillis = times[i];
+			}
+		});
+	}
+	
+	/** Closes the connection to the leader, if any */
+	private void disconnect()
+	{
+		Socket socket = _socket;
+		if (socket != null)
+		{
+			try
+			{
+				socket.close();
+			}
+			catch (IOException e)
+			{
+				// already closed
+			}
+		}
+	}
+}
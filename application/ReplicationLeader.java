@@ -0,0 +1,382 @@
+/**
+ * Streams the changes of an inventory to follower inventories over TCP.
+ * Every add, remove, and product property change is encoded as a record with the next sequence
+ * number in a ReplicationLog. Each connected follower has a thread that sends the records it has
+ * not yet received in batches, without waiting for the follower to apply earlier batches, and a
+ * thread that reads back the sequence number the follower has applied. A follower that connects
+ * for the first time, or has fallen behind the start of the log, is first sent a snapshot of the
+ * inventory taken on the thread that owns it.
+ * @param <T> The type of product replicated
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+public class ReplicationLeader<T extends IProduct> implements PropertyChangeListener, Closeable
+{
+	/** Inventory being replicated */
+	private final Inventory<T> _inventory;
+	/** Records not yet received by every follower */
+	private final ReplicationLog _log;
+	/** Runs tasks on the thread that modifies the inventory */
+	private final Executor _ownerExecutor;
+	/** Socket accepting follower connections */
+	private final ServerSocket _server;
+	/** Connected followers */
+	private final List<Session> _sessions = new CopyOnWriteArrayList<>();
+	/** True once the leader has been closed */
+	private volatile boolean _closed = false;
+	/** Maximum number of records sent in one batch */
+	private static final int s_maxBatch = 4096;
+	/** Time after which an idle follower is sent an empty batch carrying the head sequence number */
+	private static final long s_heartbeatMillis = 100;
+	
+	/**
+	 * Constructor, starts logging changes and accepting followers
+	 * @param inventory The inventory to replicate
+	 * @param port The local port to listen on, or 0 for any free port
+	 * @param logCapacity The number of records kept for followers catching up
+	 * @param ownerExecutor Runs tasks on the thread that modifies the inventory
+	 * @throws IOException if the port cannot be opened
+	 */
+	public ReplicationLeader(Inventory<T> inventory, int port, int logCapacity, Executor ownerExecutor) throws IOException
+	{
+		_inventory = inventory;
+		_log = new ReplicationLog(logCapacity);
+		_ownerExecutor = ownerExecutor;
+		_server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		_inventory.addPropertyChangeListener(this);
+		startThread("replication-accept", this::acceptFollowers);
+	}
+	
+	/**
+	 * Get method for the port followers connect to
+	 * @returns The local port
+	 */
+	public int getPort()
+	{
+		return _server.getLocalPort();
+	}
+	
+	/**
+	 * Get method for the sequence number of the newest change
+	 * @returns The head sequence number
+	 */
+	public long getHeadSequence()
+	{
+		return _log.getHeadSeq();
+	}
+	
+	/**
+	 * Get method for the number of connected followers
+	 * @returns The follower count
+	 */
+	public int getFollowerCount()
+	{
+		return _sessions.size();
+	}
+	
+	/**
+	 * Get method for the number of changes the slowest connected follower has yet to apply
+	 * @returns The largest replication lag in records, zero if no follower is connected
+	 */
+	public long getMaxReplicationLag()
+	{
+		long head = _log.getHeadSeq();
+		long lag = 0;
+		for (Session session : _sessions)
+		{
+			lag = Math.max(lag, head - session._appliedSeq);
+		}
+		
+		return lag;
+	}
+	
+	/**
+	 * Logs a change to the inventory or one of its products. Runs on the owner thread.
+	 * @param e The inventory or product change event
+	 */
+	@Override
+	public void propertyChange(PropertyChangeEvent e)
+	{
+		String property = e.getPropertyName();
+		if (e.getSource() == _inventory)
+		{
+			if (property == "add")
+			{
+				_log.append(ReplicationProtocol.encodeAdd((IProduct)e.getNewValue()));
+			}
+			else if (property == "remove")
+			{
+				_log.append(ReplicationProtocol.encodeChange(ReplicationProtocol.s_opRemove, ((IProduct)e.getOldValue()).getName(), null));
+			}
+			else if (property == "reprice")
+			{
+				if (e.getNewValue() instanceof GlobalPricingPolicy)
+				{
+					_log.append(ReplicationProtocol.encodeReprice((GlobalPricingPolicy)e.getNewValue()));
+				}
+				else
+				{
+					// per-product rates cannot be sent as one record, followers resynchronize from a snapshot
+					_log.reset();
+				}
+			}
+			return;
+		}
+		
+		IProduct prod = (IProduct)e.getSource();
+		if (property == "name")
+		{
+			_log.append(ReplicationProtocol.encodeChange(ReplicationProtocol.s_opRename, (String)e.getOldValue(), e.getNewValue()));
+		}
+		else if (property == "weight")
+		{
+			_log.append(ReplicationProtocol.encodeChange(ReplicationProtocol.s_opWeight, prod.getName(), e.getNewValue()));
+		}
+		else if (property == "wholesalePrice")
+		{
+			_log.append(ReplicationProtocol.encodeChange(ReplicationProtocol.s_opWholesalePrice, prod.getName(), e.getNewValue()));
+		}
+		else if (property == "quantity")
+		{
+			// stock changed on other threads reaches this listener later and coalesced, so send the latest quantity
+			_log.append(ReplicationProtocol.encodeChange(ReplicationProtocol.s_opQuantity, prod.getName(), prod.getQuantityInStock()));
+		}
+	}
+	
+	/**
+	 * Stops logging changes and disconnects every follower
+	 * @throws IOException if the listening socket cannot be closed
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (_closed)
+		{
+			return;
+		}
+		
+		_closed = true;
+		_inventory.removePropertyChangeListener(this);
+		_server.close();
+		for (Session session : _sessions)
+		{
+			session.close();
+		}
+	}
+	
+	/** Accepts follower connections until the leader is closed */
+	private void acceptFollowers()
+	{
+		while (!_closed)
+		{
+			try
+			{
+				Socket socket = _server.accept();
+				socket.setTcpNoDelay(true);
+				Session session = new Session(socket);
+				_sessions.add(session);
+				startThread("replication-send", session::send);
+			}
+			catch (IOException e)
+			{
+				// the server socket was closed, or the connection failed before it was established
+			}
+		}
+	}
+	
+	/**
+	 * Captures the inventory on the owner thread along with the sequence number it reflects
+	 * @returns The snapshot and sequence number once captured
+	 */
+	private CompletableFuture<Object[]> captureSnapshot()
+	{
+		CompletableFuture<Object[]> result = new CompletableFuture<>();
+		_ownerExecutor.execute(() ->
+		{
+			try
+			{
+				// the inventory hands every event to this thread, so the head and the pricing policy cannot
+				// move during the capture; stock changed on another thread may be copied before its record
+				// is logged, which only repeats the quantity the record sets
+				long seq = _log.getHeadSeq();
+				InventorySnapshot snapshot = new InventorySnapshot(_inventory);
+				result.complete(new Object[] { snapshot, seq });
+			}
+			catch (RuntimeException e)
+			{
+				result.completeExceptionally(e);
+			}
+		});
+		
+		return result;
+	}
+	
+	/**
+	 * Starts a daemon thread
+	 * @param name The thread name
+	 * @param task The task to run
+	 */
+	private static void startThread(String name, Runnable task)
+	{
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/** Connection to one follower */
+	private class Session
+	{
+		/** Socket connected to the follower */
+		private final Socket _socket;
+		/** Sequence number the follower last reported as applied */
+		private volatile long _appliedSeq = 0;
+		
+		/**
+		 * Constructor
+		 * @param socket Socket connected to the follower
+		 */
+		private Session(Socket socket)
+		{
+			_socket = socket;
+		}
+		
+		/** Sends snapshots and batches to the follower until either side disconnects */
+		private void send()
+		{
+			try
+			{
+				DataInputStream in = new DataInputStream(new BufferedInputStream(_socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(_socket.getOutputStream(), 1 << 16));
+				long next = in.readLong() + 1;
+				_appliedSeq = next - 1;
+				startThread("replication-ack", () -> readAcks(in));
+				
+				List<byte[]> records = new ArrayList<>(s_maxBatch);
+				long[] times = new long[s_maxBatch];
+				while (!_closed)
+				{
+					if (next < _log.getStartSeq())
+					{
+						next = sendSnapshot(out) + 1;
+						continue;
+					}
+					
+					long head = _log.await(next, s_heartbeatMillis);
+					records.clear();
+					int count = _log.read(next, s_maxBatch, records, times);
+					if (count < 0)
+					{
+						continue;
+					}
+					
+					out.writeByte(ReplicationProtocol.s_frameBatch);
+					out.writeLong(Math.max(head, next + count - 1));
+					out.writeInt(count);
+					for (int i = 0; i < count; i++)
+					{
+						byte[] record = records.get(i);
+						out.writeLong(next + i);
+						out.writeLong(times[i]);
+						out.writeInt(record.length);
+						out.write(record);
+					}
+					next += count;
+					// keep filling the socket while more records are waiting
+					if (count < s_maxBatch)
+					{
+						out.flush();
+					}
+				}
+			}
+			catch (IOException | InterruptedException | ExecutionException e)
+			{
+				// the follower disconnects or reconnects later and catches up from its last sequence number
+			}
+			finally
+			{
+				close();
+			}
+		}
+		
+		/**
+		 * Sends a snapshot of the inventory
+		 * @param out The stream to the follower
+		 * @returns The sequence number the snapshot reflects
+		 * @throws IOException if the snapshot cannot be sent
+		 * @throws InterruptedException if interrupted while waiting for the capture
+		 * @throws ExecutionException if the capture failed
+		 */
+		private long sendSnapshot(DataOutputStream out) throws IOException, InterruptedException, ExecutionException
+		{
+			Object[] capture = captureSnapshot().get();
+			InventorySnapshot snapshot = (InventorySnapshot)capture[0];
+			long seq = (long)capture[1];
+			out.writeByte(ReplicationProtocol.s_frameSnapshot);
+			out.writeLong(seq);
+			ReplicationProtocol.writePricingPolicy(out, snapshot.getPricingPolicy());
+			out.writeInt(snapshot.size());
+			for (int i = 0; i < snapshot.size(); i++)
+			{
+				ReplicationProtocol.writeProduct(out, snapshot.getName(i), snapshot.getWeight(i), snapshot.getWholesalePrice(i),
+					snapshot.getQuantityInStock(i), snapshot.getStorageCost(i), snapshot.getRetailPrice(i));
+			}
+			out.flush();
+			
+			return seq;
+		}
+		
+		/**
+		 * Reads the sequence numbers the follower reports as applied until it disconnects
+		 * @param in The stream from the follower
+		 */
+		private void readAcks(DataInputStream in)
+		{
+			try
+			{
+				while (!_closed)
+				{
+					_appliedSeq = in.readLong();
+				}
+			}
+			catch (IOException e)
+			{
+				close();
+			}
+		}
+		
+		/** Disconnects the follower */
+		private void close()
+		{
+			_sessions.remove(this);
+			try
+			{
+				_socket.close();
+			}
+			catch (IOException e)
+			{
+				// already closed
+			}
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * Bounded in-memory log of encoded inventory mutations numbered by consecutive sequence numbers.
+ * A single writer appends records while any number of readers copy out ranges of them. Once the
+ * log is full the oldest records are overwritten, and readers that fall behind the start of the
+ * log must catch up from a snapshot instead.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.util.List;
+
+public class ReplicationLog
+{
+	/** Encoded records by sequence number modulo the capacity */
+	private final byte[][] _records;
+	/** Time each record was appended, in milliseconds since the epoch */
+	private final long[] _times;
+	/** Mask selecting a slot from a sequence number */
+	private final int _mask;
+	/** Sequence number of the oldest record held */
+	private long _startSeq;
+	/** Sequence number of the newest record, or of the state captured by a snapshot */
+	private long _headSeq;
+	
+	/**
+	 * Constructor. The log starts at sequence number 1, which stands for the state of the
+	 * inventory before logging began and is only available as a snapshot.
+	 * @param capacity The maximum number of records held, rounded up to a power of two
+	 */
+	public ReplicationLog(int capacity)
+	{
+		if (capacity <= 0 || capacity > (1 << 30))
+		{
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+		}
+		
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+		{
+			size <<= 1;
+		}
+		_records = new byte[size][];
+		_times = new long[size];
+		_mask = size - 1;
+		_headSeq = 1;
+		_startSeq = 2;
+	}
+	
+	/**
+	 * Appends a record and wakes readers waiting for it
+	 * @param record The encoded record
+	 * @returns The sequence number of the record
+	 */
+	public synchronized long append(byte[] record)
+	{
+		long seq = ++_headSeq;
+		int slot = (int)seq & _mask;
+		_records[slot] = record;
+		_times[slot] = System.currentTimeMillis();
+		if (seq - _startSeq > _mask)
+		{
+			_startSeq = seq - _mask;
+		}
+		notifyAll();
+		
+		return seq;
+	}
+	
+	/**
+	 * Consumes a sequence number without a record and discards every record held, so that every
+	 * reader must catch up from a snapshot. Used for changes that cannot be expressed as records.
+	 * @returns The consumed sequence number
+	 */
+	public synchronized long reset()
+	{
+		long seq = ++_headSeq;
+		_startSeq = seq + 1;
+		notifyAll();
+		
+		return seq;
+	}
+	
+	/**
+	 * Get method for the newest sequence number
+	 * @returns The sequence number of the newest record or reset
+	 */
+	public synchronized long getHeadSeq()
+	{
+		return _headSeq;
+	}
+	
+	/**
+	 * Get method for the oldest sequence number still held
+	 * @returns The sequence number of the oldest record, one past the head if the log is empty
+	 */
+	public synchronized long getStartSeq()
+	{
+		return _startSeq;
+	}
+	
+	/**
+	 * Waits until the log holds a record with a sequence number of at least seq
+	 * @param seq The sequence number waited for
+	 * @param timeoutMillis The longest time to wait
+	 * @returns The head sequence number when waiting ended
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized long await(long seq, long timeoutMillis) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		long remaining = timeoutMillis;
+		while (_headSeq < seq && remaining > 0)
+		{
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		
+		return _headSeq;
+	}
+	
+	/**
+	 * Copies consecutive records starting at a sequence number
+	 * @param seq The sequence number of the first record to copy
+	 * @param max The maximum number of records to copy
+	 * @param records Receives the records
+	 * @param times Receives the append time of each record, must hold at least max entries
+	 * @returns The number of records copied, or -1 if seq is older than the oldest record held
+	 */
+	public synchronized int read(long seq, int max, List<byte[]> records, long[] times)
+	{
+		if (seq < _startSeq)
+		{
+			return -1;
+		}
+		
+		int count = (int)Math.max(0, Math.min(max, _headSeq - seq + 1));
+		for (int i = 0; i < count; i++)
+		{
+			int slot = (int)(seq + i) & _mask;
+			records.add(_records[slot]);
+			times[i] = _times[slot];
+		}
+		
+		return count;
+	}
+}
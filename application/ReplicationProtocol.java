@@ -0,0 +1,283 @@
+/**
+ * Static helpers shared by the replication leader and followers for encoding mutations and
+ * framing the stream between them. A follower opens the connection and sends the last sequence
+ * number it has received, then the leader sends snapshot and batch frames while the follower
+ * sends back the sequence number it has applied after each frame. Names are written as their
+ * length in UTF-8 bytes followed by the bytes, so a name of any length can be replicated.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+public class ReplicationProtocol
+{
+	/** Frame holding the state of the whole inventory as of a sequence number */
+	public static final byte s_frameSnapshot = 1;
+	/** Frame holding consecutive mutation records, empty when sent as a heartbeat */
+	public static final byte s_frameBatch = 2;
+	/** Record of a product added, with its pricing */
+	public static final byte s_opAdd = 1;
+	/** Record of a product removed */
+	public static final byte s_opRemove = 2;
+	/** Record of a product renamed */
+	public static final byte s_opRename = 3;
+	/** Record of a product weight change */
+	public static final byte s_opWeight = 4;
+	/** Record of a product wholesale price change */
+	public static final byte s_opWholesalePrice = 5;
+	/** Record of a product quantity change */
+	public static final byte s_opQuantity = 6;
+	/** Record of the inventory repriced under a global markup factor and storage rate */
+	public static final byte s_opReprice = 7;
+	
+	/**
+	 * Encodes a product added to the inventory
+	 * @param prod The added product
+	 * @returns The encoded record
+	 */
+	public static byte[] encodeAdd(IProduct prod)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try
+		{
+			out.writeByte(s_opAdd);
+			writeProduct(out, prod.getName(), prod.getWeight(), prod.getWholesalePrice(), prod.getQuantityInStock(),
+				prod.getStorageCost(), prod.getRetailPrice());
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Encodes a change of one product
+	 * @param op The record type, one of the s_op constants other than s_opAdd and s_opReprice
+	 * @param name The name of the product before the change
+	 * @param value The new name, weight, price or quantity, or null for a removal
+	 * @returns The encoded record
+	 */
+	public static byte[] encodeChange(byte op, String name, Object value)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try
+		{
+			out.writeByte(op);
+			writeString(out, name);
+			if (op == s_opRename)
+			{
+				writeString(out, (String)value);
+			}
+			else if (op == s_opWeight || op == s_opWholesalePrice)
+			{
+				out.writeDouble((double)value);
+			}
+			else if (op == s_opQuantity)
+			{
+				out.writeInt((int)value);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Encodes a reprice of the whole inventory under a global pricing policy
+	 * @param policy The policy applied
+	 * @returns The encoded record
+	 */
+	public static byte[] encodeReprice(GlobalPricingPolicy policy)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(17);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try
+		{
+			out.writeByte(s_opReprice);
+			out.writeDouble(policy.getMarkupFactor());
+			out.writeDouble(policy.getStorageRate());
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Applies an encoded record to an inventory. Must run on the thread that modifies the inventory.
+	 * @param inventory The inventory to change
+	 * @param record The encoded record
+	 * @throws IllegalStateException if the record names a product that is not in the inventory
+	 */
+	public static void apply(Inventory<Item> inventory, byte[] record)
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		try
+		{
+			byte op = in.readByte();
+			if (op == s_opAdd)
+			{
+				inventory.add(readItem(in, inventory.getPricingPolicy()));
+				return;
+			}
+			if (op == s_opReprice)
+			{
+				inventory.reprice(new GlobalPricingPolicy(in.readDouble(), in.readDouble()));
+				return;
+			}
+			
+			String name = readString(in);
+			Item item = inventory.get(name);
+			if (item == null)
+			{
+				throw new IllegalStateException("Replicated product " + name + " is not in the inventory");
+			}
+			
+			switch (op)
+			{
+				case s_opRemove:
+					inventory.remove(item);
+					break;
+				case s_opRename:
+					item.setName(readString(in));
+					break;
+				case s_opWeight:
+					item.setWeight(in.readDouble());
+					break;
+				case s_opWholesalePrice:
+					item.setWholesalePrice(in.readDouble());
+					break;
+				case s_opQuantity:
+					item.setQuantityInStock(in.readInt());
+					break;
+				default:
+					throw new IllegalStateException("Unknown replication record type " + op);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Writes the properties of a product as they appear in add records and snapshots
+	 * @param out The stream to write to
+	 * @param name The product name
+	 * @param weight The product weight
+	 * @param price The product wholesale price
+	 * @param quantity The product quantity in stock
+	 * @param storageCost The product storage cost
+	 * @param retailPrice The product retail price
+	 * @throws IOException if the stream cannot be written
+	 */
+	public static void writeProduct(DataOutputStream out, String name, double weight, double price, int quantity,
+		double storageCost, double retailPrice) throws IOException
+	{
+		writeString(out, name);
+		out.writeDouble(weight);
+		out.writeDouble(price);
+		out.writeInt(quantity);
+		out.writeDouble(storageCost);
+		out.writeDouble(retailPrice);
+	}
+	
+	/**
+	 * Reads a product written by writeProduct, keeping the leader's pricing
+	 * @param in The stream to read from
+	 * @param policy The pricing policy the leader priced the product under
+	 * @returns The new item
+	 * @throws IOException if the stream cannot be read
+	 */
+	public static Item readItem(DataInputStream in, PricingPolicy policy) throws IOException
+	{
+		Item item = new Item(readString(in), in.readDouble(), in.readDouble(), in.readInt());
+		item.applyPricing(policy, in.readDouble(), in.readDouble());
+		
+		return item;
+	}
+	
+	/**
+	 * Writes the pricing policy of a snapshot. Only a GlobalPricingPolicy can be sent, since other
+	 * policies price by rules supplied in code, so for any other policy only a marker is written.
+	 * @param out The stream to write to
+	 * @param policy The policy the products of the snapshot are priced under
+	 * @throws IOException if the stream cannot be written
+	 */
+	public static void writePricingPolicy(DataOutputStream out, PricingPolicy policy) throws IOException
+	{
+		boolean isGlobal = policy instanceof GlobalPricingPolicy;
+		out.writeBoolean(isGlobal);
+		if (isGlobal)
+		{
+			out.writeDouble(((GlobalPricingPolicy)policy).getMarkupFactor());
+			out.writeDouble(((GlobalPricingPolicy)policy).getStorageRate());
+		}
+	}
+	
+	/**
+	 * Reads a pricing policy written by writePricingPolicy
+	 * @param in The stream to read from
+	 * @returns The leader's policy, or null if it could not be sent
+	 * @throws IOException if the stream cannot be read
+	 */
+	public static PricingPolicy readPricingPolicy(DataInputStream in) throws IOException
+	{
+		if (!in.readBoolean())
+		{
+			return null;
+		}
+		
+		return new GlobalPricingPolicy(in.readDouble(), in.readDouble());
+	}
+	
+	/**
+	 * Writes a string as its length in UTF-8 bytes followed by the bytes
+	 * @param out The stream to write to
+	 * @param value The string to write
+	 * @throws IOException if the stream cannot be written
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Reads a string written by writeString
+	 * @param in The stream to read from
+	 * @returns The string
+	 * @throws IOException if the stream cannot be read or the length is negative
+	 */
+	private static String readString(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if (length < 0)
+		{
+			throw new IOException("Invalid string length " + length);
+		}
+		
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
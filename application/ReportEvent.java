@@ -0,0 +1,38 @@
+/**
+ * Flight Recorder event covering computation of the inventory report.
+ * Disabled by default, enable in a recording with application.InventoryReport#enabled=true
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("application.InventoryReport")
+@Label("Inventory Report")
+@Category("Inventory")
+@Description("Computing the inventory report totals")
+@Enabled(false)
+@StackTrace(false)
+public class ReportEvent extends Event
+{
+	/** Number of products reported */
+	@Label("Products")
+	public int productCount;
+	/** Number of items in stock reported */
+	@Label("Items In Stock")
+	public int itemCount;
+	/** Total wholesale price reported */
+	@Label("Wholesale Total")
+	public double wholesaleTotal;
+	/** Total retail price reported */
+	@Label("Retail Total")
+	public double retailTotal;
+}
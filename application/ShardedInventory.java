@@ -0,0 +1,1089 @@
+/**
+ * Product list partitioned by name hash across a fixed number of independent Inventory shards.
+ * Each shard is owned by its own writer thread, which makes every change to the shard and answers
+ * every lookup in it, so the list may be called from any number of threads at once: a call is
+ * routed to the writer of the shard owning the name it concerns and waits for the result, and
+ * calls routed to different shards run in parallel. Renaming a product into another shard's
+ * partition moves it there while both writers are held. Totals are gathered from every shard, and
+ * products in name order are produced by merging the shards' sorted lists. Batch additions,
+ * removals, and repricing run on every writer in parallel. Ids are assigned by this list, so a
+ * product keeps its id when it moves between shards.
+ * Listeners are sent the same events an Inventory sends, with this list as source, on the thread
+ * that owns the list as an Inventory does. Products of the list are renamed with rename.
+ * @param <T> The type of product in the list
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+public class ShardedInventory<T extends IProduct> implements IProductList<T>, Iterable<T>, AutoCloseable
+{
+	/** Shards holding the products, indexed by partition */
+	private final List<Inventory<T>> _shards;
+	/** Writer thread owning each shard, indexed by partition */
+	private final ShardWriter[] _writers;
+	/** Products by the id assigned by this list, guarded by _itemIndex for writes */
+	private final IdTable<T> _itemsById = new IdTable<>();
+	/** Id of each product by identity, guarded by itself */
+	private final IdentityIntMap<T> _itemIndex = new IdentityIntMap<>();
+	/** Partition of the shard holding each product by identity, guarded by _itemIndex */
+	private final IdentityIntMap<T> _itemShards = new IdentityIntMap<>();
+	/** Held while a product moves between shards, so two moves never wait on each other's writers */
+	private final Object _moveLock = new Object();
+	/** True on a writer thread renaming a product for rename, so other renames can be refused */
+	private final ThreadLocal<Boolean> _renaming = ThreadLocal.withInitial(() -> false);
+	/** True once close was called */
+	private volatile boolean _closed = false;
+	/** Listeners to this list */
+	private final PropertyChangeSupport _pcs = new PropertyChangeSupport(this);
+	/** Thread on which listeners receive the events of the list */
+	private volatile Thread _owner = Thread.currentThread();
+	/** Runs deliveries of events raised on other threads on the owner thread, or null to wait for the owner */
+	private volatile Executor _ownerExecutor = null;
+	/** Events raised on other threads not yet sent to listeners, quantity events keyed by product and others by themselves, guarded by itself */
+	private final LinkedHashMap<Object, PropertyChangeEvent> _pendingEvents = new LinkedHashMap<>();
+	/** True while _pendingEvents may hold events, so the owner thread can skip locking it */
+	private volatile boolean _hasPendingEvents = false;
+	/** True while a delivery is scheduled on the owner thread */
+	private final AtomicBoolean _deliveryScheduled = new AtomicBoolean(false);
+	
+	/**
+	 * Constructor, starting a writer thread for every shard
+	 * @param shardCount The number of shards
+	 */
+	public ShardedInventory(int shardCount)
+	{
+		if (shardCount <= 0)
+		{
+			throw new IllegalArgumentException("Shard count must be positive");
+		}
+		
+		_shards = new ArrayList<>(shardCount);
+		_writers = new ShardWriter[shardCount];
+		for (int i = 0; i < shardCount; i++)
+		{
+			Inventory<T> shard = new Inventory<>();
+			ShardWriter writer = new ShardWriter("shard-writer-" + i);
+			_shards.add(shard);
+			_writers[i] = writer;
+			writer.start();
+			writer.execute(() -> shard.setOwner(writer));
+		}
+	}
+	
+	/**
+	 * Get method for the number of shards
+	 * @returns The shard count
+	 */
+	public int getShardCount()
+	{
+		return _shards.size();
+	}
+	
+	/**
+	 * Get method for a shard. Shards must not be modified directly, and are only read on their writer.
+	 * @param index The partition of the shard
+	 * @returns The shard
+	 */
+	public Inventory<T> getShard(int index)
+	{
+		return _shards.get(index);
+	}
+	
+	/**
+	 * Get method for the CPU time used by each shard's writer thread since it started, which shows
+	 * how evenly work spreads over the shards and how much of it a single core must run
+	 * @returns The CPU time of each writer in nanoseconds, indexed by partition, -1 where unavailable
+	 */
+	public long[] getWriterCpuNanos()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long[] cpuNanos = new long[_writers.length];
+		for (int i = 0; i < _writers.length; i++)
+		{
+			cpuNanos[i] = threads.isThreadCpuTimeSupported() ? threads.getThreadCpuTime(_writers[i].getId()) : -1;
+		}
+		
+		return cpuNanos;
+	}
+	
+	/**
+	 * Computes the partition owning a name. The hash depends only on the characters of the name,
+	 * so the same name maps to the same partition in every process.
+	 * @param name The product name
+	 * @returns The index of the shard owning the name
+	 */
+	public int shardOf(String name)
+	{
+		int h = name.hashCode() * 0x9E3779B9;
+		return Math.floorMod(h ^ (h >>> 16), _shards.size());
+	}
+	
+	@Override
+	public int getTotalProductsInStock()
+	{
+		int[] totals = new int[_shards.size()];
+		forEachShard(i -> totals[i] = _shards.get(i).getTotalProductsInStock());
+		int total = 0;
+		for (int n : totals)
+		{
+			total += n;
+		}
+		
+		return total;
+	}
+	
+	@Override
+	public int getTotalItemsInStock()
+	{
+		int[] totals = new int[_shards.size()];
+		forEachShard(i -> totals[i] = _shards.get(i).getTotalItemsInStock());
+		int total = 0;
+		for (int n : totals)
+		{
+			total += n;
+		}
+		
+		return total;
+	}
+	
+	@Override
+	public double getTotalWholesalePrice()
+	{
+		double[] totals = new double[_shards.size()];
+		forEachShard(i -> totals[i] = _shards.get(i).getTotalWholesalePrice());
+		double total = 0;
+		for (double n : totals)
+		{
+			total += n;
+		}
+		
+		return total;
+	}
+	
+	@Override
+	public double getTotalRetailPrice()
+	{
+		double[] totals = new double[_shards.size()];
+		forEachShard(i -> totals[i] = _shards.get(i).getTotalRetailPrice());
+		double total = 0;
+		for (double n : totals)
+		{
+			total += n;
+		}
+		
+		return total;
+	}
+	
+	@Override
+	public void add(T prod)
+	{
+		int shard = shardOf(prod.getName());
+		call(shard, () ->
+		{
+			if (shardIndexOf(prod) != IdentityIntMap.s_missing)
+			{
+				throw new DuplicateProductNameException(prod.getName());
+			}
+			// listen before the shard, so a rename not made through rename is refused before the shard sees it
+			prod.addPropertyChangeListener(this);
+			try
+			{
+				_shards.get(shard).add(prod);
+			}
+			catch (RuntimeException e)
+			{
+				prod.removePropertyChangeListener(this);
+				throw e;
+			}
+			register(prod, shard);
+			return null;
+		});
+	}
+	
+	/**
+	 * Add a batch of new products to the list. Each writer adds its partition of the batch in batch
+	 * order, in parallel with the others, and ids are assigned in batch order afterwards. If a
+	 * duplicate name is found, products of the same partition preceding it remain in the list,
+	 * as do all products of other partitions.
+	 * @param prods The products to add
+	 * @returns The number of products added
+	 * @throws DuplicateProductNameException if the name of a product matches a product name already in the list
+	 */
+	public int addAll(Iterable<? extends T> prods)
+	{
+		List<T> batch = new ArrayList<>();
+		int[] shardOfProd = new int[16];
+		for (T prod : prods)
+		{
+			if (batch.size() == shardOfProd.length)
+			{
+				shardOfProd = Arrays.copyOf(shardOfProd, batch.size() * 2);
+			}
+			shardOfProd[batch.size()] = shardOf(prod.getName());
+			batch.add(prod);
+		}
+		
+		List<List<T>> partitions = partition(batch, shardOfProd);
+		boolean[][] added = new boolean[_shards.size()][];
+		RuntimeException error = null;
+		try
+		{
+			forEachShard(i ->
+			{
+				List<T> partition = partitions.get(i);
+				Inventory<T> shard = _shards.get(i);
+				// products already in the shard are left as they are, the shard refusing them as duplicates
+				boolean[] held = new boolean[partition.size()];
+				for (int j = 0; j < partition.size(); j++)
+				{
+					held[j] = shard.contains(partition.get(j));
+					if (!held[j])
+					{
+						partition.get(j).addPropertyChangeListener(this);
+					}
+				}
+				added[i] = new boolean[partition.size()];
+				try
+				{
+					shard.addAll(partition);
+				}
+				finally
+				{
+					for (int j = 0; j < partition.size(); j++)
+					{
+						added[i][j] = !held[j] && shard.contains(partition.get(j));
+						if (!held[j] && !added[i][j])
+						{
+							partition.get(j).removePropertyChangeListener(this);
+						}
+					}
+				}
+			});
+		}
+		catch (RuntimeException e)
+		{
+			error = e;
+		}
+		
+		int[] positions = new int[_shards.size()];
+		int count = 0;
+		for (int k = 0; k < batch.size(); k++)
+		{
+			int shard = shardOfProd[k];
+			if (added[shard][positions[shard]++])
+			{
+				register(batch.get(k), shard);
+				count++;
+			}
+		}
+		if (error != null)
+		{
+			throw error;
+		}
+		
+		return count;
+	}
+	
+	@Override
+	public void remove(T prod)
+	{
+		// retried if the product moved to another shard after its shard was looked up
+		for (int shard = shardIndexOf(prod); shard != IdentityIntMap.s_missing; shard = shardIndexOf(prod))
+		{
+			final int from = shard;
+			boolean removed = call(from, () ->
+			{
+				if (!_shards.get(from).contains(prod))
+				{
+					return false;
+				}
+				_shards.get(from).remove(prod);
+				unregister(prod);
+				return true;
+			});
+			if (removed)
+			{
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Remove a batch of products from the list, each writer removing its partition of the batch
+	 * in parallel with the others. Products not in the list are ignored.
+	 * @param prods The products to remove
+	 * @returns The number of products removed
+	 */
+	public int removeAll(Iterable<? extends T> prods)
+	{
+		List<T> batch = new ArrayList<>();
+		int[] shardOfProd = new int[16];
+		for (T prod : prods)
+		{
+			int shard = shardIndexOf(prod);
+			if (shard != IdentityIntMap.s_missing)
+			{
+				if (batch.size() == shardOfProd.length)
+				{
+					shardOfProd = Arrays.copyOf(shardOfProd, batch.size() * 2);
+				}
+				shardOfProd[batch.size()] = shard;
+				batch.add(prod);
+			}
+		}
+		
+		List<List<T>> partitions = partition(batch, shardOfProd);
+		forEachShard(i ->
+		{
+			// a product that moved since it was partitioned is left for its new shard's writer
+			List<T> held = new ArrayList<>(partitions.get(i).size());
+			for (T prod : partitions.get(i))
+			{
+				if (_shards.get(i).contains(prod))
+				{
+					held.add(prod);
+				}
+			}
+			_shards.get(i).removeAll(held);
+			for (T prod : held)
+			{
+				unregister(prod);
+			}
+			partitions.set(i, held);
+		});
+		
+		int count = 0;
+		for (List<T> partition : partitions)
+		{
+			count += partition.size();
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Renames a product, on the writer of its shard if the new name belongs to the same shard, and
+	 * otherwise by holding the writer of its shard while the writer of the new name's shard moves it
+	 * there. Moves are made one at a time. The product is missing from lookups by name while it moves.
+	 * A product not in the list is renamed directly.
+	 * @param prod The product to rename
+	 * @param name The new name
+	 * @throws DuplicateProductNameException if the name matches the name of another product in the list
+	 */
+	@Override
+	public void rename(T prod, String name)
+	{
+		int to = shardOf(name);
+		// retried if the product moved to another shard after its shard was looked up
+		while (true)
+		{
+			int from = shardIndexOf(prod);
+			if (from == IdentityIntMap.s_missing)
+			{
+				prod.setName(name);
+				return;
+			}
+			
+			boolean renamed;
+			if (from == to)
+			{
+				renamed = call(from, () ->
+				{
+					if (!_shards.get(from).contains(prod))
+					{
+						return false;
+					}
+					setName(prod, name);
+					return true;
+				});
+			}
+			else
+			{
+				renamed = move(prod, name, from, to);
+			}
+			if (renamed)
+			{
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Get method for the policy pricing the products of the list
+	 * @returns The policy installed on every shard by the last reprice, or the default policy
+	 */
+	public PricingPolicy getPricingPolicy()
+	{
+		return call(0, () -> _shards.get(0).getPricingPolicy());
+	}
+	
+	/**
+	 * Installs a pricing policy on every shard and recomputes storage cost and retail price of every
+	 * product under it, repricing the shards in parallel. Listeners are sent a single PropertyChangedEvent named "reprice".
+	 * @param policy The pricing policy to apply
+	 * @returns The number of products repriced
+	 */
+	public int reprice(PricingPolicy policy)
+	{
+		int[] counts = new int[_shards.size()];
+		forEachShard(i -> counts[i] = _shards.get(i).reprice(policy));
+		int count = 0;
+		for (int n : counts)
+		{
+			count += n;
+		}
+		fire(new PropertyChangedEvent(this, "reprice", null, policy));
+		
+		return count;
+	}
+	
+	@Override
+	public boolean contains(T prod)
+	{
+		synchronized (_itemIndex)
+		{
+			return _itemIndex.get(prod) != IdentityIntMap.s_missing;
+		}
+	}
+	
+	@Override
+	public T get(String name)
+	{
+		int shard = shardOf(name);
+		return call(shard, () -> _shards.get(shard).get(name));
+	}
+	
+	@Override
+	public T get(int id)
+	{
+		return _itemsById.get(id);
+	}
+	
+	@Override
+	public int idOf(T prod)
+	{
+		synchronized (_itemIndex)
+		{
+			return _itemIndex.get(prod);
+		}
+	}
+	
+	/**
+	 * Makes the calling thread the owner of the list, the thread on which listeners receive its
+	 * events. Events raised on other threads, which includes every writer, are queued and handed to
+	 * listeners on the owner thread. The thread that created the list owns it until this is called.
+	 * @param ownerExecutor Runs tasks on the owner thread, or null to deliver queued events only
+	 * when the owner next calls deliverPendingEvents
+	 */
+	public void setOwner(Executor ownerExecutor)
+	{
+		_owner = Thread.currentThread();
+		_ownerExecutor = ownerExecutor;
+	}
+	
+	/**
+	 * Sends listeners the events raised on other threads since the last delivery. Successive
+	 * quantity changes of a product are sent as one event from the first old quantity to the
+	 * last new quantity, and events of products removed since are dropped. Must be called on
+	 * the owner thread.
+	 */
+	@SuppressWarnings("unchecked")
+	public void deliverPendingEvents()
+	{
+		if (!_hasPendingEvents)
+		{
+			return;
+		}
+		
+		List<PropertyChangeEvent> events;
+		synchronized (_pendingEvents)
+		{
+			events = new ArrayList<>(_pendingEvents.values());
+			_pendingEvents.clear();
+			_hasPendingEvents = false;
+		}
+		for (PropertyChangeEvent e : events)
+		{
+			if (e.getSource() == this || contains((T)e.getSource()))
+			{
+				_pcs.firePropertyChange(e);
+			}
+		}
+	}
+	
+	/**
+	 * Stops the writer threads once they have run the changes already submitted. The list cannot
+	 * be read or changed afterwards.
+	 */
+	@Override
+	public void close()
+	{
+		_closed = true;
+		for (ShardWriter writer : _writers)
+		{
+			writer.execute(ShardWriter.s_stop);
+		}
+	}
+	
+	@Override
+	public void addPropertyChangeListener(PropertyChangeListener listener)
+	{
+		_pcs.addPropertyChangeListener(listener);
+	}
+	
+	@Override
+	public void removePropertyChangeListener(PropertyChangeListener listener)
+	{
+		_pcs.removePropertyChangeListener(listener);
+	}
+	
+	/**
+	 * Returns an iterator over a copy of the products in id order, so the list may change while it is used
+	 * @returns Iterator over the products
+	 */
+	@Override
+	public Iterator<T> iterator()
+	{
+		return copyProducts().iterator();
+	}
+	
+	@Override
+	public Spliterator<T> spliterator()
+	{
+		return copyProducts().spliterator();
+	}
+	
+	/**
+	 * Returns a snapshot of the products in name order, merging the sorted products every writer
+	 * copies from its shard
+	 * @returns List of the products in name order
+	 */
+	@Override
+	public Iterable<T> getSortedProductsByName()
+	{
+		List<List<T>> shardLists = new ArrayList<>(_shards.size());
+		for (int i = 0; i < _shards.size(); i++)
+		{
+			shardLists.add(null);
+		}
+		forEachShard(i ->
+		{
+			List<T> sorted = new ArrayList<>(_shards.get(i).getTotalProductsInStock());
+			for (T prod : _shards.get(i).getSortedProductsByName())
+			{
+				sorted.add(prod);
+			}
+			shardLists.set(i, sorted);
+		});
+		
+		// each shard names its products in its own arena, so heads compare by name in the same order
+		PriorityQueue<MergeCursor<T>> heads = new PriorityQueue<>(_shards.size(),
+			(a, b) -> NameArena.compareNames(a._head.getName(), b._head.getName()));
+		int size = 0;
+		for (List<T> shardList : shardLists)
+		{
+			size += shardList.size();
+			MergeCursor<T> cursor = new MergeCursor<>(shardList.iterator());
+			if (cursor._head != null)
+			{
+				heads.add(cursor);
+			}
+		}
+		
+		List<T> sorted = new ArrayList<>(size);
+		while (!heads.isEmpty())
+		{
+			MergeCursor<T> cursor = heads.poll();
+			sorted.add(cursor._head);
+			if (cursor.advance())
+			{
+				heads.add(cursor);
+			}
+		}
+		
+		return sorted;
+	}
+	
+	/**
+	 * Finds products with similar names in every shard, since similar names hash to different shards
+	 * @param name The name to match
+	 * @param maxDistance The largest number of edits between the names
+	 * @returns The matching products, closest first
+	 */
+	@Override
+	public List<T> findSimilar(String name, int maxDistance)
+	{
+		List<List<T>> found = new ArrayList<>(_shards.size());
+		for (int i = 0; i < _shards.size(); i++)
+		{
+			found.add(null);
+		}
+		forEachShard(i -> found.set(i, _shards.get(i).findSimilar(name, maxDistance)));
+		
+		List<T> matches = new ArrayList<>();
+		for (List<T> shardMatches : found)
+		{
+			matches.addAll(shardMatches);
+		}
+		FuzzyNameIndex.sortByDistance(name, matches, maxDistance);
+		
+		return matches;
+	}
+	
+	@Override
+	public void propertyChange(PropertyChangeEvent e)
+	{
+		if (e instanceof PropertyChangingEvent)
+		{
+			// the writer's shard is not told of a rename made on another thread, so it is refused
+			if (e.getPropertyName() == "name" && !_renaming.get())
+			{
+				throw new IllegalStateException("Products of a sharded list are renamed through the list");
+			}
+		}
+		else if (e instanceof PropertyChangedEvent)
+		{
+			fire(e);
+		}
+	}
+	
+	/**
+	 * Moves a product to the shard owning its new name and renames it. The writer of the product's
+	 * shard is held waiting while the writer of the new shard makes the move, so the move sees both
+	 * shards unchanged by other threads, and the lock keeps two moves from holding each other's writers.
+	 * @param prod The product to move
+	 * @param name The new name
+	 * @param from The partition of the shard holding the product
+	 * @param to The partition of the shard owning the new name
+	 * @returns False if the product was no longer in the shard once it was held
+	 * @throws DuplicateProductNameException if the new shard has a product with the name
+	 */
+	private boolean move(T prod, String name, int from, int to)
+	{
+		synchronized (_moveLock)
+		{
+			CountDownLatch held = new CountDownLatch(1);
+			CountDownLatch moved = new CountDownLatch(1);
+			if (Thread.currentThread() != _writers[from])
+			{
+				_writers[from].execute(() ->
+				{
+					held.countDown();
+					awaitUninterruptibly(moved);
+				});
+				awaitUninterruptibly(held);
+			}
+			try
+			{
+				return call(to, () ->
+				{
+					Inventory<T> source = _shards.get(from);
+					Inventory<T> target = _shards.get(to);
+					if (!source.contains(prod))
+					{
+						return false;
+					}
+					if (target.get(name) != null)
+					{
+						throw new DuplicateProductNameException(name);
+					}
+					
+					source.remove(prod);
+					setName(prod, name);
+					target.add(prod);
+					synchronized (_itemIndex)
+					{
+						_itemShards.put(prod, to);
+					}
+					return true;
+				});
+			}
+			finally
+			{
+				moved.countDown();
+			}
+		}
+	}
+	
+	/**
+	 * Renames a product on a writer thread, letting the rename past this list's check
+	 * @param prod The product to rename
+	 * @param name The new name
+	 */
+	private void setName(T prod, String name)
+	{
+		_renaming.set(true);
+		try
+		{
+			prod.setName(name);
+		}
+		finally
+		{
+			_renaming.set(false);
+		}
+	}
+	
+	/**
+	 * Get method for the partition of the shard holding a product
+	 * @param prod The product
+	 * @returns The partition, or IdentityIntMap.s_missing if the product is not in the list
+	 */
+	private int shardIndexOf(T prod)
+	{
+		synchronized (_itemIndex)
+		{
+			return _itemShards.get(prod);
+		}
+	}
+	
+	/**
+	 * Copies the products in id order
+	 * @returns The copy
+	 */
+	private List<T> copyProducts()
+	{
+		synchronized (_itemIndex)
+		{
+			List<T> products = new ArrayList<>(_itemIndex.size());
+			for (T prod : _itemsById)
+			{
+				products.add(prod);
+			}
+			
+			return products;
+		}
+	}
+	
+	/**
+	 * Assigns an id to a product added to a shard and notifies listeners
+	 * @param prod The added product
+	 * @param shard The partition of the shard it was added to
+	 */
+	private void register(T prod, int shard)
+	{
+		synchronized (_itemIndex)
+		{
+			_itemIndex.put(prod, _itemsById.add(prod));
+			_itemShards.put(prod, shard);
+		}
+		fire(new PropertyChangedEvent(this, "add", null, prod));
+	}
+	
+	/**
+	 * Releases the id of a product removed from its shard and notifies listeners
+	 * @param prod The removed product
+	 */
+	private void unregister(T prod)
+	{
+		synchronized (_itemIndex)
+		{
+			_itemsById.remove(_itemIndex.remove(prod));
+			_itemShards.remove(prod);
+		}
+		prod.removePropertyChangeListener(this);
+		fire(new PropertyChangedEvent(this, "remove", prod, null));
+	}
+	
+	/**
+	 * Splits a batch into the partitions of each shard, keeping batch order within a partition
+	 * @param batch The products to split
+	 * @param shardOfProd The partition of each product in the batch
+	 * @returns One list of products per shard
+	 */
+	private List<List<T>> partition(List<T> batch, int[] shardOfProd)
+	{
+		List<List<T>> partitions = new ArrayList<>(_shards.size());
+		for (int i = 0; i < _shards.size(); i++)
+		{
+			partitions.add(new ArrayList<>());
+		}
+		for (int k = 0; k < batch.size(); k++)
+		{
+			partitions.get(shardOfProd[k]).add(batch.get(k));
+		}
+		
+		return partitions;
+	}
+	
+	/**
+	 * Sends an event to listeners. On the owner thread any queued events are sent first, so
+	 * listeners see changes in the order they were made; on other threads the event is queued,
+	 * and a delivery is scheduled on the owner thread if an executor was given.
+	 * @param e The event to send
+	 */
+	private void fire(PropertyChangeEvent e)
+	{
+		if (Thread.currentThread() == _owner)
+		{
+			deliverPendingEvents();
+			_pcs.firePropertyChange(e);
+			return;
+		}
+		if (!_pcs.hasListeners(e.getPropertyName()))
+		{
+			return;
+		}
+		
+		synchronized (_pendingEvents)
+		{
+			if (e.getSource() != this && e.getPropertyName() == "quantity")
+			{
+				PropertyChangeEvent queued = _pendingEvents.get(e.getSource());
+				_pendingEvents.put(e.getSource(), queued == null ? e
+					: new PropertyChangedEvent(e.getSource(), "quantity", queued.getOldValue(), e.getNewValue()));
+			}
+			else
+			{
+				_pendingEvents.put(e, e);
+			}
+			_hasPendingEvents = true;
+		}
+		Executor executor = _ownerExecutor;
+		if (executor != null && _deliveryScheduled.compareAndSet(false, true))
+		{
+			executor.execute(() ->
+			{
+				_deliveryScheduled.set(false);
+				deliverPendingEvents();
+			});
+		}
+	}
+	
+	/**
+	 * Runs a task on the writer of a shard and waits for its result. On the writer itself the task
+	 * runs directly.
+	 * @param shard The partition of the shard
+	 * @param task The task to run
+	 * @returns The result of the task
+	 * @throws RuntimeException the exception thrown by the task
+	 */
+	private <V> V call(int shard, Supplier<V> task)
+	{
+		if (Thread.currentThread() == _writers[shard])
+		{
+			return task.get();
+		}
+		if (_closed)
+		{
+			throw new IllegalStateException("The list is closed");
+		}
+		
+		FutureTask<V> future = new FutureTask<>(task::get);
+		_writers[shard].execute(future);
+		return await(future);
+	}
+	
+	/**
+	 * Runs a task for every shard on the shard's writer, in parallel, and waits for all of them.
+	 * All tasks run to completion even if some fail.
+	 * @param task The task to run, given the index of a shard
+	 * @throws RuntimeException the first exception thrown by a task
+	 */
+	private void forEachShard(IntConsumer task)
+	{
+		if (_closed)
+		{
+			throw new IllegalStateException("The list is closed");
+		}
+		
+		List<FutureTask<Void>> futures = new ArrayList<>(_shards.size());
+		for (int i = 0; i < _shards.size(); i++)
+		{
+			final int shard = i;
+			FutureTask<Void> future = new FutureTask<>(() -> task.accept(shard), null);
+			futures.add(future);
+			if (Thread.currentThread() != _writers[i])
+			{
+				_writers[i].execute(future);
+			}
+		}
+		
+		RuntimeException error = null;
+		for (int i = 0; i < _shards.size(); i++)
+		{
+			if (Thread.currentThread() == _writers[i])
+			{
+				futures.get(i).run();
+			}
+			try
+			{
+				await(futures.get(i));
+			}
+			catch (RuntimeException e)
+			{
+				error = error == null ? e : error;
+			}
+		}
+		if (error != null)
+		{
+			throw error;
+		}
+	}
+	
+	/**
+	 * Waits for a task to finish
+	 * @param future The task
+	 * @returns The result of the task
+	 * @throws RuntimeException the exception thrown by the task, or a CompletionException if it threw
+	 * a checked exception or the wait was interrupted
+	 */
+	private static <V> V await(Future<V> future)
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CompletionException(e);
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof Error)
+			{
+				throw (Error)cause;
+			}
+			throw cause instanceof RuntimeException ? (RuntimeException)cause : new CompletionException(cause);
+		}
+	}
+	
+	/**
+	 * Waits for a latch to open, carrying an interrupt over to after the wait
+	 * @param latch The latch
+	 */
+	private static void awaitUninterruptibly(CountDownLatch latch)
+	{
+		boolean interrupted = false;
+		while (true)
+		{
+			try
+			{
+				latch.await();
+				break;
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/** Thread running the tasks submitted for one shard one at a time, in the order submitted */
+	private static final class ShardWriter extends Thread implements Executor
+	{
+		/** Tasks waiting to run */
+		private final LinkedBlockingQueue<Runnable> _tasks = new LinkedBlockingQueue<>();
+		/** Task ending the thread */
+		private static final Runnable s_stop = () -> { };
+		
+		/**
+		 * Constructor for a daemon thread, so an unclosed list does not keep the process running
+		 * @param name The name of the thread
+		 */
+		private ShardWriter(String name)
+		{
+			super(name);
+			setDaemon(true);
+		}
+		
+		@Override
+		public void execute(Runnable task)
+		{
+			_tasks.add(task);
+		}
+		
+		@Override
+		public void run()
+		{
+			while (true)
+			{
+				Runnable task;
+				try
+				{
+					task = _tasks.take();
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				if (task == s_stop)
+				{
+					return;
+				}
+				
+				try
+				{
+					task.run();
+				}
+				catch (RuntimeException e)
+				{
+					// a failed event delivery must not stop the writer
+					getUncaughtExceptionHandler().uncaughtException(this, e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Position in one shard's sorted products during a k-way merge
+	 * @param <T> The type of product merged
+	 */
+	private static class MergeCursor<T>
+	{
+		/** Remaining products of the shard */
+		private final Iterator<T> _rest;
+		/** Product at the current position, or null once the shard is exhausted */
+		private T _head;
+		
+		/**
+		 * Constructor, positioned at the first product
+		 * @param iter Iterator over a shard's products in name order
+		 */
+		private MergeCursor(Iterator<T> iter)
+		{
+			_rest = iter;
+			advance();
+		}
+		
+		/**
+		 * Moves to the next product
+		 * @returns True if there is a next product
+		 */
+		private boolean advance()
+		{
+			_head = _rest.hasNext() ? _rest.next() : null;
+			return _head != null;
+		}
+	}
+}
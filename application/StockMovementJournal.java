@@ -0,0 +1,123 @@
+/**
+ * Journal of stock movement batches appended to a binary file, so that movements applied since an
+ * inventory was last saved can be replayed onto the saved inventory. Each batch is written as the
+ * sequence number of its first movement, the number of movements, and the ID and amount of each
+ * movement, and is handed to the operating system before the batch is applied. Replaying applies
+ * the batches in the same groups, so movements are accepted and rejected as they were originally
+ * as long as the inventory starts from the same state.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class StockMovementJournal implements StockMovementPipeline.Journal
+{
+	/** The journal file */
+	private final FileOutputStream _file;
+	/** Buffered writer over the file */
+	private final DataOutputStream _out;
+	/** True to force each batch to the storage device before it is applied */
+	private final boolean _sync;
+	/** Number of bytes written per movement */
+	private static final int s_movementSize = 8;
+	/** Number of bytes written per batch header */
+	private static final int s_headerSize = 12;
+	
+	/**
+	 * Constructor, appends to the file if it exists
+	 * @param file The journal file
+	 * @param sync True to force each batch to the storage device before it is applied, which survives
+	 * a power failure but limits the rate of batches to that of the device
+	 * @throws IOException if the file cannot be opened
+	 */
+	public StockMovementJournal(File file, boolean sync) throws IOException
+	{
+		_file = new FileOutputStream(file, true);
+		_out = new DataOutputStream(new BufferedOutputStream(_file, s_headerSize + s_movementSize * StockMovementPipeline.s_defaultMaxBatchSize));
+		_sync = sync;
+	}
+	
+	@Override
+	public void write(long firstSeq, int[] ids, int[] deltas, int count) throws IOException
+	{
+		_out.writeLong(firstSeq);
+		_out.writeInt(count);
+		for (int i = 0; i < count; i++)
+		{
+			_out.writeInt(ids[i]);
+			_out.writeInt(deltas[i]);
+		}
+		_out.flush();
+		if (_sync)
+		{
+			_file.getChannel().force(false);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		_out.close();
+	}
+	
+	/**
+	 * Applies every batch in a journal file to an inventory. A batch cut short by a failure while
+	 * it was written is ignored, since it was never applied.
+	 * @param file The journal file
+	 * @param inventory The inventory in the state it had when the journal was started
+	 * @returns The number of movements replayed, accepted or not
+	 * @throws IOException if the file cannot be read or is not a journal
+	 */
+	public static long replay(File file, Inventory<?> inventory) throws IOException
+	{
+		long count = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			int[] ids = new int[0];
+			int[] deltas = new int[0];
+			while (true)
+			{
+				int batchSize;
+				try
+				{
+					in.readLong();
+					batchSize = in.readInt();
+					if (batchSize < 0)
+					{
+						throw new IOException("Invalid batch size " + batchSize + " in " + file);
+					}
+					if (batchSize > ids.length)
+					{
+						ids = new int[batchSize];
+						deltas = new int[batchSize];
+					}
+					for (int i = 0; i < batchSize; i++)
+					{
+						ids[i] = in.readInt();
+						deltas[i] = in.readInt();
+					}
+				}
+				catch (EOFException e)
+				{
+					break;
+				}
+				
+				inventory.applyStockMovements(ids, deltas, batchSize);
+				count += batchSize;
+			}
+		}
+		
+		return count;
+	}
+}
@@ -0,0 +1,424 @@
+/**
+ * Applies a high-rate stream of stock movements to an inventory through a preallocated ring buffer.
+ * Any number of producer threads publish movements, each a product ID and a signed amount added to
+ * its quantity, by claiming a sequence number and writing the movement into the slot it maps to. A
+ * single writer thread takes every published movement in sequence order, up to a fixed batch size,
+ * optionally writes the batch to a journal, and applies it with Inventory.applyStockMovements, so a
+ * product moved many times in a batch is updated and announced once and the totals are adjusted once
+ * per batch. Publishing never allocates or takes a lock. A producer that gets a full ring ahead of
+ * the writer spins until the writer frees a slot, which bounds both memory and the delay of a
+ * movement to the time the writer takes to apply one ring of movements.
+ *
+ * IDs must be obtained from the inventory on its owning thread before they are handed to producers,
+ * and a product must not be removed while movements of it are in flight. Other products may be
+ * added and removed meanwhile, since the writer looks IDs up in an IdTable that allows one reader
+ * beside the owning thread, and the quantity events raised by the writer reach the listeners of
+ * the inventory on its owning thread.
+ * @param <T> The class implementing IProduct contained in the inventory
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+public class StockMovementPipeline<T extends IProduct> implements Closeable
+{
+	/** The inventory the movements are applied to */
+	private final Inventory<T> _inventory;
+	/** Writes each batch before it is applied, or null */
+	private final Journal _journal;
+	/** Product ID of each movement by sequence number modulo the capacity */
+	private final int[] _ids;
+	/** Amount of each movement by sequence number modulo the capacity */
+	private final int[] _deltas;
+	/** Sequence number + 1 of the movement last written to each slot, zero for slots never written */
+	private final AtomicLongArray _published;
+	/** Mask selecting a slot from a sequence number */
+	private final int _mask;
+	/** Most movements applied in one batch */
+	private final int _maxBatchSize;
+	/** Sequence number the next producer claims */
+	private final AtomicLong _claimed = new AtomicLong(0);
+	/** Number of movements taken by the writer, every slot of a lower sequence number may be written again */
+	private volatile long _applied = 0;
+	/** Number of movements rejected by the inventory */
+	private volatile long _rejectedCount = 0;
+	/** Number of batches applied */
+	private volatile long _batchCount = 0;
+	/** Time taken to journal and apply each batch */
+	private final LatencyHistogram _batchNanos = new LatencyHistogram();
+	/** Thread applying the movements */
+	private final Thread _writer;
+	/** True while the writer is parked waiting for movements */
+	private volatile boolean _writerParked = false;
+	/** True once the pipeline is closed to new movements */
+	private volatile boolean _closed = false;
+	/** Error that stopped the writer, or null */
+	private volatile Throwable _failure = null;
+	/** Default number of slots in the ring */
+	public static final int s_defaultCapacity = 1 << 16;
+	/** Default most movements applied in one batch */
+	public static final int s_defaultMaxBatchSize = 4096;
+	/** Number of times the writer polls an empty ring before parking */
+	private static final int s_spinLimit = 1000;
+	/** Longest time the writer parks before polling again, in nanoseconds */
+	private static final long s_parkNanos = 1_000_000;
+	
+	/**
+	 * Constructor with the default capacity and batch size and no journal, starts the writer
+	 * @param inventory The inventory the movements are applied to
+	 */
+	public StockMovementPipeline(Inventory<T> inventory)
+	{
+		this(inventory, s_defaultCapacity, s_defaultMaxBatchSize, null);
+	}
+	
+	/**
+	 * Constructor, starts the writer
+	 * @param inventory The inventory the movements are applied to
+	 * @param capacity The number of movements the ring holds, rounded up to a power of two
+	 * @param maxBatchSize The most movements applied in one batch, at most the capacity
+	 * @param journal Writes each batch before it is applied, or null to apply batches without a journal
+	 */
+	public StockMovementPipeline(Inventory<T> inventory, int capacity, int maxBatchSize, Journal journal)
+	{
+		if (capacity <= 0 || capacity > (1 << 30))
+		{
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+		}
+		
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+		{
+			size <<= 1;
+		}
+		if (maxBatchSize <= 0 || maxBatchSize > size)
+		{
+			throw new IllegalArgumentException("Batch size must be positive and at most the capacity");
+		}
+		
+		_inventory = inventory;
+		_journal = journal;
+		_ids = new int[size];
+		_deltas = new int[size];
+		_published = new AtomicLongArray(size);
+		_mask = size - 1;
+		_maxBatchSize = maxBatchSize;
+		_writer = new Thread(this::write, "stock-movements");
+		_writer.setDaemon(true);
+		_writer.start();
+	}
+	
+	/**
+	 * Publishes a movement. May be called from any thread.
+	 * @param id The ID of the product in the inventory
+	 * @param delta The amount added to its quantity, negative for stock leaving
+	 * @returns The sequence number of the movement
+	 * @throws IllegalStateException if the pipeline is closed or the writer has failed
+	 */
+	public long publish(int id, int delta)
+	{
+		checkOpen();
+		long seq = _claimed.getAndIncrement();
+		awaitSlot(seq);
+		int slot = (int)seq & _mask;
+		_ids[slot] = id;
+		_deltas[slot] = delta;
+		_published.setRelease(slot, seq + 1);
+		wakeWriter();
+		
+		return seq;
+	}
+	
+	/**
+	 * Publishes consecutive movements with a single claim, cheaper than publishing them one at a time
+	 * @param ids The IDs of the products in the inventory
+	 * @param deltas The amounts added to their quantities, in the same order as ids
+	 * @param from The index of the first movement to publish
+	 * @param count The number of movements to publish, at most the capacity
+	 * @returns The sequence number of the last movement, or -1 if count is zero
+	 * @throws IllegalStateException if the pipeline is closed or the writer has failed
+	 */
+	public long publish(int[] ids, int[] deltas, int from, int count)
+	{
+		if (count < 0 || count > _ids.length)
+		{
+			throw new IllegalArgumentException("Count must be between 0 and the capacity");
+		}
+		if (count == 0)
+		{
+			return -1;
+		}
+		
+		checkOpen();
+		long first = _claimed.getAndAdd(count);
+		awaitSlot(first + count - 1);
+		for (int i = 0; i < count; i++)
+		{
+			int slot = (int)(first + i) & _mask;
+			_ids[slot] = ids[from + i];
+			_deltas[slot] = deltas[from + i];
+			_published.setRelease(slot, first + i + 1);
+		}
+		wakeWriter();
+		
+		return first + count - 1;
+	}
+	
+	/**
+	 * Waits until a movement has been applied
+	 * @param seq The sequence number of the movement
+	 * @param timeoutMillis The longest time to wait
+	 * @returns True if the movement was applied, false if waiting timed out
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws IllegalStateException if the writer failed before applying the movement
+	 */
+	public boolean awaitApplied(long seq, long timeoutMillis) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+		while (_applied <= seq)
+		{
+			if (_failure != null)
+			{
+				throw new IllegalStateException("Stock movements could not be applied", _failure);
+			}
+			if (System.nanoTime() - deadline >= 0)
+			{
+				return false;
+			}
+			if (Thread.interrupted())
+			{
+				throw new InterruptedException();
+			}
+			LockSupport.parkNanos(10_000);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Get method for the number of movements applied
+	 * @returns The number of movements taken and applied by the writer, accepted or not
+	 */
+	public long getAppliedCount()
+	{
+		return _applied;
+	}
+	
+	/**
+	 * Get method for the number of movements rejected
+	 * @returns The number of movements the inventory rejected
+	 */
+	public long getRejectedCount()
+	{
+		return _rejectedCount;
+	}
+	
+	/**
+	 * Get method for the number of batches applied
+	 * @returns The number of batches applied
+	 */
+	public long getBatchCount()
+	{
+		return _batchCount;
+	}
+	
+	/**
+	 * Get method for the time taken per batch
+	 * @returns A copy of the histogram of nanoseconds taken to journal and apply each batch
+	 */
+	public LatencyHistogram getBatchNanos()
+	{
+		LatencyHistogram copy = new LatencyHistogram();
+		synchronized (_batchNanos)
+		{
+			copy.add(_batchNanos);
+		}
+		
+		return copy;
+	}
+	
+	/**
+	 * Stops taking new movements, waits for the writer to apply every movement already published,
+	 * and closes the journal. Producers must have stopped publishing.
+	 * @throws IOException if the journal cannot be closed, or the writer failed
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (_closed)
+		{
+			return;
+		}
+		
+		_closed = true;
+		LockSupport.unpark(_writer);
+		boolean interrupted = false;
+		while (_writer.isAlive())
+		{
+			try
+			{
+				_writer.join();
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+		
+		if (_journal != null)
+		{
+			_journal.close();
+		}
+		if (_failure instanceof IOException)
+		{
+			throw (IOException)_failure;
+		}
+		if (_failure != null)
+		{
+			throw new IOException("Stock movements could not be applied", _failure);
+		}
+	}
+	
+	/**
+	 * Helper to reject movements once the pipeline cannot apply them
+	 * @throws IllegalStateException if the pipeline is closed or the writer has failed
+	 */
+	private void checkOpen()
+	{
+		if (_failure != null)
+		{
+			throw new IllegalStateException("Stock movements could not be applied", _failure);
+		}
+		if (_closed)
+		{
+			throw new IllegalStateException("Stock movement pipeline is closed");
+		}
+	}
+	
+	/**
+	 * Spins until the writer has freed the slot of a claimed sequence number
+	 * @param seq The claimed sequence number
+	 * @throws IllegalStateException if the writer fails while waiting
+	 */
+	private void awaitSlot(long seq)
+	{
+		while (seq - _applied >= _ids.length)
+		{
+			if (_failure != null)
+			{
+				throw new IllegalStateException("Stock movements could not be applied", _failure);
+			}
+			Thread.onSpinWait();
+			Thread.yield();
+		}
+	}
+	
+	/** Wakes the writer if it is parked waiting for movements */
+	private void wakeWriter()
+	{
+		if (_writerParked)
+		{
+			LockSupport.unpark(_writer);
+		}
+	}
+	
+	/**
+	 * Checks if the movement with a sequence number has been published
+	 * @param seq The sequence number
+	 * @returns True if its slot holds it
+	 */
+	private boolean isPublished(long seq)
+	{
+		return _published.getAcquire((int)seq & _mask) == seq + 1;
+	}
+	
+	/** Takes and applies batches of movements until the pipeline is closed and every claimed movement applied */
+	private void write()
+	{
+		int[] ids = new int[_maxBatchSize];
+		int[] deltas = new int[_maxBatchSize];
+		long next = 0;
+		int idle = 0;
+		try
+		{
+			while (true)
+			{
+				int count = 0;
+				while (count < _maxBatchSize && isPublished(next + count))
+				{
+					int slot = (int)(next + count) & _mask;
+					ids[count] = _ids[slot];
+					deltas[count] = _deltas[slot];
+					count++;
+				}
+				
+				if (count == 0)
+				{
+					if (_closed && next == _claimed.get())
+					{
+						return;
+					}
+					if (++idle < s_spinLimit)
+					{
+						Thread.onSpinWait();
+						continue;
+					}
+					
+					// park, checking again after announcing it so a producer publishing meanwhile wakes the writer
+					_writerParked = true;
+					if (!isPublished(next) && !_closed)
+					{
+						LockSupport.parkNanos(s_parkNanos);
+					}
+					_writerParked = false;
+					continue;
+				}
+				
+				idle = 0;
+				long start = System.nanoTime();
+				if (_journal != null)
+				{
+					_journal.write(next, ids, deltas, count);
+				}
+				int accepted = _inventory.applyStockMovements(ids, deltas, count);
+				next += count;
+				_rejectedCount += count - accepted;
+				_batchCount++;
+				_applied = next;
+				synchronized (_batchNanos)
+				{
+					_batchNanos.record(System.nanoTime() - start);
+				}
+			}
+		}
+		catch (IOException | RuntimeException | Error e)
+		{
+			_failure = e;
+		}
+	}
+	
+	/** Destination of each batch of movements, written before the batch is applied */
+	public interface Journal extends Closeable
+	{
+		/**
+		 * Writes a batch of movements
+		 * @param firstSeq The sequence number of the first movement
+		 * @param ids The IDs of the products moved
+		 * @param deltas The amounts added to their quantities, in the same order as ids
+		 * @param count The number of movements in the batch
+		 * @throws IOException if the batch cannot be written, which stops the pipeline
+		 */
+		void write(long firstSeq, int[] ids, int[] deltas, int count) throws IOException;
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Continuously maintained ranking of the products of an inventory by retail value on hand,
+ * retail price times quantity in stock. Every product is kept in a FieldIndex ordered by value,
+ * updated from the inventory's add, remove, quantity, and retail price events, so reading the
+ * top K products walks K entries regardless of the size of the inventory.
+ * @param <T> The type of product ranked
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TopValueView<T extends IProduct> implements PropertyChangeListener
+{
+	/** Inventory ranked */
+	private final Inventory<T> _inventory;
+	/** Products ordered by retail value */
+	private final FieldIndex<T> _byValue;
+	
+	/**
+	 * Constructor, ranks the current products and starts listening for changes
+	 * @param inventory The inventory to rank
+	 */
+	public TopValueView(Inventory<T> inventory)
+	{
+		_inventory = inventory;
+		_byValue = new FieldIndex<>(ProductField.RETAIL_VALUE, inventory);
+		_inventory.addPropertyChangeListener(this);
+	}
+	
+	/**
+	 * Returns the products with the highest retail value on hand
+	 * @param k The maximum number of products to return
+	 * @returns Up to k products from highest to lowest value
+	 */
+	public List<T> getTop(int k)
+	{
+		List<T> top = new ArrayList<>(Math.min(k, _byValue.size()));
+		for (T prod : _byValue.range(null, true, null, true, true))
+		{
+			if (top.size() >= k)
+			{
+				break;
+			}
+			top.add(prod);
+		}
+		
+		return top;
+	}
+	
+	/** Stops listening for changes to the inventory */
+	public void close()
+	{
+		_inventory.removePropertyChangeListener(this);
+	}
+	
+	/**
+	 * Moves products in the ranking as the inventory changes
+	 * @param e The inventory or product change event
+	 */
+	@Override
+	public void propertyChange(PropertyChangeEvent e)
+	{
+		String property = e.getPropertyName();
+		if (e.getSource() != _inventory)
+		{
+			_byValue.update((T)e.getSource(), property);
+		}
+		else if (property == "add")
+		{
+			_byValue.add((T)e.getNewValue());
+		}
+		else if (property == "remove")
+		{
+			_byValue.remove((T)e.getOldValue());
+		}
+		else if (property == "reprice")
+		{
+			// products are repriced without events of their own
+			_byValue.rebuild(_inventory);
+		}
+	}
+}
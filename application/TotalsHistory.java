@@ -0,0 +1,443 @@
+/**
+ * Fixed-memory history of the report totals of a product list.
+ * Samples are recorded into tiers of primitive ring buffers: one holding every sample, and
+ * tiers holding one entry per minute, hour, and day, each entry being the last sample taken in
+ * its period. Recording a sample updates the newest entry of every tier in constant time, and
+ * once a tier is full its oldest entries are overwritten.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+public class TotalsHistory
+{
+	/** Ring buffers by resolution */
+	private final Tier[] _tiers = new Tier[Resolution.values().length];
+	/** Interval between samples in milliseconds */
+	private final long _sampleMillis;
+	/** Identifies history files */
+	private static final int s_fileMagic = 0x494e5648;
+	/** Version of the history file format */
+	private static final int s_fileVersion = 1;
+	
+	/** Resolutions history is kept at */
+	public enum Resolution
+	{
+		/** Every sample */
+		SAMPLE,
+		/** Last sample of each minute */
+		MINUTE,
+		/** Last sample of each hour */
+		HOUR,
+		/** Last sample of each day */
+		DAY
+	}
+	
+	/**
+	 * Constructor keeping an hour of samples, a day of minutes, a month of hours, and five years of days
+	 * @param sampleMillis The interval between samples in milliseconds
+	 */
+	public TotalsHistory(long sampleMillis)
+	{
+		this(sampleMillis, (int)Math.max(1, 3600000 / sampleMillis), 24 * 60, 30 * 24, 5 * 365);
+	}
+	
+	/**
+	 * Constructor
+	 * @param sampleMillis The interval between samples in milliseconds
+	 * @param samples The number of samples kept
+	 * @param minutes The number of minutes kept
+	 * @param hours The number of hours kept
+	 * @param days The number of days kept
+	 */
+	public TotalsHistory(long sampleMillis, int samples, int minutes, int hours, int days)
+	{
+		if (sampleMillis <= 0)
+		{
+			throw new IllegalArgumentException("Sample interval must be positive");
+		}
+		
+		_sampleMillis = sampleMillis;
+		_tiers[Resolution.SAMPLE.ordinal()] = new Tier(sampleMillis, samples);
+		_tiers[Resolution.MINUTE.ordinal()] = new Tier(60000, minutes);
+		_tiers[Resolution.HOUR.ordinal()] = new Tier(3600000, hours);
+		_tiers[Resolution.DAY.ordinal()] = new Tier(86400000, days);
+	}
+	
+	/**
+	 * Get method for the interval between samples
+	 * @returns The sample interval in milliseconds
+	 */
+	public long getSampleMillis()
+	{
+		return _sampleMillis;
+	}
+	
+	/**
+	 * Records the current totals of a product list. Must run on the thread that modifies the list.
+	 * @param list The product list to sample
+	 */
+	public void sample(IProductList<?> list)
+	{
+		record(System.currentTimeMillis(), list.getTotalProductsInStock(), list.getTotalItemsInStock(),
+			list.getTotalWholesalePrice(), list.getTotalRetailPrice());
+	}
+	
+	/**
+	 * Records a sample of the totals
+	 * @param time The time of the sample in milliseconds since the epoch, not earlier than previous samples
+	 * @param products The number of products
+	 * @param items The quantity of all products
+	 * @param wholesale The total wholesale price
+	 * @param retail The total retail price
+	 */
+	public synchronized void record(long time, int products, int items, double wholesale, double retail)
+	{
+		for (Tier tier : _tiers)
+		{
+			tier.record(time, products, items, wholesale, retail);
+		}
+	}
+	
+	/**
+	 * Get method for the number of entries held at a resolution
+	 * @param resolution The resolution
+	 * @returns The number of entries
+	 */
+	public synchronized int size(Resolution resolution)
+	{
+		return _tiers[resolution.ordinal()]._count;
+	}
+	
+	/**
+	 * Copies the entries held at a resolution
+	 * @param resolution The resolution
+	 * @returns The entries from oldest to newest
+	 */
+	public synchronized Series getSeries(Resolution resolution)
+	{
+		return _tiers[resolution.ordinal()].copy();
+	}
+	
+	/**
+	 * Writes the history to a file, replacing it atomically
+	 * @param file The file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(File file) throws IOException
+	{
+		File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try
+		{
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+			{
+				out.writeInt(s_fileMagic);
+				out.writeInt(s_fileVersion);
+				synchronized (this)
+				{
+					out.writeInt(_tiers.length);
+					for (Tier tier : _tiers)
+					{
+						tier.copy().write(out);
+					}
+				}
+			}
+			
+			try
+			{
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally
+		{
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+	
+	/**
+	 * Replaces the history with one written by save. Entries beyond the capacity of a tier are dropped, oldest first.
+	 * @param file The file to read
+	 * @throws IOException if the file cannot be read or is not a history file
+	 */
+	public void load(File file) throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != s_fileMagic || in.readInt() != s_fileVersion)
+			{
+				throw new IOException(file.getPath() + " is not a totals history file");
+			}
+			
+			int tierCount = in.readInt();
+			Series[] series = new Series[tierCount];
+			for (int i = 0; i < tierCount; i++)
+			{
+				series[i] = Series.read(in);
+			}
+			
+			synchronized (this)
+			{
+				for (int i = 0; i < Math.min(tierCount, _tiers.length); i++)
+				{
+					_tiers[i].clear();
+					for (int j = 0; j < series[i].size(); j++)
+					{
+						_tiers[i].record(series[i].getTime(j), series[i].getProducts(j), series[i].getItems(j),
+							series[i].getWholesalePrice(j), series[i].getRetailPrice(j));
+					}
+				}
+			}
+		}
+	}
+	
+	/** Ring buffer of totals with one entry per period */
+	private static class Tier
+	{
+		/** Length of the period of each entry in milliseconds */
+		private final long _periodMillis;
+		/** Time of the sample held by each entry */
+		private final long[] _times;
+		/** Number of products by entry */
+		private final int[] _products;
+		/** Quantity of all products by entry */
+		private final int[] _items;
+		/** Total wholesale price by entry */
+		private final double[] _wholesale;
+		/** Total retail price by entry */
+		private final double[] _retail;
+		/** Index of the slot following the newest entry */
+		private int _next = 0;
+		/** Number of entries held */
+		private int _count = 0;
+		/** Period of the newest entry */
+		private long _lastPeriod = Long.MIN_VALUE;
+		
+		/**
+		 * Constructor
+		 * @param periodMillis Length of the period of each entry in milliseconds
+		 * @param capacity The number of entries held
+		 */
+		private Tier(long periodMillis, int capacity)
+		{
+			if (capacity <= 0)
+			{
+				throw new IllegalArgumentException("Capacity must be positive");
+			}
+			
+			_periodMillis = periodMillis;
+			_times = new long[capacity];
+			_products = new int[capacity];
+			_items = new int[capacity];
+			_wholesale = new double[capacity];
+			_retail = new double[capacity];
+		}
+		
+		/**
+		 * Records a sample, starting a new entry if it falls in a new period, otherwise replacing the newest entry
+		 * @param time The time of the sample
+		 * @param products The number of products
+		 * @param items The quantity of all products
+		 * @param wholesale The total wholesale price
+		 * @param retail The total retail price
+		 */
+		private void record(long time, int products, int items, double wholesale, double retail)
+		{
+			long period = Math.floorDiv(time, _periodMillis);
+			int slot;
+			if (period == _lastPeriod && _count > 0)
+			{
+				slot = (_next - 1 + _times.length) % _times.length;
+			}
+			else
+			{
+				slot = _next;
+				_next = (_next + 1) % _times.length;
+				_count = Math.min(_count + 1, _times.length);
+				_lastPeriod = period;
+			}
+			_times[slot] = time;
+			_products[slot] = products;
+			_items[slot] = items;
+			_wholesale[slot] = wholesale;
+			_retail[slot] = retail;
+		}
+		
+		/** Removes every entry */
+		private void clear()
+		{
+			_next = 0;
+			_count = 0;
+			_lastPeriod = Long.MIN_VALUE;
+		}
+		
+		/**
+		 * Copies the entries in chronological order
+		 * @returns The copied entries
+		 */
+		private Series copy()
+		{
+			Series series = new Series(_count);
+			int first = (_next - _count + _times.length) % _times.length;
+			for (int i = 0; i < _count; i++)
+			{
+				int slot = (first + i) % _times.length;
+				series._times[i] = _times[slot];
+				series._products[i] = _products[slot];
+				series._items[i] = _items[slot];
+				series._wholesale[i] = _wholesale[slot];
+				series._retail[i] = _retail[slot];
+			}
+			
+			return series;
+		}
+	}
+	
+	/** Copy of the entries of one resolution from oldest to newest */
+	public static class Series
+	{
+		/** Time of each entry */
+		private final long[] _times;
+		/** Number of products by entry */
+		private final int[] _products;
+		/** Quantity of all products by entry */
+		private final int[] _items;
+		/** Total wholesale price by entry */
+		private final double[] _wholesale;
+		/** Total retail price by entry */
+		private final double[] _retail;
+		
+		/**
+		 * Constructor
+		 * @param size The number of entries
+		 */
+		private Series(int size)
+		{
+			_times = new long[size];
+			_products = new int[size];
+			_items = new int[size];
+			_wholesale = new double[size];
+			_retail = new double[size];
+		}
+		
+		/**
+		 * Get method for the number of entries
+		 * @returns The entry count
+		 */
+		public int size()
+		{
+			return _times.length;
+		}
+		
+		/**
+		 * Get method for the time of an entry
+		 * @param i The index of the entry, zero for the oldest
+		 * @returns Milliseconds since the epoch
+		 */
+		public long getTime(int i)
+		{
+			return _times[i];
+		}
+		
+		/**
+		 * Get method for the number of products at an entry
+		 * @param i The index of the entry, zero for the oldest
+		 * @returns The number of products
+		 */
+		public int getProducts(int i)
+		{
+			return _products[i];
+		}
+		
+		/**
+		 * Get method for the quantity of all products at an entry
+		 * @param i The index of the entry, zero for the oldest
+		 * @returns The items in stock
+		 */
+		public int getItems(int i)
+		{
+			return _items[i];
+		}
+		
+		/**
+		 * Get method for the total wholesale price at an entry
+		 * @param i The index of the entry, zero for the oldest
+		 * @returns The total wholesale price
+		 */
+		public double getWholesalePrice(int i)
+		{
+			return _wholesale[i];
+		}
+		
+		/**
+		 * Get method for the total retail price at an entry
+		 * @param i The index of the entry, zero for the oldest
+		 * @returns The total retail price
+		 */
+		public double getRetailPrice(int i)
+		{
+			return _retail[i];
+		}
+		
+		/**
+		 * Writes the entries
+		 * @param out The stream to write to
+		 * @throws IOException if the stream cannot be written
+		 */
+		private void write(DataOutputStream out) throws IOException
+		{
+			out.writeInt(size());
+			for (int i = 0; i < size(); i++)
+			{
+				out.writeLong(_times[i]);
+				out.writeInt(_products[i]);
+				out.writeInt(_items[i]);
+				out.writeDouble(_wholesale[i]);
+				out.writeDouble(_retail[i]);
+			}
+		}
+		
+		/**
+		 * Reads entries written by write
+		 * @param in The stream to read from
+		 * @returns The entries
+		 * @throws IOException if the stream cannot be read
+		 */
+		private static Series read(DataInputStream in) throws IOException
+		{
+			int size = in.readInt();
+			if (size < 0)
+			{
+				throw new IOException("Corrupt totals history");
+			}
+			
+			Series series = new Series(size);
+			for (int i = 0; i < size; i++)
+			{
+				series._times[i] = in.readLong();
+				series._products[i] = in.readInt();
+				series._items[i] = in.readInt();
+				series._wholesale[i] = in.readDouble();
+				series._retail[i] = in.readDouble();
+			}
+			
+			return series;
+		}
+	}
+}
@@ -0,0 +1,571 @@
+/**
+ * Load generator driving a product list with a configurable mix of operations at a target rate.
+ * The list is first filled with a generated catalog, then each thread issues its share of the
+ * target rate on a fixed schedule, open loop: when an operation runs late the schedule is not
+ * pushed back, and its latency is measured from when it should have started, so stalls show up
+ * in the response times of every operation they delay rather than being hidden. Threads share
+ * the list through a lock, since product lists are not thread safe, except a ShardedInventory,
+ * which routes every call to the writer of a shard and is called without the lock so its shards
+ * work in parallel. Run from the command line to compare implementations, for example:
+ * java application.WorkloadDriver impl=inventory,sharded:8 rate=50000 threads=4 seconds=20 catalog=200000
+ * or at a rate above what any of them sustains, so each issues the same operations as fast as it
+ * can and the achieved rate compares throughput as shards are added:
+ * java application.WorkloadDriver impl=sharded:1,sharded:2,sharded:4 rate=1000000 threads=8 seconds=5
+ * Each report also bounds the rate a run could reach with a core for every thread by the CPU time
+ * of its busiest thread, so scaling across shards can be judged on a machine with fewer cores.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class WorkloadDriver
+{
+	/** Product list driven */
+	private final IProductList<Item> _list;
+	/** Label of the product list in reports */
+	private final String _label;
+	/** True to call the list only while holding its lock, false for lists safe to call from any thread */
+	private final boolean _lockList;
+	/** Relative weight of each operation in the mix */
+	private final Map<Operation, Integer> _mix = new EnumMap<>(Operation.class);
+	/** Operations per second across all threads */
+	private double _rate = 10000;
+	/** Number of threads issuing operations */
+	private int _threads = 4;
+	/** Length of the measured run in seconds */
+	private double _seconds = 10;
+	/** Length of the unmeasured warm-up in seconds */
+	private double _warmupSeconds = 2;
+	/** Number of products added before the run */
+	private int _catalogSize = 100000;
+	/** Seed for generated products and operation choices */
+	private long _seed = 42;
+	/** Products in the list, for choosing operation targets, guarded by _liveIndex */
+	private Item[] _live = new Item[1024];
+	/** Number of products in _live */
+	private int _liveCount = 0;
+	/** Position of each product in _live */
+	private final IdentityIntMap<Item> _liveIndex = new IdentityIntMap<>();
+	/** Source of unique catalog numbers for generated names */
+	private final AtomicLong _catalogNumbers = new AtomicLong();
+	
+	/** Operations issued by the driver */
+	public enum Operation
+	{
+		/** Add a new product */
+		ADD,
+		/** Rename a product */
+		RENAME,
+		/** Change the quantity of a product */
+		UPDATE_QUANTITY,
+		/** Remove a product */
+		REMOVE,
+		/** Look up a product by name */
+		LOOKUP,
+		/** Read every report total */
+		REPORT
+	}
+	
+	/**
+	 * Constructor using a mix dominated by quantity updates and lookups
+	 * @param list The product list to drive, normally empty
+	 * @param label Label of the product list in reports
+	 */
+	public WorkloadDriver(IProductList<Item> list, String label)
+	{
+		_list = list;
+		_label = label;
+		_lockList = !(list instanceof ShardedInventory);
+		_mix.put(Operation.ADD, 10);
+		_mix.put(Operation.RENAME, 5);
+		_mix.put(Operation.UPDATE_QUANTITY, 40);
+		_mix.put(Operation.REMOVE, 10);
+		_mix.put(Operation.LOOKUP, 30);
+		_mix.put(Operation.REPORT, 5);
+	}
+	
+	/**
+	 * Sets the relative weight of an operation in the mix
+	 * @param op The operation
+	 * @param weight The weight, zero to leave the operation out
+	 * @returns This driver
+	 */
+	public WorkloadDriver setWeight(Operation op, int weight)
+	{
+		if (weight < 0)
+		{
+			throw new IllegalArgumentException("Weight cannot be negative");
+		}
+		
+		_mix.put(op, weight);
+		return this;
+	}
+	
+	/**
+	 * Sets the target rate
+	 * @param rate Operations per second across all threads
+	 * @returns This driver
+	 */
+	public WorkloadDriver setRate(double rate)
+	{
+		_rate = rate;
+		return this;
+	}
+	
+	/**
+	 * Sets the number of threads issuing operations
+	 * @param threads The thread count
+	 * @returns This driver
+	 */
+	public WorkloadDriver setThreads(int threads)
+	{
+		_threads = threads;
+		return this;
+	}
+	
+	/**
+	 * Sets the length of the run
+	 * @param warmupSeconds Length of the unmeasured warm-up in seconds
+	 * @param seconds Length of the measured run in seconds
+	 * @returns This driver
+	 */
+	public WorkloadDriver setDuration(double warmupSeconds, double seconds)
+	{
+		_warmupSeconds = warmupSeconds;
+		_seconds = seconds;
+		return this;
+	}
+	
+	/**
+	 * Sets the number of products added before the run
+	 * @param catalogSize The catalog size
+	 * @returns This driver
+	 */
+	public WorkloadDriver setCatalogSize(int catalogSize)
+	{
+		_catalogSize = catalogSize;
+		return this;
+	}
+	
+	/**
+	 * Sets the seed for generated products and operation choices
+	 * @param seed The seed
+	 * @returns This driver
+	 */
+	public WorkloadDriver setSeed(long seed)
+	{
+		_seed = seed;
+		return this;
+	}
+	
+	/**
+	 * Fills the list with the catalog, warms up, and runs the measured workload
+	 * @returns The measurements of the run
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	public WorkloadReport run() throws InterruptedException
+	{
+		if (_rate <= 0 || _threads <= 0 || _seconds <= 0)
+		{
+			throw new IllegalArgumentException("Rate, threads, and duration must be positive");
+		}
+		
+		CatalogGenerator generator = new CatalogGenerator(_seed, _catalogNumbers);
+		synchronized (_list)
+		{
+			for (int i = 0; i < _catalogSize; i++)
+			{
+				Item item = generator.nextItem();
+				_list.add(item);
+				synchronized (_liveIndex)
+				{
+					track(item);
+				}
+			}
+		}
+		
+		if (_warmupSeconds > 0)
+		{
+			runPhase(_warmupSeconds, _seed + 1);
+		}
+		
+		long gcCount = 0;
+		long gcMillis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			gcCount -= Math.max(0, gc.getCollectionCount());
+			gcMillis -= Math.max(0, gc.getCollectionTime());
+		}
+		
+		long[] writerCpu = _list instanceof ShardedInventory ? ((ShardedInventory<Item>)_list).getWriterCpuNanos() : new long[0];
+		long start = System.nanoTime();
+		List<Worker> workers = runPhase(_seconds, _seed + 2);
+		long elapsed = System.nanoTime() - start;
+		if (_list instanceof ShardedInventory)
+		{
+			long[] writerCpuAfter = ((ShardedInventory<Item>)_list).getWriterCpuNanos();
+			for (int i = 0; i < writerCpu.length; i++)
+			{
+				writerCpu[i] = writerCpu[i] < 0 ? -1 : writerCpuAfter[i] - writerCpu[i];
+			}
+		}
+		
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			gcCount += Math.max(0, gc.getCollectionCount());
+			gcMillis += Math.max(0, gc.getCollectionTime());
+		}
+		
+		Map<Operation, LatencyHistogram> response = new EnumMap<>(Operation.class);
+		Map<Operation, LatencyHistogram> service = new EnumMap<>(Operation.class);
+		long allocated = 0;
+		// the thread doing the most work bounds the rate the run could reach with a core for every thread
+		long totalCpu = 0;
+		long busiestCpu = 0;
+		for (long cpu : writerCpu)
+		{
+			totalCpu = cpu < 0 || totalCpu < 0 ? -1 : totalCpu + cpu;
+			busiestCpu = Math.max(busiestCpu, cpu);
+		}
+		for (Operation op : Operation.values())
+		{
+			response.put(op, new LatencyHistogram());
+			service.put(op, new LatencyHistogram());
+		}
+		for (Worker worker : workers)
+		{
+			for (Operation op : Operation.values())
+			{
+				response.get(op).add(worker._response[op.ordinal()]);
+				service.get(op).add(worker._service[op.ordinal()]);
+			}
+			allocated = worker._allocatedBytes < 0 || allocated < 0 ? -1 : allocated + worker._allocatedBytes;
+			totalCpu = worker._cpuNanos < 0 || totalCpu < 0 ? -1 : totalCpu + worker._cpuNanos;
+			busiestCpu = Math.max(busiestCpu, worker._cpuNanos);
+		}
+		if (_lockList)
+		{
+			// the lock runs one operation at a time, so the threads holding it count as one
+			busiestCpu = totalCpu;
+		}
+		
+		return new WorkloadReport(_label, _rate, elapsed, _threads, response, service, gcCount, gcMillis, allocated,
+			totalCpu, totalCpu < 0 ? -1 : busiestCpu);
+	}
+	
+	/**
+	 * Runs every thread's share of the workload for a length of time
+	 * @param seconds The length of the phase
+	 * @param seed The seed for the phase's choices
+	 * @returns The finished workers
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	private List<Worker> runPhase(double seconds, long seed) throws InterruptedException
+	{
+		long intervalNanos = (long)(1e9 * _threads / _rate);
+		long start = System.nanoTime();
+		long end = start + (long)(seconds * 1e9);
+		List<Worker> workers = new ArrayList<>(_threads);
+		for (int i = 0; i < _threads; i++)
+		{
+			// stagger the threads so their operations interleave evenly
+			Worker worker = new Worker(seed * 31 + i, start + intervalNanos * i / _threads, intervalNanos, end);
+			workers.add(worker);
+			worker.start();
+		}
+		for (Worker worker : workers)
+		{
+			worker.join();
+		}
+		
+		return workers;
+	}
+	
+	/**
+	 * Runs one operation against the list
+	 * @param op The operation
+	 * @param random Source of choices
+	 * @param generator Source of new products and names
+	 */
+	private void execute(Operation op, Random random, CatalogGenerator generator)
+	{
+		Item target = null;
+		if (op != Operation.ADD && op != Operation.REPORT)
+		{
+			synchronized (_liveIndex)
+			{
+				if (_liveCount == 0)
+				{
+					op = Operation.ADD;
+				}
+				else
+				{
+					target = pick(random);
+					if (op == Operation.REMOVE)
+					{
+						// forgotten before it is removed, so no other thread picks it for removal too
+						untrack(target);
+					}
+				}
+			}
+		}
+		
+		switch (op)
+		{
+			case ADD:
+				Item item = generator.nextItem();
+				_list.add(item);
+				synchronized (_liveIndex)
+				{
+					track(item);
+				}
+				break;
+			case RENAME:
+				_list.rename(target, generator.nextName());
+				break;
+			case UPDATE_QUANTITY:
+				target.setQuantityInStock(generator.nextQuantity());
+				break;
+			case REMOVE:
+				_list.remove(target);
+				break;
+			case LOOKUP:
+				_list.get(target.getName());
+				break;
+			default:
+				_list.getTotalProductsInStock();
+				_list.getTotalItemsInStock();
+				_list.getTotalWholesalePrice();
+				_list.getTotalRetailPrice();
+				break;
+		}
+	}
+	
+	/**
+	 * Picks a random product in the list
+	 * @param random Source of choices
+	 * @returns The product
+	 */
+	private Item pick(Random random)
+	{
+		return _live[random.nextInt(_liveCount)];
+	}
+	
+	/**
+	 * Remembers a product added to the list
+	 * @param item The added product
+	 */
+	private void track(Item item)
+	{
+		if (_liveCount == _live.length)
+		{
+			_live = Arrays.copyOf(_live, _liveCount * 2);
+		}
+		_liveIndex.put(item, _liveCount);
+		_live[_liveCount++] = item;
+	}
+	
+	/**
+	 * Forgets a product removed from the list, moving the last product into its place
+	 * @param item The removed product
+	 */
+	private void untrack(Item item)
+	{
+		int index = _liveIndex.remove(item);
+		Item last = _live[--_liveCount];
+		_live[_liveCount] = null;
+		if (last != item)
+		{
+			_live[index] = last;
+			_liveIndex.put(last, index);
+		}
+	}
+	
+	/** Thread issuing its share of the operations on a fixed schedule */
+	private class Worker extends Thread
+	{
+		/** Source of operation choices */
+		private final Random _random;
+		/** Source of new products and names */
+		private final CatalogGenerator _generator;
+		/** Time the first operation should start */
+		private final long _firstStart;
+		/** Time between scheduled operations */
+		private final long _intervalNanos;
+		/** Time after which no more operations are started */
+		private final long _end;
+		/** Cumulative weights of the operations, indexed by ordinal */
+		private final int[] _cumulative = new int[Operation.values().length];
+		/** Response times by operation ordinal */
+		private final LatencyHistogram[] _response = new LatencyHistogram[Operation.values().length];
+		/** Service times by operation ordinal */
+		private final LatencyHistogram[] _service = new LatencyHistogram[Operation.values().length];
+		/** Bytes allocated by this thread during the phase, or -1 if unavailable */
+		private long _allocatedBytes = -1;
+		/** CPU time used by this thread during the phase in nanoseconds, or -1 if unavailable */
+		private long _cpuNanos = -1;
+		
+		/**
+		 * Constructor
+		 * @param seed Seed for the thread's choices
+		 * @param firstStart Time the first operation should start
+		 * @param intervalNanos Time between scheduled operations
+		 * @param end Time after which no more operations are started
+		 */
+		private Worker(long seed, long firstStart, long intervalNanos, long end)
+		{
+			super("workload-driver");
+			setDaemon(true);
+			_random = new Random(seed);
+			_generator = new CatalogGenerator(seed, _catalogNumbers);
+			_firstStart = firstStart;
+			_intervalNanos = intervalNanos;
+			_end = end;
+			int total = 0;
+			for (Operation op : Operation.values())
+			{
+				total += _mix.get(op);
+				_cumulative[op.ordinal()] = total;
+				_response[op.ordinal()] = new LatencyHistogram();
+				_service[op.ordinal()] = new LatencyHistogram();
+			}
+			if (total == 0)
+			{
+				throw new IllegalArgumentException("Operation mix is empty");
+			}
+		}
+		
+		@Override
+		public void run()
+		{
+			java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			com.sun.management.ThreadMXBean allocation = threads instanceof com.sun.management.ThreadMXBean
+				? (com.sun.management.ThreadMXBean)threads : null;
+			long allocatedBefore = allocation == null ? -1 : allocation.getThreadAllocatedBytes(getId());
+			long cpuBefore = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+			
+			Operation[] ops = Operation.values();
+			int total = _cumulative[ops.length - 1];
+			for (long scheduled = _firstStart; scheduled < _end; scheduled += _intervalNanos)
+			{
+				long now = System.nanoTime();
+				while (now < scheduled)
+				{
+					LockSupport.parkNanos(scheduled - now);
+					now = System.nanoTime();
+				}
+				
+				int choice = _random.nextInt(total);
+				int index = 0;
+				while (_cumulative[index] <= choice)
+				{
+					index++;
+				}
+				
+				long started = System.nanoTime();
+				if (_lockList)
+				{
+					synchronized (_list)
+					{
+						execute(ops[index], _random, _generator);
+					}
+				}
+				else
+				{
+					execute(ops[index], _random, _generator);
+				}
+				long finished = System.nanoTime();
+				// measured from the schedule, so time spent waiting behind a stall is counted
+				_response[index].record(finished - scheduled);
+				_service[index].record(finished - started);
+			}
+			
+			if (allocatedBefore >= 0)
+			{
+				_allocatedBytes = allocation.getThreadAllocatedBytes(getId()) - allocatedBefore;
+			}
+			if (cpuBefore >= 0)
+			{
+				_cpuNanos = threads.getCurrentThreadCpuTime() - cpuBefore;
+			}
+		}
+	}
+	
+	/**
+	 * Runs the driver against one or more product list implementations and prints a report for each.
+	 * Arguments are key=value pairs: impl (comma-separated, inventory or sharded:N), rate, threads,
+	 * seconds, warmup, catalog, seed, csv (true to also print comma-separated rows).
+	 * @param args The arguments
+	 * @throws InterruptedException if interrupted while running
+	 */
+	public static void main(String[] args) throws InterruptedException
+	{
+		Map<String, String> options = new LinkedHashMap<>();
+		options.put("impl", "inventory");
+		options.put("rate", "10000");
+		options.put("threads", "4");
+		options.put("seconds", "10");
+		options.put("warmup", "2");
+		options.put("catalog", "100000");
+		options.put("seed", "42");
+		options.put("csv", "false");
+		for (String arg : args)
+		{
+			int equals = arg.indexOf('=');
+			if (equals < 0 || !options.containsKey(arg.substring(0, equals)))
+			{
+				throw new IllegalArgumentException("Unknown argument " + arg + ", expected one of " + options.keySet());
+			}
+			options.put(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+		
+		for (String impl : options.get("impl").split(","))
+		{
+			IProductList<Item> list;
+			if (impl.equals("inventory"))
+			{
+				list = new Inventory<>();
+			}
+			else if (impl.startsWith("sharded:"))
+			{
+				list = new ShardedInventory<>(Integer.parseInt(impl.substring("sharded:".length())));
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unknown implementation " + impl);
+			}
+			
+			WorkloadReport report = new WorkloadDriver(list, impl)
+				.setRate(Double.parseDouble(options.get("rate")))
+				.setThreads(Integer.parseInt(options.get("threads")))
+				.setDuration(Double.parseDouble(options.get("warmup")), Double.parseDouble(options.get("seconds")))
+				.setCatalogSize(Integer.parseInt(options.get("catalog")))
+				.setSeed(Long.parseLong(options.get("seed")))
+				.run();
+			System.out.println(report);
+			if (Boolean.parseBoolean(options.get("csv")))
+			{
+				System.out.print(report.toCsv());
+			}
+			if (list instanceof ShardedInventory)
+			{
+				((ShardedInventory<Item>)list).close();
+			}
+			list = null;
+			System.gc();
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * Results of one WorkloadDriver run: latency histograms per operation, achieved throughput,
+ * garbage collection and allocation during the run, and CPU time of the threads doing the work,
+ * in a fixed layout so that runs against different product list implementations can be compared
+ * side by side. The throughput a run could reach with a core for every thread is bounded by the
+ * thread using the most CPU time, so comparing that bound across shard counts shows how far
+ * sharding spreads the work even on a machine with fewer cores than threads.
+ * @author Greg Edwards
+ * @version 1.0
+ */
+
+package application;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+public class WorkloadReport
+{
+	/** Label of the product list implementation driven */
+	private final String _label;
+	/** Operations per second requested */
+	private final double _targetRate;
+	/** Length of the measured run in nanoseconds */
+	private final long _elapsedNanos;
+	/** Number of threads issuing operations */
+	private final int _threads;
+	/** Time from when each operation should have started to when it finished, by operation */
+	private final Map<WorkloadDriver.Operation, LatencyHistogram> _responseTimes;
+	/** Time from when each operation actually started to when it finished, by operation */
+	private final Map<WorkloadDriver.Operation, LatencyHistogram> _serviceTimes;
+	/** Number of garbage collections during the run */
+	private final long _gcCount;
+	/** Time spent in garbage collection during the run in milliseconds */
+	private final long _gcMillis;
+	/** Bytes allocated by the threads issuing operations, or -1 if unavailable */
+	private final long _allocatedBytes;
+	/** CPU time of the threads issuing operations and of shard writers in nanoseconds, or -1 if unavailable */
+	private final long _cpuNanos;
+	/** CPU time of the busiest of those threads in nanoseconds, or -1 if unavailable */
+	private final long _busiestThreadCpuNanos;
+	/** Percentiles reported */
+	private static final double[] s_percentiles = { 50, 90, 99, 99.9, 100 };
+	
+	/**
+	 * Constructor
+	 * @param label Label of the product list implementation driven
+	 * @param targetRate Operations per second requested
+	 * @param elapsedNanos Length of the measured run in nanoseconds
+	 * @param threads Number of threads issuing operations
+	 * @param responseTimes Response time histograms by operation, corrected for coordinated omission
+	 * @param serviceTimes Service time histograms by operation
+	 * @param gcCount Number of garbage collections during the run
+	 * @param gcMillis Time spent in garbage collection during the run in milliseconds
+	 * @param allocatedBytes Bytes allocated by the threads issuing operations, or -1 if unavailable
+	 * @param cpuNanos CPU time of the threads issuing operations and of shard writers, or -1 if unavailable
+	 * @param busiestThreadCpuNanos CPU time of the busiest of those threads, or -1 if unavailable
+	 */
+	public WorkloadReport(String label, double targetRate, long elapsedNanos, int threads,
+		Map<WorkloadDriver.Operation, LatencyHistogram> responseTimes, Map<WorkloadDriver.Operation, LatencyHistogram> serviceTimes,
+		long gcCount, long gcMillis, long allocatedBytes, long cpuNanos, long busiestThreadCpuNanos)
+	{
+		_label = label;
+		_targetRate = targetRate;
+		_elapsedNanos = elapsedNanos;
+		_threads = threads;
+		_responseTimes = new EnumMap<>(responseTimes);
+		_serviceTimes = new EnumMap<>(serviceTimes);
+		_gcCount = gcCount;
+		_gcMillis = gcMillis;
+		_allocatedBytes = allocatedBytes;
+		_cpuNanos = cpuNanos;
+		_busiestThreadCpuNanos = busiestThreadCpuNanos;
+	}
+	
+	/**
+	 * Get method for the response times of an operation, measured from when it should have started
+	 * @param op The operation
+	 * @returns The histogram in nanoseconds
+	 */
+	public LatencyHistogram getResponseTimes(WorkloadDriver.Operation op)
+	{
+		return _responseTimes.get(op);
+	}
+	
+	/**
+	 * Get method for the service times of an operation, measured from when it actually started
+	 * @param op The operation
+	 * @returns The histogram in nanoseconds
+	 */
+	public LatencyHistogram getServiceTimes(WorkloadDriver.Operation op)
+	{
+		return _serviceTimes.get(op);
+	}
+	
+	/**
+	 * Get method for the throughput achieved
+	 * @returns Operations completed per second
+	 */
+	public double getAchievedRate()
+	{
+		long total = 0;
+		for (LatencyHistogram histogram : _responseTimes.values())
+		{
+			total += histogram.getCount();
+		}
+		
+		return total * 1e9 / _elapsedNanos;
+	}
+	
+	/**
+	 * Get method for the throughput the run could reach with a core for every thread, at which
+	 * the busiest thread would be running all the time. Contention for locks and memory on more
+	 * cores can only lower it, so it is an upper bound.
+	 * @returns Operations per second, or -1 if CPU time was unavailable
+	 */
+	public double getCoreBoundRate()
+	{
+		if (_busiestThreadCpuNanos <= 0)
+		{
+			return -1;
+		}
+		
+		long total = 0;
+		for (LatencyHistogram histogram : _responseTimes.values())
+		{
+			total += histogram.getCount();
+		}
+		
+		return total * 1e9 / _busiestThreadCpuNanos;
+	}
+	
+	/**
+	 * Formats the report as a table with one row per operation, response times in microseconds
+	 * @returns The formatted report
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("%s: %d threads, target %,.0f ops/s, achieved %,.0f ops/s over %.1f s%n",
+			_label, _threads, _targetRate, getAchievedRate(), _elapsedNanos / 1e9));
+		text.append(String.format("GC: %d collections, %d ms; allocated %s%n", _gcCount, _gcMillis,
+			_allocatedBytes < 0 ? "unknown" : String.format("%,d MB", _allocatedBytes >> 20)));
+		if (_cpuNanos >= 0)
+		{
+			text.append(String.format("CPU: %,d ms, busiest thread %,d ms; at most %,.0f ops/s with a core per thread%n",
+				_cpuNanos / 1000000, _busiestThreadCpuNanos / 1000000, getCoreBoundRate()));
+		}
+		text.append(String.format("%-16s %10s %10s", "operation", "count", "mean"));
+		for (double percentile : s_percentiles)
+		{
+			text.append(String.format(" %10s", percentile == 100 ? "max" : "p" + formatPercentile(percentile)));
+		}
+		text.append(String.format("   (response time in us, service p99 in brackets)%n"));
+		for (Map.Entry<WorkloadDriver.Operation, LatencyHistogram> entry : _responseTimes.entrySet())
+		{
+			LatencyHistogram histogram = entry.getValue();
+			text.append(String.format("%-16s %10d %10.1f", entry.getKey(), histogram.getCount(), histogram.getMean() / 1e3));
+			for (double percentile : s_percentiles)
+			{
+				text.append(String.format(" %10.1f", histogram.getValueAtPercentile(percentile) / 1e3));
+			}
+			text.append(String.format("   [%.1f]%n", _serviceTimes.get(entry.getKey()).getValueAtPercentile(99) / 1e3));
+		}
+		
+		return text.toString();
+	}
+	
+	/**
+	 * Formats the report as comma-separated rows, one per operation, for collecting many runs in one file
+	 * @returns Rows of label, operation, count, mean, and percentiles of response time in nanoseconds,
+	 * followed by achieved rate, GC collections, GC milliseconds, allocated bytes, CPU nanoseconds,
+	 * and the rate bound with a core per thread
+	 */
+	public String toCsv()
+	{
+		StringBuilder csv = new StringBuilder();
+		for (Map.Entry<WorkloadDriver.Operation, LatencyHistogram> entry : _responseTimes.entrySet())
+		{
+			LatencyHistogram histogram = entry.getValue();
+			csv.append(_label).append(',').append(entry.getKey()).append(',').append(histogram.getCount())
+				.append(',').append(Math.round(histogram.getMean()));
+			for (double percentile : s_percentiles)
+			{
+				csv.append(',').append(histogram.getValueAtPercentile(percentile));
+			}
+			csv.append(',').append(Math.round(getAchievedRate())).append(',').append(_gcCount)
+				.append(',').append(_gcMillis).append(',').append(_allocatedBytes).append(',').append(_cpuNanos)
+				.append(',').append(Math.round(getCoreBoundRate())).append('\n');
+		}
+		
+		return csv.toString();
+	}
+	
+	/**
+	 * Formats a percentile without a trailing fraction when it is whole
+	 * @param percentile The percentile
+	 * @returns The formatted percentile
+	 */
+	private static String formatPercentile(double percentile)
+	{
+		return percentile == Math.rint(percentile) ? String.valueOf((int)percentile) : String.valueOf(percentile);
+	}
+}